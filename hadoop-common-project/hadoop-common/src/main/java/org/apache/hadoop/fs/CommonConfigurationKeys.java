@@ -108,6 +108,25 @@ public class CommonConfigurationKeys extends CommonConfigurationKeysPublic {
   public static final String IPC_BACKOFF_ENABLE = "backoff.enable";
   public static final boolean IPC_BACKOFF_ENABLE_DEFAULT = false;
 
+  /**
+   * Number of handlers serving only heavy calls, which are queued apart from
+   * the other calls.  Heavy calls are not isolated when 0.  Combined with a
+   * namespace and port like the call queue settings.
+   */
+  public static final String IPC_HEAVY_HANDLER_COUNT_KEY =
+      "heavy-handler.count";
+  public static final int IPC_HEAVY_HANDLER_COUNT_DEFAULT = 0;
+  /** Methods whose calls are always heavy. */
+  public static final String IPC_HEAVY_CALL_METHODS_KEY = "heavy-call.methods";
+  /**
+   * Average cost, as computed by the cost provider in microseconds, from
+   * which the calls of a method are heavy.  Only the configured methods are
+   * heavy when 0.
+   */
+  public static final String IPC_HEAVY_CALL_COST_THRESHOLD_KEY =
+      "heavy-call.cost-threshold-us";
+  public static final long IPC_HEAVY_CALL_COST_THRESHOLD_DEFAULT = 1000000;
+
   /**
    * IPC scheduler priority levels.
    */
@@ -174,6 +193,18 @@ public class CommonConfigurationKeys extends CommonConfigurationKeysPublic {
   public static final boolean IO_COMPRESSION_CODEC_LZ4_USELZ4HC_DEFAULT =
       false;
 
+  /**
+   * The raw coder factories of the Reed-Solomon erasure codec, in order of
+   * preference.  A factory which fails, e.g. for lack of its native
+   * library, is skipped for the next one.
+   */
+  public static final String IO_ERASURECODE_CODEC_RS_RAWCODERS_KEY =
+      "io.erasurecode.codec.rs.rawcoders";
+
+  /** Default value for IO_ERASURECODE_CODEC_RS_RAWCODERS_KEY */
+  public static final String IO_ERASURECODE_CODEC_RS_RAWCODERS_DEFAULT =
+      "org.apache.hadoop.io.erasurecode.rawcoder.RSRawErasureCoderFactory";
+
   /**
    * Service Authorization
    */
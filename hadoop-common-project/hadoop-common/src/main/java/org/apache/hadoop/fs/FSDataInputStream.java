@@ -25,6 +25,7 @@
 import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.util.EnumSet;
+import java.util.List;
 
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.classification.InterfaceStability;
@@ -39,7 +40,7 @@ public class FSDataInputStream extends DataInputStream
     implements Seekable, PositionedReadable, 
       ByteBufferReadable, HasFileDescriptor, CanSetDropBehind, CanSetReadahead,
     HasEnhancedByteBufferAccess, CanUnbuffer, StreamCapabilities,
-    ByteBufferPositionedReadable {
+    ByteBufferPositionedReadable, VectoredReadable {
   /**
    * Map ByteBuffers that we have handed out to readers to ByteBufferPool 
    * objects
@@ -256,4 +257,19 @@ public int read(long position, ByteBuffer buf) throws IOException {
     throw new UnsupportedOperationException("Byte-buffer pread unsupported " +
         "by input stream");
   }
+
+  /**
+   * Read the ranges with the wrapped stream if it implements
+   * {@link VectoredReadable}, or else with one positioned read after the
+   * other.
+   */
+  @Override
+  public void readVectored(List<? extends FileRange> ranges,
+      ByteBufferPool bufferPool) throws IOException {
+    if (in instanceof VectoredReadable) {
+      ((VectoredReadable) in).readVectored(ranges, bufferPool);
+    } else {
+      VectoredReadUtils.readVectored(this, ranges, bufferPool);
+    }
+  }
 }
@@ -70,6 +70,14 @@ public interface StreamCapabilities {
    * {@link ByteBufferPositionedReadable#read(long, java.nio.ByteBuffer)}.
    */
   String PREADBYTEBUFFER = "in:preadbytebuffer";
+
+  /**
+   * Stream readVectored capability implemented natively by
+   * {@link VectoredReadable#readVectored(java.util.List,
+   * org.apache.hadoop.io.ByteBufferPool)}.
+   */
+  String VECTOREDREAD = "in:readvectored";
+
   /**
    * Capabilities that a stream can support and be queried for.
    */
@@ -0,0 +1,182 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.fs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.io.ByteBufferPool;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * Utilities for the implementations of {@link VectoredReadable}.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Evolving
+public final class VectoredReadUtils {
+
+  /**
+   * A range covering several ranges close to each other, read at once and
+   * then split into them.
+   */
+  public static class CombinedFileRange extends FileRange {
+    private final List<FileRange> underlying;
+
+    CombinedFileRange(long offset, int length, List<FileRange> underlying) {
+      super(offset, length);
+      this.underlying = underlying;
+    }
+
+    /** @return the ranges covered, sorted by offset. */
+    public List<FileRange> getUnderlying() {
+      return underlying;
+    }
+  }
+
+  private static final Comparator<FileRange> OFFSET_COMPARATOR =
+      new Comparator<FileRange>() {
+        @Override
+        public int compare(FileRange r1, FileRange r2) {
+          return Long.compare(r1.getOffset(), r2.getOffset());
+        }
+      };
+
+  private VectoredReadUtils() {
+  }
+
+  /**
+   * Check the ranges of a vectored read.
+   * @return the ranges sorted by offset.
+   * @throws IllegalArgumentException if a range is invalid, or overlaps
+   *         another.
+   */
+  public static List<FileRange> validateAndSortRanges(
+      List<? extends FileRange> ranges) {
+    final List<FileRange> sorted = new ArrayList<FileRange>(ranges);
+    for (FileRange r : sorted) {
+      Preconditions.checkArgument(r.getOffset() >= 0 && r.getLength() >= 0,
+          "Invalid %s", r);
+    }
+    Collections.sort(sorted, OFFSET_COMPARATOR);
+    for (int i = 1; i < sorted.size(); i++) {
+      Preconditions.checkArgument(
+          sorted.get(i - 1).getEnd() <= sorted.get(i).getOffset(),
+          "%s overlaps %s", sorted.get(i - 1), sorted.get(i));
+    }
+    return sorted;
+  }
+
+  /**
+   * Merge the sorted ranges into as few reads as possible: two ranges are
+   * read at once if the gap between them is at most minSeek, the read is at
+   * most maxSize, and they are in the same chunk, e.g. block, of the file.
+   */
+  public static List<CombinedFileRange> mergeSortedRanges(
+      List<FileRange> sortedRanges, long chunkSize, int minSeek, int maxSize) {
+    final List<CombinedFileRange> merged = new ArrayList<CombinedFileRange>();
+    List<FileRange> current = null;
+    long start = 0;
+    long end = 0;
+    for (FileRange r : sortedRanges) {
+      if (current != null
+          && r.getOffset() - end <= minSeek
+          && r.getEnd() - start <= maxSize
+          && start / chunkSize == Math.max(r.getEnd() - 1, start) / chunkSize) {
+        current.add(r);
+        end = r.getEnd();
+        continue;
+      }
+      if (current != null) {
+        merged.add(new CombinedFileRange(start, (int) (end - start), current));
+      }
+      current = new ArrayList<FileRange>();
+      current.add(r);
+      start = r.getOffset();
+      end = r.getEnd();
+    }
+    if (current != null) {
+      merged.add(new CombinedFileRange(start, (int) (end - start), current));
+    }
+    return merged;
+  }
+
+  /**
+   * Get a heap buffer for length bytes from the pool.
+   * @return the buffer, with its position at 0 and its limit at length.
+   */
+  public static ByteBuffer allocate(ByteBufferPool bufferPool, int length) {
+    final ByteBuffer buffer = bufferPool.getBuffer(false, length);
+    if (buffer.capacity() < length || !buffer.hasArray()) {
+      bufferPool.putBuffer(buffer);
+      throw new IllegalArgumentException("The buffer pool gave a buffer of "
+          + buffer.capacity() + " bytes for a range of " + length);
+    }
+    buffer.clear();
+    buffer.limit(length);
+    return buffer;
+  }
+
+  /**
+   * Copy the bytes of a range out of the data of the combined range it
+   * belongs to, into a buffer from the pool.
+   */
+  public static ByteBuffer sliceTo(ByteBuffer combinedData,
+      long combinedOffset, FileRange range, ByteBufferPool bufferPool) {
+    final ByteBuffer slice = combinedData.duplicate();
+    slice.position(combinedData.position()
+        + (int) (range.getOffset() - combinedOffset));
+    slice.limit(slice.position() + range.getLength());
+    final ByteBuffer buffer = allocate(bufferPool, range.getLength());
+    buffer.put(slice);
+    buffer.flip();
+    return buffer;
+  }
+
+  /**
+   * Read the ranges one after the other with positioned reads, for the
+   * streams which do not implement {@link VectoredReadable}.  The futures
+   * of the ranges are complete when this returns.
+   */
+  public static void readVectored(PositionedReadable stream,
+      List<? extends FileRange> ranges, ByteBufferPool bufferPool) {
+    for (FileRange range : validateAndSortRanges(ranges)) {
+      final SettableFuture<ByteBuffer> data = SettableFuture.create();
+      range.setData(data);
+      ByteBuffer buffer = null;
+      try {
+        buffer = allocate(bufferPool, range.getLength());
+        stream.readFully(range.getOffset(), buffer.array(),
+            buffer.arrayOffset(), range.getLength());
+        data.set(buffer);
+      } catch (IOException | RuntimeException e) {
+        if (buffer != null) {
+          bufferPool.putBuffer(buffer);
+        }
+        data.setException(e);
+      }
+    }
+  }
+}
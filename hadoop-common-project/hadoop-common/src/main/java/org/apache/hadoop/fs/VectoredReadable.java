@@ -0,0 +1,63 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.fs;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.io.ByteBufferPool;
+
+/**
+ * Implementers of this interface read a list of ranges of a file at once,
+ * e.g. the column chunks of a stripe of a columnar file.  Unlike as many
+ * positioned reads, the ranges can be merged when they are close, and read
+ * in parallel, so that the data of each completes on its own.
+ *
+ * @see PositionedReadable
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public interface VectoredReadable {
+  /**
+   * Start reading the ranges.  The future of the data of each range is
+   * set on it before this returns; it may complete later, in another
+   * thread.  The data of a range is a heap buffer from the pool, with the
+   * bytes of the range between its position and limit, which the caller
+   * can return to the pool once done with it.  The pool must give buffers
+   * of at least the requested length, as
+   * {@link org.apache.hadoop.io.ElasticByteBufferPool} does.
+   * <p>
+   * The ranges must not overlap.  A range past the end of the file fails
+   * its future with an {@link java.io.EOFException}.
+   * <p>
+   * Callers should use {@link StreamCapabilities#hasCapability(String)}
+   * with {@link StreamCapabilities#VECTOREDREAD} to check whether the
+   * stream reads the ranges natively, rather than one positioned read
+   * after the other.
+   *
+   * @param ranges the ranges to read.
+   * @param bufferPool the pool to get the buffers of the data from.
+   * @throws IOException if the read cannot be started, e.g. because the
+   *         stream is closed.
+   * @throws IllegalArgumentException if the ranges are invalid.
+   */
+  void readVectored(List<? extends FileRange> ranges, ByteBufferPool bufferPool)
+      throws IOException;
+}
@@ -0,0 +1,105 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.io.erasurecode;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.CommonConfigurationKeys;
+import org.apache.hadoop.io.erasurecode.rawcoder.RawErasureCoderFactory;
+import org.apache.hadoop.io.erasurecode.rawcoder.RawErasureDecoder;
+import org.apache.hadoop.io.erasurecode.rawcoder.RawErasureEncoder;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Create the raw erasure coders of a codec, from the factories configured
+ * for it.  The factories are tried in order, so that a native coder can be
+ * listed ahead of the pure Java one it falls back on.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Unstable
+public final class CodecUtil {
+  private static final Logger LOG = LoggerFactory.getLogger(CodecUtil.class);
+
+  /** The Reed-Solomon codec. */
+  public static final String RS_CODEC_NAME = "rs";
+
+  private CodecUtil() {
+  }
+
+  /** Create an encoder of the codec, with the first factory that works. */
+  public static RawErasureEncoder createRawEncoder(Configuration conf,
+      String codec, ErasureCoderOptions options) {
+    for (RawErasureCoderFactory factory : getFactories(conf, codec)) {
+      try {
+        return factory.createEncoder(options);
+      } catch (Exception | LinkageError e) {
+        LOG.warn("Failed to create a " + codec + " encoder with "
+            + factory.getCoderName() + ", trying the next one", e);
+      }
+    }
+    throw new IllegalArgumentException("Failed to create a raw erasure"
+        + " encoder for codec " + codec + " " + options);
+  }
+
+  /** Create a decoder of the codec, with the first factory that works. */
+  public static RawErasureDecoder createRawDecoder(Configuration conf,
+      String codec, ErasureCoderOptions options) {
+    for (RawErasureCoderFactory factory : getFactories(conf, codec)) {
+      try {
+        return factory.createDecoder(options);
+      } catch (Exception | LinkageError e) {
+        LOG.warn("Failed to create a " + codec + " decoder with "
+            + factory.getCoderName() + ", trying the next one", e);
+      }
+    }
+    throw new IllegalArgumentException("Failed to create a raw erasure"
+        + " decoder for codec " + codec + " " + options);
+  }
+
+  private static List<RawErasureCoderFactory> getFactories(
+      Configuration conf, String codec) {
+    final String[] classNames;
+    if (RS_CODEC_NAME.equals(codec)) {
+      classNames = conf.getTrimmedStrings(
+          CommonConfigurationKeys.IO_ERASURECODE_CODEC_RS_RAWCODERS_KEY,
+          CommonConfigurationKeys.IO_ERASURECODE_CODEC_RS_RAWCODERS_DEFAULT);
+    } else {
+      throw new IllegalArgumentException("Unknown erasure codec: " + codec);
+    }
+    final List<RawErasureCoderFactory> factories =
+        new ArrayList<>(classNames.length);
+    for (String className : classNames) {
+      try {
+        final Class<? extends RawErasureCoderFactory> clazz =
+            conf.getClassByName(className)
+                .asSubclass(RawErasureCoderFactory.class);
+        factories.add(ReflectionUtils.newInstance(clazz, conf));
+      } catch (Exception | LinkageError e) {
+        LOG.warn("Failed to load the raw erasure coder factory "
+            + className + " of codec " + codec, e);
+      }
+    }
+    return factories;
+  }
+}
@@ -0,0 +1,67 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.io.erasurecode;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * The layout of the units coded together by an erasure coder: the number of
+ * data units, and of the parity units computed from them.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Unstable
+public final class ErasureCoderOptions {
+  /** The units are numbered by a byte in GF(256). */
+  public static final int MAX_NUM_UNITS = 256;
+
+  private final int numDataUnits;
+  private final int numParityUnits;
+
+  public ErasureCoderOptions(int numDataUnits, int numParityUnits) {
+    Preconditions.checkArgument(numDataUnits > 0,
+        "numDataUnits = %s <= 0", numDataUnits);
+    Preconditions.checkArgument(numParityUnits > 0,
+        "numParityUnits = %s <= 0", numParityUnits);
+    Preconditions.checkArgument(
+        numDataUnits + numParityUnits <= MAX_NUM_UNITS,
+        "numDataUnits + numParityUnits = %s > %s",
+        numDataUnits + numParityUnits, MAX_NUM_UNITS);
+    this.numDataUnits = numDataUnits;
+    this.numParityUnits = numParityUnits;
+  }
+
+  public int getNumDataUnits() {
+    return numDataUnits;
+  }
+
+  public int getNumParityUnits() {
+    return numParityUnits;
+  }
+
+  public int getNumAllUnits() {
+    return numDataUnits + numParityUnits;
+  }
+
+  @Override
+  public String toString() {
+    return "(" + numDataUnits + ", " + numParityUnits + ")";
+  }
+}
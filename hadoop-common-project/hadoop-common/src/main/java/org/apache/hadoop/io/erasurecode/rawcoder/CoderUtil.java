@@ -0,0 +1,78 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.io.erasurecode.rawcoder;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Helpers to pass the buffers given to the coders on to their byte array
+ * implementations.  A null buffer stands for a missing unit.
+ */
+final class CoderUtil {
+  private CoderUtil() {
+  }
+
+  /** @return whether every buffer given is backed by an accessible array. */
+  static boolean hasArrays(ByteBuffer[] buffers) {
+    for (ByteBuffer b : buffers) {
+      if (b != null && (!b.hasArray() || b.isReadOnly())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  static byte[][] arrays(ByteBuffer[] buffers) {
+    final byte[][] arrays = new byte[buffers.length][];
+    for (int i = 0; i < buffers.length; i++) {
+      if (buffers[i] != null) {
+        arrays[i] = buffers[i].array();
+      }
+    }
+    return arrays;
+  }
+
+  static int[] arrayOffsets(ByteBuffer[] buffers) {
+    final int[] offsets = new int[buffers.length];
+    for (int i = 0; i < buffers.length; i++) {
+      if (buffers[i] != null) {
+        offsets[i] = buffers[i].arrayOffset() + buffers[i].position();
+      }
+    }
+    return offsets;
+  }
+
+  /** Copy len bytes of each buffer given, from its position, to an array. */
+  static byte[][] copyIn(ByteBuffer[] buffers, int len) {
+    final byte[][] arrays = new byte[buffers.length][];
+    for (int i = 0; i < buffers.length; i++) {
+      if (buffers[i] != null) {
+        arrays[i] = new byte[len];
+        buffers[i].duplicate().get(arrays[i]);
+      }
+    }
+    return arrays;
+  }
+
+  /** Copy the arrays to the buffers, from their positions. */
+  static void copyOut(byte[][] arrays, ByteBuffer[] buffers, int len) {
+    for (int i = 0; i < buffers.length; i++) {
+      buffers[i].duplicate().put(arrays[i], 0, len);
+    }
+  }
+}
@@ -0,0 +1,99 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.io.erasurecode.rawcoder;
+
+import java.util.Arrays;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.io.erasurecode.ErasureCoderOptions;
+import org.apache.hadoop.io.erasurecode.rawcoder.util.GF256;
+import org.apache.hadoop.io.erasurecode.rawcoder.util.RSUtil;
+
+/**
+ * A pure Java Reed-Solomon decoder, matching {@link RSRawEncoder}.  The
+ * units used and the units erased usually stay the same over the stripes
+ * of a block group, so the decoding matrix of the last erasure pattern is
+ * kept rather than inverted again for every call.
+ */
+@InterfaceAudience.Private
+public class RSRawDecoder extends RawErasureDecoder {
+  private final byte[] encodeMatrix;
+
+  private int[] cachedValidIndexes;
+  private int[] cachedErasedIndexes;
+  /** One row per erased unit, of the coefficients of the valid units. */
+  private byte[] decodeMatrix;
+
+  public RSRawDecoder(ErasureCoderOptions options) {
+    super(options);
+    encodeMatrix = RSUtil.genCauchyMatrix(getNumDataUnits(),
+        getNumParityUnits());
+  }
+
+  @Override
+  protected void doDecode(byte[][] inputs, int[] inputOffsets, int len,
+      int[] validIndexes, int[] erasedIndexes, byte[][] outputs,
+      int[] outputOffsets) {
+    prepareDecoding(validIndexes, erasedIndexes);
+    final int k = validIndexes.length;
+    final byte[][] validInputs = new byte[k][];
+    final int[] validOffsets = new int[k];
+    for (int i = 0; i < k; i++) {
+      validInputs[i] = inputs[validIndexes[i]];
+      validOffsets[i] = inputOffsets[validIndexes[i]];
+    }
+    RSUtil.encodeData(decodeMatrix, validInputs, validOffsets, len,
+        outputs, outputOffsets);
+  }
+
+  private void prepareDecoding(int[] validIndexes, int[] erasedIndexes) {
+    if (Arrays.equals(validIndexes, cachedValidIndexes)
+        && Arrays.equals(erasedIndexes, cachedErasedIndexes)) {
+      return;
+    }
+    final int k = getNumDataUnits();
+    // The rows of the encoding matrix giving the valid units from the data.
+    final byte[] subMatrix = new byte[k * k];
+    for (int i = 0; i < k; i++) {
+      System.arraycopy(encodeMatrix, validIndexes[i] * k, subMatrix, i * k, k);
+    }
+    // Its inverse gives the data from the valid units.
+    final byte[] inverse = new byte[k * k];
+    GF256.gfInvertMatrix(subMatrix, inverse, k);
+
+    final byte[] matrix = new byte[erasedIndexes.length * k];
+    for (int e = 0; e < erasedIndexes.length; e++) {
+      final int erased = erasedIndexes[e];
+      if (erased < k) {
+        System.arraycopy(inverse, erased * k, matrix, e * k, k);
+      } else {
+        // A parity unit is its encoding row applied to the recovered data.
+        for (int c = 0; c < k; c++) {
+          byte s = 0;
+          for (int j = 0; j < k; j++) {
+            s ^= GF256.gfMul(encodeMatrix[erased * k + j], inverse[j * k + c]);
+          }
+          matrix[e * k + c] = s;
+        }
+      }
+    }
+    decodeMatrix = matrix;
+    cachedValidIndexes = validIndexes.clone();
+    cachedErasedIndexes = erasedIndexes.clone();
+  }
+}
@@ -0,0 +1,48 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.io.erasurecode.rawcoder;
+
+import java.util.Arrays;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.io.erasurecode.ErasureCoderOptions;
+import org.apache.hadoop.io.erasurecode.rawcoder.util.RSUtil;
+
+/**
+ * A pure Java Reed-Solomon encoder, on a Cauchy encoding matrix.
+ */
+@InterfaceAudience.Private
+public class RSRawEncoder extends RawErasureEncoder {
+  /** The parity rows of the encoding matrix. */
+  private final byte[] parityMatrix;
+
+  public RSRawEncoder(ErasureCoderOptions options) {
+    super(options);
+    final int k = getNumDataUnits();
+    final byte[] encodeMatrix = RSUtil.genCauchyMatrix(k, getNumParityUnits());
+    parityMatrix = Arrays.copyOfRange(encodeMatrix, k * k,
+        encodeMatrix.length);
+  }
+
+  @Override
+  protected void doEncode(byte[][] inputs, int[] inputOffsets, int len,
+      byte[][] outputs, int[] outputOffsets) {
+    RSUtil.encodeData(parityMatrix, inputs, inputOffsets, len,
+        outputs, outputOffsets);
+  }
+}
@@ -0,0 +1,182 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.io.erasurecode.rawcoder;
+
+import java.nio.ByteBuffer;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.io.erasurecode.ErasureCoderOptions;
+
+/**
+ * A raw erasure decoder, which recovers the erased units of a stripe from
+ * any numDataUnits of its other units.  The units are indexed with the data
+ * units first, then the parity units.  The decoder is not thread safe.
+ */
+@InterfaceAudience.Private
+public abstract class RawErasureDecoder {
+  private final ErasureCoderOptions options;
+
+  protected RawErasureDecoder(ErasureCoderOptions options) {
+    this.options = options;
+  }
+
+  public ErasureCoderOptions getOptions() {
+    return options;
+  }
+
+  public int getNumDataUnits() {
+    return options.getNumDataUnits();
+  }
+
+  public int getNumParityUnits() {
+    return options.getNumParityUnits();
+  }
+
+  /**
+   * Recover the erased units.
+   * @param inputs all the units of the stripe, null for the ones not
+   *        available.  At least numDataUnits of them, besides the erased
+   *        ones, must be given, all of the same length.
+   * @param erasedIndexes the indexes of the units to recover.
+   * @param outputs the recovered units, in the order of erasedIndexes, as
+   *        long as the inputs.
+   */
+  public void decode(byte[][] inputs, int[] erasedIndexes, byte[][] outputs) {
+    final int[] validIndexes = getValidIndexes(
+        inputs.length, erasedIndexes, outputs.length, inputs);
+    final int len = inputs[validIndexes[0]].length;
+    for (int i : validIndexes) {
+      checkLength(inputs[i].length, len);
+    }
+    for (byte[] b : outputs) {
+      checkLength(b.length, len);
+    }
+    doDecode(inputs, new int[inputs.length], len, validIndexes,
+        erasedIndexes, outputs, new int[outputs.length]);
+  }
+
+  /**
+   * Recover the erased units, as {@link #decode(byte[][], int[], byte[][])}.
+   * The remaining bytes of the inputs are decoded into as many bytes of the
+   * outputs, from their positions.  The positions of the buffers are left
+   * unchanged.
+   */
+  public void decode(ByteBuffer[] inputs, int[] erasedIndexes,
+      ByteBuffer[] outputs) {
+    final int[] validIndexes = getValidIndexes(
+        inputs.length, erasedIndexes, outputs.length, inputs);
+    final int len = inputs[validIndexes[0]].remaining();
+    // Only pass the units used on to the implementation.
+    final ByteBuffer[] used = new ByteBuffer[inputs.length];
+    for (int i : validIndexes) {
+      checkLength(inputs[i].remaining(), len);
+      used[i] = inputs[i];
+    }
+    for (ByteBuffer b : outputs) {
+      if (b.remaining() < len) {
+        throw new IllegalArgumentException("Output buffer too small: "
+            + b.remaining() + " < " + len);
+      }
+      if (b.isReadOnly()) {
+        throw new IllegalArgumentException("Output buffer is read only");
+      }
+    }
+    if (CoderUtil.hasArrays(used) && CoderUtil.hasArrays(outputs)) {
+      doDecode(CoderUtil.arrays(used), CoderUtil.arrayOffsets(used), len,
+          validIndexes, erasedIndexes,
+          CoderUtil.arrays(outputs), CoderUtil.arrayOffsets(outputs));
+    } else {
+      doDecode(used, len, validIndexes, erasedIndexes, outputs);
+    }
+  }
+
+  /**
+   * Recover len bytes of the erased units, from the offsets, using the
+   * units of validIndexes, numDataUnits of them in increasing order.
+   */
+  protected abstract void doDecode(byte[][] inputs, int[] inputOffsets,
+      int len, int[] validIndexes, int[] erasedIndexes,
+      byte[][] outputs, int[] outputOffsets);
+
+  /**
+   * Recover len bytes of the erased units, from the positions of the
+   * buffers, when some of them are direct.  By default, the inputs are
+   * copied to heap arrays and the recovered units copied back.
+   */
+  protected void doDecode(ByteBuffer[] inputs, int len, int[] validIndexes,
+      int[] erasedIndexes, ByteBuffer[] outputs) {
+    final byte[][] in = CoderUtil.copyIn(inputs, len);
+    final byte[][] out = new byte[outputs.length][len];
+    doDecode(in, new int[in.length], len, validIndexes, erasedIndexes,
+        out, new int[out.length]);
+    CoderUtil.copyOut(out, outputs, len);
+  }
+
+  /** Release the resources held by the decoder, such as native memory. */
+  public void release() {
+  }
+
+  /**
+   * Check the arguments of a decode call.
+   * @return the indexes of the first numDataUnits units given and not
+   *         erased, which the units are recovered from.
+   */
+  private int[] getValidIndexes(int numInputs, int[] erasedIndexes,
+      int numOutputs, Object[] inputs) {
+    final int numAllUnits = options.getNumAllUnits();
+    if (numInputs != numAllUnits) {
+      throw new IllegalArgumentException("Invalid number of inputs: "
+          + numInputs + " != " + numAllUnits);
+    }
+    if (erasedIndexes.length == 0
+        || erasedIndexes.length > getNumParityUnits()) {
+      throw new IllegalArgumentException("Invalid number of erasures: "
+          + erasedIndexes.length);
+    }
+    if (numOutputs != erasedIndexes.length) {
+      throw new IllegalArgumentException("Invalid number of outputs: "
+          + numOutputs + " != " + erasedIndexes.length);
+    }
+    final boolean[] erased = new boolean[numAllUnits];
+    for (int i : erasedIndexes) {
+      if (i < 0 || i >= numAllUnits || erased[i]) {
+        throw new IllegalArgumentException("Invalid erased index: " + i);
+      }
+      erased[i] = true;
+    }
+    final int[] validIndexes = new int[getNumDataUnits()];
+    int n = 0;
+    for (int i = 0; i < numAllUnits && n < validIndexes.length; i++) {
+      if (inputs[i] != null && !erased[i]) {
+        validIndexes[n++] = i;
+      }
+    }
+    if (n < validIndexes.length) {
+      throw new IllegalArgumentException("Not enough inputs to decode: "
+          + n + " < " + validIndexes.length);
+    }
+    return validIndexes;
+  }
+
+  private static void checkLength(int len, int expected) {
+    if (len != expected) {
+      throw new IllegalArgumentException("Invalid unit length: "
+          + len + " != " + expected);
+    }
+  }
+}
@@ -0,0 +1,138 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.io.erasurecode.rawcoder;
+
+import java.nio.ByteBuffer;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.io.erasurecode.ErasureCoderOptions;
+
+/**
+ * A raw erasure encoder, which computes the parity units of a stripe from
+ * its data units.  The units are given as byte arrays or as buffers, all
+ * of the same length; the encoder keeps no state between the calls, but
+ * it is not thread safe.
+ */
+@InterfaceAudience.Private
+public abstract class RawErasureEncoder {
+  private final ErasureCoderOptions options;
+
+  protected RawErasureEncoder(ErasureCoderOptions options) {
+    this.options = options;
+  }
+
+  public ErasureCoderOptions getOptions() {
+    return options;
+  }
+
+  public int getNumDataUnits() {
+    return options.getNumDataUnits();
+  }
+
+  public int getNumParityUnits() {
+    return options.getNumParityUnits();
+  }
+
+  /**
+   * Encode the data units into the parity units.
+   * @param inputs the data units, all of the same length.
+   * @param outputs the parity units, as long as the inputs.
+   */
+  public void encode(byte[][] inputs, byte[][] outputs) {
+    checkUnits(inputs.length, outputs.length);
+    final int len = inputs[0].length;
+    for (byte[] b : inputs) {
+      checkLength(b.length, len);
+    }
+    for (byte[] b : outputs) {
+      checkLength(b.length, len);
+    }
+    doEncode(inputs, new int[inputs.length], len,
+        outputs, new int[outputs.length]);
+  }
+
+  /**
+   * Encode the data units into the parity units.  The remaining bytes of
+   * the inputs are encoded into as many bytes of the outputs, from their
+   * positions.  The positions of the buffers are left unchanged.
+   * @param inputs the data units, with the same number of bytes remaining.
+   * @param outputs the parity units, with at least as many bytes remaining.
+   */
+  public void encode(ByteBuffer[] inputs, ByteBuffer[] outputs) {
+    checkUnits(inputs.length, outputs.length);
+    final int len = inputs[0].remaining();
+    for (ByteBuffer b : inputs) {
+      checkLength(b.remaining(), len);
+    }
+    for (ByteBuffer b : outputs) {
+      if (b.remaining() < len) {
+        throw new IllegalArgumentException("Output buffer too small: "
+            + b.remaining() + " < " + len);
+      }
+      if (b.isReadOnly()) {
+        throw new IllegalArgumentException("Output buffer is read only");
+      }
+    }
+    if (CoderUtil.hasArrays(inputs) && CoderUtil.hasArrays(outputs)) {
+      doEncode(CoderUtil.arrays(inputs), CoderUtil.arrayOffsets(inputs), len,
+          CoderUtil.arrays(outputs), CoderUtil.arrayOffsets(outputs));
+    } else {
+      doEncode(inputs, outputs, len);
+    }
+  }
+
+  /** Encode len bytes of the inputs, from the offsets, into the outputs. */
+  protected abstract void doEncode(byte[][] inputs, int[] inputOffsets,
+      int len, byte[][] outputs, int[] outputOffsets);
+
+  /**
+   * Encode len bytes of the inputs, from their positions, into the outputs,
+   * when some of them are direct buffers.  By default, the inputs are copied
+   * to heap arrays and the parity copied back; a coder running on native
+   * code would work on the direct buffers themselves.
+   */
+  protected void doEncode(ByteBuffer[] inputs, ByteBuffer[] outputs,
+      int len) {
+    final byte[][] in = CoderUtil.copyIn(inputs, len);
+    final byte[][] out = new byte[outputs.length][len];
+    doEncode(in, new int[in.length], len, out, new int[out.length]);
+    CoderUtil.copyOut(out, outputs, len);
+  }
+
+  /** Release the resources held by the encoder, such as native memory. */
+  public void release() {
+  }
+
+  private void checkUnits(int numInputs, int numOutputs) {
+    if (numInputs != getNumDataUnits()) {
+      throw new IllegalArgumentException("Invalid number of inputs: "
+          + numInputs + " != " + getNumDataUnits());
+    }
+    if (numOutputs != getNumParityUnits()) {
+      throw new IllegalArgumentException("Invalid number of outputs: "
+          + numOutputs + " != " + getNumParityUnits());
+    }
+  }
+
+  private static void checkLength(int len, int expected) {
+    if (len != expected) {
+      throw new IllegalArgumentException("Invalid unit length: "
+          + len + " != " + expected);
+    }
+  }
+}
@@ -0,0 +1,131 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.io.erasurecode.rawcoder.util;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+
+/**
+ * Arithmetic over the Galois field GF(2^8), with the primitive polynomial
+ * x^8 + x^4 + x^3 + x^2 + 1 (0x11d).  Addition is XOR; multiplication is
+ * looked up in a full 256x256 table, so that the inner loops of the coders
+ * index a single row of it per coefficient.
+ */
+@InterfaceAudience.Private
+public final class GF256 {
+  private static final int PRIMITIVE_POLYNOMIAL = 0x11d;
+
+  /** EXP[i] = 2^i, repeated so that EXP[LOG[a] + LOG[b]] needs no mod. */
+  private static final byte[] EXP = new byte[512];
+  private static final int[] LOG = new int[256];
+  private static final byte[][] MUL = new byte[256][256];
+
+  static {
+    int x = 1;
+    for (int i = 0; i < 255; i++) {
+      EXP[i] = (byte) x;
+      EXP[i + 255] = (byte) x;
+      LOG[x] = i;
+      x <<= 1;
+      if (x >= 256) {
+        x ^= PRIMITIVE_POLYNOMIAL;
+      }
+    }
+    for (int a = 1; a < 256; a++) {
+      for (int b = 1; b < 256; b++) {
+        MUL[a][b] = EXP[LOG[a] + LOG[b]];
+      }
+    }
+  }
+
+  private GF256() {
+  }
+
+  /** @return a * b. */
+  public static byte gfMul(byte a, byte b) {
+    return MUL[a & 0xff][b & 0xff];
+  }
+
+  /** @return the multiplicative inverse of a, which must not be zero. */
+  public static byte gfInv(byte a) {
+    if (a == 0) {
+      throw new ArithmeticException("Zero has no inverse in GF(256)");
+    }
+    return EXP[255 - LOG[a & 0xff]];
+  }
+
+  /**
+   * @return the row of the multiplication table of c, i.e. the products
+   *         c * b indexed by b.  The array must not be modified.
+   */
+  public static byte[] gfMulTab(byte c) {
+    return MUL[c & 0xff];
+  }
+
+  /**
+   * Invert the n x n matrix, stored row by row in a, into inverse.
+   * @throws IllegalArgumentException if the matrix is singular.
+   */
+  public static void gfInvertMatrix(byte[] a, byte[] inverse, int n) {
+    final byte[] m = a.clone();
+    for (int i = 0; i < n; i++) {
+      for (int j = 0; j < n; j++) {
+        inverse[i * n + j] = (byte) (i == j ? 1 : 0);
+      }
+    }
+    for (int col = 0; col < n; col++) {
+      // Find a pivot and move it to the diagonal.
+      int pivot = col;
+      while (pivot < n && m[pivot * n + col] == 0) {
+        pivot++;
+      }
+      if (pivot == n) {
+        throw new IllegalArgumentException("The matrix is singular");
+      }
+      if (pivot != col) {
+        swapRows(m, n, pivot, col);
+        swapRows(inverse, n, pivot, col);
+      }
+      // Scale the pivot row to make the pivot 1.
+      final byte[] scale = gfMulTab(gfInv(m[col * n + col]));
+      for (int j = 0; j < n; j++) {
+        m[col * n + j] = scale[m[col * n + j] & 0xff];
+        inverse[col * n + j] = scale[inverse[col * n + j] & 0xff];
+      }
+      // Eliminate the column from every other row.
+      for (int i = 0; i < n; i++) {
+        final byte c = m[i * n + col];
+        if (i == col || c == 0) {
+          continue;
+        }
+        final byte[] mul = gfMulTab(c);
+        for (int j = 0; j < n; j++) {
+          m[i * n + j] ^= mul[m[col * n + j] & 0xff];
+          inverse[i * n + j] ^= mul[inverse[col * n + j] & 0xff];
+        }
+      }
+    }
+  }
+
+  private static void swapRows(byte[] m, int n, int r1, int r2) {
+    for (int j = 0; j < n; j++) {
+      final byte t = m[r1 * n + j];
+      m[r1 * n + j] = m[r2 * n + j];
+      m[r2 * n + j] = t;
+    }
+  }
+}
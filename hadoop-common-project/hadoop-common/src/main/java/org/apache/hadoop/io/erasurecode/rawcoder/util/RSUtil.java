@@ -0,0 +1,78 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.io.erasurecode.rawcoder.util;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+
+/**
+ * Utilities for the Reed-Solomon coders.
+ */
+@InterfaceAudience.Private
+public final class RSUtil {
+  private RSUtil() {
+  }
+
+  /**
+   * Generate the (k + m) x k encoding matrix, row by row: the identity on
+   * top, so that the data units are stored as they are, and a Cauchy matrix
+   * for the m parity units.  Every k x k submatrix of it is invertible, so
+   * any k of the units are enough to recover the others.
+   */
+  public static byte[] genCauchyMatrix(int numDataUnits, int numParityUnits) {
+    final int k = numDataUnits;
+    final byte[] a = new byte[(k + numParityUnits) * k];
+    for (int i = 0; i < k; i++) {
+      a[i * k + i] = 1;
+    }
+    for (int i = k; i < k + numParityUnits; i++) {
+      for (int j = 0; j < k; j++) {
+        // i and j are distinct, so i ^ j is never zero.
+        a[i * k + j] = GF256.gfInv((byte) (i ^ j));
+      }
+    }
+    return a;
+  }
+
+  /**
+   * Multiply the inputs by the coefficient matrix: for each output row r,
+   * outputs[r] = sum over c of coefficients[r * inputs.length + c] *
+   * inputs[c], over len bytes from the given offsets.
+   */
+  public static void encodeData(byte[] coefficients, byte[][] inputs,
+      int[] inputOffsets, int len, byte[][] outputs, int[] outputOffsets) {
+    final int numInputs = inputs.length;
+    for (int r = 0; r < outputs.length; r++) {
+      final byte[] out = outputs[r];
+      final int outOffset = outputOffsets[r];
+      for (int c = 0; c < numInputs; c++) {
+        final byte[] mul = GF256.gfMulTab(coefficients[r * numInputs + c]);
+        final byte[] in = inputs[c];
+        final int inOffset = inputOffsets[c];
+        if (c == 0) {
+          for (int i = 0; i < len; i++) {
+            out[outOffset + i] = mul[in[inOffset + i] & 0xff];
+          }
+        } else {
+          for (int i = 0; i < len; i++) {
+            out[outOffset + i] ^= mul[in[inOffset + i] & 0xff];
+          }
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,148 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.ipc;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.CommonConfigurationKeys;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * Estimates the cost of the calls of each method from the cost of its
+ * previous calls, and decides which calls are heavy.  The cost of a call is
+ * given by the {@link CostProvider} of the server, which by default weighs
+ * the time spent holding locks, as reported in the {@link ProcessingDetails}
+ * of the call.  The heavy calls are queued for a separate pool of handlers,
+ * so that a few expensive calls cannot take all the handlers of the server.
+ * <p>
+ * A call is heavy if its method is configured as heavy, or if the average
+ * cost of the method, decayed exponentially, reaches the cost threshold.
+ */
+@InterfaceAudience.Private
+class CostBasedCallRouter {
+  private static final Logger LOG =
+      LoggerFactory.getLogger(CostBasedCallRouter.class);
+
+  /** The weight of a new cost sample in the average cost of a method. */
+  private static final double COST_DECAY = 0.1;
+
+  private final Set<String> heavyMethods;
+  private final long costThreshold;
+  private final ConcurrentMap<String, MethodCost> methodCosts =
+      new ConcurrentHashMap<String, MethodCost>();
+
+  /** The exponentially decayed average cost of a method. */
+  private static final class MethodCost {
+    private double average;
+
+    MethodCost(long cost) {
+      average = cost;
+    }
+
+    synchronized void add(long cost) {
+      average += COST_DECAY * (cost - average);
+    }
+
+    synchronized double get() {
+      return average;
+    }
+  }
+
+  CostBasedCallRouter(String namespace, Configuration conf) {
+    this.heavyMethods = Collections.unmodifiableSet(new HashSet<String>(
+        conf.getTrimmedStringCollection(namespace + "."
+            + CommonConfigurationKeys.IPC_HEAVY_CALL_METHODS_KEY)));
+    this.costThreshold = conf.getLong(namespace + "."
+        + CommonConfigurationKeys.IPC_HEAVY_CALL_COST_THRESHOLD_KEY,
+        CommonConfigurationKeys.IPC_HEAVY_CALL_COST_THRESHOLD_DEFAULT);
+    LOG.info("Heavy calls for " + namespace + ": methods " + heavyMethods
+        + ", cost threshold " + costThreshold);
+  }
+
+  /**
+   * Get the {@link CostProvider} configured for a server, or a
+   * {@link WeightedTimeCostProvider} if none is.
+   */
+  static CostProvider getCostProvider(String namespace, Configuration conf) {
+    final List<CostProvider> providers = conf.getInstances(
+        namespace + "." + CommonConfigurationKeys.IPC_COST_PROVIDER_KEY,
+        CostProvider.class);
+    final CostProvider provider = providers.isEmpty()
+        ? new WeightedTimeCostProvider() : providers.get(0);
+    provider.init(namespace, conf);
+    return provider;
+  }
+
+  /**
+   * Convert a cost computed by a {@link CostProvider} from the
+   * {@link ProcessingDetails} of a call to microseconds.
+   */
+  static long toMicros(long cost) {
+    return TimeUnit.NANOSECONDS.toMicros(cost);
+  }
+
+  /**
+   * @param method the method called, null if unknown.
+   * @return whether the call should be handled by the heavy call handlers.
+   */
+  boolean isHeavy(String method) {
+    if (method == null) {
+      return false;
+    }
+    if (heavyMethods.contains(method)) {
+      return true;
+    }
+    if (costThreshold > 0) {
+      final MethodCost cost = methodCosts.get(method);
+      return cost != null && cost.get() >= costThreshold;
+    }
+    return false;
+  }
+
+  /**
+   * Add the cost of a call.
+   * @param method the method called.
+   * @param cost the cost of the call in microseconds.
+   */
+  void addCost(String method, long cost) {
+    final MethodCost average = methodCosts.get(method);
+    if (average != null) {
+      average.add(cost);
+    } else if (methodCosts.putIfAbsent(method, new MethodCost(cost)) != null) {
+      methodCosts.get(method).add(cost);
+    }
+  }
+
+  @VisibleForTesting
+  double getAverageCost(String method) {
+    final MethodCost cost = methodCosts.get(method);
+    return cost != null ? cost.get() : 0;
+  }
+}
@@ -88,6 +88,7 @@
 import org.apache.hadoop.ipc.metrics.RpcDetailedMetrics;
 import org.apache.hadoop.ipc.metrics.RpcMetrics;
 import org.apache.hadoop.ipc.protobuf.IpcConnectionContextProtos.IpcConnectionContextProto;
+import org.apache.hadoop.ipc.protobuf.ProtobufRpcEngineProtos.RequestHeaderProto;
 import org.apache.hadoop.ipc.protobuf.RpcHeaderProtos.RpcKindProto;
 import org.apache.hadoop.ipc.protobuf.RpcHeaderProtos.RpcRequestHeaderProto;
 import org.apache.hadoop.ipc.protobuf.RpcHeaderProtos.RpcResponseHeaderProto;
@@ -474,6 +475,14 @@ protected ResponseBuffer initialValue() {
 
   volatile private boolean running = true;         // true while server runs
   private CallQueueManager<Call> callQueue;
+  // computes the cost of the calls, exported per method.
+  private final CostProvider costProvider;
+  // calls deemed heavy by the router are queued for their own handlers,
+  // both are null if heavy calls are not isolated.
+  private final CostBasedCallRouter callRouter;
+  private final BlockingQueue<Call> heavyCallQueue;
+  private final int heavyHandlerCount;
+  private Handler[] heavyHandlers = null;
 
   // maintains the set of client connections and handles idle timeouts
   private ConnectionManager connectionManager;
@@ -555,7 +564,11 @@ void updateMetrics(Call call, long startTime, boolean connDropped) {
     rpcMetrics.addRpcQueueTime(queueTime);
 
     if (call.isResponseDeferred() || connDropped) {
-      // call was skipped; don't include it in processing metrics
+      // call was skipped; don't include it in processing metrics.  the
+      // cost of a deferred call is known as its handler is done with it.
+      if (!connDropped) {
+        addCallCost(call, details);
+      }
       return;
     }
 
@@ -573,6 +586,20 @@ void updateMetrics(Call call, long startTime, boolean connDropped) {
     if (isLogSlowRPC()) {
       logSlowRpcCalls(name, call, processingTime);
     }
+    addCallCost(call, details);
+  }
+
+  private void addCallCost(Call call, ProcessingDetails details) {
+    final String method = call.getMethodName();
+    if (method == null) {
+      return;
+    }
+    final long cost =
+        CostBasedCallRouter.toMicros(costProvider.getCost(details));
+    rpcDetailedMetrics.addCost(method, cost);
+    if (callRouter != null) {
+      callRouter.addCost(method, cost);
+    }
   }
 
   void updateDeferredMetrics(String name, long processingTime) {
@@ -807,6 +834,14 @@ String getDetailedMetricsName() {
       return detailedMetricsName;
     }
 
+    /**
+     * @return the name of the method called, or null if it is not known
+     * until the call is processed.
+     */
+    String getMethodName() {
+      return null;
+    }
+
     void setDetailedMetricsName(String name) {
       detailedMetricsName = name;
     }
@@ -967,6 +1002,21 @@ boolean isOpen() {
       return connection.channel.isOpen();
     }
 
+    @Override
+    String getMethodName() {
+      if (rpcRequest instanceof ProtobufRpcEngine.RpcProtobufRequest) {
+        try {
+          final RequestHeaderProto header =
+              ((ProtobufRpcEngine.RpcProtobufRequest) rpcRequest)
+                  .getRequestHeader();
+          return header != null ? header.getMethodName() : null;
+        } catch (IOException e) {
+          // the call fails when it is processed.
+        }
+      }
+      return null;
+    }
+
     void setResponseFields(Writable returnValue,
                            ResponseParams responseParams) {
       this.rv = returnValue;
@@ -2773,8 +2823,16 @@ private void internalQueueCall(Call call)
   private void internalQueueCall(Call call, boolean blocking)
       throws IOException, InterruptedException {
     try {
-      // queue the call, may be blocked if blocking is true.
-      if (blocking) {
+      if (callRouter != null && callRouter.isHeavy(call.getMethodName())) {
+        // heavy calls never block the readers, they are rejected once their
+        // handlers are backed up.
+        if (!heavyCallQueue.offer(call)) {
+          rpcMetrics.incrRejectedHeavyCalls();
+          throw CallQueueOverflowException.KEEPALIVE;
+        }
+        rpcMetrics.incrHeavyCalls();
+      } else if (blocking) {
+        // queue the call, may be blocked if blocking is true.
         callQueue.put(call);
       } else {
         callQueue.add(call);
@@ -2797,10 +2855,19 @@ private void internalQueueCall(Call call, boolean blocking)
 
   /** Handles queued calls . */
   private class Handler extends Thread {
+    // the queue of the heavy calls, null if handling the other calls.
+    private final BlockingQueue<Call> heavyQueue;
+
     public Handler(int instanceNumber) {
+      this(instanceNumber, null);
+    }
+
+    Handler(int instanceNumber, BlockingQueue<Call> heavyQueue) {
+      this.heavyQueue = heavyQueue;
       this.setDaemon(true);
-      this.setName("IPC Server handler "+ instanceNumber +
-          " on default port " + port);
+      this.setName("IPC Server "
+          + (heavyQueue != null ? "heavy call handler " : "handler ")
+          + instanceNumber + " on default port " + port);
     }
 
     @Override
@@ -2817,7 +2884,8 @@ public void run() {
         boolean connDropped = true;
 
         try {
-          call = callQueue.take(); // pop the queue; maybe blocked here
+          // pop the queue; maybe blocked here
+          call = heavyQueue != null ? heavyQueue.take() : callQueue.take();
           startTimeNanos = Time.monotonicNowNanos();
           if (alignmentContext != null && call.isCallCoordinated() &&
               call.getClientStateId() > alignmentContext.getLastSeenStateId()) {
@@ -2991,6 +3059,18 @@ protected Server(String bindAddress, int port,
     this.callQueue = new CallQueueManager<Call>(getQueueClass(prefix, conf),
         getSchedulerClass(prefix, conf),
         getClientBackoffEnable(prefix, conf), maxQueueSize, prefix, conf);
+    this.costProvider = CostBasedCallRouter.getCostProvider(prefix, conf);
+    this.heavyHandlerCount = conf.getInt(
+        prefix + "." + CommonConfigurationKeys.IPC_HEAVY_HANDLER_COUNT_KEY,
+        CommonConfigurationKeys.IPC_HEAVY_HANDLER_COUNT_DEFAULT);
+    if (heavyHandlerCount > 0) {
+      this.callRouter = new CostBasedCallRouter(prefix, conf);
+      this.heavyCallQueue = new LinkedBlockingQueue<Call>(
+          maxQueueSize / handlerCount * heavyHandlerCount);
+    } else {
+      this.callRouter = null;
+      this.heavyCallQueue = null;
+    }
 
     this.secretManager = (SecretManager<TokenIdentifier>) secretManager;
     this.authorize = 
@@ -3007,7 +3087,7 @@ protected Server(String bindAddress, int port,
     this.port = listener.getAddress().getPort();
     connectionManager = new ConnectionManager();
     this.rpcMetrics = RpcMetrics.create(this, conf);
-    this.rpcDetailedMetrics = RpcDetailedMetrics.create(this.port);
+    this.rpcDetailedMetrics = RpcDetailedMetrics.create(this.port, conf);
     this.tcpNoDelay = conf.getBoolean(
         CommonConfigurationKeysPublic.IPC_SERVER_TCPNODELAY_KEY,
         CommonConfigurationKeysPublic.IPC_SERVER_TCPNODELAY_DEFAULT);
@@ -3293,6 +3373,14 @@ public synchronized void start() {
       handlers[i] = new Handler(i);
       handlers[i].start();
     }
+
+    if (heavyCallQueue != null) {
+      heavyHandlers = new Handler[heavyHandlerCount];
+      for (int i = 0; i < heavyHandlerCount; i++) {
+        heavyHandlers[i] = new Handler(i, heavyCallQueue);
+        heavyHandlers[i].start();
+      }
+    }
   }
 
   /** Stops the service.  No new calls will be handled after this is called. */
@@ -3306,6 +3394,11 @@ public synchronized void stop() {
         }
       }
     }
+    if (heavyHandlers != null) {
+      for (Handler handler : heavyHandlers) {
+        handler.interrupt();
+      }
+    }
     listener.interrupt();
     listener.doStop();
     if (auxiliaryListenerMap != null && auxiliaryListenerMap.size() > 0) {
@@ -3443,6 +3536,15 @@ public int getCallQueueLen() {
     return callQueue.size();
   }
 
+  /**
+   * The number of heavy rpc calls in their queue.
+   * @return The number of heavy rpc calls in their queue, 0 if heavy calls
+   * are not isolated.
+   */
+  public int getHeavyCallQueueLen() {
+    return heavyCallQueue != null ? heavyCallQueue.size() : 0;
+  }
+
   public boolean isClientBackoffEnabled() {
     return callQueue.isClientBackoffEnabled();
   }
@@ -17,11 +17,17 @@
  */
 package org.apache.hadoop.ipc.metrics;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.CommonConfigurationKeys;
 import org.apache.hadoop.metrics2.annotation.Metric;
 import org.apache.hadoop.metrics2.annotation.Metrics;
 import org.apache.hadoop.metrics2.lib.DefaultMetricsSystem;
 import org.apache.hadoop.metrics2.lib.MetricsRegistry;
+import org.apache.hadoop.metrics2.lib.MutableQuantiles;
 import org.apache.hadoop.metrics2.lib.MutableRatesWithAggregation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -36,15 +42,36 @@ public class RpcDetailedMetrics {
 
   @Metric MutableRatesWithAggregation rates;
   @Metric MutableRatesWithAggregation deferredRpcRates;
+  @Metric MutableRatesWithAggregation costs;
 
   static final Logger LOG = LoggerFactory.getLogger(RpcDetailedMetrics.class);
   final MetricsRegistry registry;
   final String name;
+  // intervals of the per method cost quantiles, empty if disabled.
+  private final int[] costIntervals;
+  private final ConcurrentMap<String, MethodCost> methodCosts =
+      new ConcurrentHashMap<String, MethodCost>();
+
+  /** The cost metrics of a method. */
+  private static final class MethodCost {
+    private final String name;
+    private final MutableQuantiles[] quantiles;
+
+    MethodCost(String name, MutableQuantiles[] quantiles) {
+      this.name = name;
+      this.quantiles = quantiles;
+    }
+  }
 
   RpcDetailedMetrics(int port) {
+    this(port, new int[0]);
+  }
+
+  RpcDetailedMetrics(int port, int[] costIntervals) {
     name = "RpcDetailedActivityForPort"+ port;
     registry = new MetricsRegistry("rpcdetailed")
         .tag("port", "RPC port", String.valueOf(port));
+    this.costIntervals = costIntervals;
     LOG.debug(registry.info().toString());
   }
 
@@ -55,6 +82,21 @@ public static RpcDetailedMetrics create(int port) {
     return DefaultMetricsSystem.instance().register(m.name, null, m);
   }
 
+  /**
+   * Create the metrics, with per method cost quantiles if the RPC quantiles
+   * are enabled in the configuration.
+   */
+  public static RpcDetailedMetrics create(int port, Configuration conf) {
+    int[] intervals = conf.getInts(
+        CommonConfigurationKeys.RPC_METRICS_PERCENTILES_INTERVALS_KEY);
+    if (!conf.getBoolean(CommonConfigurationKeys.RPC_METRICS_QUANTILE_ENABLE,
+        CommonConfigurationKeys.RPC_METRICS_QUANTILE_ENABLE_DEFAULT)) {
+      intervals = new int[0];
+    }
+    RpcDetailedMetrics m = new RpcDetailedMetrics(port, intervals);
+    return DefaultMetricsSystem.instance().register(m.name, null, m);
+  }
+
   /**
    * Initialize the metrics for JMX with protocol methods
    * @param protocol the protocol class
@@ -78,6 +120,40 @@ public void addDeferredProcessingTime(String name, long processingTime) {
     deferredRpcRates.add(name, processingTime);
   }
 
+  /**
+   * Add the cost of an RPC call, as weighted processing time
+   * @param method the method called
+   * @param cost the cost in microseconds
+   */
+  public void addCost(String method, long cost) {
+    MethodCost methodCost = methodCosts.get(method);
+    if (methodCost == null) {
+      methodCost = newMethodCost(method);
+    }
+    costs.add(methodCost.name, cost);
+    for (MutableQuantiles q : methodCost.quantiles) {
+      q.add(cost);
+    }
+  }
+
+  private synchronized MethodCost newMethodCost(String method) {
+    MethodCost methodCost = methodCosts.get(method);
+    if (methodCost == null) {
+      final String costName = method + "Cost";
+      final MutableQuantiles[] quantiles =
+          new MutableQuantiles[costIntervals.length];
+      for (int i = 0; i < costIntervals.length; i++) {
+        quantiles[i] = registry.newQuantiles(
+            costName + costIntervals[i] + "s",
+            "cost of " + method + " in microseconds", "ops", "cost",
+            costIntervals[i]);
+      }
+      methodCost = new MethodCost(costName, quantiles);
+      methodCosts.put(method, methodCost);
+    }
+    return methodCost;
+  }
+
   /**
    * Shutdown the instrumentation for the process
    */
@@ -119,6 +119,10 @@ public static RpcMetrics create(Server server, Configuration conf) {
   MutableCounterLong rpcClientBackoff;
   @Metric("Number of Slow RPC calls")
   MutableCounterLong rpcSlowCalls;
+  @Metric("Number of calls queued for the heavy call handlers")
+  MutableCounterLong rpcHeavyCalls;
+  @Metric("Number of heavy calls rejected as their queue was full")
+  MutableCounterLong rpcHeavyCallsRejected;
 
   @Metric("Number of open connections") public int numOpenConnections() {
     return server.getNumOpenConnections();
@@ -133,6 +137,10 @@ public String numOpenConnectionsPerUser() {
     return server.getCallQueueLen();
   }
 
+  @Metric("Length of the heavy call queue") public int heavyCallQueueLength() {
+    return server.getHeavyCallQueueLen();
+  }
+
   @Metric("Number of dropped connections") public long numDroppedConnections() {
     return server.getNumDroppedConnections();
   }
@@ -258,6 +266,20 @@ public void incrClientBackoff() {
   public  void incrSlowRpc() {
     rpcSlowCalls.incr();
   }
+
+  /**
+   * Increments the counter of calls queued for the heavy call handlers.
+   */
+  public void incrHeavyCalls() {
+    rpcHeavyCalls.incr();
+  }
+
+  /**
+   * Increments the counter of heavy calls rejected as their queue was full.
+   */
+  public void incrRejectedHeavyCalls() {
+    rpcHeavyCallsRejected.incr();
+  }
   /**
    * Returns a MutableRate Counter.
    * @return Mutable Rate
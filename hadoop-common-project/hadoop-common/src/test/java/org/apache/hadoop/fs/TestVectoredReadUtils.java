@@ -0,0 +1,157 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.fs;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.EOFException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.VectoredReadUtils.CombinedFileRange;
+import org.apache.hadoop.io.ByteBufferPool;
+import org.apache.hadoop.io.ElasticByteBufferPool;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.junit.Test;
+
+/**
+ * Test the merging of the ranges of the vectored reads, and the fallback
+ * to positioned reads for the streams which do not read them natively.
+ */
+public class TestVectoredReadUtils {
+
+  @Test
+  public void testMergeSortedRanges() {
+    final List<FileRange> sorted = VectoredReadUtils.validateAndSortRanges(
+        Arrays.asList(new FileRange(2000, 100), new FileRange(0, 100),
+            new FileRange(150, 50), new FileRange(1000, 200),
+            new FileRange(3990, 100), new FileRange(4100, 100),
+            new FileRange(4200, 100)));
+    // [0, 200) and [4100, 4300) cover two ranges close to each other; the
+    // others are too far apart, or across the end of the 4096 byte chunk.
+    List<CombinedFileRange> merged =
+        VectoredReadUtils.mergeSortedRanges(sorted, 4096, 100, 1000);
+    assertEquals(5, merged.size());
+    assertRange(merged.get(0), 0, 200, 2);
+    assertRange(merged.get(1), 1000, 200, 1);
+    assertRange(merged.get(2), 2000, 100, 1);
+    assertRange(merged.get(3), 3990, 100, 1);
+    assertRange(merged.get(4), 4100, 200, 2);
+
+    // Without a limit on the gaps, the reads are as long as allowed.
+    merged = VectoredReadUtils.mergeSortedRanges(
+        sorted, 4096, Integer.MAX_VALUE, 2100);
+    assertEquals(3, merged.size());
+    assertRange(merged.get(0), 0, 2100, 4);
+    assertRange(merged.get(1), 3990, 100, 1);
+    assertRange(merged.get(2), 4100, 200, 2);
+
+    // Without any limit, the ranges of each chunk are read at once.
+    merged = VectoredReadUtils.mergeSortedRanges(
+        sorted, 4096, Integer.MAX_VALUE, Integer.MAX_VALUE);
+    assertEquals(2, merged.size());
+    assertRange(merged.get(0), 0, 4090, 5);
+    assertRange(merged.get(1), 4100, 200, 2);
+  }
+
+  private static void assertRange(CombinedFileRange range, long offset,
+      int length, int numUnderlying) {
+    assertEquals(offset, range.getOffset());
+    assertEquals(length, range.getLength());
+    assertEquals(numUnderlying, range.getUnderlying().size());
+  }
+
+  @Test
+  public void testValidateRanges() {
+    try {
+      VectoredReadUtils.validateAndSortRanges(Arrays.asList(
+          new FileRange(100, 100), new FileRange(0, 101)));
+      fail("Overlapping ranges should be rejected");
+    } catch (IllegalArgumentException expected) {
+    }
+    try {
+      VectoredReadUtils.validateAndSortRanges(Arrays.asList(
+          new FileRange(-1, 100)));
+      fail("A negative offset should be rejected");
+    } catch (IllegalArgumentException expected) {
+    }
+    // Adjacent ranges do not overlap.
+    VectoredReadUtils.validateAndSortRanges(Arrays.asList(
+        new FileRange(100, 100), new FileRange(0, 100)));
+  }
+
+  @Test
+  public void testSliceTo() {
+    final ByteBufferPool pool = new ElasticByteBufferPool();
+    final ByteBuffer combined = ByteBuffer.allocate(20);
+    for (int i = 0; i < 20; i++) {
+      combined.put((byte) i);
+    }
+    combined.flip();
+    final ByteBuffer slice = VectoredReadUtils.sliceTo(
+        combined, 1000, new FileRange(1005, 3), pool);
+    assertEquals(0, combined.position());
+    assertArrayEquals(new byte[] {5, 6, 7}, toArray(slice));
+  }
+
+  @Test
+  public void testFallbackRead() throws Exception {
+    final Configuration conf = new Configuration();
+    final FileSystem fs = FileSystem.getLocal(conf);
+    final Path file = new Path(GenericTestUtils.getRandomizedTestDir()
+        .getAbsolutePath(), "testFallbackRead");
+    final byte[] content = new byte[10000];
+    new Random(0).nextBytes(content);
+    try (FSDataOutputStream out = fs.create(file)) {
+      out.write(content);
+    }
+    final ByteBufferPool pool = new ElasticByteBufferPool();
+    try (FSDataInputStream in = fs.open(file)) {
+      assertFalse(in.hasCapability(StreamCapabilities.VECTOREDREAD));
+      final List<FileRange> ranges = Arrays.asList(new FileRange(5000, 3000),
+          new FileRange(0, 100), new FileRange(9990, 20));
+      in.readVectored(ranges, pool);
+      assertArrayEquals(Arrays.copyOfRange(content, 5000, 8000),
+          toArray(ranges.get(0).getData().get()));
+      assertArrayEquals(Arrays.copyOfRange(content, 0, 100),
+          toArray(ranges.get(1).getData().get()));
+      try {
+        ranges.get(2).getData().get();
+        fail("Reading past the end of the file should fail");
+      } catch (ExecutionException e) {
+        assertTrue(e.getCause() instanceof EOFException);
+      }
+    } finally {
+      fs.delete(file.getParent(), true);
+    }
+  }
+
+  private static byte[] toArray(ByteBuffer buffer) {
+    final byte[] bytes = new byte[buffer.remaining()];
+    buffer.duplicate().get(bytes);
+    return bytes;
+  }
+}
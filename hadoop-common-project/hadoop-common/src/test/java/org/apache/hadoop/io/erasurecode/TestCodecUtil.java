@@ -0,0 +1,98 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.io.erasurecode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.CommonConfigurationKeys;
+import org.apache.hadoop.io.erasurecode.rawcoder.RSRawDecoder;
+import org.apache.hadoop.io.erasurecode.rawcoder.RSRawEncoder;
+import org.apache.hadoop.io.erasurecode.rawcoder.RSRawErasureCoderFactory;
+import org.apache.hadoop.io.erasurecode.rawcoder.RawErasureCoderFactory;
+import org.apache.hadoop.io.erasurecode.rawcoder.RawErasureDecoder;
+import org.apache.hadoop.io.erasurecode.rawcoder.RawErasureEncoder;
+import org.junit.Test;
+
+/**
+ * Test the creation of the raw coders from the configured factories.
+ */
+public class TestCodecUtil {
+  private final ErasureCoderOptions options = new ErasureCoderOptions(6, 3);
+
+  /** A factory whose native library is never available. */
+  public static class UnavailableFactory implements RawErasureCoderFactory {
+    @Override
+    public RawErasureEncoder createEncoder(ErasureCoderOptions opts) {
+      throw new UnsatisfiedLinkError("no native library");
+    }
+
+    @Override
+    public RawErasureDecoder createDecoder(ErasureCoderOptions opts) {
+      throw new RuntimeException("no native library");
+    }
+
+    @Override
+    public String getCoderName() {
+      return "rs_unavailable";
+    }
+  }
+
+  @Test
+  public void testDefault() {
+    final Configuration conf = new Configuration();
+    final RawErasureEncoder encoder =
+        CodecUtil.createRawEncoder(conf, CodecUtil.RS_CODEC_NAME, options);
+    assertTrue(encoder instanceof RSRawEncoder);
+    assertEquals(6, encoder.getNumDataUnits());
+    assertEquals(3, encoder.getNumParityUnits());
+    assertTrue(CodecUtil.createRawDecoder(conf, CodecUtil.RS_CODEC_NAME,
+        options) instanceof RSRawDecoder);
+  }
+
+  @Test
+  public void testFallback() {
+    final Configuration conf = new Configuration();
+    conf.set(CommonConfigurationKeys.IO_ERASURECODE_CODEC_RS_RAWCODERS_KEY,
+        "org.example.NoSuchFactory, " + UnavailableFactory.class.getName()
+        + ", " + RSRawErasureCoderFactory.class.getName());
+    assertTrue(CodecUtil.createRawEncoder(conf, CodecUtil.RS_CODEC_NAME,
+        options) instanceof RSRawEncoder);
+    assertTrue(CodecUtil.createRawDecoder(conf, CodecUtil.RS_CODEC_NAME,
+        options) instanceof RSRawDecoder);
+  }
+
+  @Test
+  public void testNoFactoryAvailable() {
+    final Configuration conf = new Configuration();
+    conf.set(CommonConfigurationKeys.IO_ERASURECODE_CODEC_RS_RAWCODERS_KEY,
+        UnavailableFactory.class.getName());
+    try {
+      CodecUtil.createRawEncoder(conf, CodecUtil.RS_CODEC_NAME, options);
+      fail("No encoder should be created");
+    } catch (IllegalArgumentException expected) {
+    }
+    try {
+      CodecUtil.createRawEncoder(conf, "xor", options);
+      fail("Unknown codec");
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+}
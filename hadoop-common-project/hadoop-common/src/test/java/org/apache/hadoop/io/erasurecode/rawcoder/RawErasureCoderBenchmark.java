@@ -0,0 +1,144 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.io.erasurecode.rawcoder;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.apache.hadoop.io.erasurecode.ErasureCoderOptions;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.apache.hadoop.util.Time;
+
+/**
+ * Benchmark the encode and decode throughput of a raw erasure coder.
+ *
+ * <pre>
+ * Usage: RawErasureCoderBenchmark [-factory CLASS] [-k K] [-m M]
+ *     [-unitSize KB] [-dataSize MB] [-erasures E] [-direct true|false]
+ * </pre>
+ * Stripes of K data units of the given size are encoded into M parity
+ * units, then E units of each stripe, the first data units, are decoded,
+ * until the given amount of data is processed.  The throughput is given
+ * for the data units, as for a striped file.
+ */
+public class RawErasureCoderBenchmark {
+  private static final long MEGA = 1024 * 1024;
+
+  /** @return the result lines. */
+  static String run(RawErasureCoderFactory factory, int k, int m,
+      int unitSizeKB, long dataSizeMB, int numErased, boolean direct) {
+    final ErasureCoderOptions options = new ErasureCoderOptions(k, m);
+    final RawErasureEncoder encoder = factory.createEncoder(options);
+    final RawErasureDecoder decoder = factory.createDecoder(options);
+    final int unitSize = unitSizeKB * 1024;
+    final ByteBuffer[] units = new ByteBuffer[k + m];
+    final Random random = new Random();
+    final byte[] bytes = new byte[unitSize];
+    for (int i = 0; i < k + m; i++) {
+      units[i] = direct ? ByteBuffer.allocateDirect(unitSize)
+          : ByteBuffer.allocate(unitSize);
+      random.nextBytes(bytes);
+      units[i].duplicate().put(bytes);
+    }
+    final ByteBuffer[] data = new ByteBuffer[k];
+    final ByteBuffer[] parity = new ByteBuffer[m];
+    System.arraycopy(units, 0, data, 0, k);
+    System.arraycopy(units, k, parity, 0, m);
+    final int[] erased = new int[numErased];
+    final ByteBuffer[] inputs = units.clone();
+    final ByteBuffer[] outputs = new ByteBuffer[numErased];
+    for (int i = 0; i < numErased; i++) {
+      erased[i] = i;
+      inputs[i] = null;
+      outputs[i] = direct ? ByteBuffer.allocateDirect(unitSize)
+          : ByteBuffer.allocate(unitSize);
+    }
+    final long stripes =
+        Math.max(dataSizeMB * MEGA / ((long) k * unitSize), 1);
+
+    try {
+      // The first pass warms the JIT up, the second is measured.
+      long encodeTime = 0;
+      long decodeTime = 0;
+      for (int pass = 0; pass < 2; pass++) {
+        long start = Time.monotonicNow();
+        for (long s = 0; s < stripes; s++) {
+          encoder.encode(data, parity);
+        }
+        encodeTime = Math.max(Time.monotonicNow() - start, 1);
+        start = Time.monotonicNow();
+        for (long s = 0; s < stripes; s++) {
+          decoder.decode(inputs, erased, outputs);
+        }
+        decodeTime = Math.max(Time.monotonicNow() - start, 1);
+      }
+
+      final double megaBytes = (double) stripes * k * unitSize / MEGA;
+      return String.format("----- RawErasureCoderBenchmark ----- : %s%n"
+          + "                  Schema: RS(%d, %d)%n"
+          + "               Unit size: %d KB%n"
+          + "          Direct buffers: %b%n"
+          + "            Units erased: %d%n"
+          + "  Total MBytes processed: %.2f%n"
+          + "Encode throughput mb/sec: %.2f%n"
+          + "Decode throughput mb/sec: %.2f%n",
+          factory.getCoderName(), k, m, unitSizeKB, direct, numErased,
+          megaBytes, megaBytes * 1000 / encodeTime,
+          megaBytes * 1000 / decodeTime);
+    } finally {
+      encoder.release();
+      decoder.release();
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    Class<? extends RawErasureCoderFactory> factoryClass =
+        RSRawErasureCoderFactory.class;
+    int k = 6;
+    int m = 3;
+    int unitSizeKB = 64;
+    long dataSizeMB = 1024;
+    int numErased = 1;
+    boolean direct = true;
+    for (int i = 0; i < args.length; i++) {
+      if ("-factory".equals(args[i]) && i + 1 < args.length) {
+        factoryClass = Class.forName(args[++i])
+            .asSubclass(RawErasureCoderFactory.class);
+      } else if ("-k".equals(args[i]) && i + 1 < args.length) {
+        k = Integer.parseInt(args[++i]);
+      } else if ("-m".equals(args[i]) && i + 1 < args.length) {
+        m = Integer.parseInt(args[++i]);
+      } else if ("-unitSize".equals(args[i]) && i + 1 < args.length) {
+        unitSizeKB = Integer.parseInt(args[++i]);
+      } else if ("-dataSize".equals(args[i]) && i + 1 < args.length) {
+        dataSizeMB = Long.parseLong(args[++i]);
+      } else if ("-erasures".equals(args[i]) && i + 1 < args.length) {
+        numErased = Integer.parseInt(args[++i]);
+      } else if ("-direct".equals(args[i]) && i + 1 < args.length) {
+        direct = Boolean.parseBoolean(args[++i]);
+      } else {
+        System.err.println("Usage: RawErasureCoderBenchmark [-factory CLASS]"
+            + " [-k K] [-m M] [-unitSize KB] [-dataSize MB]"
+            + " [-erasures E] [-direct true|false]");
+        System.exit(-1);
+      }
+    }
+    System.out.print(run(ReflectionUtils.newInstance(factoryClass, null),
+        k, m, unitSizeKB, dataSizeMB, numErased, direct));
+  }
+}
@@ -0,0 +1,205 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.io.erasurecode.rawcoder;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.apache.hadoop.io.erasurecode.ErasureCoderOptions;
+import org.junit.Test;
+
+/**
+ * Test the pure Java Reed-Solomon coders.
+ */
+public class TestRSRawCoder {
+  private static final int UNIT_SIZE = 4096 + 7;
+  private final Random random = new Random(0xec);
+
+  @Test
+  public void testRS63() {
+    testCoding(6, 3, false, 5);
+  }
+
+  @Test
+  public void testRS104() {
+    testCoding(10, 4, false, 5);
+  }
+
+  @Test
+  public void testRS63DirectBuffers() {
+    testCoding(6, 3, true, 5);
+  }
+
+  @Test
+  public void testRS104DirectBuffers() {
+    testCoding(10, 4, true, 5);
+  }
+
+  @Test
+  public void testMaxUnits() {
+    testCoding(200, 56, false, 1);
+  }
+
+  /**
+   * Encode random data, then decode it for every number of erasures, with
+   * random units erased in each round, for both arrays and buffers.
+   */
+  private void testCoding(int k, int m, boolean direct, int rounds) {
+    final ErasureCoderOptions options = new ErasureCoderOptions(k, m);
+    final RawErasureEncoder encoder = new RSRawEncoder(options);
+    final RawErasureDecoder decoder = new RSRawDecoder(options);
+
+    final byte[][] units = new byte[k + m][UNIT_SIZE];
+    for (int i = 0; i < k; i++) {
+      random.nextBytes(units[i]);
+    }
+    final byte[][] data = new byte[k][];
+    final byte[][] parity = new byte[m][];
+    System.arraycopy(units, 0, data, 0, k);
+    System.arraycopy(units, k, parity, 0, m);
+    encoder.encode(data, parity);
+
+    // The buffers give the same parity, and are left where they were.
+    final ByteBuffer[] dataBuffers = toBuffers(data, direct);
+    final ByteBuffer[] parityBuffers = new ByteBuffer[m];
+    for (int i = 0; i < m; i++) {
+      parityBuffers[i] = allocate(UNIT_SIZE, direct);
+    }
+    encoder.encode(dataBuffers, parityBuffers);
+    for (int i = 0; i < m; i++) {
+      assertEquals(1, parityBuffers[i].position());
+      assertArrayEquals(parity[i], toArray(parityBuffers[i]));
+    }
+    for (int i = 0; i < k; i++) {
+      assertEquals(1, dataBuffers[i].position());
+    }
+
+    for (int numErased = 1; numErased <= m; numErased++) {
+      for (int round = 0; round < rounds; round++) {
+        final int[] erased = pickErased(k + m, numErased);
+        final byte[][] inputs = units.clone();
+        for (int i : erased) {
+          inputs[i] = null;
+        }
+        final byte[][] outputs = new byte[numErased][UNIT_SIZE];
+        decoder.decode(inputs, erased, outputs);
+        for (int i = 0; i < numErased; i++) {
+          assertArrayEquals("unit " + erased[i], units[erased[i]],
+              outputs[i]);
+        }
+
+        final ByteBuffer[] inputBuffers = toBuffers(inputs, direct);
+        final ByteBuffer[] outputBuffers = new ByteBuffer[numErased];
+        for (int i = 0; i < numErased; i++) {
+          outputBuffers[i] = allocate(UNIT_SIZE, direct);
+        }
+        decoder.decode(inputBuffers, erased, outputBuffers);
+        for (int i = 0; i < numErased; i++) {
+          assertArrayEquals("unit " + erased[i], units[erased[i]],
+              toArray(outputBuffers[i]));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testInvalidArguments() {
+    final ErasureCoderOptions options = new ErasureCoderOptions(6, 3);
+    final RawErasureDecoder decoder = new RSRawDecoder(options);
+    final byte[][] inputs = new byte[9][16];
+    // Too many erasures.
+    inputs[0] = inputs[1] = inputs[2] = inputs[3] = null;
+    assertDecodeFails(decoder, inputs, new int[] {0, 1, 2, 3}, 4);
+    // Not enough inputs left.
+    assertDecodeFails(decoder, inputs, new int[] {0, 1, 2}, 3);
+    // The same unit erased twice.
+    inputs[3] = new byte[16];
+    assertDecodeFails(decoder, inputs, new int[] {0, 0}, 2);
+    // Units of different lengths.
+    inputs[8] = new byte[15];
+    assertDecodeFails(decoder, inputs, new int[] {0, 1, 2}, 3);
+    try {
+      new ErasureCoderOptions(200, 57);
+      fail("Too many units");
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testBenchmark() {
+    final RawErasureCoderFactory factory = new RSRawErasureCoderFactory();
+    assertThat(RawErasureCoderBenchmark.run(factory, 6, 3, 64, 3, 3, true),
+        containsString("Total MBytes processed: 3.00"));
+    assertThat(RawErasureCoderBenchmark.run(factory, 10, 4, 64, 5, 1, false),
+        containsString("Total MBytes processed: 5.00"));
+  }
+
+  private static void assertDecodeFails(RawErasureDecoder decoder,
+      byte[][] inputs, int[] erased, int numOutputs) {
+    try {
+      decoder.decode(inputs, erased, new byte[numOutputs][16]);
+      fail("Decoding should fail");
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  private int[] pickErased(int numUnits, int numErased) {
+    final int[] erased = new int[numErased];
+    final boolean[] picked = new boolean[numUnits];
+    for (int i = 0; i < numErased; i++) {
+      int u;
+      do {
+        u = random.nextInt(numUnits);
+      } while (picked[u]);
+      picked[u] = true;
+      erased[i] = u;
+    }
+    return erased;
+  }
+
+  /** Allocate a buffer with a byte before its position, to check it. */
+  private static ByteBuffer allocate(int len, boolean direct) {
+    final ByteBuffer b = direct ? ByteBuffer.allocateDirect(len + 1)
+        : ByteBuffer.allocate(len + 1);
+    b.position(1);
+    return b;
+  }
+
+  private static ByteBuffer[] toBuffers(byte[][] arrays, boolean direct) {
+    final ByteBuffer[] buffers = new ByteBuffer[arrays.length];
+    for (int i = 0; i < arrays.length; i++) {
+      if (arrays[i] != null) {
+        buffers[i] = allocate(arrays[i].length, direct);
+        buffers[i].duplicate().put(arrays[i]);
+      }
+    }
+    return buffers;
+  }
+
+  private static byte[] toArray(ByteBuffer buffer) {
+    final byte[] b = new byte[buffer.remaining()];
+    buffer.duplicate().get(b);
+    return b;
+  }
+}
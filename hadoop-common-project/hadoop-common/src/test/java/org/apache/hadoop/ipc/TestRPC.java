@@ -499,8 +499,9 @@ private void testCallsInternal(Configuration myConf) throws Exception {
         caught = true;
       }
       assertTrue(caught);
-      rb = getMetrics(server.rpcDetailedMetrics.name());
-      assertCounter("RpcServerExceptionNumOps", 1L, rb);
+      // the metrics of a call are updated after its response is sent.
+      waitForCounter(server.rpcDetailedMetrics.name(),
+          "RpcServerExceptionNumOps", 1L);
 
       //proxy.testServerGet();
 
@@ -1077,6 +1078,8 @@ public TestRpcService run() {
         proxy.echo(null, newEchoRequest("" + i));
         proxy2.echo(null, newEchoRequest("" + i));
       }
+      waitForCounter(server.getRpcMetrics().name(),
+          "RpcProcessingTimeNumOps", 3000L);
       MetricsRecordBuilder rpcMetrics =
           getMetrics(server.getRpcMetrics().name());
       assertEquals("Expected correct rpc queue count",
@@ -1175,6 +1178,94 @@ public Void call() throws ServiceException, InterruptedException {
     assertTrue("RetriableException not received", succeeded);
   }
 
+  /**
+   *  Test the isolation of heavy calls in their own handlers and queue.
+   */
+  @Test (timeout=30000)
+  public void testHeavyCallIsolation() throws Exception {
+    final String ns = CommonConfigurationKeys.IPC_NAMESPACE + ".0.";
+    conf.setInt(CommonConfigurationKeys.IPC_CLIENT_CONNECT_MAX_RETRIES_KEY, 0);
+    conf.setInt(ns + CommonConfigurationKeys.IPC_HEAVY_HANDLER_COUNT_KEY, 1);
+    conf.set(ns + CommonConfigurationKeys.IPC_HEAVY_CALL_METHODS_KEY, "sleep");
+    conf.setLong(
+        ns + CommonConfigurationKeys.IPC_HEAVY_CALL_COST_THRESHOLD_KEY, 100000);
+    final ExecutorService executorService = Executors.newFixedThreadPool(2);
+    final Server server = setupTestServer(newServerBuilder(conf)
+        .setQueueSizePerHandler(1).setNumHandlers(1));
+    final TestRpcService proxy = getClient(addr, conf);
+    try {
+      // the first sleep takes the heavy call handler, the second one waits
+      // in the heavy call queue.
+      for (int i = 0; i < 2; i++) {
+        executorService.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws ServiceException {
+            proxy.sleep(null, newSleepRequest(100000));
+            return null;
+          }
+        });
+        final int heavyCalls = i + 1;
+        GenericTestUtils.waitFor(new Supplier<Boolean>() {
+          @Override
+          public Boolean get() {
+            return getLongCounter("RpcHeavyCalls",
+                getMetrics(server.getRpcMetrics().name())) == heavyCalls;
+          }
+        }, 10, 10000);
+      }
+      assertEquals(1, server.getHeavyCallQueueLen());
+      // the other calls are still served.
+      proxy.ping(null, newEmptyRequest());
+      assertHeavyCallRejected(proxy, "sleep");
+
+      // a method becomes heavy once its calls cost more than the threshold.
+      proxy.lockAndSleep(null, newSleepRequest(5));
+      waitForCounter(server.getRpcDetailedMetrics().name(),
+          "LockAndSleepCostNumOps", 1L);
+      assertHeavyCallRejected(proxy, "lockAndSleep");
+      proxy.ping(null, newEmptyRequest());
+      assertCounter("RpcHeavyCallsRejected", 2L,
+          getMetrics(server.getRpcMetrics().name()));
+    } finally {
+      executorService.shutdown();
+      stop(server, proxy);
+    }
+  }
+
+  /**
+   * Wait for a counter to reach a value, the metrics of a call being updated
+   * once its response is sent.
+   */
+  private static void waitForCounter(final String source, final String name,
+      final long expected) throws Exception {
+    GenericTestUtils.waitFor(new Supplier<Boolean>() {
+      @Override
+      public Boolean get() {
+        try {
+          return getLongCounter(name, getMetrics(source)) == expected;
+        } catch (AssertionError e) {
+          // the counter is not created yet.
+          return false;
+        }
+      }
+    }, 10, 10000);
+  }
+
+  private static void assertHeavyCallRejected(TestRpcService proxy,
+      String method) throws Exception {
+    try {
+      if (method.equals("sleep")) {
+        proxy.sleep(null, newSleepRequest(100));
+      } else {
+        proxy.lockAndSleep(null, newSleepRequest(100));
+      }
+      fail("Expected " + method + " to be rejected");
+    } catch (ServiceException e) {
+      RemoteException re = (RemoteException) e.getCause();
+      assertTrue(re.unwrapRemoteException() instanceof RetriableException);
+    }
+  }
+
   /**
    *  Test RPC backoff by response time of each priority level.
    */
@@ -131,6 +131,12 @@ public class ClientContext {
    */
   private DeadNodeDetector deadNodeDetector = null;
 
+  /**
+   * Track the read latency of the datanodes, shared by all the
+   * DFSInputStreams of the same client, or null if disabled.
+   */
+  private final DataNodeLatencyTracker dataNodeLatencyTracker;
+
   private ClientContext(String name, DfsClientConf conf,
       Configuration config) {
     final ShortCircuitConf scConf = conf.getShortCircuitConf();
@@ -153,6 +159,8 @@ private ClientContext(String name, DfsClientConf conf,
       deadNodeDetectorThr = new Daemon(deadNodeDetector);
       deadNodeDetectorThr.start();
     }
+    this.dataNodeLatencyTracker = conf.isDataNodeLatencyTrackingEnabled() ?
+        new DataNodeLatencyTracker(conf) : null;
     initTopologyResolution(config);
   }
 
@@ -285,6 +293,14 @@ public DeadNodeDetector getDeadNodeDetector() {
     return deadNodeDetector;
   }
 
+  /**
+   * Obtain the DataNodeLatencyTracker of the current client, or null if
+   * the latency of the datanodes is not tracked.
+   */
+  public DataNodeLatencyTracker getDataNodeLatencyTracker() {
+    return dataNodeLatencyTracker;
+  }
+
   /**
    * Close dead node detector thread.
    */
@@ -239,6 +239,11 @@ public class DFSClient implements java.io.Closeable, RemotePeerFactory,
   private static final DFSHedgedReadMetrics HEDGED_READ_METRIC =
       new DFSHedgedReadMetrics();
   private static ThreadPoolExecutor HEDGED_READ_THREAD_POOL;
+  private static ThreadPoolExecutor VECTORED_READ_THREAD_POOL;
+  private static volatile FileMetadataCache FILE_METADATA_CACHE;
+  /** The process-wide FILE_METADATA_CACHE if this client uses it. */
+  private final FileMetadataCache fileMetadataCache;
+  private Daemon inotifyInvalidatorThr;
   private final int smallBufferSize;
   private final long serverDefaultsValidityPeriod;
 
@@ -403,6 +408,19 @@ public DFSClient(URI nameNodeUri, ClientProtocol rpcNamenode,
     if (dfsClientConf.getHedgedReadThreadpoolSize() > 0) {
       this.initThreadsNumForHedgedReads(dfsClientConf.getHedgedReadThreadpoolSize());
     }
+    if (dfsClientConf.isFileMetadataCacheEnabled()) {
+      this.fileMetadataCache = initFileMetadataCache(dfsClientConf);
+      if (dfsClientConf.isFileMetadataCacheInotifyEnabled()) {
+        inotifyInvalidatorThr = new Daemon(
+            new FileMetadataCache.InotifyInvalidator(this, fileMetadataCache,
+                getMetadataNamespace()));
+        inotifyInvalidatorThr.setName("FileMetadataCacheInvalidator-"
+            + getMetadataNamespace());
+        inotifyInvalidatorThr.start();
+      }
+    } else {
+      this.fileMetadataCache = null;
+    }
     this.saslClient = new SaslDataTransferClient(
         conf, DataTransferSaslUtil.getSaslPropertiesResolver(conf),
         TrustedChannelResolver.getInstance(conf), nnFallbackToSimpleAuth);
@@ -644,6 +662,9 @@ public synchronized void close() throws IOException {
       if (!disabledStopDeadNodeDetectorThreadForTest) {
         clientContext.stopDeadNodeDetectorThread();
       }
+      if (inotifyInvalidatorThr != null) {
+        inotifyInvalidatorThr.interrupt();
+      }
 
       // close connections to the namenode
       closeConnectionToNamenode();
@@ -856,7 +877,21 @@ public LocatedBlocks getLocatedBlocks(String src, long start)
   public LocatedBlocks getLocatedBlocks(String src, long start, long length)
       throws IOException {
     try (TraceScope ignored = newPathTraceScope("getBlockLocations", src)) {
-      return callGetBlockLocations(namenode, src, start, length);
+      final long generation = fileMetadataCache == null ? 0
+          : fileMetadataCache.getGeneration(getMetadataNamespace());
+      final LocatedBlocks blocks =
+          callGetBlockLocations(namenode, src, start, length);
+      if (fileMetadataCache != null) {
+        if (start == 0) {
+          fileMetadataCache.putLocatedBlocks(getMetadataNamespace(),
+              ugi.getUserName(), src, blocks, generation);
+        } else {
+          // The streams only ask for the later blocks of the cached files
+          // when the locations they have failed.
+          fileMetadataCache.invalidate(getMetadataNamespace(), src);
+        }
+      }
+      return blocks;
     }
   }
 
@@ -908,7 +943,12 @@ boolean recoverLease(String src) throws IOException {
   public BlockLocation[] getBlockLocations(String src, long start,
       long length) throws IOException {
     try (TraceScope ignored = newPathTraceScope("getBlockLocations", src)) {
-      LocatedBlocks blocks = getLocatedBlocks(src, start, length);
+      LocatedBlocks blocks = fileMetadataCache == null ? null
+          : fileMetadataCache.getLocatedBlocks(getMetadataNamespace(),
+              ugi.getUserName(), src, start, length);
+      if (blocks == null) {
+        blocks = getLocatedBlocks(src, start, length);
+      }
       BlockLocation[] locations = DFSUtilClient.locatedBlocks2Locations(blocks);
       HdfsBlockLocation[] hdfsLocations =
           new HdfsBlockLocation[locations.length];
@@ -1084,7 +1124,10 @@ public DFSInputStream open(String src, int buffersize, boolean verifyChecksum)
     checkOpen();
     //    Get block info from namenode
     try (TraceScope ignored = newPathTraceScope("newDFSInputStream", src)) {
-      return new DFSInputStream(this, src, verifyChecksum, null);
+      final LocatedBlocks locatedBlocks = fileMetadataCache == null ? null
+          : fileMetadataCache.getLocatedBlocks(getMetadataNamespace(),
+              ugi.getUserName(), src);
+      return new DFSInputStream(this, src, verifyChecksum, locatedBlocks);
     }
   }
 
@@ -1237,6 +1280,7 @@ public DFSOutputStream create(String src, FsPermission permission,
         src, masked, flag, createParent, replication, blockSize, progress,
         dfsClientConf.createChecksum(checksumOpt),
         getFavoredNodesStr(favoredNodes));
+    invalidateFileMetadata(src);
     beginFileLease(result.getFileId(), result);
     return result;
   }
@@ -1291,6 +1335,7 @@ public DFSOutputStream primitiveCreate(String src, FsPermission absPermission,
       result = DFSOutputStream.newStreamForCreate(this, src, absPermission,
           flag, createParent, replication, blockSize, progress, checksum, null);
     }
+    invalidateFileMetadata(src);
     beginFileLease(result.getFileId(), result);
     return result;
   }
@@ -1342,7 +1387,10 @@ private LastBlockWithStatus callAppend(String src,
     final long startTime = Time.monotonicNow();
     for(;;) {
       try {
-        return namenode.append(src, clientName, flag);
+        final LastBlockWithStatus blkWithStatus =
+            namenode.append(src, clientName, flag);
+        invalidateFileMetadata(src);
+        return blkWithStatus;
       } catch(RemoteException re) {
         if (Time.monotonicNow() - startTime > 5000
             || !RetriableException.class.getName().equals(
@@ -1458,6 +1506,8 @@ public boolean setReplication(String src, short replication)
           QuotaByStorageTypeExceededException.class,
           UnresolvedPathException.class,
           SnapshotAccessControlException.class);
+    } finally {
+      invalidateFileMetadata(src);
     }
   }
 
@@ -1540,6 +1590,9 @@ public boolean rename(String src, String dst) throws IOException {
           QuotaByStorageTypeExceededException.class,
           UnresolvedPathException.class,
           SnapshotAccessControlException.class);
+    } finally {
+      invalidateFileMetadata(src);
+      invalidateFileMetadata(dst);
     }
   }
 
@@ -1555,6 +1608,11 @@ public void concat(String trg, String [] srcs) throws IOException {
       throw re.unwrapRemoteException(AccessControlException.class,
           UnresolvedPathException.class,
           SnapshotAccessControlException.class);
+    } finally {
+      invalidateFileMetadata(trg);
+      for (String src : srcs) {
+        invalidateFileMetadata(src);
+      }
     }
   }
   /**
@@ -1577,6 +1635,9 @@ public void rename(String src, String dst, Options.Rename... options)
           NSQuotaExceededException.class,
           UnresolvedPathException.class,
           SnapshotAccessControlException.class);
+    } finally {
+      invalidateFileMetadata(src);
+      invalidateFileMetadata(dst);
     }
   }
 
@@ -1595,6 +1656,8 @@ public boolean truncate(String src, long newLength) throws IOException {
     } catch (RemoteException re) {
       throw re.unwrapRemoteException(AccessControlException.class,
           UnresolvedPathException.class);
+    } finally {
+      invalidateFileMetadata(src);
     }
   }
 
@@ -1626,6 +1689,8 @@ public boolean delete(String src, boolean recursive) throws IOException {
           UnresolvedPathException.class,
           SnapshotAccessControlException.class,
           PathIsNotEmptyDirectoryException.class);
+    } finally {
+      invalidateFileMetadata(src);
     }
   }
 
@@ -1676,8 +1741,22 @@ public DirectoryListing listPaths(String src,  byte[] startAfter,
    */
   public HdfsFileStatus getFileInfo(String src) throws IOException {
     checkOpen();
+    if (fileMetadataCache != null) {
+      final HdfsFileStatus status = fileMetadataCache.getFileStatus(
+          getMetadataNamespace(), ugi.getUserName(), src);
+      if (status != null) {
+        return status;
+      }
+    }
     try (TraceScope ignored = newPathTraceScope("getFileInfo", src)) {
-      return namenode.getFileInfo(src);
+      final long generation = fileMetadataCache == null ? 0
+          : fileMetadataCache.getGeneration(getMetadataNamespace());
+      final HdfsFileStatus status = namenode.getFileInfo(src);
+      if (fileMetadataCache != null) {
+        fileMetadataCache.putFileStatus(getMetadataNamespace(),
+            ugi.getUserName(), src, status, generation);
+      }
+      return status;
     } catch (RemoteException re) {
       throw re.unwrapRemoteException(AccessControlException.class,
           FileNotFoundException.class,
@@ -2020,6 +2099,8 @@ public void setPermission(String src, FsPermission permission)
           SafeModeException.class,
           UnresolvedPathException.class,
           SnapshotAccessControlException.class);
+    } finally {
+      invalidateFileMetadata(src);
     }
   }
 
@@ -2042,6 +2123,8 @@ public void setOwner(String src, String username, String groupname)
           SafeModeException.class,
           UnresolvedPathException.class,
           SnapshotAccessControlException.class);
+    } finally {
+      invalidateFileMetadata(src);
     }
   }
 
@@ -2630,6 +2713,8 @@ public void setTimes(String src, long mtime, long atime) throws IOException {
           FileNotFoundException.class,
           UnresolvedPathException.class,
           SnapshotAccessControlException.class);
+    } finally {
+      invalidateFileMetadata(src);
     }
   }
 
@@ -2691,6 +2776,8 @@ public void modifyAclEntries(String src, List<AclEntry> aclSpec)
           SafeModeException.class,
           SnapshotAccessControlException.class,
           UnresolvedPathException.class);
+    } finally {
+      invalidateFileMetadata(src);
     }
   }
 
@@ -2707,6 +2794,8 @@ public void removeAclEntries(String src, List<AclEntry> aclSpec)
           SafeModeException.class,
           SnapshotAccessControlException.class,
           UnresolvedPathException.class);
+    } finally {
+      invalidateFileMetadata(src);
     }
   }
 
@@ -2722,6 +2811,8 @@ public void removeDefaultAcl(String src) throws IOException {
           SafeModeException.class,
           SnapshotAccessControlException.class,
           UnresolvedPathException.class);
+    } finally {
+      invalidateFileMetadata(src);
     }
   }
 
@@ -2737,6 +2828,8 @@ public void removeAcl(String src) throws IOException {
           SafeModeException.class,
           SnapshotAccessControlException.class,
           UnresolvedPathException.class);
+    } finally {
+      invalidateFileMetadata(src);
     }
   }
 
@@ -2752,6 +2845,8 @@ public void setAcl(String src, List<AclEntry> aclSpec) throws IOException {
           SafeModeException.class,
           SnapshotAccessControlException.class,
           UnresolvedPathException.class);
+    } finally {
+      invalidateFileMetadata(src);
     }
   }
 
@@ -2807,6 +2902,8 @@ public void setXAttr(String src, String name, byte[] value,
           SafeModeException.class,
           SnapshotAccessControlException.class,
           UnresolvedPathException.class);
+    } finally {
+      invalidateFileMetadata(src);
     }
   }
 
@@ -2871,6 +2968,8 @@ public void removeXAttr(String src, String name) throws IOException {
           SafeModeException.class,
           SnapshotAccessControlException.class,
           UnresolvedPathException.class);
+    } finally {
+      invalidateFileMetadata(src);
     }
   }
 
@@ -2972,6 +3071,78 @@ DFSHedgedReadMetrics getHedgedReadMetrics() {
     return HEDGED_READ_METRIC;
   }
 
+  /**
+   * Create the process-wide FILE_METADATA_CACHE if it does not already
+   * exist.  The first client enabling it sets its TTL and size.
+   */
+  private static synchronized FileMetadataCache initFileMetadataCache(
+      DfsClientConf conf) {
+    if (FILE_METADATA_CACHE == null) {
+      FILE_METADATA_CACHE = new FileMetadataCache(conf);
+      LOG.debug("Caching the metadata of closed files; ttl={}ms, "
+          + "max entries={}", conf.getFileMetadataCacheTtlMs(),
+          conf.getFileMetadataCacheMaxEntries());
+    }
+    return FILE_METADATA_CACHE;
+  }
+
+  /**
+   * @return the process-wide cache of the metadata of the closed files, or
+   *         null if this client does not use it.
+   */
+  public FileMetadataCache getFileMetadataCache() {
+    return fileMetadataCache;
+  }
+
+  /** @return the namespace of the paths of this client in the cache. */
+  private String getMetadataNamespace() {
+    return namenodeUri != null ? namenodeUri.getAuthority() : "null";
+  }
+
+  /**
+   * Invalidate the cached metadata of a path modified by this client, even if
+   * it does not use the cache, as others in the process may.
+   */
+  private void invalidateFileMetadata(String src) {
+    final FileMetadataCache cache = FILE_METADATA_CACHE;
+    if (cache != null) {
+      cache.invalidate(getMetadataNamespace(), src);
+    }
+  }
+
+  /**
+   * Get the thread pool the ranges of the vectored reads are read with,
+   * VECTORED_READ_THREAD_POOL, creating it on first use.
+   * @return the pool, or null if the reads run in the calling thread.
+   */
+  ThreadPoolExecutor getVectoredReadThreadPool() {
+    final int num = dfsClientConf.getVectoredReadThreadpoolSize();
+    return num > 0 ? initThreadsNumForVectoredReads(num) : null;
+  }
+
+  private static synchronized ThreadPoolExecutor
+      initThreadsNumForVectoredReads(int num) {
+    if (VECTORED_READ_THREAD_POOL != null) {
+      return VECTORED_READ_THREAD_POOL;
+    }
+    // When all the threads are busy, the reader reads the range itself.
+    VECTORED_READ_THREAD_POOL = new ThreadPoolExecutor(1, num, 60,
+        TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+        new Daemon.DaemonFactory() {
+          private final AtomicInteger threadIndex = new AtomicInteger(0);
+          @Override
+          public Thread newThread(Runnable r) {
+            Thread t = super.newThread(r);
+            t.setName("vectoredRead-" + threadIndex.getAndIncrement());
+            return t;
+          }
+        },
+        new ThreadPoolExecutor.CallerRunsPolicy());
+    VECTORED_READ_THREAD_POOL.allowCoreThreadTimeOut(true);
+    LOG.debug("Using vectored reads; pool threads={}", num);
+    return VECTORED_READ_THREAD_POOL;
+  }
+
   URI getKeyProviderUri() throws IOException {
     return HdfsKMSUtil.getKeyProviderUri(ugi, namenodeUri,
         getServerDefaults().getKeyProviderUri(), conf);
@@ -31,6 +31,7 @@ public class DFSHedgedReadMetrics {
   public final AtomicLong hedgedReadOps = new AtomicLong();
   public final AtomicLong hedgedReadOpsWin = new AtomicLong();
   public final AtomicLong hedgedReadOpsInCurThread = new AtomicLong();
+  public final AtomicLong slowNodeSkips = new AtomicLong();
 
   public void incHedgedReadOps() {
     hedgedReadOps.incrementAndGet();
@@ -44,6 +45,10 @@ public void incHedgedReadWins() {
     hedgedReadOpsWin.incrementAndGet();
   }
 
+  public void incSlowNodeSkips() {
+    slowNodeSkips.incrementAndGet();
+  }
+
   public long getHedgedReadOps() {
     return hedgedReadOps.longValue();
   }
@@ -55,4 +60,12 @@ public long getHedgedReadOpsInCurThread() {
   public long getHedgedReadWins() {
     return hedgedReadOpsWin.longValue();
   }
+
+  /**
+   * @return the number of times a slow datanode was passed over for a faster
+   *         replica, when tracking the latency of the datanodes.
+   */
+  public long getSlowNodeSkips() {
+    return slowNodeSkips.longValue();
+  }
 }
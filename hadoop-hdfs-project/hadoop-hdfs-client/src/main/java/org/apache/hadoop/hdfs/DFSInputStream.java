@@ -44,6 +44,7 @@
 import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.Future;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -57,12 +58,17 @@
 import org.apache.hadoop.fs.CanSetReadahead;
 import org.apache.hadoop.fs.CanUnbuffer;
 import org.apache.hadoop.fs.ChecksumException;
+import org.apache.hadoop.fs.FSExceptionMessages;
 import org.apache.hadoop.fs.FSInputStream;
 import org.apache.hadoop.fs.FileEncryptionInfo;
+import org.apache.hadoop.fs.FileRange;
 import org.apache.hadoop.fs.HasEnhancedByteBufferAccess;
 import org.apache.hadoop.fs.ReadOption;
 import org.apache.hadoop.fs.StorageType;
 import org.apache.hadoop.fs.StreamCapabilities;
+import org.apache.hadoop.fs.VectoredReadUtils;
+import org.apache.hadoop.fs.VectoredReadUtils.CombinedFileRange;
+import org.apache.hadoop.fs.VectoredReadable;
 import org.apache.hadoop.hdfs.client.impl.BlockReaderFactory;
 import org.apache.hadoop.hdfs.client.impl.DfsClientConf;
 import org.apache.hadoop.hdfs.protocol.ClientDatanodeProtocol;
@@ -86,11 +92,13 @@
 import org.apache.hadoop.util.IdentityHashStore;
 import org.apache.hadoop.util.StopWatch;
 import org.apache.hadoop.util.StringUtils;
+import org.apache.hadoop.util.Time;
 import org.apache.htrace.core.SpanId;
 import org.apache.htrace.core.TraceScope;
 import org.apache.htrace.core.Tracer;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.SettableFuture;
 
 import javax.annotation.Nonnull;
 
@@ -102,7 +110,7 @@
 public class DFSInputStream extends FSInputStream
     implements ByteBufferReadable, CanSetDropBehind, CanSetReadahead,
     HasEnhancedByteBufferAccess, CanUnbuffer, StreamCapabilities,
-    ByteBufferPositionedReadable {
+    ByteBufferPositionedReadable, VectoredReadable {
   @VisibleForTesting
   public static boolean tcpReadsDisabledForTesting = false;
   private long hedgedReadOpsLoopNumForTesting = 0;
@@ -1158,21 +1166,46 @@ protected DNAddrPair getBestNodeDNAddrPair(LocatedBlock block,
       Collection<DatanodeInfo> ignoredNodes) {
     DatanodeInfo[] nodes = block.getLocations();
     StorageType[] storageTypes = block.getStorageTypes();
+    final DataNodeLatencyTracker latencyTracker =
+        dfsClient.getClientContext().getDataNodeLatencyTracker();
     DatanodeInfo chosenNode = null;
     StorageType storageType = null;
     if (nodes != null) {
+      int chosen = -1;
+      // Read from slow nodes only if all the others are dead or ignored, then
+      // from the least slow one.
+      int leastSlow = -1;
+      double leastSlowness = Double.MAX_VALUE;
       for (int i = 0; i < nodes.length; i++) {
         if (!dfsClient.getDeadNodes(this).containsKey(nodes[i])
             && (ignoredNodes == null || !ignoredNodes.contains(nodes[i]))) {
-          chosenNode = nodes[i];
-          // Storage types are ordered to correspond with nodes, so use the same
-          // index to get storage type.
-          if (storageTypes != null && i < storageTypes.length) {
-            storageType = storageTypes[i];
+          if (latencyTracker != null && latencyTracker.isSlow(nodes[i])) {
+            final double slowness = latencyTracker.getSlowness(nodes[i]);
+            if (slowness < leastSlowness) {
+              leastSlow = i;
+              leastSlowness = slowness;
+            }
+            continue;
           }
+          chosen = i;
           break;
         }
       }
+      if (chosen < 0) {
+        chosen = leastSlow;
+      } else if (leastSlow >= 0) {
+        DFSClient.LOG.debug("Skipping slow datanode {} for block {}",
+            nodes[leastSlow], block.getBlock());
+        dfsClient.getHedgedReadMetrics().incSlowNodeSkips();
+      }
+      if (chosen >= 0) {
+        chosenNode = nodes[chosen];
+        // Storage types are ordered to correspond with nodes, so use the same
+        // index to get storage type.
+        if (storageTypes != null && chosen < storageTypes.length) {
+          storageType = storageTypes[chosen];
+        }
+      }
     }
     if (chosenNode == null) {
       DFSClient.LOG.warn("No live nodes contain block " + block.getBlock() +
@@ -1267,9 +1300,12 @@ void actualGetFromOneDataNode(final DNAddrPair datanode,
     int refetchToken = 1; // only need to get a new access token once
     int refetchEncryptionKey = 1; // only need to get a new encryption key once
     final int len = (int) (endInBlk - startInBlk + 1);
+    final DataNodeLatencyTracker latencyTracker =
+        dfsClient.getClientContext().getDataNodeLatencyTracker();
     LocatedBlock block = datanode.block;
     while (true) {
       BlockReader reader = null;
+      final long startNanos = Time.monotonicNowNanos();
       try {
         DFSClientFaultInjector.get().fetchFromDatanodeException();
         reader = getBlockReader(block, startInBlk, len, datanode.addr,
@@ -1296,6 +1332,10 @@ void actualGetFromOneDataNode(final DNAddrPair datanode,
               + "excpected " + len + ", got " + nread);
         }
         DFSClientFaultInjector.get().readFromDatanodeDelay();
+        if (latencyTracker != null) {
+          latencyTracker.addSample(datanode.info, len,
+              Time.monotonicNowNanos() - startNanos);
+        }
         return;
       } catch (ChecksumException e) {
         String msg = "fetchBlockByteRange(). Got a checksum exception for "
@@ -1308,6 +1348,11 @@ void actualGetFromOneDataNode(final DNAddrPair datanode,
         addToLocalDeadNodes(datanode.info);
         throw new IOException(msg);
       } catch (IOException e) {
+        if (latencyTracker != null && Thread.currentThread().isInterrupted()) {
+          // A hedged read was faster; this one took at least that long.
+          latencyTracker.addSample(datanode.info, len,
+              Time.monotonicNowNanos() - startNanos);
+        }
         checkInterrupted(e);
         if (e instanceof InvalidEncryptionKeyException && refetchEncryptionKey > 0) {
           DFSClient.LOG.info("Will fetch a new encryption key and retry, " 
@@ -1371,6 +1416,23 @@ private void checkReadPortions(int[] offsets, int[] lengths, int totalLen) {
     Preconditions.checkArgument(sum == totalLen);
   }
 
+  /**
+   * Get how long to wait for a read from a datanode before starting a hedged
+   * read: the configured threshold, or less if the tracked latency of the
+   * datanode says a read of that size should have completed by then.
+   */
+  private long getHedgedReadThresholdMillis(DatanodeInfo node, long bytes) {
+    final DfsClientConf conf = dfsClient.getConf();
+    final DataNodeLatencyTracker latencyTracker =
+        dfsClient.getClientContext().getDataNodeLatencyTracker();
+    if (latencyTracker == null) {
+      return conf.getHedgedReadThresholdMillis();
+    }
+    return latencyTracker.getHedgedReadThresholdMillis(node, bytes,
+        conf.getMinHedgedReadThresholdMillis(),
+        conf.getHedgedReadThresholdMillis());
+  }
+
   /**
    * Like {@link #fetchBlockByteRange}except we start up a second, parallel,
    * 'hedged' read if the first read is taking longer than configured amount of
@@ -1380,7 +1442,6 @@ private void hedgedFetchBlockByteRange(LocatedBlock block, long start,
       long end, ByteBuffer buf,
       Map<ExtendedBlock, Set<DatanodeInfo>> corruptedBlockMap)
       throws IOException {
-    final DfsClientConf conf = dfsClient.getConf();
     ArrayList<Future<ByteBuffer>> futures = new ArrayList<>();
     CompletionService<ByteBuffer> hedgedService =
         new ExecutorCompletionService<>(dfsClient.getHedgedReadsThreadPool());
@@ -1407,9 +1468,10 @@ private void hedgedFetchBlockByteRange(LocatedBlock block, long start,
             .submit(getFromDataNodeCallable);
         futures.add(firstRequest);
         Future<ByteBuffer> future = null;
+        final long thresholdMillis = getHedgedReadThresholdMillis(
+            chosenNode.info, len);
         try {
-          future = hedgedService.poll(
-              conf.getHedgedReadThresholdMillis(), TimeUnit.MILLISECONDS);
+          future = hedgedService.poll(thresholdMillis, TimeUnit.MILLISECONDS);
           if (future != null) {
             ByteBuffer result = future.get();
             result.flip();
@@ -1417,7 +1479,7 @@ private void hedgedFetchBlockByteRange(LocatedBlock block, long start,
             return;
           }
           DFSClient.LOG.debug("Waited {}ms to read from {}; spawning hedged "
-              + "read", conf.getHedgedReadThresholdMillis(), chosenNode.info);
+              + "read", thresholdMillis, chosenNode.info);
           dfsClient.getHedgedReadMetrics().incHedgedReadOps();
           // continue; no need to refresh block locations
         } catch (ExecutionException e) {
@@ -1803,6 +1865,106 @@ public int read(long position, final ByteBuffer buf) throws IOException {
     return pread(position, buf);
   }
 
+  /**
+   * Read the ranges with positioned reads.  The ranges close to each other
+   * in a block are merged into one read, and the reads run in parallel on
+   * the vectored read thread pool, so that the ranges of different blocks,
+   * usually on different DataNodes, are read at once.
+   */
+  @Override
+  public void readVectored(List<? extends FileRange> ranges,
+      final ByteBufferPool bufferPool) throws IOException {
+    dfsClient.checkOpen();
+    if (closed.get()) {
+      throw new IOException("Stream closed");
+    }
+    final DfsClientConf conf = dfsClient.getConf();
+    final List<CombinedFileRange> combinedRanges =
+        VectoredReadUtils.mergeSortedRanges(
+            VectoredReadUtils.validateAndSortRanges(ranges),
+            getVectoredReadChunkSize(), conf.getVectoredReadMinSeekSize(),
+            conf.getVectoredReadMaxMergedSize());
+    // Set all the futures before starting the reads, which may run in the
+    // calling thread.
+    final List<Runnable> reads = new ArrayList<>(combinedRanges.size());
+    for (final CombinedFileRange combined : combinedRanges) {
+      final List<SettableFuture<ByteBuffer>> futures = new ArrayList<>();
+      for (FileRange r : combined.getUnderlying()) {
+        final SettableFuture<ByteBuffer> data = SettableFuture.create();
+        r.setData(data);
+        futures.add(data);
+      }
+      reads.add(new Runnable() {
+        @Override
+        public void run() {
+          readCombinedRange(combined, futures, bufferPool);
+        }
+      });
+    }
+    final ThreadPoolExecutor executor = dfsClient.getVectoredReadThreadPool();
+    for (Runnable read : reads) {
+      if (executor != null) {
+        executor.execute(read);
+      } else {
+        read.run();
+      }
+    }
+  }
+
+  /**
+   * @return the size of the blocks of the file, which the vectored reads
+   *         do not merge ranges across.
+   */
+  private long getVectoredReadChunkSize() {
+    synchronized (infoLock) {
+      final List<LocatedBlock> blocks = locatedBlocks.getLocatedBlocks();
+      // Only the last block of a file may be shorter than the others.
+      if (blocks.size() < 2 || blocks.get(0).getBlockSize() <= 0) {
+        return Long.MAX_VALUE;
+      }
+      return blocks.get(0).getBlockSize();
+    }
+  }
+
+  private void readCombinedRange(CombinedFileRange combined,
+      List<SettableFuture<ByteBuffer>> futures, ByteBufferPool bufferPool) {
+    final List<FileRange> ranges = combined.getUnderlying();
+    ByteBuffer buffer = null;
+    try (TraceScope ignored = dfsClient.newReaderTraceScope(
+        "DFSInputStream#readVectored", src, combined.getOffset(),
+        combined.getLength())) {
+      buffer = VectoredReadUtils.allocate(bufferPool, combined.getLength());
+      long position = combined.getOffset();
+      while (buffer.hasRemaining()) {
+        final int n = pread(position, buffer);
+        if (n < 0) {
+          throw new EOFException(FSExceptionMessages.EOF_IN_READ_FULLY);
+        }
+        position += n;
+      }
+      buffer.flip();
+      if (ranges.size() == 1) {
+        futures.get(0).set(buffer);
+        buffer = null;
+      } else {
+        for (int i = 0; i < ranges.size(); i++) {
+          futures.get(i).set(VectoredReadUtils.sliceTo(
+              buffer, combined.getOffset(), ranges.get(i), bufferPool));
+        }
+      }
+    } catch (IOException | RuntimeException e) {
+      DFSClient.LOG.debug("Failed to read {} of {}", combined, src, e);
+      // The futures already set keep their data.
+      for (SettableFuture<ByteBuffer> data : futures) {
+        data.setException(e);
+      }
+    } finally {
+      if (buffer != null) {
+        bufferPool.putBuffer(buffer);
+      }
+    }
+  }
+
   /** Utility class to encapsulate data node info and its address. */
   static final class DNAddrPair {
     final DatanodeInfo info;
@@ -2027,6 +2189,7 @@ public boolean hasCapability(String capability) {
     case StreamCapabilities.UNBUFFER:
     case StreamCapabilities.READBYTEBUFFER:
     case StreamCapabilities.PREADBYTEBUFFER:
+    case StreamCapabilities.VECTOREDREAD:
       return true;
     default:
       return false;
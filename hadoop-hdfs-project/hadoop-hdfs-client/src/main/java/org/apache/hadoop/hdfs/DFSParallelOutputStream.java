@@ -0,0 +1,503 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.fs.CreateFlag;
+import org.apache.hadoop.fs.Options.ChecksumOpt;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.hdfs.protocol.DirectoryListing;
+import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.util.Progressable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Write a file through several block pipelines at once, so that the
+ * throughput of a single writer is bound by the bandwidth of the client
+ * rather than by the bandwidth of one pipeline.
+ * <p>
+ * The data is cut in segments of one block.  Each segment is buffered and
+ * written by its own thread through its own {@link DFSOutputStream}: the
+ * first one to the file itself, the next ones to hidden part files in the
+ * same directory.  Up to numStreams segments are written at once.  The
+ * segments are committed in order, by concatenating the closed part files to
+ * the file, so the file only ever holds a prefix of the data written.
+ * <p>
+ * The data of a segment is only visible once it is committed, so hflush and
+ * hsync are not supported.  The memory buffering the segments is bounded by
+ * dfs.client.parallel.write.buffer.size, and the writer blocks once it is
+ * full.  Files in an encryption zone cannot be concatenated, so they are
+ * written through a single pipeline.
+ * <p>
+ * The part files of a file /dir/name are named /dir/.name.part.ID.N, where
+ * ID is the inode id of the file and N the index of the segment.  A writer
+ * which fails deletes the part files not committed; the file keeps the
+ * segments committed so far, and close() throws the failure.  The part files
+ * of a client which crashes stay in the directory until the file is created
+ * again with parallel streams, which deletes them.
+ */
+@InterfaceAudience.Private
+public class DFSParallelOutputStream extends OutputStream {
+  static final Logger LOG =
+      LoggerFactory.getLogger(DFSParallelOutputStream.class);
+
+  /** Separates the name of the file from the rest of its part names. */
+  private static final String PART_INFIX = ".part.";
+
+  /** Marks the end of the data of a segment. */
+  private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+  private final DFSClient dfsClient;
+  private final String src;
+  private final FsPermission permission;
+  private final EnumSet<CreateFlag> partFlags;
+  private final short replication;
+  private final long blockSize;
+  private final Progressable progress;
+  private final int buffersize;
+  private final ChecksumOpt checksumOpt;
+  private final InetSocketAddress[] favoredNodes;
+  private final int numStreams;
+  private final long segmentSize;
+  private final String partPrefix;
+
+  private final int chunkSize;
+  private final int maxChunks;
+  /** The chunks written to the pipelines, to be filled again. */
+  private final BlockingQueue<byte[]> freeChunks =
+      new LinkedBlockingQueue<>();
+  private int numChunks;
+  private byte[] chunk;
+  private int chunkLength;
+
+  private final ExecutorService executor;
+  /** The segments not committed yet, in order; the last one is written. */
+  private final Deque<Segment> segments = new ArrayDeque<>();
+  private final AtomicReference<IOException> failure =
+      new AtomicReference<>();
+  private int numSegments;
+  private boolean closed;
+  /** The failure which aborted the stream, thrown again by close(). */
+  private IOException abortCause;
+
+  DFSParallelOutputStream(DFSClient dfsClient, String src,
+      FsPermission permission, EnumSet<CreateFlag> flag,
+      boolean createParent, short replication, long blockSize,
+      Progressable progress, int buffersize, ChecksumOpt checksumOpt,
+      InetSocketAddress[] favoredNodes, int numStreams) throws IOException {
+    Preconditions.checkArgument(numStreams > 0,
+        "Invalid number of streams %s", numStreams);
+    this.dfsClient = dfsClient;
+    this.src = src;
+    this.permission = permission;
+    this.partFlags = EnumSet.of(CreateFlag.CREATE, CreateFlag.OVERWRITE);
+    for (CreateFlag f : new CreateFlag[] {CreateFlag.SYNC_BLOCK,
+        CreateFlag.LAZY_PERSIST, CreateFlag.NO_LOCAL_WRITE}) {
+      if (flag.contains(f)) {
+        partFlags.add(f);
+      }
+    }
+    this.replication = replication;
+    this.blockSize = blockSize;
+    this.progress = progress;
+    this.buffersize = buffersize;
+    this.checksumOpt = checksumOpt;
+    this.favoredNodes = favoredNodes;
+
+    final DFSOutputStream out = dfsClient.create(src, permission, flag,
+        createParent, replication, blockSize, progress, buffersize,
+        checksumOpt, favoredNodes);
+    final OutputStream first;
+    if (out.getFileEncryptionInfo() != null) {
+      LOG.debug("{} is encrypted, writing it through one pipeline", src);
+      this.numStreams = 1;
+      this.segmentSize = Long.MAX_VALUE;
+      first = dfsClient.createWrappedOutputStream(out, null);
+    } else {
+      this.numStreams = numStreams;
+      this.segmentSize = numStreams == 1 ? Long.MAX_VALUE : blockSize;
+      first = out;
+    }
+    final Path path = new Path(src);
+    final String stalePrefix = "." + path.getName() + PART_INFIX;
+    final String dir = path.getParent().toUri().getPath();
+    deleteStaleParts(dir, stalePrefix);
+    this.partPrefix = new Path(dir,
+        stalePrefix + out.getFileId() + ".").toUri().getPath();
+
+    this.chunkSize = dfsClient.getConf().getWritePacketSize();
+    this.maxChunks = (int) Math.min(Integer.MAX_VALUE, Math.max(1,
+        dfsClient.getConf().getParallelWriteBufferSize() / chunkSize));
+    this.executor = Executors.newFixedThreadPool(this.numStreams,
+        new ThreadFactoryBuilder().setDaemon(true)
+            .setNameFormat("DFSParallelOutputStream-" + src.replace("%", "%%")
+                + "-%d").build());
+    startSegment(src, first);
+  }
+
+  /**
+   * Delete the part files left in the directory by the writers of the file
+   * which crashed before committing them.  The file was just created, so
+   * none of them is still written.
+   */
+  private void deleteStaleParts(String dir, String prefix) {
+    try {
+      byte[] startAfter = DFSUtilClient.string2Bytes(prefix);
+      DirectoryListing listing;
+      do {
+        listing = dfsClient.listPaths(dir, startAfter);
+        if (listing == null) {
+          return;
+        }
+        for (HdfsFileStatus status : listing.getPartialListing()) {
+          if (!status.getLocalName().startsWith(prefix)) {
+            return;
+          }
+          final String part = status.getFullName(dir);
+          LOG.info("Deleting the stale part file {}", part);
+          dfsClient.delete(part, false);
+        }
+        startAfter = listing.getLastName();
+      } while (listing.hasMore());
+    } catch (IOException e) {
+      LOG.warn("Failed to delete the stale part files of {}", src, e);
+    }
+  }
+
+  /**
+   * A segment of the file, written by a thread of the executor from the
+   * chunks handed over by the writer.
+   */
+  private final class Segment implements Callable<Void> {
+    private final int index;
+    private final String path;
+    private OutputStream out;
+    private final BlockingQueue<ByteBuffer> chunks =
+        new LinkedBlockingQueue<>();
+    /** The number of bytes handed over, only used by the writer. */
+    private long length;
+    private boolean finished;
+    private Future<Void> future;
+
+    Segment(int index, String path, OutputStream out) {
+      this.index = index;
+      this.path = path;
+      this.out = out;
+    }
+
+    void add(byte[] data, int len) {
+      chunks.add(ByteBuffer.wrap(data, 0, len));
+      length += len;
+    }
+
+    void finish() {
+      if (!finished) {
+        finished = true;
+        chunks.add(END);
+      }
+    }
+
+    @Override
+    public Void call() throws IOException {
+      ByteBuffer buf = null;
+      try {
+        if (out == null) {
+          out = dfsClient.create(path, permission, partFlags, false,
+              replication, blockSize, progress, buffersize, checksumOpt,
+              favoredNodes);
+        }
+        for (buf = take(); buf != END; buf = take()) {
+          try {
+            out.write(buf.array(), buf.position(), buf.remaining());
+          } finally {
+            freeChunks.add(buf.array());
+          }
+        }
+        out.close();
+        return null;
+      } catch (IOException | RuntimeException e) {
+        failure.compareAndSet(null, e instanceof IOException ?
+            (IOException) e : new IOException(e));
+        if (out instanceof DFSOutputStream) {
+          try {
+            ((DFSOutputStream) out).abort();
+          } catch (IOException ioe) {
+            LOG.debug("Failed to abort {}", path, ioe);
+          }
+        } else {
+          IOUtils.closeStream(out);
+        }
+        // Keep giving back the chunks handed over, so that the writer does
+        // not wait for a free chunk until it sees the failure.  The end of
+        // the segment was already taken if closing the stream failed.
+        while (buf != END) {
+          buf = take();
+          if (buf != END) {
+            freeChunks.add(buf.array());
+          }
+        }
+        throw e;
+      }
+    }
+
+    private ByteBuffer take() throws InterruptedIOException {
+      try {
+        return chunks.take();
+      } catch (InterruptedException e) {
+        throw DFSUtilClient.toInterruptedIOException(
+            "Interrupted while writing " + path, e);
+      }
+    }
+  }
+
+  private void startSegment(String path, OutputStream out) {
+    final Segment segment = new Segment(numSegments++, path, out);
+    segment.future = executor.submit(segment);
+    segments.addLast(segment);
+  }
+
+  private void checkClosed() throws IOException {
+    if (closed) {
+      throw new ClosedChannelException();
+    }
+  }
+
+  private void checkFailure() throws IOException {
+    final IOException e = failure.get();
+    if (e != null) {
+      throw new IOException("Failed to write " + src, e);
+    }
+  }
+
+  @Override
+  public synchronized void write(int b) throws IOException {
+    checkClosed();
+    try {
+      prepareChunk();
+      chunk[chunkLength++] = (byte) b;
+    } catch (IOException e) {
+      abort(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public synchronized void write(byte[] b, int off, int len)
+      throws IOException {
+    checkClosed();
+    if (off < 0 || len < 0 || len > b.length - off) {
+      throw new IndexOutOfBoundsException();
+    }
+    try {
+      while (len > 0) {
+        final int n = Math.min(len, prepareChunk());
+        System.arraycopy(b, off, chunk, chunkLength, n);
+        chunkLength += n;
+        off += n;
+        len -= n;
+      }
+    } catch (IOException e) {
+      abort(e);
+      throw e;
+    }
+  }
+
+  /**
+   * Make room in the chunk for at least one more byte: hand the chunk over
+   * if it is full or ends the segment, and start the next segment if the
+   * current one is complete.
+   * @return the number of bytes which can be added to the chunk.
+   */
+  private int prepareChunk() throws IOException {
+    Segment segment = segments.getLast();
+    if (chunk != null && (chunkLength == chunk.length
+        || segment.length + chunkLength == segmentSize)) {
+      checkFailure();
+      segment.add(chunk, chunkLength);
+      chunk = null;
+    }
+    if (segment.length == segmentSize) {
+      segment.finish();
+      // Wait for a free stream, committing the segments done meanwhile.
+      commitSegments(numStreams - 1);
+      startSegment(partPrefix + numSegments, null);
+      segment = segments.getLast();
+    }
+    if (chunk == null) {
+      chunk = freeChunks.poll();
+      if (chunk == null && numChunks < maxChunks) {
+        chunk = new byte[chunkSize];
+        numChunks++;
+      }
+      while (chunk == null) {
+        checkFailure();
+        try {
+          chunk = freeChunks.take();
+        } catch (InterruptedException e) {
+          throw DFSUtilClient.toInterruptedIOException(
+              "Interrupted while writing " + src, e);
+        }
+      }
+      chunkLength = 0;
+    }
+    return (int) Math.min(chunk.length - chunkLength,
+        segmentSize - segment.length - chunkLength);
+  }
+
+  /**
+   * Commit the oldest segments in order: wait for them while more than
+   * maxPending segments are not committed, then commit the ones already
+   * done.  The part files are concatenated to the file in one call.
+   */
+  private void commitSegments(int maxPending) throws IOException {
+    final List<String> parts = new ArrayList<>();
+    int committed = 0;
+    for (Segment segment : segments) {
+      if (segments.size() - committed <= maxPending
+          && !segment.future.isDone()) {
+        break;
+      }
+      try {
+        segment.future.get();
+      } catch (InterruptedException e) {
+        throw DFSUtilClient.toInterruptedIOException(
+            "Interrupted while writing " + src, e);
+      } catch (ExecutionException e) {
+        throw new IOException("Failed to write segment " + segment.index
+            + " of " + src, e.getCause());
+      }
+      if (segment.index > 0) {
+        parts.add(segment.path);
+      }
+      committed++;
+    }
+    if (!parts.isEmpty()) {
+      dfsClient.concat(src, parts.toArray(new String[parts.size()]));
+    }
+    for (int i = 0; i < committed; i++) {
+      segments.removeFirst();
+    }
+  }
+
+  /**
+   * Stop writing after a failure: close the streams of the segments not
+   * committed and delete their part files.  The file keeps the segments
+   * committed so far.
+   */
+  private void abort(IOException cause) {
+    closed = true;
+    if (abortCause == null) {
+      abortCause = cause;
+    }
+    chunk = null;
+    for (Segment segment : segments) {
+      segment.finish();
+    }
+    for (Iterator<Segment> i = segments.iterator(); i.hasNext();) {
+      final Segment segment = i.next();
+      try {
+        segment.future.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (ExecutionException e) {
+        LOG.debug("Failed to write segment {} of {}", segment.index, src,
+            e.getCause());
+      }
+      if (segment.index > 0) {
+        try {
+          dfsClient.delete(segment.path, false);
+        } catch (IOException e) {
+          LOG.warn("Failed to delete {}", segment.path, e);
+        }
+      }
+      i.remove();
+    }
+    executor.shutdownNow();
+  }
+
+  /**
+   * Only checks that the segments are written: the data written is visible
+   * once its segment is committed.
+   */
+  @Override
+  public synchronized void flush() throws IOException {
+    checkClosed();
+    try {
+      checkFailure();
+    } catch (IOException e) {
+      abort(e);
+      throw e;
+    }
+  }
+
+  /**
+   * Write the data buffered and commit all the segments.
+   * @throws IOException if the stream failed, now or before.
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    if (closed) {
+      if (abortCause != null) {
+        throw new IOException("Failed to write " + src, abortCause);
+      }
+      return;
+    }
+    try {
+      final Segment segment = segments.getLast();
+      if (chunk != null && chunkLength > 0) {
+        segment.add(chunk, chunkLength);
+      }
+      chunk = null;
+      segment.finish();
+      commitSegments(0);
+    } catch (IOException e) {
+      abort(e);
+      throw e;
+    } finally {
+      closed = true;
+      executor.shutdown();
+    }
+  }
+}
@@ -0,0 +1,320 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.hdfs.client.impl.DfsClientConf;
+import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
+import org.apache.hadoop.util.Timer;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+
+/**
+ * Track the latency of the positional reads from each datanode, and share it
+ * among all the DFSInputStreams of the same {@link ClientContext}.
+ * <p>
+ * The latencies of a datanode are counted in histograms with logarithmic
+ * buckets, over the current and the previous window, so that a datanode which
+ * got slow, or recovered, is noticed within two windows.  The reads are
+ * counted by size class, since a large read takes longer than a small one
+ * from the same datanode: the latencies are only compared within a class.  A
+ * datanode is slow when its 95th percentile in a class is more than a factor
+ * of the reference latency of the class, the median of the 95th percentiles
+ * of all the datanodes.  The streams read from slow datanodes last, and start
+ * a hedged read after the reference latency rather than after the latency of
+ * the datanode being read.
+ * <p>
+ * Datanodes with fewer samples than the minimum are not judged, so the
+ * tracker only changes the choices of the streams once it knows enough.
+ */
+@InterfaceAudience.Private
+public class DataNodeLatencyTracker {
+  /** Latencies below this number of microseconds have their own bucket. */
+  private static final int LINEAR_BUCKETS = 8;
+  /** Buckets per power of two above the linear buckets. */
+  private static final int SUB_BUCKETS = 4;
+  /** Latencies are capped at 2^MAX_LOG2 microseconds, i.e. 50 days. */
+  private static final int MAX_LOG2 = 42;
+  @VisibleForTesting
+  static final int NUM_BUCKETS =
+      LINEAR_BUCKETS + (MAX_LOG2 - 3) * SUB_BUCKETS;
+  /** The largest read of each size class but the last, in bytes. */
+  private static final long[] SIZE_CLASS_LIMITS =
+      {16 << 10, 256 << 10, 4 << 20};
+  private static final int NUM_SIZE_CLASSES = SIZE_CLASS_LIMITS.length + 1;
+  /** How often the reference latency is computed again. */
+  private static final long REFERENCE_INTERVAL_MS = 1000;
+
+  private final long windowMs;
+  private final int minSamples;
+  private final float slowNodeFactor;
+  private final Timer timer;
+  private final ConcurrentMap<String, NodeLatency> nodes =
+      new ConcurrentHashMap<>();
+
+  /** The reference latency of each size class. */
+  private volatile long[] referenceMicros = newReferences();
+  private volatile long referenceTime;
+
+  public DataNodeLatencyTracker(DfsClientConf conf) {
+    this(conf.getDataNodeLatencyWindowMs(),
+        conf.getDataNodeLatencyMinSamples(),
+        conf.getDataNodeLatencySlowNodeFactor(), new Timer());
+  }
+
+  @VisibleForTesting
+  DataNodeLatencyTracker(long windowMs, int minSamples, float slowNodeFactor,
+      Timer timer) {
+    Preconditions.checkArgument(windowMs > 0, "Invalid window %s", windowMs);
+    Preconditions.checkArgument(slowNodeFactor >= 1,
+        "Invalid slow node factor %s", slowNodeFactor);
+    this.windowMs = windowMs;
+    this.minSamples = Math.max(1, minSamples);
+    this.slowNodeFactor = slowNodeFactor;
+    this.timer = timer;
+    this.referenceTime = timer.monotonicNow() - REFERENCE_INTERVAL_MS;
+  }
+
+  private static long[] newReferences() {
+    final long[] references = new long[NUM_SIZE_CLASSES];
+    Arrays.fill(references, -1);
+    return references;
+  }
+
+  @VisibleForTesting
+  static int getSizeClass(long bytes) {
+    int sizeClass = 0;
+    while (sizeClass < SIZE_CLASS_LIMITS.length
+        && bytes > SIZE_CLASS_LIMITS[sizeClass]) {
+      sizeClass++;
+    }
+    return sizeClass;
+  }
+
+  /**
+   * Add the latency of a read from a datanode.
+   * @param bytes the number of bytes read.
+   * @param latencyNanos the latency of the read, in nanoseconds.
+   */
+  public void addSample(DatanodeInfo node, long bytes, long latencyNanos) {
+    NodeLatency latency = nodes.get(node.getXferAddr());
+    if (latency == null) {
+      final NodeLatency newLatency = new NodeLatency(timer.monotonicNow());
+      latency = nodes.putIfAbsent(node.getXferAddr(), newLatency);
+      if (latency == null) {
+        latency = newLatency;
+      }
+    }
+    latency.add(getSizeClass(bytes), latencyNanos / 1000,
+        timer.monotonicNow());
+  }
+
+  /**
+   * @return the given percentile of the latency of the reads of the given
+   *         size from the datanode, in microseconds, or -1 if it has too few
+   *         samples.
+   */
+  public long getPercentileMicros(DatanodeInfo node, long bytes,
+      double percentile) {
+    final NodeLatency latency = nodes.get(node.getXferAddr());
+    return latency == null ? -1 : latency.getPercentile(getSizeClass(bytes),
+        percentile, timer.monotonicNow());
+  }
+
+  /**
+   * @return the median of the 95th percentiles of the latency of the reads
+   *         of the given size from the datanodes with enough samples, in
+   *         microseconds, or -1 if there is none.
+   */
+  public long getReferenceMicros(long bytes) {
+    return getReferences()[getSizeClass(bytes)];
+  }
+
+  private long[] getReferences() {
+    final long now = timer.monotonicNow();
+    if (now - referenceTime >= REFERENCE_INTERVAL_MS) {
+      // Racing threads compute the same value, no need to lock.
+      final long[] references = newReferences();
+      for (int c = 0; c < NUM_SIZE_CLASSES; c++) {
+        final long[] p95s = new long[nodes.size()];
+        int n = 0;
+        for (NodeLatency latency : nodes.values()) {
+          final long p95 = latency.getPercentile(c, 0.95, now);
+          if (p95 >= 0 && n < p95s.length) {
+            p95s[n++] = p95;
+          }
+        }
+        Arrays.sort(p95s, 0, n);
+        references[c] = n == 0 ? -1 : p95s[(n - 1) / 2];
+      }
+      referenceMicros = references;
+      referenceTime = now;
+    }
+    return referenceMicros;
+  }
+
+  /**
+   * @return the largest ratio of the 95th percentile of the latency of the
+   *         datanode over the reference latency, among the size classes
+   *         where both are known, or -1 if there is none.
+   */
+  public double getSlowness(DatanodeInfo node) {
+    final NodeLatency latency = nodes.get(node.getXferAddr());
+    if (latency == null) {
+      return -1;
+    }
+    final long now = timer.monotonicNow();
+    final long[] references = getReferences();
+    double slowness = -1;
+    for (int c = 0; c < NUM_SIZE_CLASSES; c++) {
+      final long p95 = latency.getPercentile(c, 0.95, now);
+      if (p95 >= 0 && references[c] >= 0) {
+        slowness = Math.max(slowness,
+            (double) p95 / Math.max(1, references[c]));
+      }
+    }
+    return slowness;
+  }
+
+  /**
+   * @return true if the 95th percentile of the latency of the datanode is
+   *         more than the slow node factor times the reference latency, for
+   *         the reads of any size.
+   */
+  public boolean isSlow(DatanodeInfo node) {
+    return getSlowness(node) > slowNodeFactor;
+  }
+
+  /**
+   * Get how long to wait for a read from a datanode before starting a hedged
+   * read: the 95th percentile of its latency for reads of that size, or the
+   * reference latency if the datanode is slow, so that only the slowest
+   * reads of a datanode are hedged but the reads of a slow one are hedged as
+   * soon as another would answer.
+   * @param bytes the number of bytes to read.
+   * @param minMillis the least time to wait.
+   * @param maxMillis the longest time to wait, and the time to wait when the
+   *                  datanode has too few samples.
+   * @return the time to wait in milliseconds.
+   */
+  public long getHedgedReadThresholdMillis(DatanodeInfo node, long bytes,
+      long minMillis, long maxMillis) {
+    long micros = getPercentileMicros(node, bytes, 0.95);
+    if (micros >= 0 && isSlow(node)) {
+      micros = getReferenceMicros(bytes);
+    }
+    if (micros < 0) {
+      return maxMillis;
+    }
+    final long millis = (micros + 999) / 1000;
+    return Math.max(minMillis, Math.min(maxMillis, millis));
+  }
+
+  @VisibleForTesting
+  static int getBucket(long micros) {
+    if (micros < LINEAR_BUCKETS) {
+      return (int) Math.max(0, micros);
+    }
+    final long capped = Math.min(micros, (1L << MAX_LOG2) - 1);
+    final int log2 = 63 - Long.numberOfLeadingZeros(capped);
+    final int sub = (int) (capped >>> (log2 - 2)) & (SUB_BUCKETS - 1);
+    return LINEAR_BUCKETS + (log2 - 3) * SUB_BUCKETS + sub;
+  }
+
+  /** @return the largest latency counted in the bucket, in microseconds. */
+  @VisibleForTesting
+  static long getBucketUpperBound(int bucket) {
+    if (bucket < LINEAR_BUCKETS) {
+      return bucket;
+    }
+    final int log2 = 3 + (bucket - LINEAR_BUCKETS) / SUB_BUCKETS;
+    final int sub = (bucket - LINEAR_BUCKETS) % SUB_BUCKETS;
+    return ((long) (SUB_BUCKETS + sub + 1) << (log2 - 2)) - 1;
+  }
+
+  /**
+   * The histograms of a datanode, one per size class, one after the other in
+   * the same arrays.  Samples are added without locking; the windows are
+   * rotated under the lock of the object.
+   */
+  private final class NodeLatency {
+    private volatile AtomicLongArray current = newHistograms();
+    private volatile AtomicLongArray previous = newHistograms();
+    private volatile long windowStart;
+
+    NodeLatency(long now) {
+      this.windowStart = now;
+    }
+
+    private AtomicLongArray newHistograms() {
+      return new AtomicLongArray(NUM_SIZE_CLASSES * NUM_BUCKETS);
+    }
+
+    void add(int sizeClass, long micros, long now) {
+      rotateIfNeeded(now);
+      current.incrementAndGet(sizeClass * NUM_BUCKETS + getBucket(micros));
+    }
+
+    long getPercentile(int sizeClass, double percentile, long now) {
+      rotateIfNeeded(now);
+      final AtomicLongArray cur = current;
+      final AtomicLongArray prev = previous;
+      final int offset = sizeClass * NUM_BUCKETS;
+      final long[] counts = new long[NUM_BUCKETS];
+      long total = 0;
+      for (int i = 0; i < NUM_BUCKETS; i++) {
+        counts[i] = cur.get(offset + i) + prev.get(offset + i);
+        total += counts[i];
+      }
+      if (total < minSamples) {
+        return -1;
+      }
+      final long rank = Math.max(1, (long) Math.ceil(percentile * total));
+      long seen = 0;
+      for (int i = 0; i < NUM_BUCKETS; i++) {
+        seen += counts[i];
+        if (seen >= rank) {
+          return getBucketUpperBound(i);
+        }
+      }
+      return getBucketUpperBound(NUM_BUCKETS - 1);
+    }
+
+    private void rotateIfNeeded(long now) {
+      if (now - windowStart < windowMs) {
+        return;
+      }
+      synchronized (this) {
+        if (now - windowStart < windowMs) {
+          return;
+        }
+        // Without a sample for a whole window, the previous one is too old.
+        previous = now - windowStart < 2 * windowMs ? current
+            : newHistograms();
+        current = newHistograms();
+        windowStart = now;
+      }
+    }
+  }
+}
@@ -528,6 +528,46 @@ public HdfsDataOutputStream next(final FileSystem fs, final Path p)
     }.resolve(this, absF);
   }
 
+  /**
+   * Create a file written through several block pipelines at once.
+   *
+   * @see DFSParallelOutputStream
+   */
+  private FSDataOutputStream createParallel(final Path f,
+      final FsPermission permission, final EnumSet<CreateFlag> flag,
+      final boolean createParent, final int bufferSize,
+      final short replication, final long blockSize,
+      final Progressable progress, final ChecksumOpt checksumOpt,
+      final InetSocketAddress[] favoredNodes, final int numStreams)
+      throws IOException {
+    statistics.incrementWriteOps(1);
+    storageStatistics.incrementOpCounter(OpType.CREATE);
+    Path absF = fixRelativePart(f);
+    return new FileSystemLinkResolver<FSDataOutputStream>() {
+      @Override
+      public FSDataOutputStream doCall(final Path p) throws IOException {
+        final DFSParallelOutputStream out = new DFSParallelOutputStream(dfs,
+            getPathName(p), permission, flag, createParent, replication,
+            blockSize, progress, bufferSize, checksumOpt, favoredNodes,
+            numStreams);
+        return new FSDataOutputStream(out, statistics);
+      }
+      @Override
+      public FSDataOutputStream next(final FileSystem fs, final Path p)
+          throws IOException {
+        if (fs instanceof DistributedFileSystem) {
+          DistributedFileSystem myDfs = (DistributedFileSystem)fs;
+          return myDfs.createParallel(p, permission, flag, createParent,
+              bufferSize, replication, blockSize, progress, checksumOpt,
+              favoredNodes, numStreams);
+        }
+        throw new UnsupportedOperationException("Cannot create with" +
+            " parallel streams through a symlink to a" +
+            " non-DistributedFileSystem: " + f + " -> " + p);
+      }
+    }.resolve(this, absF);
+  }
+
   @Override
   protected HdfsDataOutputStream primitiveCreate(Path f,
       FsPermission absolutePermission, EnumSet<CreateFlag> flag, int bufferSize,
@@ -2722,6 +2762,7 @@ DFSOpsCountStatistics getDFSOpsCountStatistics() {
       FSDataOutputStream, HdfsDataOutputStreamBuilder> {
     private final DistributedFileSystem dfs;
     private InetSocketAddress[] favoredNodes = null;
+    private int parallelStreams = 1;
 
     /**
      * Construct a HdfsDataOutputStream builder for a file.
@@ -2793,6 +2834,22 @@ public HdfsDataOutputStreamBuilder noLocalWrite() {
       return this;
     }
 
+    /**
+     * Write the created file through up to the given number of block
+     * pipelines at once.  The data is only visible once the close of the
+     * stream commits it, and the stream does not support hflush and hsync.
+     *
+     * @see DFSParallelOutputStream for the details.
+     * @param numStreams the number of pipelines, 1 to write the file as
+     *                   usual.
+     */
+    public HdfsDataOutputStreamBuilder parallelStreams(int numStreams) {
+      Preconditions.checkArgument(numStreams > 0,
+          "Invalid number of streams %s", numStreams);
+      parallelStreams = numStreams;
+      return this;
+    }
+
     @VisibleForTesting
     @Override
     protected EnumSet<CreateFlag> getFlags() {
@@ -2809,6 +2866,12 @@ protected EnumSet<CreateFlag> getFlags() {
     public FSDataOutputStream build() throws IOException {
       if (getFlags().contains(CreateFlag.CREATE) ||
           getFlags().contains(CreateFlag.OVERWRITE)) {
+        if (parallelStreams > 1) {
+          return dfs.createParallel(getPath(), getPermission(), getFlags(),
+              isRecursive(), getBufferSize(), getReplication(),
+              getBlockSize(), getProgress(), getChecksumOpt(),
+              getFavoredNodes(), parallelStreams);
+        }
         if (isRecursive()) {
           return dfs.create(getPath(), getPermission(), getFlags(),
               getBufferSize(), getReplication(), getBlockSize(),
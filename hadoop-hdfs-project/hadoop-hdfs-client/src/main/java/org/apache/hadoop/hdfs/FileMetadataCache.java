@@ -0,0 +1,447 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.hdfs.client.impl.DfsClientConf;
+import org.apache.hadoop.hdfs.inotify.Event;
+import org.apache.hadoop.hdfs.inotify.EventBatch;
+import org.apache.hadoop.hdfs.inotify.MissingEventsException;
+import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
+import org.apache.hadoop.hdfs.protocol.LocatedBlock;
+import org.apache.hadoop.hdfs.protocol.LocatedBlocks;
+import org.apache.hadoop.security.AccessControlException;
+import org.apache.hadoop.util.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * Cache the block locations and the status of the closed files, shared by
+ * all the DFSClients of the process which enable it, so that the tasks
+ * opening the same files again and again do not ask the namenode each time.
+ * <p>
+ * Only the files which are closed, i.e. without a lease, and whose blocks
+ * were all returned by the namenode are cached.  The entries are keyed by the
+ * namenode and the path, and only served to the users the namenode returned
+ * them to.  An entry expires after the TTL, and the least recently used
+ * entries are evicted beyond the maximum number of entries.  The DFSClients
+ * invalidate the paths they modify; the changes of other clients are noticed
+ * after the TTL, or as soon as the namenode logs them when following its
+ * inotify events with {@link InotifyInvalidator}.
+ * <p>
+ * The DFSClients read the generation of the namespace before asking the
+ * namenode, and pass it along with the result: the result is not cached if a
+ * path of the namespace was invalidated meanwhile, since the namenode may
+ * have answered before the change.
+ * <p>
+ * The block locations of an entry are only used to open a file and to answer
+ * getBlockLocations: the streams which fail to read a block ask the namenode
+ * again, which refreshes the entry.
+ */
+@InterfaceAudience.Private
+public class FileMetadataCache {
+  static final Logger LOG = LoggerFactory.getLogger(FileMetadataCache.class);
+
+  private final long ttlMs;
+  private final Timer timer;
+  /** The entries by namespace and path, least recently used first. */
+  private final LinkedHashMap<String, Entry> entries;
+  /** The keys of the entries, sorted to invalidate the paths under another. */
+  private final TreeSet<String> keys = new TreeSet<>();
+  /** The number of invalidations of each namespace. */
+  private final Map<String, Long> generations = new HashMap<>();
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+  private final AtomicLong invalidations = new AtomicLong();
+
+  public FileMetadataCache(DfsClientConf conf) {
+    this(conf.getFileMetadataCacheTtlMs(),
+        conf.getFileMetadataCacheMaxEntries(), new Timer());
+  }
+
+  @VisibleForTesting
+  FileMetadataCache(long ttlMs, final int maxEntries, Timer timer) {
+    this.ttlMs = ttlMs;
+    this.timer = timer;
+    this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+        if (size() <= maxEntries) {
+          return false;
+        }
+        keys.remove(eldest.getKey());
+        evictions.incrementAndGet();
+        return true;
+      }
+    };
+  }
+
+  /** The cached metadata of a closed file. */
+  private static final class Entry {
+    private final LocatedBlocks blocks;
+    private final long expiry;
+    /** The users the namenode returned the metadata to. */
+    private final Set<String> users = new HashSet<>();
+    private HdfsFileStatus status;
+
+    Entry(LocatedBlocks blocks, long expiry) {
+      this.blocks = blocks;
+      this.expiry = expiry;
+    }
+  }
+
+  private static String getKey(String namespace, String src) {
+    return namespace + src;
+  }
+
+  private synchronized Entry getEntry(String namespace, String user,
+      String src) {
+    final String key = getKey(namespace, src);
+    final Entry entry = entries.get(key);
+    if (entry != null && entry.expiry <= timer.monotonicNow()) {
+      entries.remove(key);
+      keys.remove(key);
+      return null;
+    }
+    return entry != null && entry.users.contains(user) ? entry : null;
+  }
+
+  /**
+   * @return a copy of the block locations of all the blocks of the file, or
+   *         null if they are not cached for the user.
+   */
+  public LocatedBlocks getLocatedBlocks(String namespace, String user,
+      String src) {
+    final Entry entry = getEntry(namespace, user, src);
+    if (entry == null) {
+      misses.incrementAndGet();
+      return null;
+    }
+    hits.incrementAndGet();
+    final LocatedBlocks blocks = entry.blocks;
+    // The streams update the list of their blocks in place.
+    return new LocatedBlocks(blocks.getFileLength(), false,
+        new ArrayList<>(blocks.getLocatedBlocks()),
+        blocks.getLastLocatedBlock(), true, blocks.getFileEncryptionInfo());
+  }
+
+  /**
+   * @return the block locations of the blocks of the file which overlap the
+   *         given range, as returned by the namenode, or null if they are
+   *         not cached for the user.
+   */
+  public LocatedBlocks getLocatedBlocks(String namespace, String user,
+      String src, long start, long length) {
+    final LocatedBlocks blocks = getLocatedBlocks(namespace, user, src);
+    if (blocks == null) {
+      return null;
+    }
+    final List<LocatedBlock> inRange = new ArrayList<>();
+    for (LocatedBlock b : blocks.getLocatedBlocks()) {
+      final long end = b.getStartOffset() + b.getBlockSize();
+      // The namenode returns at least the block containing the start.
+      if (end > start
+          && (b.getStartOffset() < start + length || inRange.isEmpty())) {
+        inRange.add(b);
+      }
+    }
+    return new LocatedBlocks(blocks.getFileLength(), false, inRange,
+        blocks.getLastLocatedBlock(), true, blocks.getFileEncryptionInfo());
+  }
+
+  /**
+   * @return the status of the file, or null if it is not cached for the user.
+   */
+  public HdfsFileStatus getFileStatus(String namespace, String user,
+      String src) {
+    final HdfsFileStatus status;
+    synchronized (this) {
+      final Entry entry = getEntry(namespace, user, src);
+      status = entry == null ? null : entry.status;
+    }
+    if (status == null) {
+      misses.incrementAndGet();
+    } else {
+      hits.incrementAndGet();
+    }
+    return status;
+  }
+
+  /**
+   * @return the generation of the namespace, to read before asking the
+   *         namenode for the metadata to cache.
+   */
+  public synchronized long getGeneration(String namespace) {
+    final Long generation = generations.get(namespace);
+    return generation == null ? 0 : generation;
+  }
+
+  private void nextGeneration(String namespace) {
+    generations.put(namespace, getGeneration(namespace) + 1);
+  }
+
+  /**
+   * Cache the block locations of a file returned by the namenode to the user,
+   * if the file is closed and they cover all its blocks.  Other locations
+   * invalidate the cached ones.
+   * @param generation the generation of the namespace before the namenode
+   *        was asked
+   */
+  public synchronized void putLocatedBlocks(String namespace, String user,
+      String src, LocatedBlocks blocks, long generation) {
+    final String key = getKey(namespace, src);
+    if (!isCacheable(blocks)) {
+      if (entries.remove(key) != null) {
+        keys.remove(key);
+      }
+      return;
+    }
+    if (generation != getGeneration(namespace)) {
+      return;
+    }
+    Entry entry = entries.get(key);
+    if (entry == null || entry.expiry <= timer.monotonicNow()
+        || !isSameFile(entry.blocks, blocks)) {
+      // The streams update the list of their blocks in place.
+      entry = new Entry(new LocatedBlocks(blocks.getFileLength(), false,
+          new ArrayList<>(blocks.getLocatedBlocks()),
+          blocks.getLastLocatedBlock(), true,
+          blocks.getFileEncryptionInfo()), timer.monotonicNow() + ttlMs);
+      entries.put(key, entry);
+      keys.add(key);
+    }
+    entry.users.add(user);
+  }
+
+  /**
+   * Cache the status of a file returned by the namenode to the user, if the
+   * block locations of the same file are cached for the user, so that the
+   * file is known to be closed.
+   * @param generation the generation of the namespace before the namenode
+   *        was asked
+   */
+  public synchronized void putFileStatus(String namespace, String user,
+      String src, HdfsFileStatus status, long generation) {
+    final Entry entry = getEntry(namespace, user, src);
+    if (entry == null || generation != getGeneration(namespace)) {
+      return;
+    }
+    if (status != null && !status.isDir()
+        && status.getLen() == entry.blocks.getFileLength()) {
+      entry.status = status;
+    } else {
+      invalidate(namespace, src);
+    }
+  }
+
+  private static boolean isCacheable(LocatedBlocks blocks) {
+    if (blocks == null || blocks.isUnderConstruction()
+        || !blocks.isLastBlockComplete()) {
+      return false;
+    }
+    final List<LocatedBlock> list = blocks.getLocatedBlocks();
+    if (list.isEmpty()) {
+      return blocks.getFileLength() == 0;
+    }
+    final LocatedBlock last = list.get(list.size() - 1);
+    return list.get(0).getStartOffset() == 0
+        && last.getStartOffset() + last.getBlockSize()
+            == blocks.getFileLength();
+  }
+
+  private static boolean isSameFile(LocatedBlocks b1, LocatedBlocks b2) {
+    if (b1.getFileLength() != b2.getFileLength()
+        || b1.locatedBlockCount() != b2.locatedBlockCount()) {
+      return false;
+    }
+    for (int i = 0; i < b1.locatedBlockCount(); i++) {
+      if (!b1.get(i).getBlock().equals(b2.get(i).getBlock())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Invalidate the metadata of a path, and of all the paths under it. */
+  public synchronized void invalidate(String namespace, String src) {
+    nextGeneration(namespace);
+    final String key = getKey(namespace, src);
+    if (entries.remove(key) != null) {
+      keys.remove(key);
+      invalidations.incrementAndGet();
+    }
+    // The keys under the path are between path + '/' and path + '0'.
+    final String dir = key.endsWith("/") ? key : key + "/";
+    final Iterator<String> it = keys.subSet(dir,
+        dir.substring(0, dir.length() - 1) + '0').iterator();
+    while (it.hasNext()) {
+      entries.remove(it.next());
+      it.remove();
+      invalidations.incrementAndGet();
+    }
+  }
+
+  /** Invalidate the metadata of all the paths of a namespace. */
+  public synchronized void invalidateAll(String namespace) {
+    nextGeneration(namespace);
+    final Iterator<String> it = keys.subSet(namespace + "/",
+        namespace + "0").iterator();
+    while (it.hasNext()) {
+      entries.remove(it.next());
+      it.remove();
+      invalidations.incrementAndGet();
+    }
+  }
+
+  @VisibleForTesting
+  synchronized int size() {
+    return entries.size();
+  }
+
+  /** @return the number of lookups answered, i.e. namenode calls saved. */
+  public long getHits() {
+    return hits.get();
+  }
+
+  /** @return the number of lookups which had to call the namenode. */
+  public long getMisses() {
+    return misses.get();
+  }
+
+  /** @return the number of entries evicted to make room for others. */
+  public long getEvictions() {
+    return evictions.get();
+  }
+
+  /** @return the number of entries invalidated by changes to the files. */
+  public long getInvalidations() {
+    return invalidations.get();
+  }
+
+  /**
+   * Follow the inotify events of a namenode to invalidate the paths changed
+   * by other clients.  Reading the events requires superuser privilege; the
+   * invalidator stops if the user of the DFSClient does not have it.  If
+   * events are lost, all the paths of the namenode are invalidated.
+   */
+  static class InotifyInvalidator implements Runnable {
+    private static final long POLL_INTERVAL_MS = 1000;
+
+    private final DFSClient dfsClient;
+    private final FileMetadataCache cache;
+    private final String namespace;
+
+    InotifyInvalidator(DFSClient dfsClient, FileMetadataCache cache,
+        String namespace) {
+      this.dfsClient = dfsClient;
+      this.cache = cache;
+      this.namespace = namespace;
+    }
+
+    @Override
+    public void run() {
+      final DFSInotifyEventInputStream events;
+      try {
+        events = dfsClient.getInotifyEventStream();
+      } catch (AccessControlException e) {
+        LOG.warn("Cannot follow the inotify events of {} to invalidate the "
+            + "file metadata cache: {}", namespace, e.getMessage());
+        return;
+      } catch (IOException e) {
+        LOG.warn("Cannot follow the inotify events of {}", namespace, e);
+        return;
+      }
+      while (!Thread.currentThread().isInterrupted()) {
+        try {
+          final EventBatch batch = events.poll();
+          if (batch == null) {
+            // Unlike take(), do not back off for minutes when idle.
+            Thread.sleep(POLL_INTERVAL_MS);
+            continue;
+          }
+          for (Event event : batch.getEvents()) {
+            invalidate(event);
+          }
+        } catch (MissingEventsException e) {
+          LOG.warn("Missed inotify events of {}, invalidating all its "
+              + "cached file metadata: {}", namespace, e.getMessage());
+          cache.invalidateAll(namespace);
+        } catch (InterruptedException e) {
+          break;
+        } catch (IOException e) {
+          LOG.warn("Failed to read the inotify events of {}", namespace, e);
+          cache.invalidateAll(namespace);
+          try {
+            Thread.sleep(POLL_INTERVAL_MS);
+          } catch (InterruptedException ie) {
+            break;
+          }
+        }
+      }
+      LOG.debug("Stopped following the inotify events of {}", namespace);
+    }
+
+    private void invalidate(Event event) {
+      switch (event.getEventType()) {
+      case CREATE:
+        cache.invalidate(namespace, ((Event.CreateEvent) event).getPath());
+        break;
+      case CLOSE:
+        cache.invalidate(namespace, ((Event.CloseEvent) event).getPath());
+        break;
+      case APPEND:
+        cache.invalidate(namespace, ((Event.AppendEvent) event).getPath());
+        break;
+      case RENAME:
+        cache.invalidate(namespace,
+            ((Event.RenameEvent) event).getSrcPath());
+        cache.invalidate(namespace,
+            ((Event.RenameEvent) event).getDstPath());
+        break;
+      case METADATA:
+        cache.invalidate(namespace,
+            ((Event.MetadataUpdateEvent) event).getPath());
+        break;
+      case UNLINK:
+        cache.invalidate(namespace, ((Event.UnlinkEvent) event).getPath());
+        break;
+      case TRUNCATE:
+        cache.invalidate(namespace, ((Event.TruncateEvent) event).getPath());
+        break;
+      default:
+        break;
+      }
+    }
+  }
+}
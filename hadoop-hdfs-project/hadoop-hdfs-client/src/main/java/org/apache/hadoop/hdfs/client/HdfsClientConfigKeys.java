@@ -452,6 +452,57 @@ interface HedgedRead {
     int     THREADPOOL_SIZE_DEFAULT = 0;
   }
 
+  /** dfs.client.datanode.latency configuration properties */
+  interface DataNodeLatency {
+    String PREFIX = HdfsClientConfigKeys.PREFIX + "datanode.latency.";
+
+    String  TRACKING_ENABLED_KEY = PREFIX + "tracking.enabled";
+    boolean TRACKING_ENABLED_DEFAULT = false;
+    String  WINDOW_MS_KEY = PREFIX + "window.ms";
+    long    WINDOW_MS_DEFAULT = 60 * 1000;
+    String  MIN_SAMPLES_KEY = PREFIX + "min.samples";
+    int     MIN_SAMPLES_DEFAULT = 20;
+    String  SLOW_NODE_FACTOR_KEY = PREFIX + "slow.node.factor";
+    float   SLOW_NODE_FACTOR_DEFAULT = 3.0f;
+    String  MIN_HEDGE_THRESHOLD_MILLIS_KEY =
+        PREFIX + "min.hedge.threshold.millis";
+    long    MIN_HEDGE_THRESHOLD_MILLIS_DEFAULT = 10;
+  }
+
+  /** dfs.client.file.metadata.cache configuration properties */
+  interface MetadataCache {
+    String PREFIX = HdfsClientConfigKeys.PREFIX + "file.metadata.cache.";
+
+    String  ENABLED_KEY = PREFIX + "enabled";
+    boolean ENABLED_DEFAULT = false;
+    String  TTL_MS_KEY = PREFIX + "ttl.ms";
+    long    TTL_MS_DEFAULT = 60 * 1000;
+    String  MAX_ENTRIES_KEY = PREFIX + "max.entries";
+    int     MAX_ENTRIES_DEFAULT = 10000;
+    String  INOTIFY_ENABLED_KEY = PREFIX + "inotify.enabled";
+    boolean INOTIFY_ENABLED_DEFAULT = false;
+  }
+
+  /** dfs.client.vectored.read configuration properties */
+  interface VectoredRead {
+    String PREFIX = HdfsClientConfigKeys.PREFIX + "vectored.read.";
+
+    String  THREADPOOL_SIZE_KEY = PREFIX + "threadpool.size";
+    int     THREADPOOL_SIZE_DEFAULT = 16;
+    String  MIN_SEEK_SIZE_KEY = PREFIX + "min.seek.size";
+    int     MIN_SEEK_SIZE_DEFAULT = 64 * 1024;
+    String  MAX_MERGED_SIZE_KEY = PREFIX + "max.merged.size";
+    int     MAX_MERGED_SIZE_DEFAULT = 1024 * 1024;
+  }
+
+  /** dfs.client.parallel.write configuration properties */
+  interface ParallelWrite {
+    String PREFIX = HdfsClientConfigKeys.PREFIX + "parallel.write.";
+
+    String  BUFFER_SIZE_KEY = PREFIX + "buffer.size";
+    long    BUFFER_SIZE_DEFAULT = 256 * 1024 * 1024;
+  }
+
   /** dfs.http.client configuration properties */
   interface HttpClient {
     String  PREFIX = "dfs.http.client.";
@@ -80,12 +80,16 @@
 import static org.apache.hadoop.hdfs.client.HdfsClientConfigKeys.DFS_REPLICATION_KEY;
 import static org.apache.hadoop.hdfs.client.HdfsClientConfigKeys.DFS_SHORT_CIRCUIT_SHARED_MEMORY_WATCHER_INTERRUPT_CHECK_MS;
 import static org.apache.hadoop.hdfs.client.HdfsClientConfigKeys.DFS_SHORT_CIRCUIT_SHARED_MEMORY_WATCHER_INTERRUPT_CHECK_MS_DEFAULT;
+import static org.apache.hadoop.hdfs.client.HdfsClientConfigKeys.DataNodeLatency;
 import static org.apache.hadoop.hdfs.client.HdfsClientConfigKeys.Failover;
 import static org.apache.hadoop.hdfs.client.HdfsClientConfigKeys.HedgedRead;
+import static org.apache.hadoop.hdfs.client.HdfsClientConfigKeys.MetadataCache;
 import static org.apache.hadoop.hdfs.client.HdfsClientConfigKeys.Mmap;
+import static org.apache.hadoop.hdfs.client.HdfsClientConfigKeys.ParallelWrite;
 import static org.apache.hadoop.hdfs.client.HdfsClientConfigKeys.Read;
 import static org.apache.hadoop.hdfs.client.HdfsClientConfigKeys.Retry;
 import static org.apache.hadoop.hdfs.client.HdfsClientConfigKeys.ShortCircuit;
+import static org.apache.hadoop.hdfs.client.HdfsClientConfigKeys.VectoredRead;
 import static org.apache.hadoop.hdfs.client.HdfsClientConfigKeys.Write;
 
 import java.util.ArrayList;
@@ -139,6 +143,19 @@ public class DfsClientConf {
 
   private final long hedgedReadThresholdMillis;
   private final int hedgedReadThreadpoolSize;
+  private final boolean dataNodeLatencyTrackingEnabled;
+  private final long dataNodeLatencyWindowMs;
+  private final int dataNodeLatencyMinSamples;
+  private final float dataNodeLatencySlowNodeFactor;
+  private final long minHedgedReadThresholdMillis;
+  private final boolean fileMetadataCacheEnabled;
+  private final long fileMetadataCacheTtlMs;
+  private final int fileMetadataCacheMaxEntries;
+  private final boolean fileMetadataCacheInotifyEnabled;
+  private final int vectoredReadThreadpoolSize;
+  private final int vectoredReadMinSeekSize;
+  private final int vectoredReadMaxMergedSize;
+  private final long parallelWriteBufferSize;
   private final List<Class<? extends ReplicaAccessorBuilder>>
       replicaAccessorBuilderClasses;
 
@@ -267,6 +284,45 @@ public DfsClientConf(Configuration conf) {
     hedgedReadThreadpoolSize = conf.getInt(
         HdfsClientConfigKeys.HedgedRead.THREADPOOL_SIZE_KEY,
         HdfsClientConfigKeys.HedgedRead.THREADPOOL_SIZE_DEFAULT);
+    dataNodeLatencyTrackingEnabled = conf.getBoolean(
+        DataNodeLatency.TRACKING_ENABLED_KEY,
+        DataNodeLatency.TRACKING_ENABLED_DEFAULT);
+    dataNodeLatencyWindowMs = conf.getLong(
+        DataNodeLatency.WINDOW_MS_KEY,
+        DataNodeLatency.WINDOW_MS_DEFAULT);
+    dataNodeLatencyMinSamples = conf.getInt(
+        DataNodeLatency.MIN_SAMPLES_KEY,
+        DataNodeLatency.MIN_SAMPLES_DEFAULT);
+    dataNodeLatencySlowNodeFactor = conf.getFloat(
+        DataNodeLatency.SLOW_NODE_FACTOR_KEY,
+        DataNodeLatency.SLOW_NODE_FACTOR_DEFAULT);
+    minHedgedReadThresholdMillis = conf.getLong(
+        DataNodeLatency.MIN_HEDGE_THRESHOLD_MILLIS_KEY,
+        DataNodeLatency.MIN_HEDGE_THRESHOLD_MILLIS_DEFAULT);
+    fileMetadataCacheEnabled = conf.getBoolean(
+        MetadataCache.ENABLED_KEY,
+        MetadataCache.ENABLED_DEFAULT);
+    fileMetadataCacheTtlMs = conf.getLong(
+        MetadataCache.TTL_MS_KEY,
+        MetadataCache.TTL_MS_DEFAULT);
+    fileMetadataCacheMaxEntries = conf.getInt(
+        MetadataCache.MAX_ENTRIES_KEY,
+        MetadataCache.MAX_ENTRIES_DEFAULT);
+    fileMetadataCacheInotifyEnabled = conf.getBoolean(
+        MetadataCache.INOTIFY_ENABLED_KEY,
+        MetadataCache.INOTIFY_ENABLED_DEFAULT);
+    vectoredReadThreadpoolSize = conf.getInt(
+        VectoredRead.THREADPOOL_SIZE_KEY,
+        VectoredRead.THREADPOOL_SIZE_DEFAULT);
+    vectoredReadMinSeekSize = conf.getInt(
+        VectoredRead.MIN_SEEK_SIZE_KEY,
+        VectoredRead.MIN_SEEK_SIZE_DEFAULT);
+    vectoredReadMaxMergedSize = conf.getInt(
+        VectoredRead.MAX_MERGED_SIZE_KEY,
+        VectoredRead.MAX_MERGED_SIZE_DEFAULT);
+    parallelWriteBufferSize = conf.getLongBytes(
+        ParallelWrite.BUFFER_SIZE_KEY,
+        ParallelWrite.BUFFER_SIZE_DEFAULT);
 
     deadNodeDetectionEnabled =
         conf.getBoolean(DFS_CLIENT_DEAD_NODE_DETECTION_ENABLED_KEY,
@@ -590,6 +646,97 @@ public int getHedgedReadThreadpoolSize() {
     return hedgedReadThreadpoolSize;
   }
 
+  /**
+   * @return the dataNodeLatencyTrackingEnabled
+   */
+  public boolean isDataNodeLatencyTrackingEnabled() {
+    return dataNodeLatencyTrackingEnabled;
+  }
+
+  /**
+   * @return the dataNodeLatencyWindowMs
+   */
+  public long getDataNodeLatencyWindowMs() {
+    return dataNodeLatencyWindowMs;
+  }
+
+  /**
+   * @return the dataNodeLatencyMinSamples
+   */
+  public int getDataNodeLatencyMinSamples() {
+    return dataNodeLatencyMinSamples;
+  }
+
+  /**
+   * @return the dataNodeLatencySlowNodeFactor
+   */
+  public float getDataNodeLatencySlowNodeFactor() {
+    return dataNodeLatencySlowNodeFactor;
+  }
+
+  /**
+   * @return the minHedgedReadThresholdMillis
+   */
+  public long getMinHedgedReadThresholdMillis() {
+    return minHedgedReadThresholdMillis;
+  }
+
+  /**
+   * @return the fileMetadataCacheEnabled
+   */
+  public boolean isFileMetadataCacheEnabled() {
+    return fileMetadataCacheEnabled;
+  }
+
+  /**
+   * @return the fileMetadataCacheTtlMs
+   */
+  public long getFileMetadataCacheTtlMs() {
+    return fileMetadataCacheTtlMs;
+  }
+
+  /**
+   * @return the fileMetadataCacheMaxEntries
+   */
+  public int getFileMetadataCacheMaxEntries() {
+    return fileMetadataCacheMaxEntries;
+  }
+
+  /**
+   * @return the fileMetadataCacheInotifyEnabled
+   */
+  public boolean isFileMetadataCacheInotifyEnabled() {
+    return fileMetadataCacheInotifyEnabled;
+  }
+
+  /**
+   * @return the vectoredReadThreadpoolSize
+   */
+  public int getVectoredReadThreadpoolSize() {
+    return vectoredReadThreadpoolSize;
+  }
+
+  /**
+   * @return the vectoredReadMinSeekSize
+   */
+  public int getVectoredReadMinSeekSize() {
+    return vectoredReadMinSeekSize;
+  }
+
+  /**
+   * @return the vectoredReadMaxMergedSize
+   */
+  public int getVectoredReadMaxMergedSize() {
+    return vectoredReadMaxMergedSize;
+  }
+
+  /**
+   * @return the parallelWriteBufferSize
+   */
+  public long getParallelWriteBufferSize() {
+    return parallelWriteBufferSize;
+  }
+
   /**
    * @return the leaseHardLimitPeriod
    */
@@ -142,6 +142,12 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String  DFS_NAMENODE_PATH_BASED_CACHE_BLOCK_MAP_ALLOCATION_PERCENT =
     "dfs.namenode.path.based.cache.block.map.allocation.percent";
   public static final float    DFS_NAMENODE_PATH_BASED_CACHE_BLOCK_MAP_ALLOCATION_PERCENT_DEFAULT = 0.25f;
+  public static final String  DFS_NAMENODE_INODE_MAP_ALLOCATION_PERCENT =
+    "dfs.namenode.inode.map.allocation.percent";
+  public static final float    DFS_NAMENODE_INODE_MAP_ALLOCATION_PERCENT_DEFAULT = 1.0f;
+  public static final String  DFS_NAMENODE_BLOCKS_MAP_ALLOCATION_PERCENT =
+    "dfs.namenode.blocks.map.allocation.percent";
+  public static final float    DFS_NAMENODE_BLOCKS_MAP_ALLOCATION_PERCENT_DEFAULT = 2.0f;
 
   public static final int     DFS_NAMENODE_HTTP_PORT_DEFAULT =
       HdfsClientConfigKeys.DFS_NAMENODE_HTTP_PORT_DEFAULT;
@@ -289,6 +295,9 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final int     DFS_NAMENODE_EDITS_DIR_MINIMUM_DEFAULT = 1;
   public static final String  DFS_NAMENODE_QUOTA_INIT_THREADS_KEY = "dfs.namenode.quota.init-threads";
   public static final int     DFS_NAMENODE_QUOTA_INIT_THREADS_DEFAULT = 4;
+  public static final String
+      DFS_NAMENODE_QUOTA_USAGE_TRACKED_DIRECTORIES_KEY =
+      "dfs.namenode.quota.usage.tracked.directories";
 
   public static final String  DFS_NAMENODE_EDIT_LOG_AUTOROLL_MULTIPLIER_THRESHOLD = "dfs.namenode.edit.log.autoroll.multiplier.threshold";
   public static final float
@@ -305,9 +314,32 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String  DFS_NAMENODE_EDITS_ASYNC_LOGGING =
       "dfs.namenode.edits.asynclogging";
   public static final boolean DFS_NAMENODE_EDITS_ASYNC_LOGGING_DEFAULT = true;
+  public static final String
+      DFS_NAMENODE_EDITS_ASYNC_LOGGING_PENDING_QUEUE_SIZE =
+      "dfs.namenode.edits.asynclogging.pending.queue.size";
+  public static final int
+      DFS_NAMENODE_EDITS_ASYNC_LOGGING_PENDING_QUEUE_SIZE_DEFAULT = 4096;
+  public static final String
+      DFS_NAMENODE_EDITS_ASYNC_LOGGING_PIPELINED_SYNC =
+      "dfs.namenode.edits.asynclogging.pipelined.sync";
+  public static final boolean
+      DFS_NAMENODE_EDITS_ASYNC_LOGGING_PIPELINED_SYNC_DEFAULT = false;
+  public static final String
+      DFS_NAMENODE_EDITS_REPLAY_DECODE_QUEUE_SIZE =
+      "dfs.namenode.edits.replay.decode.queue.size";
+  public static final int
+      DFS_NAMENODE_EDITS_REPLAY_DECODE_QUEUE_SIZE_DEFAULT = 0;
 
   public static final String  DFS_LIST_LIMIT = "dfs.ls.limit";
   public static final int     DFS_LIST_LIMIT_DEFAULT = 1000;
+  public static final String  DFS_NAMENODE_FILE_STATUS_CACHE_ENABLED_KEY =
+      "dfs.namenode.file.status.cache.enabled";
+  public static final boolean DFS_NAMENODE_FILE_STATUS_CACHE_ENABLED_DEFAULT =
+      false;
+  public static final String  DFS_NAMENODE_FILE_STATUS_CACHE_SIZE_KEY =
+      "dfs.namenode.file.status.cache.size";
+  public static final long    DFS_NAMENODE_FILE_STATUS_CACHE_SIZE_DEFAULT =
+      100000;
   public static final String  DFS_CONTENT_SUMMARY_LIMIT_KEY = "dfs.content-summary.limit";
   public static final int     DFS_CONTENT_SUMMARY_LIMIT_DEFAULT = 5000;
   public static final String  DFS_CONTENT_SUMMARY_SLEEP_MICROSEC_KEY = "dfs.content-summary.sleep-microsec";
@@ -317,6 +349,10 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String
       DFS_DATANODE_VOLUMES_REPLICA_ADD_THREADPOOL_SIZE_KEY =
       "dfs.datanode.volumes.replica-add.threadpool.size";
+  public static final String  DFS_DATANODE_REPLICA_JOURNAL_ENABLED_KEY = "dfs.datanode.replica.journal.enabled";
+  public static final boolean DFS_DATANODE_REPLICA_JOURNAL_ENABLED_DEFAULT = false;
+  public static final String  DFS_DATANODE_REPLICA_JOURNAL_COMPACTION_RECORDS_KEY = "dfs.datanode.replica.journal.compaction.records";
+  public static final long    DFS_DATANODE_REPLICA_JOURNAL_COMPACTION_RECORDS_DEFAULT = 64 * 1024;
   public static final String  DFS_DATANODE_SYNCONCLOSE_KEY = "dfs.datanode.synconclose";
   public static final boolean DFS_DATANODE_SYNCONCLOSE_DEFAULT = false;
   public static final String  DFS_DATANODE_SOCKET_REUSE_KEEPALIVE_KEY = "dfs.datanode.socket.reuse.keepalive";
@@ -395,6 +431,24 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String DFS_NAMENODE_REPLICATION_WORK_MULTIPLIER_PER_ITERATION =
       "dfs.namenode.replication.work.multiplier.per.iteration";
   public static final int DFS_NAMENODE_REPLICATION_WORK_MULTIPLIER_PER_ITERATION_DEFAULT = 2;
+  public static final String DFS_NAMENODE_REPLICATION_WORK_THREADS_KEY =
+      "dfs.namenode.replication.work.threads";
+  public static final int DFS_NAMENODE_REPLICATION_WORK_THREADS_DEFAULT = 1;
+  public static final String
+      DFS_NAMENODE_REPLICATION_MAX_INFLIGHT_BYTES_PER_NODE_KEY =
+      "dfs.namenode.replication.max-inflight-bytes-per-node";
+  public static final long
+      DFS_NAMENODE_REPLICATION_MAX_INFLIGHT_BYTES_PER_NODE_DEFAULT = 0;
+  public static final String
+      DFS_NAMENODE_REPLICATION_MAX_INFLIGHT_BYTES_PER_RACK_KEY =
+      "dfs.namenode.replication.max-inflight-bytes-per-rack";
+  public static final long
+      DFS_NAMENODE_REPLICATION_MAX_INFLIGHT_BYTES_PER_RACK_DEFAULT = 0;
+  public static final String
+      DFS_NAMENODE_REPLICATION_MAX_INFLIGHT_BYTES_PER_VOLUME_KEY =
+      "dfs.namenode.replication.max-inflight-bytes-per-volume";
+  public static final long
+      DFS_NAMENODE_REPLICATION_MAX_INFLIGHT_BYTES_PER_VOLUME_DEFAULT = 0;
 
   //Delegation token related keys
   public static final String  DFS_NAMENODE_DELEGATION_KEY_UPDATE_INTERVAL_KEY = "dfs.namenode.delegation.key.update-interval";
@@ -581,6 +635,16 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
       "dfs.datanode.directoryscan.throttle.limit.ms.per.sec";
   public static final int
       DFS_DATANODE_DIRECTORYSCAN_THROTTLE_LIMIT_MS_PER_SEC_DEFAULT = 1000;
+  public static final String
+      DFS_DATANODE_DIRECTORYSCAN_INCREMENTAL_SUBDIRS_KEY =
+      "dfs.datanode.directoryscan.incremental.subdirs";
+  public static final int
+      DFS_DATANODE_DIRECTORYSCAN_INCREMENTAL_SUBDIRS_DEFAULT = 0;
+  public static final String
+      DFS_DATANODE_DIRECTORYSCAN_INCREMENTAL_INTERVAL_KEY =
+      "dfs.datanode.directoryscan.incremental.interval";
+  public static final int
+      DFS_DATANODE_DIRECTORYSCAN_INCREMENTAL_INTERVAL_DEFAULT = 60;
   public static final String  DFS_DATANODE_DNS_INTERFACE_KEY = "dfs.datanode.dns.interface";
   public static final String  DFS_DATANODE_DNS_INTERFACE_DEFAULT = "default";
   public static final String  DFS_DATANODE_DNS_NAMESERVER_KEY = "dfs.datanode.dns.nameserver";
@@ -619,6 +683,12 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
       TimeUnit.SECONDS.toMillis(5);
   public static final String  DFS_DATANODE_TRANSFERTO_ALLOWED_KEY = "dfs.datanode.transferTo.allowed";
   public static final boolean DFS_DATANODE_TRANSFERTO_ALLOWED_DEFAULT = true;
+  public static final String  DFS_DATANODE_MMAP_READS_ENABLED_KEY = "dfs.datanode.mmap.reads.enabled";
+  public static final boolean DFS_DATANODE_MMAP_READS_ENABLED_DEFAULT = false;
+  public static final String  DFS_DATANODE_PACKET_WRITER_THREADS_PER_VOLUME_KEY = "dfs.datanode.packet.writer.threads.per.volume";
+  public static final int     DFS_DATANODE_PACKET_WRITER_THREADS_PER_VOLUME_DEFAULT = 0;
+  public static final String  DFS_DATANODE_PACKET_WRITER_COALESCE_BYTES_KEY = "dfs.datanode.packet.writer.coalesce.bytes";
+  public static final int     DFS_DATANODE_PACKET_WRITER_COALESCE_BYTES_DEFAULT = 1024 * 1024;
   public static final String  DFS_HEARTBEAT_INTERVAL_KEY = "dfs.heartbeat.interval";
   public static final long    DFS_HEARTBEAT_INTERVAL_DEFAULT = 3;
   public static final String  DFS_DATANODE_LIFELINE_INTERVAL_SECONDS_KEY =
@@ -695,6 +765,12 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final int     DFS_NAMENODE_MAX_FULL_BLOCK_REPORT_LEASES_DEFAULT = 6;
   public static final String  DFS_NAMENODE_FULL_BLOCK_REPORT_LEASE_LENGTH_MS = "dfs.namenode.full.block.report.lease.length.ms";
   public static final long    DFS_NAMENODE_FULL_BLOCK_REPORT_LEASE_LENGTH_MS_DEFAULT = 5L * 60L * 1000L;
+  public static final String  DFS_NAMENODE_BLOCKREPORT_CHUNK_SIZE_KEY = "dfs.namenode.blockreport.chunk.size";
+  public static final int     DFS_NAMENODE_BLOCKREPORT_CHUNK_SIZE_DEFAULT = 0;
+  public static final String  DFS_NAMENODE_BLOCKREPORT_QUEUE_SIZE_KEY = "dfs.namenode.blockreport.queue.size";
+  public static final int     DFS_NAMENODE_BLOCKREPORT_QUEUE_SIZE_DEFAULT = 1024;
+  public static final String  DFS_NAMENODE_BLOCKREPORT_MAX_LOCK_HOLD_TIME_KEY = "dfs.namenode.blockreport.max.lock.hold.time";
+  public static final long    DFS_NAMENODE_BLOCKREPORT_MAX_LOCK_HOLD_TIME_DEFAULT = 4;
   public static final String  DFS_CACHEREPORT_INTERVAL_MSEC_KEY = "dfs.cachereport.intervalMsec";
   public static final long    DFS_CACHEREPORT_INTERVAL_MSEC_DEFAULT = 10 * 1000;
   public static final String  DFS_BLOCK_INVALIDATE_LIMIT_KEY = "dfs.block.invalidate.limit";
@@ -42,6 +42,9 @@
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
@@ -108,6 +111,7 @@
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -196,6 +200,25 @@ public long getScheduledReplicationBlocksCount() {
     return scheduledReplicationBlocksCount;
   }
   /** Used by metrics */
+  public double getReplicationRecoveryBytesPerSec() {
+    return replicationBudget.getBytesPerSec();
+  }
+  /**
+   * Used by metrics.
+   * @return the estimated seconds to replicate the blocks which are under
+   *         replicated or pending replication, at the recent rate of the
+   *         replication, or -1 if nothing was replicated recently.
+   */
+  public long getReplicationQueueEtaSeconds() {
+    final long queued = underReplicatedBlocksCount
+        + pendingReplicationBlocksCount;
+    if (queued == 0) {
+      return 0;
+    }
+    final double rate = replicationBudget.getTransfersPerSec();
+    return rate > 0 ? (long) Math.ceil(queued / rate) : -1;
+  }
+  /** Used by metrics */
   public long getPendingDeletionBlocksCount() {
     return invalidateBlocks.numBlocks();
   }
@@ -235,8 +258,7 @@ public long getNumTimedOutPendingReplications() {
   private final AtomicLong lastReplicationCycleTS = new AtomicLong(-1);
   
   /** Block report thread for handling async reports. */
-  private final BlockReportProcessingThread blockReportThread =
-      new BlockReportProcessingThread();
+  private final BlockReportProcessingThread blockReportThread;
 
   /** Store blocks -> datanodedescriptor(s) map of corrupt replicas */
   final CorruptReplicasMap corruptReplicas = new CorruptReplicasMap();
@@ -272,6 +294,9 @@ public long getNumTimedOutPendingReplications() {
   @VisibleForTesting
   final PendingReplicationBlocks pendingReplications;
 
+  /** The bytes in flight of the replication transfers, and their budgets. */
+  private final ReplicationBandwidthBudget replicationBudget;
+
   /** Stores information about block recovery attempts. */
   private final PendingRecoveryBlocks pendingRecoveryBlocks;
 
@@ -296,6 +321,13 @@ public long getNumTimedOutPendingReplications() {
 
   final float blocksInvalidateWorkPct;
   final int blocksReplWorkMultiplier;
+  /** The number of threads which compute the replication work. */
+  private final int replicationWorkThreads;
+  /**
+   * The workers of the replication monitor, when the replication work is
+   * computed by several threads.
+   */
+  private final ExecutorService replicationWorkers;
 
   // whether or not to issue block encryption keys.
   final boolean encryptDataTransfer;
@@ -303,6 +335,18 @@ public long getNumTimedOutPendingReplications() {
   // Max number of blocks to log info about during a block report.
   private final long maxNumBlocksToLog;
 
+  /**
+   * Number of reported blocks of a full block report processed under one
+   * hold of the namesystem write lock, 0 for the whole storage report.
+   */
+  private final int blockReportChunkSize;
+  /**
+   * When the namesystem write lock was last acquired to process a block
+   * report.  The block reports are processed one at a time by the
+   * {@link BlockReportProcessingThread}.
+   */
+  private long blockReportLockStartNanos;
+
   /**
    * When running inside a Standby node, the node may receive block reports
    * from datanodes before receiving the corresponding namespace edits from
@@ -367,17 +411,23 @@ public BlockManager(final Namesystem namesystem, boolean haEnabled,
         datanodeManager.getBlockInvalidateLimit(),
         startupDelayBlockDeletionInMs);
 
-    // Compute the map capacity by allocating 2% of total memory
+    // Compute the map capacity by allocating a percentage of total memory,
+    // 2% by default
+    final float blocksMapPercent = conf.getFloat(
+        DFSConfigKeys.DFS_NAMENODE_BLOCKS_MAP_ALLOCATION_PERCENT,
+        DFSConfigKeys.DFS_NAMENODE_BLOCKS_MAP_ALLOCATION_PERCENT_DEFAULT);
     blocksMap = new BlocksMap(
-        LightWeightGSet.computeCapacity(2.0, "BlocksMap"));
+        LightWeightGSet.computeCapacity(blocksMapPercent, "BlocksMap"));
     blockplacement = BlockPlacementPolicy.getInstance(
       conf, datanodeManager.getFSClusterStats(),
       datanodeManager.getNetworkTopology(),
       datanodeManager.getHost2DatanodeMap());
     storagePolicySuite = BlockStoragePolicySuite.createDefaultSuite();
+    replicationBudget = new ReplicationBandwidthBudget(conf);
     pendingReplications = new PendingReplicationBlocks(conf.getInt(
       DFSConfigKeys.DFS_NAMENODE_REPLICATION_PENDING_TIMEOUT_SEC_KEY,
-      DFSConfigKeys.DFS_NAMENODE_REPLICATION_PENDING_TIMEOUT_SEC_DEFAULT) * 1000L);
+      DFSConfigKeys.DFS_NAMENODE_REPLICATION_PENDING_TIMEOUT_SEC_DEFAULT) * 1000L,
+        replicationBudget);
 
     blockTokenSecretManager = createBlockTokenSecretManager(conf);
 
@@ -417,6 +467,19 @@ public BlockManager(final Namesystem namesystem, boolean haEnabled,
             DFSConfigKeys.DFS_NAMENODE_REPLICATION_STREAMS_HARD_LIMIT_DEFAULT);
     this.blocksInvalidateWorkPct = DFSUtil.getInvalidateWorkPctPerIteration(conf);
     this.blocksReplWorkMultiplier = DFSUtil.getReplWorkMultiplier(conf);
+    this.replicationWorkThreads = conf.getInt(
+        DFSConfigKeys.DFS_NAMENODE_REPLICATION_WORK_THREADS_KEY,
+        DFSConfigKeys.DFS_NAMENODE_REPLICATION_WORK_THREADS_DEFAULT);
+    if (replicationWorkThreads < 1) {
+      throw new IOException("Unexpected configuration parameters: "
+          + DFSConfigKeys.DFS_NAMENODE_REPLICATION_WORK_THREADS_KEY
+          + " = " + replicationWorkThreads + " < 1");
+    }
+    // The threads of the pool are only started by the first replication work.
+    this.replicationWorkers = replicationWorkThreads == 1 ? null
+        : Executors.newFixedThreadPool(replicationWorkThreads,
+            new ThreadFactoryBuilder().setDaemon(true)
+                .setNameFormat("ReplicationMonitor-%d").build());
 
     this.replicationRecheckInterval = 
       conf.getInt(DFSConfigKeys.DFS_NAMENODE_REPLICATION_INTERVAL_KEY, 
@@ -429,6 +492,16 @@ public BlockManager(final Namesystem namesystem, boolean haEnabled,
     this.maxNumBlocksToLog =
         conf.getLong(DFSConfigKeys.DFS_MAX_NUM_BLOCKS_TO_LOG_KEY,
             DFSConfigKeys.DFS_MAX_NUM_BLOCKS_TO_LOG_DEFAULT);
+    this.blockReportChunkSize = conf.getInt(
+        DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_CHUNK_SIZE_KEY,
+        DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_CHUNK_SIZE_DEFAULT);
+    this.blockReportThread = new BlockReportProcessingThread(
+        conf.getInt(DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_QUEUE_SIZE_KEY,
+            DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_QUEUE_SIZE_DEFAULT),
+        conf.getTimeDuration(
+            DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_MAX_LOCK_HOLD_TIME_KEY,
+            DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_MAX_LOCK_HOLD_TIME_DEFAULT,
+            TimeUnit.MILLISECONDS));
     this.numBlocksPerIteration = conf.getInt(
         DFSConfigKeys.DFS_BLOCK_MISREPLICATION_PROCESSING_LIMIT,
         DFSConfigKeys.DFS_BLOCK_MISREPLICATION_PROCESSING_LIMIT_DEFAULT);
@@ -469,6 +542,8 @@ public BlockManager(final Namesystem namesystem, boolean haEnabled,
     LOG.info("minReplication             = " + minReplication);
     LOG.info("maxReplicationStreams      = " + maxReplicationStreams);
     LOG.info("replicationRecheckInterval = " + replicationRecheckInterval);
+    LOG.info("replicationWorkThreads     = " + replicationWorkThreads);
+    LOG.info("replicationBudget          = " + replicationBudget);
     LOG.info("encryptDataTransfer        = " + encryptDataTransfer);
     LOG.info("maxNumBlocksToLog          = " + maxNumBlocksToLog);
   }
@@ -600,6 +675,9 @@ public void close() {
       blockReportThread.join(3000);
     } catch (InterruptedException ie) {
     }
+    if (replicationWorkers != null) {
+      replicationWorkers.shutdownNow();
+    }
     datanodeManager.close();
     pendingReplications.stop();
     blocksMap.close();
@@ -636,29 +714,27 @@ public void metaSave(PrintWriter out) {
     // Need to iterate over all queues from neededReplications
     // except for the QUEUE_WITH_CORRUPT_BLOCKS)
     //
-    synchronized (neededReplications) {
-      out.println("Metasave: Blocks waiting for reconstruction: "
-          + neededReplications.getUnderReplicatedBlockCount());
-      for (int i = 0; i < neededReplications.LEVEL; i++) {
-        if (i != neededReplications.QUEUE_WITH_CORRUPT_BLOCKS) {
-          for (Iterator<BlockInfo> it = neededReplications.iterator(i);
-               it.hasNext();) {
-            Block block = it.next();
-            dumpBlockMeta(block, out);
-          }
+    out.println("Metasave: Blocks waiting for reconstruction: "
+        + neededReplications.getUnderReplicatedBlockCount());
+    for (int i = 0; i < neededReplications.LEVEL; i++) {
+      if (i != neededReplications.QUEUE_WITH_CORRUPT_BLOCKS) {
+        for (Iterator<BlockInfo> it = neededReplications.iterator(i);
+             it.hasNext();) {
+          Block block = it.next();
+          dumpBlockMeta(block, out);
         }
       }
-      //
-      // Now prints corrupt blocks separately
-      //
-      out.println("Metasave: Blocks currently missing: " +
-          neededReplications.getCorruptBlockSize());
-      for (Iterator<BlockInfo> it = neededReplications.
-          iterator(neededReplications.QUEUE_WITH_CORRUPT_BLOCKS);
-           it.hasNext();) {
-        Block block = it.next();
-        dumpBlockMeta(block, out);
-      }
+    }
+    //
+    // Now prints corrupt blocks separately
+    //
+    out.println("Metasave: Blocks currently missing: " +
+        neededReplications.getCorruptBlockSize());
+    for (Iterator<BlockInfo> it = neededReplications.
+        iterator(neededReplications.QUEUE_WITH_CORRUPT_BLOCKS);
+         it.hasNext();) {
+      Block block = it.next();
+      dumpBlockMeta(block, out);
     }
 
     // Dump any postponed over-replicated blocks
@@ -1540,6 +1616,7 @@ void updateState() {
     pendingReplicationBlocksCount = pendingReplications.size();
     underReplicatedBlocksCount = neededReplications.size();
     corruptReplicaBlocksCount = corruptReplicas.size();
+    replicationBudget.updateRate(Time.monotonicNow());
   }
 
   /** Return number of under-replicated but not missing blocks */
@@ -1578,19 +1655,41 @@ int computeInvalidateWork(int nodesToProcess) {
    * The number of process blocks equals either twice the number of live
    * data-nodes or the number of under-replicated blocks whichever is less.
    *
+   * The blocks are chosen without the namesystem lock. With several
+   * replication work threads, each thread chooses its share of the blocks
+   * and computes their replication work, so that the targets of the blocks
+   * are chosen in parallel.
+   *
    * @return number of blocks scheduled for replication during this iteration.
    */
   int computeReplicationWork(int blocksToProcess) {
-    List<List<BlockInfo>> blocksToReplicate = null;
-    namesystem.writeLock();
+    if (replicationWorkers == null) {
+      return computeReplicationWorkForBlocks(
+          neededReplications.chooseUnderReplicatedBlocks(blocksToProcess));
+    }
+    final int blocksPerThread = (blocksToProcess + replicationWorkThreads - 1)
+        / replicationWorkThreads;
+    final List<Future<Integer>> results = new ArrayList<>();
+    for (int i = 0; i < replicationWorkThreads; i++) {
+      results.add(replicationWorkers.submit(new Callable<Integer>() {
+        @Override
+        public Integer call() {
+          return computeReplicationWorkForBlocks(neededReplications
+              .chooseUnderReplicatedBlocks(blocksPerThread));
+        }
+      }));
+    }
+    int scheduledWork = 0;
     try {
-      // Choose the blocks to be replicated
-      blocksToReplicate = neededReplications
-          .chooseUnderReplicatedBlocks(blocksToProcess);
-    } finally {
-      namesystem.writeUnlock();
+      for (Future<Integer> result : results) {
+        scheduledWork += result.get();
+      }
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException ee) {
+      throw new RuntimeException(ee.getCause());
     }
-    return computeReplicationWorkForBlocks(blocksToReplicate);
+    return scheduledWork;
   }
 
   /** Replicate a set of blocks
@@ -1605,13 +1704,11 @@ int computeReplicationWorkForBlocks(List<List<BlockInfo>> blocksToReplicate) {
 
     namesystem.writeLock();
     try {
-      synchronized (neededReplications) {
-        for (int priority = 0; priority < blocksToReplicate.size(); priority++) {
-          for (BlockInfo block : blocksToReplicate.get(priority)) {
-            ReplicationWork rw = scheduleReplication(block, priority);
-            if (rw != null) {
-              work.add(rw);
-            }
+      for (int priority = 0; priority < blocksToReplicate.size(); priority++) {
+        for (BlockInfo block : blocksToReplicate.get(priority)) {
+          ReplicationWork rw = scheduleReplication(block, priority);
+          if (rw != null) {
+            work.add(rw);
           }
         }
       }
@@ -1619,6 +1716,10 @@ int computeReplicationWorkForBlocks(List<List<BlockInfo>> blocksToReplicate) {
       namesystem.writeUnlock();
     }
 
+    // The targets whose volumes or rack uplink are at their budget.
+    final Set<DatanodeDescriptor> saturatedNodes =
+        replicationBudget.getSaturatedNodes();
+    final Set<String> saturatedRacks = replicationBudget.getSaturatedRacks();
     final Set<Node> excludedNodes = new HashSet<>();
     for(ReplicationWork rw : work){
       // Exclude all of the containing nodes from being targets.
@@ -1627,6 +1728,13 @@ int computeReplicationWorkForBlocks(List<List<BlockInfo>> blocksToReplicate) {
       for (DatanodeDescriptor dn : rw.getContainingNodes()) {
         excludedNodes.add(dn);
       }
+      excludedNodes.addAll(saturatedNodes);
+      for (String rack : saturatedRacks) {
+        if (!rack.equals(rw.getSrcNode().getNetworkLocation())) {
+          excludedNodes.addAll(getDatanodeManager().getNetworkTopology()
+              .getDatanodesInRack(rack));
+        }
+      }
 
       // choose replication targets: NOT HOLDING THE GLOBAL LOCK
       rw.chooseTargets(blockplacement, storagePolicySuite, excludedNodes);
@@ -1641,10 +1749,8 @@ int computeReplicationWorkForBlocks(List<List<BlockInfo>> blocksToReplicate) {
           continue;
         }
 
-        synchronized (neededReplications) {
-          if (validateReplicationWork(rw)) {
-            scheduledWork++;
-          }
+        if (validateReplicationWork(rw)) {
+          scheduledWork++;
         }
       }
     } finally {
@@ -1701,7 +1807,7 @@ ReplicationWork scheduleReplication(BlockInfo block, int priority) {
     short requiredReplication = getExpectedLiveRedundancyNum(block,
         numReplicas);
     if (srcNode == null) { // block can not be replicated from any node
-      LOG.debug("Block " + block + " cannot be repl from any node");
+      LOG.debug("Block {} cannot be repl from any node", block);
       NameNode.getNameNodeMetrics().incNumTimesReReplicationNotScheduled();
       return null;
     }
@@ -1765,6 +1871,19 @@ private boolean validateReplicationWork(ReplicationWork rw) {
       }
     }
 
+    // Charge the transfers to the budgets, or leave the block for a later
+    // iteration if they would exceed them
+    final ReplicationBandwidthBudget.Transfer[] transfers =
+        replicationBudget.tryAcquire(rw.getSrcNode(), targets,
+            block.getNumBytes(),
+            priority == UnderReplicatedBlocks.QUEUE_HIGHEST_PRIORITY);
+    if (transfers == null) {
+      rw.resetTargets();
+      blockLog.debug("BLOCK* Postponing the replication of {}, the budget"
+          + " of bytes in flight is exhausted", block);
+      return false;
+    }
+
     // Add block to the to be replicated list
     rw.getSrcNode().addBlockToBeReplicated(block, targets);
     DatanodeStorageInfo.incrementBlocksScheduled(targets);
@@ -1772,8 +1891,7 @@ private boolean validateReplicationWork(ReplicationWork rw) {
     // Move the block-replication into a "pending" state.
     // The reason we use 'pending' is so we can retry
     // replications that fail after an appropriate amount of time.
-    pendingReplications.increment(block,
-        DatanodeStorageInfo.toDatanodeDescriptors(targets));
+    pendingReplications.increment(block, transfers);
     blockLog.debug("BLOCK* block {} is moved from neededReplications to "
         + "pendingReplications", block);
 
@@ -1948,6 +2066,10 @@ else if (node.isDecommissionInProgress()) {
       {
         continue;
       }
+      if (priority != UnderReplicatedBlocks.QUEUE_HIGHEST_PRIORITY
+          && !replicationBudget.isSourceAvailable(node)) {
+        continue; // already reached the bytes in flight limit
+      }
       // the block must not be scheduled for removal on srcNode
       if(excessBlocks != null && excessBlocks.contains(block))
         continue;
@@ -1972,6 +2094,17 @@ else if (node.isDecommissionInProgress()) {
         srcNode = node;
         continue;
       }
+      // with a budget of bytes in flight, spread the transfers over the
+      // nodes with the fewest bytes in flight
+      if (replicationBudget.isNodeBudgetEnabled()) {
+        final long diff = replicationBudget.getSourceBytes(node)
+            - replicationBudget.getSourceBytes(srcNode);
+        if (diff < 0
+            || (diff == 0 && ThreadLocalRandom.current().nextBoolean())) {
+          srcNode = node;
+        }
+        continue;
+      }
       // switch to a different node randomly
       // this to prevent from deterministically selecting the same node even
       // if the node failed to replicate the block on previous iterations
@@ -2165,6 +2298,7 @@ public boolean processReport(final DatanodeID nodeID,
       BlockReportContext context) throws IOException {
     namesystem.writeLock();
     final long startTime = Time.monotonicNow(); //after acquiring write lock
+    blockReportLockStartNanos = Time.monotonicNowNanos();
     final long endTime;
     DatanodeDescriptor node;
     Collection<Block> invalidatedBlocks = Collections.emptyList();
@@ -2212,6 +2346,7 @@ public boolean processReport(final DatanodeID nodeID,
       storageInfo.receivedBlockReport();
     } finally {
       endTime = Time.monotonicNow();
+      addBlockReportLockHold();
       namesystem.writeUnlock();
     }
 
@@ -2317,7 +2452,7 @@ Collection<Block> processReport(
     Collection<Block> toInvalidate = new LinkedList<Block>();
     Collection<BlockToMarkCorrupt> toCorrupt = new LinkedList<BlockToMarkCorrupt>();
     Collection<StatefulBlockInfo> toUC = new LinkedList<StatefulBlockInfo>();
-    reportDiff(storageInfo, report,
+    int numBlocksLogged = reportDiff(storageInfo, report,
         toAdd, toRemove, toInvalidate, toCorrupt, toUC);
 
     String strBlockReportId = "";
@@ -2327,17 +2462,11 @@ Collection<Block> processReport(
    
     DatanodeDescriptor node = storageInfo.getDatanodeDescriptor();
     // Process the blocks on each queue
-    for (StatefulBlockInfo b : toUC) { 
-      addStoredBlockUnderConstruction(b, storageInfo);
-    }
     for (Block b : toRemove) {
       removeStoredBlock(b, node);
     }
-    int numBlocksLogged = 0;
-    for (BlockInfo b : toAdd) {
-      addStoredBlock(b, storageInfo, null, numBlocksLogged < maxNumBlocksToLog);
-      numBlocksLogged++;
-    }
+    numBlocksLogged = processReportedBlocks(storageInfo,
+        toAdd, toCorrupt, toUC, numBlocksLogged);
     if (numBlocksLogged > maxNumBlocksToLog) {
       blockLog.info("BLOCK* processReport 0x{}: logged info for {} of {} " +
           "reported.", strBlockReportId, maxNumBlocksToLog, numBlocksLogged);
@@ -2345,11 +2474,64 @@ Collection<Block> processReport(
     for (Block b : toInvalidate) {
       addToInvalidates(b, node);
     }
+
+    return toInvalidate;
+  }
+
+  /**
+   * Apply the reported blocks queued by {@link #reportDiff}, and clear the
+   * queues.
+   * @return the number of blocks added so far by the block report.
+   */
+  private int processReportedBlocks(DatanodeStorageInfo storageInfo,
+      Collection<BlockInfo> toAdd, Collection<BlockToMarkCorrupt> toCorrupt,
+      Collection<StatefulBlockInfo> toUC, int numBlocksLogged)
+      throws IOException {
+    DatanodeDescriptor node = storageInfo.getDatanodeDescriptor();
+    for (StatefulBlockInfo b : toUC) { 
+      addStoredBlockUnderConstruction(b, storageInfo);
+    }
+    for (BlockInfo b : toAdd) {
+      addStoredBlock(b, storageInfo, null, numBlocksLogged < maxNumBlocksToLog);
+      numBlocksLogged++;
+    }
     for (BlockToMarkCorrupt b : toCorrupt) {
       markBlockAsCorrupt(b, storageInfo, node);
     }
+    toUC.clear();
+    toAdd.clear();
+    toCorrupt.clear();
+    return numBlocksLogged;
+  }
 
-    return toInvalidate;
+  /**
+   * Release the namesystem write lock between two chunks of a block report,
+   * so that a large report does not hold up the other operations.
+   * @throws IOException if the storage was removed while the lock was
+   *         released.
+   */
+  private void yieldBlockReportLock(DatanodeStorageInfo storageInfo)
+      throws IOException {
+    addBlockReportLockHold();
+    namesystem.writeUnlock();
+    BlockManagerFaultInjector.getInstance().blockReportLockReleased();
+    namesystem.writeLock();
+    blockReportLockStartNanos = Time.monotonicNowNanos();
+    final DatanodeDescriptor node = storageInfo.getDatanodeDescriptor();
+    if (datanodeManager.getDatanode(node.getDatanodeUuid()) != node
+        || !node.isRegistered()
+        || node.getStorageInfo(storageInfo.getStorageID()) != storageInfo) {
+      throw new IOException("Storage " + storageInfo + " of " + node
+          + " was removed while processing its block report");
+    }
+  }
+
+  private void addBlockReportLockHold() {
+    final NameNodeMetrics metrics = NameNode.getNameNodeMetrics();
+    if (metrics != null) {
+      metrics.addBlockReportLockHold(TimeUnit.NANOSECONDS.toMicros(
+          Time.monotonicNowNanos() - blockReportLockStartNanos));
+    }
   }
 
   /**
@@ -2410,7 +2592,12 @@ private void processFirstBlockReport(
     assert (namesystem.hasWriteLock());
     assert (storageInfo.getBlockReportCount() == 0);
 
+    int numInChunk = 0;
     for (BlockReportReplica iblk : report) {
+      if (blockReportChunkSize > 0 && ++numInChunk > blockReportChunkSize) {
+        yieldBlockReportLock(storageInfo);
+        numInChunk = 1;
+      }
       ReplicaState reportedState = iblk.getState();
 
       if (LOG.isDebugEnabled()) {
@@ -2471,13 +2658,22 @@ private void processFirstBlockReport(
     }
   }
 
-  private void reportDiff(DatanodeStorageInfo storageInfo, 
+  /**
+   * Diff a block report with the blocks of the storage.  If
+   * {@link #blockReportChunkSize} is set, the reported blocks queued are
+   * applied, and the namesystem lock is released, after each chunk of the
+   * report; the blocks which have not been reported are only known once the
+   * whole report is scanned.
+   * @return the number of blocks added by the chunks already applied.
+   */
+  private int reportDiff(DatanodeStorageInfo storageInfo, 
       BlockListAsLongs newReport, 
       Collection<BlockInfo> toAdd,              // add to DatanodeDescriptor
       Collection<Block> toRemove,           // remove from DatanodeDescriptor
       Collection<Block> toInvalidate,       // should be removed from DN
       Collection<BlockToMarkCorrupt> toCorrupt, // add to corrupt replicas list
-      Collection<StatefulBlockInfo> toUC) { // add to under-construction list
+      Collection<StatefulBlockInfo> toUC) // add to under-construction list
+      throws IOException {
 
     // place a delimiter in the list which separates blocks 
     // that have been reported from those that have not
@@ -2491,26 +2687,51 @@ private void reportDiff(DatanodeStorageInfo storageInfo,
     if (newReport == null) {
       newReport = BlockListAsLongs.EMPTY;
     }
-    // scan the report and process newly reported blocks
-    for (BlockReportReplica iblk : newReport) {
-      ReplicaState iState = iblk.getState();
-      BlockInfo storedBlock = processReportedBlock(storageInfo,
-          iblk, iState, toAdd, toInvalidate, toCorrupt, toUC);
+    // The lock is only released if no other report of the storage is in
+    // progress, since the storage hides a single delimiter.
+    final boolean chunked = blockReportChunkSize > 0
+        && storageInfo.getReportDelimiter() == null;
+    if (chunked) {
+      storageInfo.setReportDelimiter(delimiter);
+    }
+    int numInChunk = 0;
+    int numBlocksLogged = 0;
+    try {
+      // scan the report and process newly reported blocks
+      for (BlockReportReplica iblk : newReport) {
+        if (chunked && ++numInChunk > blockReportChunkSize) {
+          numBlocksLogged = processReportedBlocks(storageInfo,
+              toAdd, toCorrupt, toUC, numBlocksLogged);
+          yieldBlockReportLock(storageInfo);
+          // the head may have changed while the lock was released
+          headIndex = storageInfo.getHeadIndex();
+          numInChunk = 1;
+        }
+        ReplicaState iState = iblk.getState();
+        BlockInfo storedBlock = processReportedBlock(storageInfo,
+            iblk, iState, toAdd, toInvalidate, toCorrupt, toUC);
+
+        // move block to the head of the list
+        if (storedBlock != null &&
+            (curIndex = storedBlock.findStorageInfo(storageInfo)) >= 0) {
+          headIndex = storageInfo.moveBlockToHead(storedBlock, curIndex,
+              headIndex);
+        }
+      }
 
-      // move block to the head of the list
-      if (storedBlock != null &&
-          (curIndex = storedBlock.findStorageInfo(storageInfo)) >= 0) {
-        headIndex = storageInfo.moveBlockToHead(storedBlock, curIndex, headIndex);
+      // collect blocks that have not been reported
+      // all of them are next to the delimiter
+      Iterator<BlockInfo> it =
+          storageInfo.new BlockIterator(delimiter.getNext(0));
+      while(it.hasNext())
+        toRemove.add(it.next());
+    } finally {
+      if (chunked) {
+        storageInfo.setReportDelimiter(null);
       }
+      storageInfo.removeBlock(delimiter);
     }
-
-    // collect blocks that have not been reported
-    // all of them are next to the delimiter
-    Iterator<BlockInfo> it =
-        storageInfo.new BlockIterator(delimiter.getNext(0));
-    while(it.hasNext())
-      toRemove.add(it.next());
-    storageInfo.removeBlock(delimiter);
+    return numBlocksLogged;
   }
 
   /**
@@ -3314,7 +3535,8 @@ public void removeStoredBlock(Block block, DatanodeDescriptor node) {
         return;
       }
 
-      CachedBlock cblock = namesystem.getCacheManager().getCachedBlocks()
+      CacheManager cm = namesystem.getCacheManager();
+      CachedBlock cblock = cm == null ? null : cm.getCachedBlocks()
           .get(new CachedBlock(block.getBlockId(), (short) 0, false));
       if (cblock != null) {
         boolean removed = false;
@@ -4174,7 +4396,22 @@ public void enqueueBlockOp(final Runnable action) throws IOException {
   // sync batch processing for a full BR.
   public <T> T runBlockOp(final Callable<T> action)
       throws IOException {
-    final FutureTask<T> future = new FutureTask<T>(action);
+    return runBlockOp(new FutureTask<T>(action));
+  }
+
+  /**
+   * Process a full block report on the block report thread, in order with
+   * the other block ops.  If the reports are processed in chunks, the report
+   * is not batched with the other ops under one hold of the namesystem lock:
+   * it takes the lock itself, so that it can release it between its chunks.
+   */
+  public <T> T runBlockReportOp(final Callable<T> action)
+      throws IOException {
+    return runBlockOp(blockReportChunkSize > 0
+        ? new UnbatchedBlockOp<T>(action) : new FutureTask<T>(action));
+  }
+
+  private <T> T runBlockOp(final FutureTask<T> future) throws IOException {
     enqueueBlockOp(future);
     try {
       return future.get();
@@ -4226,16 +4463,24 @@ public int getBlockOpQueueLength() {
     return blockReportThread.queue.size();
   }
 
+  /** A block op which takes the namesystem lock itself. */
+  private static class UnbatchedBlockOp<T> extends FutureTask<T> {
+    UnbatchedBlockOp(Callable<T> action) {
+      super(action);
+    }
+  }
+
   private class BlockReportProcessingThread extends Thread {
-    private static final long MAX_LOCK_HOLD_MS = 4;
+    private final long maxLockHoldMs;
     private long lastFull = 0;
 
-    private final BlockingQueue<Runnable> queue =
-        new ArrayBlockingQueue<Runnable>(1024);
+    private final BlockingQueue<Runnable> queue;
 
-    BlockReportProcessingThread() {
+    BlockReportProcessingThread(int queueSize, long maxLockHoldMs) {
       super("Block report processor");
       setDaemon(true);
+      this.queue = new ArrayBlockingQueue<Runnable>(queueSize);
+      this.maxLockHoldMs = maxLockHoldMs;
     }
 
     @Override
@@ -4254,23 +4499,31 @@ private void processQueue() {
         try {
           Runnable action = queue.take();
           // batch as many operations in the write lock until the queue
-          // runs dry, or the max lock hold is reached.
-          int processed = 0;
-          namesystem.writeLock();
-          metrics.setBlockOpsQueued(queue.size() + 1);
-          try {
-            long start = Time.monotonicNow();
-            do {
-              processed++;
-              action.run();
-              if (Time.monotonicNow() - start > MAX_LOCK_HOLD_MS) {
-                break;
-              }
-              action = queue.poll();
-            } while (action != null);
-          } finally {
-            namesystem.writeUnlock();
-            metrics.addBlockOpsBatched(processed - 1);
+          // runs dry, the max lock hold is reached, or an operation which
+          // takes the lock itself is next.
+          if (!(action instanceof UnbatchedBlockOp)) {
+            int processed = 0;
+            namesystem.writeLock();
+            metrics.setBlockOpsQueued(queue.size() + 1);
+            try {
+              long start = Time.monotonicNow();
+              do {
+                processed++;
+                action.run();
+                if (Time.monotonicNow() - start > maxLockHoldMs) {
+                  action = null;
+                  break;
+                }
+                action = queue.poll();
+              } while (action != null
+                  && !(action instanceof UnbatchedBlockOp));
+            } finally {
+              namesystem.writeUnlock();
+              metrics.addBlockOpsBatched(processed - 1);
+            }
+          }
+          if (action != null) {
+            action.run();
           }
         } catch (InterruptedException e) {
           // ignore unless thread was specifically interrupted.
@@ -91,7 +91,7 @@ class BlockIterator implements Iterator<BlockInfo> {
     private BlockInfo current;
 
     BlockIterator(BlockInfo head) {
-      this.current = head;
+      this.current = skipReportDelimiter(head);
     }
 
     public boolean hasNext() {
@@ -100,10 +100,18 @@ public boolean hasNext() {
 
     public BlockInfo next() {
       BlockInfo res = current;
-      current = current.getNext(current.findStorageInfo(DatanodeStorageInfo.this));
+      current = skipReportDelimiter(
+          current.getNext(current.findStorageInfo(DatanodeStorageInfo.this)));
       return res;
     }
 
+    private BlockInfo skipReportDelimiter(BlockInfo b) {
+      if (b != null && b == reportDelimiter) {
+        return b.getNext(b.findStorageInfo(DatanodeStorageInfo.this));
+      }
+      return b;
+    }
+
     public void remove() {
       throw new UnsupportedOperationException("Sorry. can't remove.");
     }
@@ -123,6 +131,14 @@ public void remove() {
   private volatile BlockInfo blockList = null;
   private int numBlocks = 0;
 
+  /**
+   * The delimiter placed in the blockList by a block report, while the
+   * namesystem lock is released between two chunks of the report.  It is
+   * not one of the blocks of the storage, so it is hidden from the iterators
+   * and from the number of blocks.
+   */
+  private BlockInfo reportDelimiter = null;
+
   /** The number of block reports received */
   private int blockReportCount = 0;
 
@@ -263,7 +279,15 @@ public boolean removeBlock(BlockInfo b) {
   }
 
   int numBlocks() {
-    return numBlocks;
+    return reportDelimiter == null ? numBlocks : numBlocks - 1;
+  }
+
+  BlockInfo getReportDelimiter() {
+    return reportDelimiter;
+  }
+
+  void setReportDelimiter(BlockInfo delimiter) {
+    this.reportDelimiter = delimiter;
   }
   
   Iterator<BlockInfo> getBlockIterator() {
@@ -280,6 +304,15 @@ int moveBlockToHead(BlockInfo b, int curIndex, int headIndex) {
     return curIndex;
   }
 
+  /**
+   * @return the index of this storage in the head of the blockList, or -1 if
+   * the blockList is empty.
+   */
+  int getHeadIndex() {
+    final BlockInfo head = blockList;
+    return head == null ? -1 : head.findStorageInfo(this);
+  }
+
   /**
    * Used for testing only
    * @return the head of the blockList
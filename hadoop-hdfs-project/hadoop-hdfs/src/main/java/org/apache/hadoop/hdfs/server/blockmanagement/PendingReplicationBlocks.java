@@ -29,6 +29,7 @@
 import java.util.Map;
 
 import org.apache.hadoop.hdfs.protocol.Block;
+import org.apache.hadoop.hdfs.server.blockmanagement.ReplicationBandwidthBudget.Transfer;
 import org.apache.hadoop.hdfs.server.namenode.NameNode;
 import org.apache.hadoop.util.Daemon;
 import org.slf4j.Logger;
@@ -42,6 +43,9 @@
  * 2)  a coarse grain timer to track age of replication request
  * 3)  a thread that periodically identifies replication-requests
  *     that never made it.
+ * 4)  the bytes in flight of the replication transfers, which are
+ *     released from the {@link ReplicationBandwidthBudget} when the
+ *     transfers finish, time out or are abandoned.
  *
  ***************************************************/
 class PendingReplicationBlocks {
@@ -49,6 +53,7 @@ class PendingReplicationBlocks {
 
   private final Map<BlockInfo, PendingBlockInfo> pendingReplications;
   private final ArrayList<BlockInfo> timedOutItems;
+  private final ReplicationBandwidthBudget budget;
   Daemon timerThread = null;
   private volatile boolean fsRunning = true;
   private long timedOutCount = 0L;
@@ -61,11 +66,21 @@ class PendingReplicationBlocks {
   private final static long DEFAULT_RECHECK_INTERVAL = 5 * 60 * 1000;
 
   PendingReplicationBlocks(long timeoutPeriod) {
+    this(timeoutPeriod, new ReplicationBandwidthBudget(0, 0, 0));
+  }
+
+  PendingReplicationBlocks(long timeoutPeriod,
+      ReplicationBandwidthBudget budget) {
     if ( timeoutPeriod > 0 ) {
       this.timeout = timeoutPeriod;
     }
     pendingReplications = new HashMap<>();
     timedOutItems = new ArrayList<>();
+    this.budget = budget;
+  }
+
+  ReplicationBandwidthBudget getBudget() {
+    return budget;
   }
 
   void start() {
@@ -90,6 +105,31 @@ void increment(BlockInfo block, DatanodeDescriptor... targets) {
     }
   }
 
+  /**
+   * Add a block to the list of pending Replications, with the transfers
+   * charged to the budget for it.
+   * @param block The corresponding block
+   * @param transfers The transfers of the block to its targets
+   */
+  void increment(BlockInfo block, Transfer[] transfers) {
+    final DatanodeDescriptor[] targets =
+        new DatanodeDescriptor[transfers.length];
+    for (int i = 0; i < transfers.length; i++) {
+      targets[i] = transfers[i].getTargetNode();
+    }
+    synchronized (pendingReplications) {
+      PendingBlockInfo found = pendingReplications.get(block);
+      if (found == null) {
+        found = new PendingBlockInfo(targets);
+        pendingReplications.put(block, found);
+      } else {
+        found.incrementReplicas(targets);
+        found.setTimeStamp();
+      }
+      found.addTransfers(transfers);
+    }
+  }
+
   /**
    * One replication request for this block has finished.
    * Decrement the number of pending replication requests
@@ -107,6 +147,7 @@ boolean decrement(BlockInfo block, DatanodeDescriptor dn) {
           LOG.debug("Removing pending replication for " + block);
         }
         found.decrementReplicas(dn);
+        found.releaseTransfers(budget, dn, true);
         if (found.getNumReplicas() <= 0) {
           pendingReplications.remove(block);
           removed = true;
@@ -123,13 +164,17 @@ boolean decrement(BlockInfo block, DatanodeDescriptor dn) {
    */
   void remove(BlockInfo block) {
     synchronized (pendingReplications) {
-      pendingReplications.remove(block);
+      PendingBlockInfo found = pendingReplications.remove(block);
+      if (found != null) {
+        found.releaseTransfers(budget, null, false);
+      }
     }
   }
 
   public void clear() {
     synchronized (pendingReplications) {
       pendingReplications.clear();
+      budget.clear();
       timedOutItems.clear();
       timedOutCount = 0L;
     }
@@ -191,11 +236,13 @@ BlockInfo[] getTimedOutBlocks() {
    * is being replicated. It records the timestamp when the 
    * system started replicating the most recent copy of this
    * block. It also records the list of Datanodes where the 
-   * replication requests are in progress.
+   * replication requests are in progress, and the transfers to them which
+   * are charged to the budget.
    */
   static class PendingBlockInfo {
     private long timeStamp;
     private final List<DatanodeDescriptor> targets;
+    private List<Transfer> transfers;
 
     PendingBlockInfo(DatanodeDescriptor[] targets) {
       this.timeStamp = monotonicNow();
@@ -228,6 +275,31 @@ void decrementReplicas(DatanodeDescriptor dn) {
     int getNumReplicas() {
       return targets.size();
     }
+
+    void addTransfers(Transfer[] newTransfers) {
+      if (transfers == null) {
+        transfers = new ArrayList<>(newTransfers.length);
+      }
+      transfers.addAll(Arrays.asList(newTransfers));
+    }
+
+    /**
+     * Release the transfers to a DataNode, or every transfer if the
+     * DataNode is null.
+     */
+    void releaseTransfers(ReplicationBandwidthBudget budget,
+        DatanodeDescriptor dn, boolean completed) {
+      if (transfers == null) {
+        return;
+      }
+      for (Iterator<Transfer> i = transfers.iterator(); i.hasNext();) {
+        final Transfer t = i.next();
+        if (dn == null || t.getTargetNode().equals(dn)) {
+          budget.release(t, completed);
+          i.remove();
+        }
+      }
+    }
   }
 
   /*
@@ -271,6 +343,7 @@ void pendingReplicationCheck() {
             }
             LOG.warn("PendingReplicationMonitor timed out " + block);
             NameNode.getNameNodeMetrics().incTimeoutReReplications();
+            pendingBlock.releaseTransfers(budget, null, false);
             iter.remove();
           }
         }
@@ -0,0 +1,322 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.blockmanagement;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * The bytes of the replication transfers in flight, and the budgets which
+ * bound them.
+ * <p>
+ * The bytes of a transfer are charged to its source DataNode, to its target
+ * volume and, when the source and the target are on different racks, to the
+ * uplinks of both racks.  They are released when the target reports the new
+ * replica, or when the transfer times out or is abandoned.  A budget of 0
+ * does not bound the bytes in flight.
+ * <p>
+ * The budgets are soft: a transfer is allowed on an idle node, volume or
+ * rack even if it is larger than the budget, so that a budget smaller than a
+ * block does not stop the replication.  As for the replication streams, the
+ * budget of a source does not apply to a decommissioning node or a node
+ * entering maintenance, whose replicas must be copied out.
+ * <p>
+ * The rate of the completed transfers is averaged over about a minute, to
+ * report the achieved recovery bandwidth.
+ */
+class ReplicationBandwidthBudget {
+  /** The time constant of the average of the recovery rate. */
+  private static final double RATE_TIME_CONSTANT_MS = 60 * 1000;
+
+  /**
+   * A replication transfer, from a source node to a target volume.  The keys
+   * charged are kept, so that exactly those are released even if a node is
+   * moved to another rack while the transfer is in flight.
+   */
+  static final class Transfer {
+    private final DatanodeDescriptor source;
+    private final DatanodeStorageInfo target;
+    /** The racks charged, or null for a transfer within a rack. */
+    private final String sourceRack;
+    private final String targetRack;
+    private final long bytes;
+
+    private Transfer(DatanodeDescriptor source, DatanodeStorageInfo target,
+        long bytes) {
+      this.source = source;
+      this.target = target;
+      final String srcRack = source.getNetworkLocation();
+      final String dstRack = getTargetNode().getNetworkLocation();
+      final boolean crossRack = !srcRack.equals(dstRack);
+      this.sourceRack = crossRack ? srcRack : null;
+      this.targetRack = crossRack ? dstRack : null;
+      this.bytes = bytes;
+    }
+
+    DatanodeDescriptor getTargetNode() {
+      return target.getDatanodeDescriptor();
+    }
+
+    private boolean isCrossRack() {
+      return sourceRack != null;
+    }
+  }
+
+  private final long maxBytesPerNode;
+  private final long maxBytesPerRack;
+  private final long maxBytesPerVolume;
+
+  private final Map<DatanodeDescriptor, Long> nodeBytes = new HashMap<>();
+  private final Map<String, Long> rackBytes = new HashMap<>();
+  private final Map<DatanodeStorageInfo, Long> volumeBytes = new HashMap<>();
+
+  private long completedBytes = 0;
+  private long completedTransfers = 0;
+  private long lastSampleTime = -1;
+  private long lastCompletedBytes = 0;
+  private long lastCompletedTransfers = 0;
+  private double bytesPerSec = 0;
+  private double transfersPerSec = 0;
+
+  ReplicationBandwidthBudget(Configuration conf) {
+    this(conf.getLongBytes(
+        DFSConfigKeys.DFS_NAMENODE_REPLICATION_MAX_INFLIGHT_BYTES_PER_NODE_KEY,
+        DFSConfigKeys.DFS_NAMENODE_REPLICATION_MAX_INFLIGHT_BYTES_PER_NODE_DEFAULT),
+        conf.getLongBytes(
+        DFSConfigKeys.DFS_NAMENODE_REPLICATION_MAX_INFLIGHT_BYTES_PER_RACK_KEY,
+        DFSConfigKeys.DFS_NAMENODE_REPLICATION_MAX_INFLIGHT_BYTES_PER_RACK_DEFAULT),
+        conf.getLongBytes(
+        DFSConfigKeys.DFS_NAMENODE_REPLICATION_MAX_INFLIGHT_BYTES_PER_VOLUME_KEY,
+        DFSConfigKeys.DFS_NAMENODE_REPLICATION_MAX_INFLIGHT_BYTES_PER_VOLUME_DEFAULT));
+  }
+
+  ReplicationBandwidthBudget(long maxBytesPerNode, long maxBytesPerRack,
+      long maxBytesPerVolume) {
+    this.maxBytesPerNode = maxBytesPerNode;
+    this.maxBytesPerRack = maxBytesPerRack;
+    this.maxBytesPerVolume = maxBytesPerVolume;
+  }
+
+  /** @return whether the bytes in flight from a node are bounded. */
+  boolean isNodeBudgetEnabled() {
+    return maxBytesPerNode > 0;
+  }
+
+  private static <K> long get(Map<K, Long> map, K key) {
+    final Long bytes = map.get(key);
+    return bytes == null ? 0 : bytes;
+  }
+
+  private static <K> void add(Map<K, Long> map, K key, long delta) {
+    final long bytes = get(map, key) + delta;
+    if (bytes > 0) {
+      map.put(key, bytes);
+    } else {
+      map.remove(key);
+    }
+  }
+
+  private static boolean fits(long current, long delta, long max) {
+    return max <= 0 || current == 0 || current + delta <= max;
+  }
+
+  /** @return the bytes in flight from a source node. */
+  synchronized long getSourceBytes(DatanodeDescriptor node) {
+    return get(nodeBytes, node);
+  }
+
+  private static boolean isSourceExempt(DatanodeDescriptor node) {
+    return node.isDecommissionInProgress() || node.isEnteringMaintenance();
+  }
+
+  /** @return whether a node may be the source of another transfer. */
+  synchronized boolean isSourceAvailable(DatanodeDescriptor node) {
+    return maxBytesPerNode <= 0 || isSourceExempt(node)
+        || get(nodeBytes, node) < maxBytesPerNode;
+  }
+
+  /** @return the racks whose uplink is at its budget. */
+  synchronized Set<String> getSaturatedRacks() {
+    final Set<String> racks = new HashSet<>();
+    if (maxBytesPerRack > 0) {
+      for (Map.Entry<String, Long> e : rackBytes.entrySet()) {
+        if (e.getValue() >= maxBytesPerRack) {
+          racks.add(e.getKey());
+        }
+      }
+    }
+    return racks;
+  }
+
+  /** @return the nodes whose every volume is at its budget. */
+  synchronized Set<DatanodeDescriptor> getSaturatedNodes() {
+    final Set<DatanodeDescriptor> nodes = new HashSet<>();
+    if (maxBytesPerVolume > 0) {
+      for (DatanodeStorageInfo storage : volumeBytes.keySet()) {
+        final DatanodeDescriptor node = storage.getDatanodeDescriptor();
+        if (!nodes.contains(node) && isSaturated(node)) {
+          nodes.add(node);
+        }
+      }
+    }
+    return nodes;
+  }
+
+  private boolean isSaturated(DatanodeDescriptor node) {
+    for (DatanodeStorageInfo storage : node.getStorageInfos()) {
+      if (get(volumeBytes, storage) < maxBytesPerVolume) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Charge the transfers of a block from a source to its targets, if they
+   * fit in the budgets.
+   *
+   * @param force charge the transfers even if they do not fit, for the
+   *              blocks with the highest priority
+   * @return the transfers, or null if they do not fit
+   */
+  synchronized Transfer[] tryAcquire(DatanodeDescriptor source,
+      DatanodeStorageInfo[] targets, long bytes, boolean force) {
+    final Transfer[] transfers = new Transfer[targets.length];
+    long crossRackBytes = 0;
+    for (int i = 0; i < targets.length; i++) {
+      transfers[i] = new Transfer(source, targets[i], bytes);
+      if (transfers[i].isCrossRack()) {
+        crossRackBytes += bytes;
+      }
+    }
+    if (!force && !fitsAll(source, transfers, crossRackBytes)) {
+      return null;
+    }
+    for (Transfer t : transfers) {
+      charge(t, t.bytes);
+    }
+    return transfers;
+  }
+
+  private boolean fitsAll(DatanodeDescriptor source, Transfer[] transfers,
+      long crossRackBytes) {
+    if (!isSourceExempt(source)
+        && !fits(get(nodeBytes, source), bytes(transfers), maxBytesPerNode)) {
+      return false;
+    }
+    if (!fits(get(rackBytes, source.getNetworkLocation()), crossRackBytes,
+        maxBytesPerRack)) {
+      return false;
+    }
+    for (Transfer t : transfers) {
+      if (!fits(get(volumeBytes, t.target), t.bytes, maxBytesPerVolume)) {
+        return false;
+      }
+      if (t.isCrossRack()
+          && !fits(get(rackBytes, t.targetRack), t.bytes, maxBytesPerRack)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static long bytes(Transfer[] transfers) {
+    long bytes = 0;
+    for (Transfer t : transfers) {
+      bytes += t.bytes;
+    }
+    return bytes;
+  }
+
+  private void charge(Transfer t, long delta) {
+    add(nodeBytes, t.source, delta);
+    add(volumeBytes, t.target, delta);
+    if (t.isCrossRack()) {
+      add(rackBytes, t.sourceRack, delta);
+      add(rackBytes, t.targetRack, delta);
+    }
+  }
+
+  /**
+   * Release the bytes of a transfer.
+   * @param completed whether the target has the new replica
+   */
+  synchronized void release(Transfer t, boolean completed) {
+    charge(t, -t.bytes);
+    if (completed) {
+      completedBytes += t.bytes;
+      completedTransfers++;
+    }
+  }
+
+  /** Release the bytes of every transfer. */
+  synchronized void clear() {
+    nodeBytes.clear();
+    rackBytes.clear();
+    volumeBytes.clear();
+  }
+
+  /** Update the average rates of the completed transfers. */
+  synchronized void updateRate(long now) {
+    if (lastSampleTime >= 0 && now > lastSampleTime) {
+      final long elapsed = now - lastSampleTime;
+      final double alpha = 1 - Math.exp(-elapsed / RATE_TIME_CONSTANT_MS);
+      bytesPerSec += alpha * ((completedBytes - lastCompletedBytes) * 1000.0
+          / elapsed - bytesPerSec);
+      transfersPerSec += alpha * ((completedTransfers - lastCompletedTransfers)
+          * 1000.0 / elapsed - transfersPerSec);
+    }
+    lastSampleTime = now;
+    lastCompletedBytes = completedBytes;
+    lastCompletedTransfers = completedTransfers;
+  }
+
+  /** @return the average rate of the completed transfers, in bytes. */
+  synchronized double getBytesPerSec() {
+    return bytesPerSec;
+  }
+
+  /** @return the average number of transfers completed per second. */
+  synchronized double getTransfersPerSec() {
+    return transfersPerSec;
+  }
+
+  @Override
+  public String toString() {
+    return "maxBytesPerNode=" + maxBytesPerNode
+        + ", maxBytesPerRack=" + maxBytesPerRack
+        + ", maxBytesPerVolume=" + maxBytesPerVolume;
+  }
+
+  @VisibleForTesting
+  synchronized long getRackBytes(String rack) {
+    return get(rackBytes, rack);
+  }
+
+  @VisibleForTesting
+  synchronized long getVolumeBytes(DatanodeStorageInfo storage) {
+    return get(volumeBytes, storage);
+  }
+}
@@ -18,12 +18,19 @@
 package org.apache.hadoop.hdfs.server.blockmanagement;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import org.apache.hadoop.hdfs.server.namenode.NameNode;
-import org.apache.hadoop.hdfs.util.LightWeightLinkedSet;
 
 /**
  * Keep prioritized queues of under replicated blocks.
@@ -62,6 +69,19 @@
  *   The policy here is to keep those corrupt blocks replicated, but give
  *   blocks that are not corrupt higher priority.</li>
  * </ol>
+ * <p>
+ * The queues are safe for concurrent use without any lock.  Every block in
+ * the queues has a position, made of a sequence number, which orders the
+ * blocks of a queue by the time they were added to it, and of the priority
+ * of the queue.  The positions are indexed by block, so finding or moving a
+ * block does not search the queues, and each queue is a skip list sorted by
+ * position.  A queue is scanned from a cursor, the last position chosen
+ * from it, which is advanced atomically, so that several threads can choose
+ * distinct blocks to replicate at the same time.  A block moved to another
+ * queue gets a new position at the tail of that queue, after its cursor, so
+ * that it is not skipped by the scan in progress.
+ * <p>
+ * The sizes of the queues are exact when the queues are not being changed.
  */
 class UnderReplicatedBlocks implements Iterable<BlockInfo> {
   /** The total number of queues : {@value} */
@@ -78,68 +98,87 @@ class UnderReplicatedBlocks implements Iterable<BlockInfo> {
   static final int QUEUE_REPLICAS_BADLY_DISTRIBUTED = 3;
   /** The queue for corrupt blocks: {@value} */
   static final int QUEUE_WITH_CORRUPT_BLOCKS = 4;
-  /** the queues themselves */
-  private final List<LightWeightLinkedSet<BlockInfo>> priorityQueues
+
+  /** The number of low bits of a position which hold its priority. */
+  private static final int PRIORITY_BITS = 3;
+  /** The cursor of a queue which has not been scanned yet. */
+  private static final long NO_CURSOR = -1L;
+
+  /** the queues themselves, by position */
+  private final List<ConcurrentSkipListMap<Long, BlockInfo>> priorityQueues
       = new ArrayList<>(LEVEL);
+  /** the position of each block in the queues */
+  private final ConcurrentMap<BlockInfo, Long> positions =
+      new ConcurrentHashMap<>();
+  private final AtomicIntegerArray queueSizes = new AtomicIntegerArray(LEVEL);
+  private final AtomicLongArray cursors = new AtomicLongArray(LEVEL);
+  private final AtomicLong nextSequence = new AtomicLong();
 
   /** The number of corrupt blocks with replication factor 1 */
-  private int corruptReplOneBlocks = 0;
+  private final AtomicInteger corruptReplOneBlocks = new AtomicInteger();
 
   /** Create an object. */
   UnderReplicatedBlocks() {
     for (int i = 0; i < LEVEL; i++) {
-      priorityQueues.add(new LightWeightLinkedSet<BlockInfo>());
+      priorityQueues.add(new ConcurrentSkipListMap<Long, BlockInfo>());
+      cursors.set(i, NO_CURSOR);
     }
   }
 
+  private Long newPosition(int priLevel) {
+    return (nextSequence.getAndIncrement() << PRIORITY_BITS) | priLevel;
+  }
+
+  private static int priorityOf(long position) {
+    return (int) (position & ((1 << PRIORITY_BITS) - 1));
+  }
+
   /**
    * Empty the queues.
    */
-  synchronized void clear() {
+  void clear() {
+    positions.clear();
     for (int i = 0; i < LEVEL; i++) {
       priorityQueues.get(i).clear();
+      queueSizes.set(i, 0);
+      cursors.set(i, NO_CURSOR);
     }
-    corruptReplOneBlocks = 0;
+    corruptReplOneBlocks.set(0);
   }
 
   /** Return the total number of under replication blocks */
-  synchronized int size() {
+  int size() {
     int size = 0;
     for (int i = 0; i < LEVEL; i++) {
-      size += priorityQueues.get(i).size();
+      size += queueSizes.get(i);
     }
     return size;
   }
 
   /** Return the number of under replication blocks excluding corrupt blocks */
-  synchronized int getUnderReplicatedBlockCount() {
+  int getUnderReplicatedBlockCount() {
     int size = 0;
     for (int i = 0; i < LEVEL; i++) {
       if (i != QUEUE_WITH_CORRUPT_BLOCKS) {
-        size += priorityQueues.get(i).size();
+        size += queueSizes.get(i);
       }
     }
     return size;
   }
 
   /** Return the number of corrupt blocks */
-  synchronized int getCorruptBlockSize() {
-    return priorityQueues.get(QUEUE_WITH_CORRUPT_BLOCKS).size();
+  int getCorruptBlockSize() {
+    return queueSizes.get(QUEUE_WITH_CORRUPT_BLOCKS);
   }
 
   /** Return the number of corrupt blocks with replication factor 1 */
-  synchronized int getCorruptReplOneBlockSize() {
-    return corruptReplOneBlocks;
+  int getCorruptReplOneBlockSize() {
+    return corruptReplOneBlocks.get();
   }
 
   /** Check if a block is in the neededReplication queue */
-  synchronized boolean contains(BlockInfo block) {
-    for(LightWeightLinkedSet<BlockInfo> set : priorityQueues) {
-      if (set.contains(block)) {
-        return true;
-      }
-    }
-    return false;
+  boolean contains(BlockInfo block) {
+    return positions.containsKey(block);
   }
 
   /** Return the priority of a block
@@ -189,18 +228,25 @@ private int getPriority(int curReplicas,
    * @param expectedReplicas expected number of replicas of the block
    * @return true if the block was added to a queue.
    */
-  synchronized boolean add(BlockInfo block,
-                           int curReplicas,
-                           int readOnlyReplicas,
-                           int decomissionedReplicas,
-                           int expectedReplicas) {
+  boolean add(BlockInfo block,
+              int curReplicas,
+              int readOnlyReplicas,
+              int decomissionedReplicas,
+              int expectedReplicas) {
     assert curReplicas >= 0 : "Negative replicas!";
     final int priLevel = getPriority(curReplicas, readOnlyReplicas,
         decomissionedReplicas, expectedReplicas);
-    if(priorityQueues.get(priLevel).add(block)) {
+    final Long position = newPosition(priLevel);
+    final ConcurrentSkipListMap<Long, BlockInfo> queue =
+        priorityQueues.get(priLevel);
+    // The block is queued before it is indexed, so that a concurrent remove
+    // of the block always finds it in its queue.
+    queue.put(position, block);
+    if (positions.putIfAbsent(block, position) == null) {
+      queueSizes.incrementAndGet(priLevel);
       if (priLevel == QUEUE_WITH_CORRUPT_BLOCKS &&
           expectedReplicas == 1) {
-        corruptReplOneBlocks++;
+        corruptReplOneBlocks.incrementAndGet();
       }
       NameNode.blockStateChangeLog.debug(
           "BLOCK* NameSystem.UnderReplicationBlock.add: {}"
@@ -210,22 +256,23 @@ synchronized boolean add(BlockInfo block,
 
       return true;
     }
+    queue.remove(position);
     return false;
   }
 
   /** remove a block from the under replication queues. */
-  synchronized boolean remove(BlockInfo block,
-                              int oldReplicas,
-                              int oldReadOnlyReplicas,
-                              int decommissionedReplicas,
-                              int oldExpectedReplicas) {
+  boolean remove(BlockInfo block,
+                 int oldReplicas,
+                 int oldReadOnlyReplicas,
+                 int decommissionedReplicas,
+                 int oldExpectedReplicas) {
     final int priLevel = getPriority(oldReplicas, oldReadOnlyReplicas,
         decommissionedReplicas, oldExpectedReplicas);
     boolean removedBlock = remove(block, priLevel, oldExpectedReplicas);
     if (priLevel == QUEUE_WITH_CORRUPT_BLOCKS &&
         oldExpectedReplicas == 1 &&
         removedBlock) {
-      assert corruptReplOneBlocks >= 0 :
+      assert corruptReplOneBlocks.get() >= 0 :
           "Number of corrupt blocks with replication factor 1 " +
               "should be non-negative";
     }
@@ -235,14 +282,10 @@ synchronized boolean remove(BlockInfo block,
   /**
    * Remove a block from the under replication queues.
    *
-   * The priLevel parameter is a hint of which queue to query
-   * first: if negative or &gt;= {@link #LEVEL} this shortcutting
-   * is not attempted.
-   *
-   * If the block is not found in the nominated queue, an attempt is made to
-   * remove it from all queues.
+   * The priLevel parameter is the level the caller expects the block to be
+   * in.  The block is removed from the queue it is actually in, which is
+   * found from its position without searching the queues.
    *
-   * <i>Warning:</i> This is not a synchronized method.
    * @param block block to remove
    * @param priLevel expected privilege level
    * @return true if the block was found and removed from one of the priority
@@ -267,42 +310,66 @@ boolean remove(BlockInfo block, int priLevel) {
    */
   private boolean remove(BlockInfo block, int priLevel,
                          int oldExpectedReplicas) {
-    if(priLevel >= 0 && priLevel < LEVEL
-        && priorityQueues.get(priLevel).remove(block)) {
-      NameNode.blockStateChangeLog.debug(
-        "BLOCK* NameSystem.UnderReplicationBlock.remove: Removing block {}" +
-            " from priority queue {}", block, priLevel);
-      decrementBlockStat(priLevel, oldExpectedReplicas);
-      return true;
-    } else {
-      // Try to remove the block from all queues if the block was
-      // not found in the queue for the given priority level.
-      for (int i = 0; i < LEVEL; i++) {
-        if (i != priLevel && priorityQueues.get(i).remove(block)) {
-          NameNode.blockStateChangeLog.debug(
-              "BLOCK* NameSystem.UnderReplicationBlock.remove: Removing block" +
-                  " {} from priority queue {}", block, i);
-          decrementBlockStat(i, oldExpectedReplicas);
-          return true;
-        }
-      }
+    final Long position = positions.remove(block);
+    if (position == null) {
+      return false;
     }
-    return false;
+    final int level = priorityOf(position);
+    priorityQueues.get(level).remove(position);
+    queueSizes.decrementAndGet(level);
+    NameNode.blockStateChangeLog.debug(
+        "BLOCK* NameSystem.UnderReplicationBlock.remove: Removing block {}" +
+            " from priority queue {}", block, level);
+    decrementBlockStat(level, oldExpectedReplicas);
+    return true;
   }
 
   private void decrementBlockStat(int priLevel, int oldExpectedReplicas) {
     if(priLevel == QUEUE_WITH_CORRUPT_BLOCKS && oldExpectedReplicas == 1) {
-      corruptReplOneBlocks--;
+      corruptReplOneBlocks.decrementAndGet();
+    }
+  }
+
+  /**
+   * Move a block to the queue of a priority level, adding it to the queue if
+   * it is not in any queue.  A block which is already in the queue keeps its
+   * position.
+   * @return the previous priority level of the block, or -1 if it was not
+   *         in any queue.
+   */
+  private int move(BlockInfo block, int priLevel) {
+    final ConcurrentSkipListMap<Long, BlockInfo> queue =
+        priorityQueues.get(priLevel);
+    while (true) {
+      final Long oldPosition = positions.get(block);
+      if (oldPosition != null && priorityOf(oldPosition) == priLevel) {
+        return priLevel;
+      }
+      final Long position = newPosition(priLevel);
+      queue.put(position, block);
+      if (oldPosition == null
+          ? positions.putIfAbsent(block, position) == null
+          : positions.replace(block, oldPosition, position)) {
+        queueSizes.incrementAndGet(priLevel);
+        if (oldPosition == null) {
+          return -1;
+        }
+        final int oldLevel = priorityOf(oldPosition);
+        priorityQueues.get(oldLevel).remove(oldPosition);
+        queueSizes.decrementAndGet(oldLevel);
+        return oldLevel;
+      }
+      // The block was added, moved or removed concurrently; try again.
+      queue.remove(position);
     }
   }
 
   /**
    * Recalculate and potentially update the priority level of a block.
    *
-   * If the block priority has changed from before an attempt is made to
-   * remove it from the block queue. Regardless of whether or not the block
-   * is in the block queue of (recalculate) priority, an attempt is made
-   * to add it to that queue. This ensures that the block will be
+   * If the block priority has changed from before, the block is moved to
+   * the queue of its recalculated priority, and it is added to that queue if
+   * it was not in any queue. This ensures that the block will be
    * in its expected priority queue (and only that queue) by the end of the
    * method call.
    * @param block a under replicated block
@@ -312,10 +379,10 @@ private void decrementBlockStat(int priLevel, int oldExpectedReplicas) {
    * @param curReplicasDelta the change in the replicate count from before
    * @param expectedReplicasDelta the change in the expected replica count from before
    */
-  synchronized void update(BlockInfo block, int curReplicas,
-                           int readOnlyReplicas, int decommissionedReplicas,
-                           int curExpectedReplicas,
-                           int curReplicasDelta, int expectedReplicasDelta) {
+  void update(BlockInfo block, int curReplicas,
+              int readOnlyReplicas, int decommissionedReplicas,
+              int curExpectedReplicas,
+              int curReplicasDelta, int expectedReplicasDelta) {
     int oldReplicas = curReplicas-curReplicasDelta;
     int oldExpectedReplicas = curExpectedReplicas-expectedReplicasDelta;
     int curPri = getPriority(curReplicas, readOnlyReplicas,
@@ -332,10 +399,13 @@ synchronized void update(BlockInfo block, int curReplicas,
         " curPri  " + curPri +
         " oldPri  " + oldPri);
     }
-    // oldPri is mostly correct, but not always. If not found with oldPri,
-    // other levels will be searched until the block is found & removed.
-    remove(block, oldPri);
-    if(priorityQueues.get(curPri).add(block)) {
+    // oldPri is mostly correct, but not always, so the block is moved from
+    // the level it is actually in.
+    final int prevPri = move(block, curPri);
+    if (prevPri >= 0) {
+      decrementBlockStat(prevPri, block.getReplication());
+    }
+    if (prevPri != curPri) {
       NameNode.blockStateChangeLog.debug(
           "BLOCK* NameSystem.UnderReplicationBlock.update: {} has only {} " +
               "replicas and needs {} replicas so is added to " +
@@ -348,11 +418,11 @@ synchronized void update(BlockInfo block, int curReplicas,
       if (curPri == QUEUE_WITH_CORRUPT_BLOCKS &&
           curExpectedReplicas == 1) {
         // add a new corrupt block with replication factor 1
-        corruptReplOneBlocks++;
+        corruptReplOneBlocks.incrementAndGet();
       } else if (oldPri == QUEUE_WITH_CORRUPT_BLOCKS &&
           curExpectedReplicas - expectedReplicasDelta == 1) {
         // remove an existing corrupt block with replication factor 1
-        corruptReplOneBlocks--;
+        corruptReplOneBlocks.decrementAndGet();
       }
     }
   }
@@ -360,21 +430,23 @@ synchronized void update(BlockInfo block, int curReplicas,
   /**
    * Get a list of block lists to be replicated. The index of block lists
    * represents its replication priority. Iterates each block list in priority
-   * order beginning with the highest priority list. Iterators use a bookmark to
-   * resume where the previous iteration stopped. Returns when the block count
-   * is met or iteration reaches the end of the lowest priority list, in which
-   * case bookmarks for each block list are reset to the heads of their
-   * respective lists.
+   * order beginning with the highest priority list. Each list is scanned
+   * from a cursor, which resumes where the previous scan stopped. Returns
+   * when the block count is met or iteration reaches the end of the lowest
+   * priority list, in which case the cursors of the lists are reset to the
+   * heads of their respective lists.
+   *
+   * The blocks chosen by concurrent calls are distinct, unless the cursors
+   * are reset in the meantime.
    *
    * @param blocksToProcess - number of blocks to fetch from underReplicated
    *                        blocks.
    * @return Return a list of block lists to be replicated. The block list index
    *         represents its replication priority.
    */
-  synchronized List<List<BlockInfo>> chooseUnderReplicatedBlocks(
-      int blocksToProcess) {
+  List<List<BlockInfo>> chooseUnderReplicatedBlocks(int blocksToProcess) {
     final List<List<BlockInfo>> blocksToReplicate = new ArrayList<>(LEVEL);
-    
+
     int count = 0;
     int priority = 0;
     for (; count < blocksToProcess && priority < LEVEL; priority++) {
@@ -383,38 +455,61 @@ synchronized List<List<BlockInfo>> chooseUnderReplicatedBlocks(
         continue;
       }
 
-      // Go through all blocks that need replications with current priority.
-      // Set the iterator to the first unprocessed block at this priority level.
-      final Iterator<BlockInfo> i = priorityQueues.get(priority).getBookmark();
-      final List<BlockInfo> blocks = new LinkedList<>();
+      // Go through all blocks that need replications with current priority,
+      // from the first unprocessed block at this priority level.
+      final List<BlockInfo> blocks =
+          chooseBlocks(priority, blocksToProcess - count);
       blocksToReplicate.add(blocks);
-      // Loop through all remaining blocks in the list.
-      for(; count < blocksToProcess && i.hasNext(); count++) {
-        blocks.add(i.next());
-      }
+      count += blocks.size();
     }
 
     if (priority == LEVEL) {
-      // Reset all bookmarks because there were no recently added blocks.
-      for (LightWeightLinkedSet<BlockInfo> q : priorityQueues) {
-        q.resetBookmark();
+      // Reset all cursors because there were no recently added blocks.
+      for (int i = 0; i < LEVEL; i++) {
+        cursors.set(i, NO_CURSOR);
       }
     }
 
     return blocksToReplicate;
   }
 
+  /**
+   * Choose the blocks following the cursor of a queue, and advance the
+   * cursor past them.
+   */
+  private List<BlockInfo> chooseBlocks(int priority, int maxBlocks) {
+    final ConcurrentSkipListMap<Long, BlockInfo> queue =
+        priorityQueues.get(priority);
+    while (true) {
+      final long cursor = cursors.get(priority);
+      final List<BlockInfo> blocks = new ArrayList<>();
+      long last = cursor;
+      for (Iterator<Map.Entry<Long, BlockInfo>> i =
+               queue.tailMap(cursor, false).entrySet().iterator();
+           blocks.size() < maxBlocks && i.hasNext();) {
+        final Map.Entry<Long, BlockInfo> e = i.next();
+        blocks.add(e.getValue());
+        last = e.getKey();
+      }
+      if (last == cursor || cursors.compareAndSet(priority, cursor, last)) {
+        return blocks;
+      }
+      // Another thread has chosen blocks from this queue; try again.
+    }
+  }
+
   /** returns an iterator of all blocks in a given priority queue */
-  synchronized Iterator<BlockInfo> iterator(int level) {
-    return priorityQueues.get(level).iterator();
+  Iterator<BlockInfo> iterator(int level) {
+    return Collections.unmodifiableCollection(
+        priorityQueues.get(level).values()).iterator();
   }
 
   /** return an iterator of all the under replication blocks */
   @Override
-  public synchronized Iterator<BlockInfo> iterator() {
-    final Iterator<LightWeightLinkedSet<BlockInfo>> q = priorityQueues.iterator();
+  public Iterator<BlockInfo> iterator() {
     return new Iterator<BlockInfo>() {
-      private Iterator<BlockInfo> b = q.next().iterator();
+      private int level = 0;
+      private Iterator<BlockInfo> b = iterator(0);
 
       @Override
       public BlockInfo next() {
@@ -424,8 +519,8 @@ public BlockInfo next() {
 
       @Override
       public boolean hasNext() {
-        for(; !b.hasNext() && q.hasNext(); ) {
-          b = q.next().iterator();
+        for(; !b.hasNext() && level < LEVEL - 1; ) {
+          b = iterator(++level);
         }
         return b.hasNext();
       }
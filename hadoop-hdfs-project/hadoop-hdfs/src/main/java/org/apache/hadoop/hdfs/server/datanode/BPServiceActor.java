@@ -97,6 +97,12 @@ class BPServiceActor implements Runnable {
   volatile long lastCacheReport = 0;
   private final Scheduler scheduler;
   private final Object sendIBRLock;
+  /**
+   * The heartbeat thread waits on this monitor between two iterations, and
+   * is woken up on it for a heartbeat or a full block report triggered
+   * early.  The IBR thread waits on {@link #ibrManager} instead.
+   */
+  private final Object heartbeatMonitor = new Object();
   private final ExecutorService ibrExecutorService;
 
   Thread bpThread;
@@ -305,14 +311,14 @@ private void connectToNNAndHandshake() throws IOException {
    */
   @VisibleForTesting
   void triggerBlockReportForTests() {
-    synchronized (ibrManager) {
+    synchronized (heartbeatMonitor) {
       scheduler.scheduleHeartbeat();
       long oldBlockReportTime = scheduler.nextBlockReportTime;
       scheduler.forceFullBlockReportNow();
-      ibrManager.notifyAll();
+      heartbeatMonitor.notifyAll();
       while (oldBlockReportTime == scheduler.nextBlockReportTime) {
         try {
-          ibrManager.wait(100);
+          heartbeatMonitor.wait(100);
         } catch (InterruptedException e) {
           return;
         }
@@ -322,12 +328,12 @@ void triggerBlockReportForTests() {
 
   @VisibleForTesting
   void triggerHeartbeatForTests() {
-    synchronized (ibrManager) {
+    synchronized (heartbeatMonitor) {
       final long nextHeartbeatTime = scheduler.scheduleHeartbeat();
-      ibrManager.notifyAll();
+      heartbeatMonitor.notifyAll();
       while (nextHeartbeatTime - scheduler.nextHeartbeatTime >= 0) {
         try {
-          ibrManager.wait(100);
+          heartbeatMonitor.wait(100);
         } catch (InterruptedException e) {
           return;
         }
@@ -361,18 +367,17 @@ private long generateUniqueBlockReportId() {
    */
   List<DatanodeCommand> blockReport(long fullBrLeaseId) throws IOException {
 
-    synchronized (sendIBRLock) {
-      reportReceivedDeletedBlocks();
-    }
-
     final ArrayList<DatanodeCommand> cmds = new ArrayList<DatanodeCommand>();
 
     // Flush any block information that precedes the block report. Otherwise
     // we have a chance that we will miss the delHint information
     // or we will report an RBW replica after the BlockReport already reports
-    // a FINALIZED one.
-    ibrManager.sendIBRs(bpNamenode, bpRegistration,
-        bpos.getBlockPoolId());
+    // a FINALIZED one.  The lock keeps the IBR thread from sending an older
+    // IBR after the block report.
+    synchronized (sendIBRLock) {
+      ibrManager.sendIBRs(bpNamenode, bpRegistration,
+          bpos.getBlockPoolId());
+    }
 
     long brCreateStartTime = monotonicNow();
     Map<DatanodeStorage, BlockListAsLongs> perVolumeBlockLists =
@@ -705,11 +710,6 @@ private void offerService() throws Exception {
             }
           }
         }
-        if (ibrManager.sendImmediately() || sendHeartbeat) {
-          ibrManager.sendIBRs(bpNamenode, bpRegistration,
-              bpos.getBlockPoolId());
-        }
-
         List<DatanodeCommand> cmds = null;
         boolean forceFullBr =
             scheduler.forceFullBlockReport.getAndSet(false);
@@ -734,7 +734,7 @@ private void offerService() throws Exception {
 
         // There is no work to do;  sleep until hearbeat timer elapses,
         // or work arrives, and then iterate again.
-        ibrManager.waitTillNextIBR(scheduler.getHeartbeatWaitTime());
+        waitTillNextHeartbeat();
       } catch(RemoteException re) {
         String reClass = re.getClassName();
         if (UnregisteredNodeException.class.getName().equals(reClass) ||
@@ -756,6 +756,25 @@ private void offerService() throws Exception {
     } // while (shouldRun())
   } // offerService
 
+  /**
+   * Sleep until the heartbeat timer elapses, or a heartbeat or a full block
+   * report is triggered.  The pending IBRs are left to the IBR thread: if
+   * the heartbeat thread woke up for them as well, it would spin for as long
+   * as that thread is busy sending them, or backing off after a failure.
+   */
+  private void waitTillNextHeartbeat() {
+    synchronized (heartbeatMonitor) {
+      final long waitTime = scheduler.getHeartbeatWaitTime();
+      if (waitTime > 0 && !scheduler.forceFullBlockReport.get()) {
+        try {
+          heartbeatMonitor.wait(waitTime);
+        } catch (InterruptedException ie) {
+          LOG.warn("BPServiceActor interrupted while waiting for heartbeat");
+        }
+      }
+    }
+  }
+
   private void sleepAfterException() {
     try {
       long sleepTime = Math.min(1000, dnConf.heartBeatInterval);
@@ -888,6 +907,43 @@ public void run() {
     }
   }
 
+  /**
+   * Send the IBRs in their own thread, so that the IBRs are not delayed by
+   * the heartbeats and the block reports, and the other way around.  The
+   * blocks received while an IBR is in flight, or within the IBR interval,
+   * are coalesced into the next IBR.
+   */
+  class IBRTaskHandler implements Runnable {
+    @Override
+    public void run() {
+      LOG.info("Starting IBR Task Handler for " + BPServiceActor.this);
+      // The blocks which do not trigger an IBR, such as the deleted ones, are
+      // reported every heartbeat interval.  This thread keeps its own timer
+      // for them: the heartbeat timer is only moved forward by the heartbeat
+      // thread, and stays due for as long as that thread is busy.
+      long nextIBRTime = scheduler.monotonicNow();
+      while (shouldRun()) {
+        try {
+          final long startTime = scheduler.monotonicNow();
+          if (ibrManager.sendImmediately() || startTime - nextIBRTime >= 0) {
+            nextIBRTime = startTime + dnConf.heartBeatInterval;
+            synchronized (sendIBRLock) {
+              ibrManager.sendIBRs(bpNamenode, bpRegistration,
+                  bpos.getBlockPoolId());
+            }
+          }
+          // There is no IBR to send; sleep until the IBR timer elapses, or
+          // blocks are received, and then iterate again.
+          ibrManager.waitTillNextIBR(nextIBRTime - scheduler.monotonicNow());
+        } catch (Throwable t) {
+          LOG.warn("Exception in IBR Task Handler for " + BPServiceActor.this,
+              t);
+          sleepAndLogInterrupts(5000, "sending IBRs");
+        }
+      }
+    }
+  }
+
   private boolean shouldRetryInit() {
     return shouldRun() && bpos.shouldRetryInit();
   }
@@ -959,9 +1015,9 @@ void triggerBlockReport(BlockReportOptions options) {
       ibrManager.triggerIBR(true);
     } else {
       LOG.info(bpos.toString() + ": scheduling a full block report.");
-      synchronized(ibrManager) {
+      synchronized(heartbeatMonitor) {
         scheduler.forceFullBlockReportNow();
-        ibrManager.notifyAll();
+        heartbeatMonitor.notifyAll();
       }
     }
   }
@@ -26,6 +26,7 @@
 import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.nio.ByteBuffer;
@@ -140,7 +141,9 @@ class BlockReceiver implements Closeable {
   private long lastResponseTime = 0;
   private boolean isReplaceBlock = false;
   private DataOutputStream replyOut = null;
-  private long maxWriteToDiskMs = 0;
+  private volatile long maxWriteToDiskMs = 0;
+  /** Writes the packets to disk, or null if they are written by this thread */
+  private PacketWriter packetWriter = null;
   
   private boolean pinning;
   private long lastSentTime;
@@ -270,6 +273,12 @@ class BlockReceiver implements Closeable {
       if (isCreate) {
         BlockMetadataHeader.writeHeader(checksumOut, diskChecksum);
       } 
+
+      final PacketWriterService writerService =
+          datanode.getPacketWriterService();
+      if (writerService != null && !streams.isTransientStorage()) {
+        packetWriter = new PacketWriter(writerService);
+      }
     } catch (ReplicaAlreadyExistsException bae) {
       throw bae;
     } catch (ReplicaNotFoundException bne) {
@@ -314,7 +323,8 @@ public void close() throws IOException {
     }
     packetReceiver.close();
 
-    IOException ioe = null;
+    // wait for the packets handed over to be written
+    IOException ioe = packetWriter != null ? packetWriter.awaitWrites() : null;
     if (syncOnClose && (streams.getDataOut() != null || checksumOut != null)) {
       datanode.metrics.incrFsyncCount();      
     }
@@ -611,6 +621,9 @@ private int receivePacket() throws IOException {
       if(LOG.isDebugEnabled()) {
         LOG.debug("Receiving an empty packet or the end of the block " + block);
       }
+      if (packetWriter != null && (lastPacketInBlock || syncBlock)) {
+        packetWriter.drain();
+      }
       // sync block if requested
       if (syncBlock) {
         flushOrSync(true);
@@ -659,9 +672,20 @@ private int receivePacket() throws IOException {
 
       final boolean shouldNotWriteChecksum = checksumReceivedLen == 0
           && streams.isTransientStorage();
+
+      // Hand the packet over to the writer if it follows the packets handed
+      // over before, otherwise wait for them to be written and write it here.
+      boolean queued = false;
+      if (packetWriter != null) {
+        queued = !syncBlock && packetWriter.offer(firstByteInBlock, dataBuf,
+            checksumBuf, len, checksumLen);
+        if (!queued) {
+          packetWriter.drain();
+        }
+      }
       try {
         long onDiskLen = replicaInfo.getBytesOnDisk();
-        if (onDiskLen<offsetInBlock) {
+        if (!queued && onDiskLen<offsetInBlock) {
           // Normally the beginning of an incoming packet is aligned with the
           // existing data on disk. If the beginning packet data offset is not
           // checksum chunk aligned, the end of packet will not go beyond the
@@ -873,6 +897,241 @@ private void trackSendPacketToLastNodeInPipeline(final long elapsedMs) {
     }
   }
 
+  /**
+   * Writes the packets handed over by the receiver on the threads of the
+   * volume.  The packets are appended to a pending batch, which is written
+   * by a single task at a time, so that the packets received while a write
+   * is in progress are coalesced into the next write.  A task writes one
+   * batch, and submits the next one behind the tasks of the other blocks.
+   * Only the packets which start at the chunk-aligned end of the data on
+   * disk, or of the packets handed over before, are handed over; the others
+   * are written by the receiver once the pending packets are written.
+   */
+  private class PacketWriter implements Runnable {
+    private final PacketWriterService service;
+    private final FsVolumeSpi volume;
+
+    /** The offset in the block, data and checksums of the pending packets */
+    private long pendingOffset;
+    private byte[] pendingData = null;
+    private int pendingDataLen = 0;
+    private byte[] pendingChecksums = null;
+    private int pendingChecksumLen = 0;
+    private int pendingPackets = 0;
+    /** The buffers of the last write, to be reused */
+    private byte[] freeData = null;
+    private byte[] freeChecksums = null;
+
+    /** The end of the packets handed over, while they are written */
+    private long end;
+    private boolean running = false;
+    private IOException error = null;
+
+    PacketWriter(PacketWriterService service) {
+      this.service = service;
+      this.volume = replicaHandler.getVolume();
+    }
+
+    private void checkError() throws IOException {
+      if (error != null) {
+        throw new IOException("Failed to write " + block, error);
+      }
+    }
+
+    private byte[] ensureCapacity(byte[] buf, int len, int capacity) {
+      if (buf == null) {
+        return new byte[Math.max(len, capacity)];
+      }
+      return buf.length < len ? Arrays.copyOf(buf, len) : buf;
+    }
+
+    /**
+     * Hand a packet over, once the pending packets fit in the coalesced
+     * write with it.
+     * @return whether the packet was handed over
+     */
+    synchronized boolean offer(long offset, ByteBuffer dataBuf,
+        ByteBuffer checksumBuf, int len, int checksumLen) throws IOException {
+      checkError();
+      final long expected = running ? end : replicaInfo.getBytesOnDisk();
+      if (offset != expected || offset % bytesPerChecksum != 0) {
+        return false;
+      }
+      final int capacity = service.getCoalesceBytes();
+      try {
+        while (error == null && pendingDataLen > 0
+            && pendingDataLen + len > capacity) {
+          wait();
+        }
+      } catch (InterruptedException e) {
+        throw new InterruptedIOException(
+            "Interrupted waiting for the writes of " + block);
+      }
+      checkError();
+
+      if (pendingDataLen == 0) {
+        pendingOffset = offset;
+      }
+      pendingData = ensureCapacity(pendingData, pendingDataLen + len,
+          capacity);
+      System.arraycopy(dataBuf.array(),
+          dataBuf.arrayOffset() + dataBuf.position(), pendingData,
+          pendingDataLen, len);
+      pendingDataLen += len;
+      pendingChecksums = ensureCapacity(pendingChecksums,
+          pendingChecksumLen + checksumLen,
+          diskChecksum.getChecksumSize(capacity));
+      System.arraycopy(checksumBuf.array(),
+          checksumBuf.arrayOffset() + checksumBuf.position(),
+          pendingChecksums, pendingChecksumLen, checksumLen);
+      pendingChecksumLen += checksumLen;
+      pendingPackets++;
+      end = offset + len;
+
+      if (!running) {
+        running = true;
+        try {
+          service.execute(volume, this);
+        } catch (IOException e) {
+          running = false;
+          error = e;
+          throw e;
+        }
+      }
+      return true;
+    }
+
+    /** Wait for the packets handed over to be written. */
+    synchronized void drain() throws IOException {
+      try {
+        while (running) {
+          wait();
+        }
+      } catch (InterruptedException e) {
+        throw new InterruptedIOException(
+            "Interrupted waiting for the writes of " + block);
+      }
+      checkError();
+    }
+
+    /**
+     * Wait for the writes in progress, even if interrupted, so that the
+     * streams are not closed under them.
+     * @return the error of the writes, if any
+     */
+    synchronized IOException awaitWrites() {
+      boolean interrupted = false;
+      while (running) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+      return error;
+    }
+
+    @Override
+    public void run() {
+      while (writeBatch()) {
+        // Give the other blocks of the volume their turn on the threads,
+        // rather than holding a thread for as long as this block is written.
+        try {
+          service.execute(volume, this);
+          return;
+        } catch (IOException e) {
+          // The service is shut down: write the rest on this thread.
+        }
+      }
+    }
+
+    /**
+     * Write the pending packets.
+     * @return whether more packets were handed over meanwhile
+     */
+    private boolean writeBatch() {
+      final long offset;
+      final byte[] data;
+      final int dataLen;
+      final byte[] checksums;
+      final int checksumLen;
+      final int packets;
+      synchronized (this) {
+        if (pendingDataLen == 0 || error != null) {
+          running = false;
+          notifyAll();
+          return false;
+        }
+        offset = pendingOffset;
+        data = pendingData;
+        dataLen = pendingDataLen;
+        checksums = pendingChecksums;
+        checksumLen = pendingChecksumLen;
+        packets = pendingPackets;
+        pendingData = freeData;
+        pendingChecksums = freeChecksums;
+        freeData = null;
+        freeChecksums = null;
+        pendingDataLen = 0;
+        pendingChecksumLen = 0;
+        pendingPackets = 0;
+        // the receiver may hand over the next packets
+        notifyAll();
+      }
+      try {
+        write(offset, data, dataLen, checksums, checksumLen, packets);
+      } catch (Throwable t) {
+        LOG.warn("Failed to write " + block + " at offset " + offset, t);
+        synchronized (this) {
+          error = t instanceof IOException ? (IOException) t
+              : new IOException(t);
+        }
+      }
+      synchronized (this) {
+        freeData = data;
+        freeChecksums = checksums;
+        if (pendingDataLen == 0 || error != null) {
+          running = false;
+          notifyAll();
+          return false;
+        }
+        return true;
+      }
+    }
+
+    private void write(long offset, byte[] data, int dataLen,
+        byte[] checksums, int checksumLen, int packets) throws IOException {
+      // For testing. Normally no-op.
+      DataNodeFaultInjector.get().delayWritingPackets();
+      long begin = Time.monotonicNow();
+      streams.writeDataToDisk(data, 0, dataLen);
+      long duration = Time.monotonicNow() - begin;
+      if (duration > datanodeSlowLogThresholdMs && LOG.isWarnEnabled()) {
+        LOG.warn("Slow BlockReceiver write data to disk cost:" + duration
+            + "ms (threshold=" + datanodeSlowLogThresholdMs + "ms), "
+            + "volume=" + getVolumeBasePath());
+      }
+      if (duration > maxWriteToDiskMs) {
+        maxWriteToDiskMs = duration;
+      }
+      checksumOut.write(checksums, 0, checksumLen);
+      flushOrSync(false);
+
+      final long endOffset = offset + dataLen;
+      replicaInfo.setLastChecksumAndDataLen(endOffset,
+          copyLastChunkChecksum(checksums, checksumSize, checksumLen));
+
+      datanode.metrics.incrBytesWritten(dataLen);
+      datanode.metrics.incrTotalWriteTime(duration);
+      datanode.metrics.addPacketWriterBatch(packets);
+
+      manageWriterOsCache(endOffset);
+    }
+  }
+
   private static byte[] copyLastChunkChecksum(byte[] array, int size, int end) {
     return Arrays.copyOfRange(array, end - size, end);
   }
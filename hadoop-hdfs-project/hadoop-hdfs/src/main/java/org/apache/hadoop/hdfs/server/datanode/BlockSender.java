@@ -28,6 +28,7 @@
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.Arrays;
 
@@ -45,6 +46,7 @@
 import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.ReadaheadPool.ReadaheadRequest;
+import org.apache.hadoop.io.nativeio.NativeIO;
 import org.apache.hadoop.net.SocketOutputStream;
 import org.apache.hadoop.util.AutoCloseableLock;
 import org.apache.hadoop.util.DataChecksum;
@@ -124,6 +126,16 @@ class BlockSender implements java.io.Closeable {
   private ReplicaInputStreams ris;
   /** updated while using transferTo() */
   private long blockInPosition = -1;
+  /**
+   * The mapped data and checksums of a finalized replica, from the initial
+   * offset to the end offset, or null if the replica is not mapped.
+   */
+  private MappedByteBuffer mappedData;
+  private MappedByteBuffer mappedChecksums;
+  /** The replica counting this sender while it is mapped. */
+  private FinalizedReplica mappedReplica;
+  /** The checksums of a packet, to verify them against the mapped data. */
+  private ByteBuffer directChecksums;
   /** Checksum utility */
   private final DataChecksum checksum;
   /** Initial position to read */
@@ -202,6 +214,7 @@ class BlockSender implements java.io.Closeable {
       throws IOException {
     InputStream blockIn = null;
     DataInputStream checksumIn = null;
+    FileInputStream metaFileIn = null;
     FsVolumeReference volumeRef = null;
     this.fileIoProvider = datanode.getFileIoProvider();
     try {
@@ -252,7 +265,8 @@ class BlockSender implements java.io.Closeable {
       // the append write.
       ChunkChecksum chunkChecksum = null;
       final long replicaVisibleLength;
-      try(AutoCloseableLock lock = datanode.data.acquireDatasetLock()) {
+      try(AutoCloseableLock lock = datanode.data.acquireReplicaLock(
+          block.getBlockPoolId(), block.getBlockId())) {
         replica = getReplica(block, datanode);
         replicaVisibleLength = replica.getVisibleLength();
       }
@@ -331,6 +345,11 @@ class BlockSender implements java.io.Closeable {
   
               csum = BlockMetadataHeader.readDataChecksum(checksumIn, block);
               keepMetaInOpen = true;
+              if (datanode.getDnConf().mmapReadsEnabled
+                  && replica instanceof FinalizedReplica
+                  && metaIn.getWrappedStream() instanceof FileInputStream) {
+                metaFileIn = (FileInputStream) metaIn.getWrappedStream();
+              }
             }
           } else {
             LOG.warn("Could not find metadata file for " + block);
@@ -419,6 +438,11 @@ class BlockSender implements java.io.Closeable {
       blockIn = datanode.data.getBlockInputStream(block, offset); // seek to offset
       ris = new ReplicaInputStreams(
           blockIn, checksumIn, volumeRef, fileIoProvider);
+      if (metaFileIn != null && checksumSize > 0
+          && blockIn instanceof FileInputStream) {
+        mapReplica(((FileInputStream) blockIn).getChannel(),
+            metaFileIn.getChannel());
+      }
     } catch (IOException ioe) {
       IOUtils.cleanupWithLogger(null, volumeRef);
       IOUtils.closeStream(this);
@@ -428,6 +452,63 @@ class BlockSender implements java.io.Closeable {
     }
   }
 
+  /**
+   * Map the data and the checksums to send, from the offset to the end
+   * offset.  The replica is read through the streams if it cannot be mapped.
+   * <p>
+   * The replica is mapped under its lock, only while it is the current
+   * replica of the block: the recovery of the block may shorten the files of
+   * the replica in place, and copies them first if a reader mapped them.
+   */
+  private void mapReplica(FileChannel dataCh, FileChannel checksumCh) {
+    final long dataLen = endOffset - offset;
+    if (dataLen <= 0 || dataLen > Integer.MAX_VALUE) {
+      return;
+    }
+    final long checksumPos = BlockMetadataHeader.getHeaderSize()
+        + (offset / chunkSize) * checksumSize;
+    final long checksumLen = numberOfChunks(dataLen) * (long) checksumSize;
+    try (AutoCloseableLock lock = datanode.data.acquireReplicaLock(
+        block.getBlockPoolId(), block.getBlockId())) {
+      if (datanode.data.getReplica(block.getBlockPoolId(),
+          block.getBlockId()) != replica
+          || dataCh.size() < endOffset
+          || checksumCh.size() < checksumPos + checksumLen) {
+        return;
+      }
+      mappedReplica = (FinalizedReplica) replica;
+      mappedReplica.mapped();
+      mappedData = fileIoProvider.mmap(ris.getVolumeRef().getVolume(),
+          dataCh, offset, dataLen);
+      mappedChecksums = fileIoProvider.mmap(ris.getVolumeRef().getVolume(),
+          checksumCh, checksumPos, checksumLen);
+    } catch (IOException e) {
+      LOG.warn("Unable to map " + block + ", reading it instead", e);
+      unmapReplica();
+    }
+  }
+
+  private void unmapReplica() {
+    if (mappedData != null) {
+      NativeIO.POSIX.munmap(mappedData);
+      mappedData = null;
+    }
+    if (mappedChecksums != null) {
+      NativeIO.POSIX.munmap(mappedChecksums);
+      mappedChecksums = null;
+    }
+    if (mappedReplica != null) {
+      mappedReplica.unmapped();
+      mappedReplica = null;
+    }
+  }
+
+  /** @return whether the replica is sent from its mapped data. */
+  @VisibleForTesting
+  boolean isMapped() {
+    return mappedData != null;
+  }
+
   private ChunkChecksum getPartialChunkChecksumForFinalized(
       FinalizedReplica finalized) throws IOException {
     // There are a number of places in the code base where a finalized replica
@@ -481,6 +562,7 @@ public void close() throws IOException {
     try {
       ris.closeStreams();
     } finally {
+      unmapReplica();
       IOUtils.closeStream(ris);
       ris = null;
     }
@@ -555,10 +637,12 @@ private int numberOfChunks(long datalen) {
    * @param maxChunks maximum number of chunks to send
    * @param out stream to send data to
    * @param transferTo use transferTo to send data
+   * @param mapped send the data from the mapped replica
    * @param throttler used for throttling data transfer bandwidth
    */
   private int sendPacket(ByteBuffer pkt, int maxChunks, OutputStream out,
-      boolean transferTo, DataTransferThrottler throttler) throws IOException {
+      boolean transferTo, boolean mapped, DataTransferThrottler throttler)
+      throws IOException {
     int dataLen = (int) Math.min(endOffset - offset,
                              (chunkSize * (long) maxChunks));
     
@@ -575,7 +659,8 @@ private int sendPacket(ByteBuffer pkt, int maxChunks, OutputStream out,
     // _ padding, since the header is variable-length
     // H = header and length prefixes
     // C = checksums
-    // D? = data, if transferTo is false.
+    // D? = data, if neither transferTo nor the mapped data is written
+    //      to the socket.
     
     int headerLen = writePacketHeader(pkt, dataLen, packetLen);
     
@@ -586,8 +671,18 @@ private int sendPacket(ByteBuffer pkt, int maxChunks, OutputStream out,
     int checksumOff = pkt.position();
     byte[] buf = pkt.array();
     
-    if (checksumSize > 0 && ris.getChecksumIn() != null) {
+    // The offset of the packet in the mapped data and checksums.
+    final int mappedOff = mapped ? (int) (offset - initialOffset) : 0;
+    final boolean hasChecksums =
+        checksumSize > 0 && (mapped || ris.getChecksumIn() != null);
+    if (mapped) {
+      final ByteBuffer sums = mappedChecksums.duplicate();
+      sums.position(mappedOff / chunkSize * checksumSize);
+      sums.get(buf, checksumOff, checksumDataLen);
+    } else if (checksumSize > 0 && ris.getChecksumIn() != null) {
       readChecksum(buf, checksumOff, checksumDataLen);
+    }
+    if (hasChecksums) {
 
       // write in progress that we need to use to get last checksum
       if (lastDataPacket && lastChunkChecksum != null) {
@@ -600,7 +695,18 @@ private int sendPacket(ByteBuffer pkt, int maxChunks, OutputStream out,
     }
     
     int dataOff = checksumOff + checksumDataLen;
-    if (!transferTo) { // normal transfer
+    ByteBuffer data = null;
+    if (mapped) {
+      data = mappedData.duplicate();
+      data.position(mappedOff);
+      data.limit(mappedOff + dataLen);
+      if (verifyChecksum) {
+        verifyChecksum(data, buf, checksumOff, checksumDataLen);
+      }
+      if (!(out instanceof SocketOutputStream)) {
+        data.duplicate().get(buf, dataOff, dataLen);
+      }
+    } else if (!transferTo) { // normal transfer
       ris.readDataFully(buf, dataOff, dataLen);
 
       if (verifyChecksum) {
@@ -624,6 +730,16 @@ private int sendPacket(ByteBuffer pkt, int maxChunks, OutputStream out,
         datanode.metrics.addSendDataPacketBlockedOnNetworkNanos(waitTime.get());
         datanode.metrics.addSendDataPacketTransferNanos(transferTime.get());
         blockInPosition += dataLen;
+      } else if (mapped && out instanceof SocketOutputStream) {
+        // Write the header, the checksums and the mapped data together
+        LongWritable waitTime = new LongWritable();
+        LongWritable transferTime = new LongWritable();
+        fileIoProvider.writeToSocketFully(ris.getVolumeRef().getVolume(),
+            (SocketOutputStream) out, new ByteBuffer[] {
+                ByteBuffer.wrap(buf, headerOff, dataOff - headerOff), data},
+            waitTime, transferTime);
+        datanode.metrics.addSendDataPacketBlockedOnNetworkNanos(waitTime.get());
+        datanode.metrics.addSendDataPacketTransferNanos(transferTime.get());
       } else {
         // normal transfer
         out.write(buf, headerOff, dataOff + dataLen - headerOff);
@@ -694,6 +810,34 @@ private void readChecksum(byte[] buf, final int checksumOffset,
     }
   }
   
+  /**
+   * Verify the mapped data of a packet against its checksums, with the
+   * native checksum routines if they are available.
+   *
+   * @param data the mapped data of the packet
+   * @param buf buffer that has the checksums
+   * @param checksumOffset offset where checksum is written in the buf
+   * @param checksumLen length of the checksums
+   * @throws ChecksumException on failed checksum verification
+   */
+  private void verifyChecksum(ByteBuffer data, byte[] buf,
+      int checksumOffset, int checksumLen) throws ChecksumException {
+    // The native routines need the checksums in a direct buffer, as the data.
+    if (directChecksums == null || directChecksums.capacity() < checksumLen) {
+      directChecksums = ByteBuffer.allocateDirect(checksumLen);
+    }
+    directChecksums.clear();
+    directChecksums.put(buf, checksumOffset, checksumLen);
+    directChecksums.flip();
+    try {
+      checksum.verifyChunkedSums(data.duplicate(), directChecksums,
+          block.getBlockName(), offset);
+    } catch (ChecksumException e) {
+      throw new ChecksumException("Checksum failed at " + e.getPos()
+          + (replica != null ? " for replica: " + replica : ""), e.getPos());
+    }
+  }
+
   /**
    * Compute checksum for chunks and verify the checksum that is read from
    * the metadata file is correct.
@@ -782,6 +926,7 @@ private long doSendBlock(DataOutputStream out, OutputStream baseStream,
       boolean transferTo = transferToAllowed && !verifyChecksum
           && baseStream instanceof SocketOutputStream
           && ris.getDataIn() instanceof FileInputStream;
+      boolean mapped = !transferTo && mappedData != null;
       if (transferTo) {
         FileChannel fileChannel =
             ((FileInputStream)ris.getDataIn()).getChannel();
@@ -791,6 +936,12 @@ private long doSendBlock(DataOutputStream out, OutputStream baseStream,
         
         // Smaller packet size to only hold checksum when doing transferTo
         pktBufSize += checksumSize * maxChunksPerPacket;
+      } else if (mapped && baseStream instanceof SocketOutputStream) {
+        // The mapped data is written to the socket without being copied, so
+        // as with transferTo the packet buffer only holds the checksums.
+        streamForSendChunks = baseStream;
+        maxChunksPerPacket = numberOfChunks(TRANSFERTO_BUFFER_SIZE);
+        pktBufSize += checksumSize * maxChunksPerPacket;
       } else {
         maxChunksPerPacket = Math.max(1,
             numberOfChunks(IO_FILE_BUFFER_SIZE));
@@ -803,7 +954,7 @@ private long doSendBlock(DataOutputStream out, OutputStream baseStream,
       while (endOffset > offset && !Thread.currentThread().isInterrupted()) {
         manageOsCache();
         long len = sendPacket(pktBuf, maxChunksPerPacket, streamForSendChunks,
-            transferTo, throttler);
+            transferTo, mapped, throttler);
         offset += len;
         totalRead += len + (numberOfChunks(len) * checksumSize);
         seqno++;
@@ -813,7 +964,7 @@ private long doSendBlock(DataOutputStream out, OutputStream baseStream,
         try {
           // send an empty packet to mark the end of the block
           sendPacket(pktBuf, maxChunksPerPacket, streamForSendChunks, transferTo,
-              throttler);
+              mapped, throttler);
           out.flush();
         } catch (IOException e) { //socket error
           throw ioeToSocketException(e);
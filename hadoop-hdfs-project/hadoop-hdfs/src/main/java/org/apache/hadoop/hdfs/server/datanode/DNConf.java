@@ -83,6 +83,9 @@ public class DNConf {
   private final int transferSocketRecvBufferSize;
 
   final boolean transferToAllowed;
+  final boolean mmapReadsEnabled;
+  final int packetWriterThreadsPerVolume;
+  final int packetWriterCoalesceBytes;
   final boolean dropCacheBehindWrites;
   final boolean syncBehindWrites;
   final boolean syncBehindWritesInBackground;
@@ -148,6 +151,15 @@ public DNConf(final Configurable dn) {
     transferToAllowed = getConf().getBoolean(
         DFS_DATANODE_TRANSFERTO_ALLOWED_KEY,
         DFS_DATANODE_TRANSFERTO_ALLOWED_DEFAULT);
+    mmapReadsEnabled = getConf().getBoolean(
+        DFSConfigKeys.DFS_DATANODE_MMAP_READS_ENABLED_KEY,
+        DFSConfigKeys.DFS_DATANODE_MMAP_READS_ENABLED_DEFAULT);
+    packetWriterThreadsPerVolume = getConf().getInt(
+        DFSConfigKeys.DFS_DATANODE_PACKET_WRITER_THREADS_PER_VOLUME_KEY,
+        DFSConfigKeys.DFS_DATANODE_PACKET_WRITER_THREADS_PER_VOLUME_DEFAULT);
+    packetWriterCoalesceBytes = (int) getConf().getLongBytes(
+        DFSConfigKeys.DFS_DATANODE_PACKET_WRITER_COALESCE_BYTES_KEY,
+        DFSConfigKeys.DFS_DATANODE_PACKET_WRITER_COALESCE_BYTES_DEFAULT);
 
     readaheadLength = getConf().getLong(
         HdfsClientConfigKeys.DFS_DATANODE_READAHEAD_BYTES_KEY,
@@ -388,6 +388,7 @@ public static InetSocketAddress createSocketAddr(String target) {
   private boolean isPermissionEnabled;
   private String dnUserName = null;
   private BlockRecoveryWorker blockRecoveryWorker;
+  private PacketWriterService packetWriterService;
   final Tracer tracer;
   private final TracerConfigurationManager tracerConfigurationManager;
   private static final int NUM_CORES = Runtime.getRuntime()
@@ -1392,6 +1393,11 @@ void startDataNode(List<StorageLocation> dataDirectories,
     metrics.getJvmMetrics().setPauseMonitor(pauseMonitor);
 
     blockRecoveryWorker = new BlockRecoveryWorker(this);
+    if (dnConf.packetWriterThreadsPerVolume > 0) {
+      packetWriterService = new PacketWriterService(
+          dnConf.packetWriterThreadsPerVolume,
+          dnConf.packetWriterCoalesceBytes);
+    }
 
     blockPoolManager = new BlockPoolManager(this);
     blockPoolManager.refreshNamenodes(getConf());
@@ -2064,6 +2070,9 @@ public void shutdown() {
       } catch (InterruptedException ie) {
       }
     }
+    if (packetWriterService != null) {
+      packetWriterService.shutdown();
+    }
 
    // IPC server needs to be shutdown late in the process, otherwise
    // shutdown command response won't get sent.
@@ -2910,7 +2919,8 @@ void transferReplicaForPipelineRecovery(final ExtendedBlock b,
     final BlockConstructionStage stage;
 
     //get replica information
-    try(AutoCloseableLock lock = data.acquireDatasetLock()) {
+    try(AutoCloseableLock lock = data.acquireReplicaLock(
+        b.getBlockPoolId(), b.getBlockId())) {
       Block storedBlock = data.getStoredBlock(b.getBlockPoolId(),
           b.getBlockId());
       if (null == storedBlock) {
@@ -3331,6 +3341,11 @@ public BlockRecoveryWorker getBlockRecoveryWorker() {
     return blockRecoveryWorker;
   }
 
+  /** @return the writers of the received packets, or null if disabled. */
+  PacketWriterService getPacketWriterService() {
+    return packetWriterService;
+  }
+
   /**
    * Get timeout value of each OOB type from configuration
    */
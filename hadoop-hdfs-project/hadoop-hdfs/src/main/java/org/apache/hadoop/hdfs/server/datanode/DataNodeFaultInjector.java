@@ -67,6 +67,13 @@ public void delaySendingAckToUpstream(final String upstreamAddr)
       throws IOException {
   }
 
+  /**
+   * Used as a hook to delay the writes of the packets handed over to the
+   * packet writer threads.
+   */
+  public void delayWritingPackets() throws IOException {
+  }
+
   /**
    * Used as a hook to intercept the latency of sending ack.
    */
@@ -127,6 +127,30 @@ public static File idToBlockDir(File root, long blockId) {
     return new File(root, path);
   }
 
+  /** The number of directories in which the finalized blocks are stored. */
+  public static final int NUM_BLOCK_DIRS = 32 * 32;
+
+  /**
+   * Get the index of the directory where a finalized block with this ID
+   * should be stored, between 0 and {@link #NUM_BLOCK_DIRS}.
+   * @see #idToBlockDir(File, long)
+   */
+  public static int idToBlockDirIndex(long blockId) {
+    int d1 = (int) ((blockId >> 16) & 0x1F);
+    int d2 = (int) ((blockId >> 8) & 0x1F);
+    return d1 * 32 + d2;
+  }
+
+  /**
+   * Get the directory with the given index, where finalized blocks are
+   * stored.  Do not attempt to create the directory.
+   * @see #idToBlockDirIndex(long)
+   */
+  public static File indexToBlockDir(File root, int index) {
+    return idToBlockDir(root, ((long) (index / 32) << 16) |
+        ((long) (index % 32) << 8));
+  }
+
   /**
    * @return the FileInputStream for the meta data of the given block.
    * @throws FileNotFoundException
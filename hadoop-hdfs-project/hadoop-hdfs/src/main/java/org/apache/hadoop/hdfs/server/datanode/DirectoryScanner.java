@@ -23,11 +23,14 @@
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -48,6 +51,7 @@
 import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.protocol.Block;
 import org.apache.hadoop.hdfs.protocol.HdfsConstants;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.DataNodeVolumeMetrics;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsDatasetSpi;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeSpi;
 import org.apache.hadoop.util.AutoCloseableLock;
@@ -69,12 +73,33 @@ public class DirectoryScanner implements Runnable {
       + " starting at %s with interval of %dms";
   private static final String START_MESSAGE_WITH_THROTTLE = START_MESSAGE
       + " and throttle limit of %dms/s";
+  private static final String INCREMENTAL_MESSAGE =
+      ", verifying %d block subdirs of each block pool per scan";
+  // The time below which the changes made to a directory since its
+  // modification time was read may leave it unchanged
+  private static final long MTIME_GRANULARITY_MS = 2000;
 
   private final FsDatasetSpi<?> dataset;
   private final ExecutorService reportCompileThreadPool;
   private final ScheduledExecutorService masterThread;
   private final long scanPeriodMsecs;
   private final int throttleLimitMsPerSec;
+  // whether the replicas may be loaded from the replica journals
+  private final boolean reconcileJournals;
+  // the number of block subdirs of each block pool slice verified by an
+  // incremental scan, or 0 to scan the whole volumes at once
+  private final int incrementalSubdirs;
+  private final long incrementalPeriodMsecs;
+  // whether the next scan has to be a full scan
+  private boolean fullScanPending;
+  // the index of the next block subdir verified by the incremental scans
+  private int nextSubdir = 0;
+  /**
+   * The state of the block subdirs verified by the incremental scans,
+   * indexed by storage ID and block pool ID.
+   */
+  private final Map<String, Map<String, SubdirStates>> subdirStates =
+      new HashMap<String, Map<String, SubdirStates>>();
   private volatile boolean shouldRun = false;
   private boolean retainDiffs = false;
   private final DataNode datanode;
@@ -143,6 +168,41 @@ public String toString() {
     }
   }
 
+  /**
+   * The state of the block subdirs of a block pool slice when they were last
+   * verified without differences by the incremental scans.
+   */
+  private static class SubdirStates {
+    private final boolean[] verified =
+        new boolean[DatanodeUtil.NUM_BLOCK_DIRS];
+    // the monotonic times of the verifications
+    private final long[] verifiedTimes = new long[DatanodeUtil.NUM_BLOCK_DIRS];
+    private final long[] mtimes = new long[DatanodeUtil.NUM_BLOCK_DIRS];
+    // the fingerprints of the finalized replicas of the subdirs in memory
+    private final long[] fingerprints = new long[DatanodeUtil.NUM_BLOCK_DIRS];
+
+    /**
+     * @return whether the subdir was verified less than maxAge ago, and
+     *         did not change since.
+     */
+    boolean isUnchanged(int i, long mtime, long fingerprint, long now,
+        long maxAge) {
+      return verified[i] && now - verifiedTimes[i] < maxAge
+          && mtimes[i] == mtime && fingerprints[i] == fingerprint;
+    }
+
+    void setVerified(int i, long mtime, long fingerprint, long now) {
+      verified[i] = true;
+      verifiedTimes[i] = now;
+      mtimes[i] = mtime;
+      fingerprints[i] = fingerprint;
+    }
+
+    void setUnverified(int i) {
+      verified[i] = false;
+    }
+  }
+
   /**
    * Helper class for compiling block info reports from report compiler threads.
    */
@@ -443,6 +503,29 @@ public long getGenStamp() {
       throttleLimitMsPerSec = throttle;
     }
 
+    reconcileJournals = conf.getBoolean(
+        DFSConfigKeys.DFS_DATANODE_REPLICA_JOURNAL_ENABLED_KEY,
+        DFSConfigKeys.DFS_DATANODE_REPLICA_JOURNAL_ENABLED_DEFAULT);
+    fullScanPending = reconcileJournals;
+
+    int subdirs = conf.getInt(
+        DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_INCREMENTAL_SUBDIRS_KEY,
+        DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_INCREMENTAL_SUBDIRS_DEFAULT);
+    incrementalSubdirs = Math.max(0,
+        Math.min(subdirs, DatanodeUtil.NUM_BLOCK_DIRS));
+    int incrementalInterval = conf.getInt(
+        DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_INCREMENTAL_INTERVAL_KEY,
+        DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_INCREMENTAL_INTERVAL_DEFAULT);
+    if (incrementalInterval <= 0) {
+      LOG.error(
+          DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_INCREMENTAL_INTERVAL_KEY
+          + " set to a value below 1 s. Assuming default value of " +
+          DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_INCREMENTAL_INTERVAL_DEFAULT);
+      incrementalInterval =
+          DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_INCREMENTAL_INTERVAL_DEFAULT;
+    }
+    incrementalPeriodMsecs = incrementalInterval * (long) MILLIS_PER_SECOND;
+
     int threads = 
         conf.getInt(DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_THREADS_KEY,
                     DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_THREADS_DEFAULT);
@@ -455,26 +538,37 @@ public long getGenStamp() {
 
   /**
    * Start the scanner.  The scanner will run every
-   * {@link DFSConfigKeys#DFS_DATANODE_DIRECTORYSCAN_INTERVAL_KEY} seconds.
+   * {@link DFSConfigKeys#DFS_DATANODE_DIRECTORYSCAN_INTERVAL_KEY} seconds,
+   * or every
+   * {@link DFSConfigKeys#DFS_DATANODE_DIRECTORYSCAN_INCREMENTAL_INTERVAL_KEY}
+   * seconds when the scans are incremental.
+   * If the replicas may have been loaded from the replica journals, the
+   * first scan runs at once and scans every volume, to reconcile the changes
+   * which the journals missed.
    */
   void start() {
     shouldRun = true;
-    long offset = ThreadLocalRandom.current().nextInt(
-        (int) (scanPeriodMsecs/MILLIS_PER_SECOND)) * MILLIS_PER_SECOND; //msec
+    long period =
+        incrementalSubdirs > 0 ? incrementalPeriodMsecs : scanPeriodMsecs;
+    long offset = reconcileJournals ? 0 : ThreadLocalRandom.current().nextInt(
+        (int) (period/MILLIS_PER_SECOND)) * MILLIS_PER_SECOND; //msec
     long firstScanTime = Time.now() + offset;
     String logMsg;
 
     if (throttleLimitMsPerSec < MILLIS_PER_SECOND) {
       logMsg = String.format(START_MESSAGE_WITH_THROTTLE,
-          FastDateFormat.getInstance().format(firstScanTime), scanPeriodMsecs,
+          FastDateFormat.getInstance().format(firstScanTime), period,
           throttleLimitMsPerSec);
     } else {
       logMsg = String.format(START_MESSAGE,
-          FastDateFormat.getInstance().format(firstScanTime), scanPeriodMsecs);
+          FastDateFormat.getInstance().format(firstScanTime), period);
+    }
+    if (incrementalSubdirs > 0) {
+      logMsg += String.format(INCREMENTAL_MESSAGE, incrementalSubdirs);
     }
 
     LOG.info(logMsg);
-    masterThread.scheduleAtFixedRate(this, offset, scanPeriodMsecs, 
+    masterThread.scheduleAtFixedRate(this, offset, period,
                                      TimeUnit.MILLISECONDS);
   }
   
@@ -499,8 +593,9 @@ private void clear() {
   }
 
   /**
-   * Main program loop for DirectoryScanner.  Runs {@link reconcile()}
-   * and handles any exceptions.
+   * Main program loop for DirectoryScanner.  Runs {@link reconcile()}, or
+   * {@link reconcileIncremental()} when the scans are incremental, and
+   * handles any exceptions.
    */
   @Override
   public void run() {
@@ -512,7 +607,12 @@ public void run() {
       }
 
       //We're are okay to run - do it
-      reconcile();      
+      if (incrementalSubdirs > 0 && !fullScanPending) {
+        reconcileIncremental();
+      } else {
+        fullScanPending = false;
+        reconcile();
+      }
       
     } catch (Exception e) {
       //Log and continue - allows Executor to run again next cycle
@@ -569,7 +669,26 @@ void shutdown() {
   void reconcile() throws IOException {
     LOG.debug("reconcile start DirectoryScanning");
     scan();
+    checkAndUpdateDiffs();
+    if (!retainDiffs) clear();
+  }
 
+  /**
+   * Reconcile differences between disk and in-memory blocks in the next
+   * block subdirs of every block pool slice
+   */
+  @VisibleForTesting
+  void reconcileIncremental() throws IOException {
+    LOG.debug("reconcile start incremental DirectoryScanning");
+    scanIncremental();
+    checkAndUpdateDiffs();
+    if (!retainDiffs) clear();
+  }
+
+  /**
+   * Update the in-memory blocks with the differences found by a scan
+   */
+  private void checkAndUpdateDiffs() throws IOException {
     // HDFS-14476: run checkAndUpadte with batch to avoid holding the lock
     // too long
     int loopCount = 0;
@@ -593,7 +712,6 @@ void reconcile() throws IOException {
         }
       }
     }
-    if (!retainDiffs) clear();
   }
 
   /**
@@ -604,12 +722,12 @@ private void scan() {
     clear();
     Map<String, ScanInfo[]> diskReport = getDiskReport();
 
-    // Hold FSDataset lock to prevent further changes to the block map
-    try(AutoCloseableLock lock = dataset.acquireDatasetLock()) {
-      for (Entry<String, ScanInfo[]> entry : diskReport.entrySet()) {
-        String bpid = entry.getKey();
-        ScanInfo[] blockpoolReport = entry.getValue();
-        
+    for (Entry<String, ScanInfo[]> entry : diskReport.entrySet()) {
+      String bpid = entry.getKey();
+      ScanInfo[] blockpoolReport = entry.getValue();
+
+      // Hold the shared lock of the block pool while comparing its replicas
+      try(AutoCloseableLock lock = dataset.acquireBlockPoolReadLock(bpid)) {
         Stats statsRecord = new Stats(bpid);
         stats.put(bpid, statsRecord);
         LinkedList<ScanInfo> diffRecord = new LinkedList<ScanInfo>();
@@ -621,71 +739,239 @@ private void scan() {
         final List<FinalizedReplica> bl = dataset.getFinalizedBlocks(bpid);
         Collections.sort(bl); // Sort based on blockId
 
-        int d = 0; // index for blockpoolReport
-        int m = 0; // index for memReprot
-        while (m < bl.size() && d < blockpoolReport.length) {
-          FinalizedReplica memBlock = bl.get(m);
-          ScanInfo info = blockpoolReport[d];
-          if (info.getBlockId() < memBlock.getBlockId()) {
-            if (!dataset.isDeletingBlock(bpid, info.getBlockId())) {
-              // Block is missing in memory
-              statsRecord.missingMemoryBlocks++;
-              addDifference(diffRecord, statsRecord, info);
+        compareReports(bpid, blockpoolReport, bl, diffRecord, statsRecord);
+        LOG.info(statsRecord.toString());
+      } //end synchronized
+    } //end for
+  }
+
+  /**
+   * Compare the blocks on the disk with the blocks in memory, and add their
+   * differences to the given list.
+   *
+   * @param bpid the block pool ID
+   * @param blockpoolReport the blocks on the disk, sorted by block ID
+   * @param bl the finalized blocks in memory, sorted by block ID
+   * @param diffRecord the list to which to add the differences
+   * @param statsRecord the stats to update
+   */
+  private void compareReports(String bpid, ScanInfo[] blockpoolReport,
+      List<FinalizedReplica> bl, LinkedList<ScanInfo> diffRecord,
+      Stats statsRecord) {
+    int d = 0; // index for blockpoolReport
+    int m = 0; // index for memReprot
+    while (m < bl.size() && d < blockpoolReport.length) {
+      FinalizedReplica memBlock = bl.get(m);
+      ScanInfo info = blockpoolReport[d];
+      if (info.getBlockId() < memBlock.getBlockId()) {
+        if (!dataset.isDeletingBlock(bpid, info.getBlockId())) {
+          // Block is missing in memory
+          statsRecord.missingMemoryBlocks++;
+          addDifference(diffRecord, statsRecord, info);
+        }
+        d++;
+        continue;
+      }
+      if (info.getBlockId() > memBlock.getBlockId()) {
+        // Block is missing on the disk
+        addDifference(diffRecord, statsRecord,
+                      memBlock.getBlockId(), info.getVolume());
+        m++;
+        continue;
+      }
+      // Block file and/or metadata file exists on the disk
+      // Block exists in memory
+      if (info.getBlockFile() == null) {
+        // Block metadata file exits and block file is missing
+        addDifference(diffRecord, statsRecord, info);
+      } else if (info.getGenStamp() != memBlock.getGenerationStamp()
+          || info.getBlockFileLength() != memBlock.getNumBytes()) {
+        // Block metadata file is missing or has wrong generation stamp,
+        // or block file length is different than expected
+        statsRecord.mismatchBlocks++;
+        addDifference(diffRecord, statsRecord, info);
+      } else if (info.getBlockFile().compareTo(memBlock.getBlockFile()) != 0) {
+        // volumeMap record and on-disk files don't match.
+        statsRecord.duplicateBlocks++;
+        addDifference(diffRecord, statsRecord, info);
+      }
+      d++;
+
+      if (d < blockpoolReport.length) {
+        // There may be multiple on-disk records for the same block, don't increment
+        // the memory record pointer if so.
+        ScanInfo nextInfo = blockpoolReport[Math.min(d, blockpoolReport.length - 1)];
+        if (nextInfo.getBlockId() != info.blockId) {
+          ++m;
+        }
+      } else {
+        ++m;
+      }
+    }
+    while (m < bl.size()) {
+      FinalizedReplica current = bl.get(m++);
+      addDifference(diffRecord, statsRecord,
+                    current.getBlockId(), current.getVolume());
+    }
+    while (d < blockpoolReport.length) {
+      if (!dataset.isDeletingBlock(bpid, blockpoolReport[d].getBlockId())) {
+        statsRecord.missingMemoryBlocks++;
+        addDifference(diffRecord, statsRecord, blockpoolReport[d]);
+      }
+      d++;
+    }
+  }
+
+  /**
+   * Verify the next block subdirs of every block pool slice.  The subdirs
+   * which did not change since they were last verified without differences
+   * are skipped, unless they were verified a scan interval ago.  The
+   * volumes are scanned one after the other, since only a few of their
+   * subdirs are listed, and the blocks in memory are only locked while they
+   * are listed, rather than while they are compared.
+   */
+  private void scanIncremental() {
+    clear();
+    final int first = nextSubdir;
+    final int end = Math.min(first + incrementalSubdirs,
+        DatanodeUtil.NUM_BLOCK_DIRS);
+    nextSubdir = end % DatanodeUtil.NUM_BLOCK_DIRS;
+    final long now = Time.monotonicNow();
+
+    // The finalized blocks of the subdirs in memory, by block pool
+    final Map<String, List<FinalizedReplica>> memReports =
+        new HashMap<String, List<FinalizedReplica>>();
+    final Set<String> storageIds = new HashSet<String>();
+    try (FsDatasetSpi.FsVolumeReferences volumes =
+        dataset.getFsVolumeReferences()) {
+      for (FsVolumeSpi volume : volumes) {
+        storageIds.add(volume.getStorageID());
+        Map<String, SubdirStates> volumeStates =
+            subdirStates.get(volume.getStorageID());
+        if (volumeStates == null) {
+          volumeStates = new HashMap<String, SubdirStates>();
+          subdirStates.put(volume.getStorageID(), volumeStates);
+        }
+        final ReportCompiler compiler = new ReportCompiler(datanode, volume);
+        long scanned = 0;
+        long skipped = 0;
+        for (String bpid : volume.getBlockPoolList()) {
+          List<FinalizedReplica> memReport = memReports.get(bpid);
+          if (memReport == null) {
+            memReport = getFinalizedBlocks(bpid, first, end);
+            memReports.put(bpid, memReport);
+          }
+          SubdirStates states = volumeStates.get(bpid);
+          if (states == null) {
+            states = new SubdirStates();
+            volumeStates.put(bpid, states);
+          }
+          Stats statsRecord = stats.get(bpid);
+          if (statsRecord == null) {
+            statsRecord = new Stats(bpid);
+            stats.put(bpid, statsRecord);
+          }
+          LinkedList<ScanInfo> diffRecord;
+          synchronized (diffs) {
+            diffRecord = diffs.get(bpid);
+            if (diffRecord == null) {
+              diffRecord = new LinkedList<ScanInfo>();
+              diffs.put(bpid, diffRecord);
             }
-            d++;
-            continue;
           }
-          if (info.getBlockId() > memBlock.getBlockId()) {
-            // Block is missing on the disk
-            addDifference(diffRecord, statsRecord,
-                          memBlock.getBlockId(), info.getVolume());
-            m++;
-            continue;
+
+          final List<List<FinalizedReplica>> subdirBlocks =
+              new ArrayList<List<FinalizedReplica>>(end - first);
+          for (int i = first; i < end; i++) {
+            subdirBlocks.add(new ArrayList<FinalizedReplica>());
           }
-          // Block file and/or metadata file exists on the disk
-          // Block exists in memory
-          if (info.getBlockFile() == null) {
-            // Block metadata file exits and block file is missing
-            addDifference(diffRecord, statsRecord, info);
-          } else if (info.getGenStamp() != memBlock.getGenerationStamp()
-              || info.getBlockFileLength() != memBlock.getNumBytes()) {
-            // Block metadata file is missing or has wrong generation stamp,
-            // or block file length is different than expected
-            statsRecord.mismatchBlocks++;
-            addDifference(diffRecord, statsRecord, info);
-          } else if (info.getBlockFile().compareTo(memBlock.getBlockFile()) != 0) {
-            // volumeMap record and on-disk files don't match.
-            statsRecord.duplicateBlocks++;
-            addDifference(diffRecord, statsRecord, info);
+          for (FinalizedReplica memBlock : memReport) {
+            if (memBlock.getVolume() == volume) {
+              subdirBlocks.get(DatanodeUtil.idToBlockDirIndex(
+                  memBlock.getBlockId()) - first).add(memBlock);
+            }
           }
-          d++;
-
-          if (d < blockpoolReport.length) {
-            // There may be multiple on-disk records for the same block, don't increment
-            // the memory record pointer if so.
-            ScanInfo nextInfo = blockpoolReport[Math.min(d, blockpoolReport.length - 1)];
-            if (nextInfo.getBlockId() != info.blockId) {
-              ++m;
+
+          final File bpFinalizedDir = volume.getFinalizedDir(bpid);
+          for (int i = first; i < end; i++) {
+            final List<FinalizedReplica> bl = subdirBlocks.get(i - first);
+            Collections.sort(bl); // Sort based on blockId
+            final long fingerprint = getFingerprint(bl);
+            final File dir = DatanodeUtil.indexToBlockDir(bpFinalizedDir, i);
+            final long mtime = dir.lastModified();
+            if (states.isUnchanged(i, mtime, fingerprint, now,
+                scanPeriodMsecs)) {
+              skipped++;
+              continue;
+            }
+            scanned++;
+            // A missing subdir has no modification time
+            final ScanInfo[] subdirReport = mtime == 0 ? new ScanInfo[0]
+                : compiler.compileSubdirReport(bpFinalizedDir, dir);
+            statsRecord.totalBlocks += subdirReport.length;
+            final int numDiffs = diffRecord.size();
+            compareReports(bpid, subdirReport, bl, diffRecord, statsRecord);
+            // A subdir modified within the granularity of its modification
+            // time may be modified again without changing it.
+            if (diffRecord.size() == numDiffs
+                && Time.now() - mtime > MTIME_GRANULARITY_MS) {
+              states.setVerified(i, mtime, fingerprint, now);
+            } else {
+              states.setUnverified(i);
             }
-          } else {
-            ++m;
           }
         }
-        while (m < bl.size()) {
-          FinalizedReplica current = bl.get(m++);
-          addDifference(diffRecord, statsRecord,
-                        current.getBlockId(), current.getVolume());
-        }
-        while (d < blockpoolReport.length) {
-          if (!dataset.isDeletingBlock(bpid, blockpoolReport[d].getBlockId())) {
-            statsRecord.missingMemoryBlocks++;
-            addDifference(diffRecord, statsRecord, blockpoolReport[d]);
+
+        final DataNodeVolumeMetrics metrics = volume.getMetrics();
+        if (metrics != null) {
+          metrics.addDirectoryScanSubdirs(scanned, skipped,
+              end * 100 / DatanodeUtil.NUM_BLOCK_DIRS);
+          if (end == DatanodeUtil.NUM_BLOCK_DIRS) {
+            metrics.incrDirectoryScanPasses();
           }
-          d++;
         }
-        LOG.info(statsRecord.toString());
-      } //end for
-    } //end synchronized
+      }
+    } catch (IOException e) {
+      LOG.error("Unexpected IOException during incremental scan", e);
+    } catch (InterruptedException e) {
+      LOG.info("Incremental scan interrupted");
+      Thread.currentThread().interrupt();
+      return;
+    }
+    // Forget the volumes which were removed
+    subdirStates.keySet().retainAll(storageIds);
+    for (Stats statsRecord : stats.values()) {
+      LOG.debug(statsRecord.toString());
+    }
+  }
+
+  /**
+   * Get the finalized blocks in memory which belong in the given block
+   * subdirs.
+   */
+  private List<FinalizedReplica> getFinalizedBlocks(String bpid, int first,
+      int end) {
+    final List<FinalizedReplica> blocks = new ArrayList<FinalizedReplica>();
+    for (FinalizedReplica b : dataset.getFinalizedBlocks(bpid)) {
+      final int i = DatanodeUtil.idToBlockDirIndex(b.getBlockId());
+      if (i >= first && i < end) {
+        blocks.add(b);
+      }
+    }
+    return blocks;
+  }
+
+  /**
+   * @return a fingerprint of the given finalized blocks, sorted by block ID
+   */
+  private static long getFingerprint(List<FinalizedReplica> bl) {
+    long fingerprint = 1;
+    for (FinalizedReplica b : bl) {
+      fingerprint = 31 * fingerprint + b.getBlockId();
+      fingerprint = 31 * fingerprint + b.getGenerationStamp();
+      fingerprint = 31 * fingerprint + b.getNumBytes();
+    }
+    return fingerprint;
   }
 
   /**
@@ -702,6 +988,7 @@ private void addDifference(LinkedList<ScanInfo> diffRecord,
     statsRecord.missingMetaFile += info.getMetaFile() == null ? 1 : 0;
     statsRecord.missingBlockFile += info.getBlockFile() == null ? 1 : 0;
     diffRecord.add(info);
+    incrDifferences(info.getVolume());
   }
 
   /**
@@ -719,6 +1006,14 @@ private void addDifference(LinkedList<ScanInfo> diffRecord,
     statsRecord.missingBlockFile++;
     statsRecord.missingMetaFile++;
     diffRecord.add(new ScanInfo(blockId, null, null, vol));
+    incrDifferences(vol);
+  }
+
+  private static void incrDifferences(FsVolumeSpi vol) {
+    final DataNodeVolumeMetrics metrics = vol == null ? null : vol.getMetrics();
+    if (metrics != null) {
+      metrics.incrDirectoryScanDifferences();
+    }
   }
 
   /**
@@ -852,6 +1147,26 @@ public ScanInfoPerBlockPool call() throws IOException {
       return result;
     }
 
+    /**
+     * Compile a sorted array of {@link ScanInfo} for the blocks in a block
+     * subdir, for the incremental scans.
+     *
+     * @param bpFinalizedDir the finalized directory of the block pool
+     * @param dir the block subdir to scan
+     */
+    private ScanInfo[] compileSubdirReport(File bpFinalizedDir, File dir)
+        throws InterruptedException {
+      if (!perfTimer.isRunning()) {
+        perfTimer.start();
+        throttleTimer.start();
+      }
+      final LinkedList<ScanInfo> report =
+          compileReport(volume, bpFinalizedDir, dir, new LinkedList<ScanInfo>());
+      final ScanInfo[] record = report.toArray(new ScanInfo[report.size()]);
+      Arrays.sort(record);
+      return record;
+    }
+
     /**
      * Compile a list of {@link ScanInfo} for the blocks in the directory
      * given by {@code dir}.
@@ -47,7 +47,10 @@
 import java.io.Flushable;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
 import java.nio.file.CopyOption;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -116,7 +119,8 @@ public enum OPERATION {
     READ,
     WRITE,
     FLUSH,
-    NATIVE_COPY
+    NATIVE_COPY,
+    MMAP
   }
 
   /**
@@ -286,6 +290,78 @@ public void transferToSocketFully(
     }
   }
 
+  /**
+   * Write buffers to a SocketOutputStream with gathering writes.  The
+   * buffers may be mapped regions of a file, which are read from the disk
+   * while they are written.
+   *
+   * @param volume  target volume. null if unavailable.
+   * @param sockOut  SocketOutputStream to write the data.
+   * @param srcs  buffers to write.
+   * @param waitTime  returns the nanoseconds spent waiting for the socket
+   *                  to become writable.
+   * @param transferTime  returns the nanoseconds spent transferring data.
+   * @throws IOException
+   */
+  public void writeToSocketFully(
+      @Nullable FsVolumeSpi volume, SocketOutputStream sockOut,
+      ByteBuffer[] srcs, LongWritable waitTime, LongWritable transferTime)
+      throws IOException {
+    long count = 0;
+    for (ByteBuffer src : srcs) {
+      count += src.remaining();
+    }
+    final long begin = profilingEventHook.beforeFileIo(volume, TRANSFER, count);
+    try {
+      faultInjectorEventHook.beforeFileIo(volume, TRANSFER, count);
+      final GatheringByteChannel ch =
+          (GatheringByteChannel) sockOut.getChannel();
+      long wait = 0;
+      long transfer = 0;
+      for (long left = count; left > 0;) {
+        final long start = System.nanoTime();
+        sockOut.waitForWritable();
+        final long writable = System.nanoTime();
+        left -= ch.write(srcs);
+        wait += writable - start;
+        transfer += System.nanoTime() - writable;
+      }
+      waitTime.set(wait);
+      transferTime.set(transfer);
+      profilingEventHook.afterFileIo(volume, TRANSFER, begin, count);
+    } catch (Exception e) {
+      onFailure(volume, begin);
+      throw e;
+    }
+  }
+
+  /**
+   * Map a region of a file into memory using
+   * {@link FileChannel#map(FileChannel.MapMode, long, long)}.
+   *
+   * @param volume  target volume. null if unavailable.
+   * @param fileCh  FileChannel of the file to map.
+   * @param position  position within the file where the region begins.
+   * @param size  size of the region.
+   * @return  the read only mapped region.
+   * @throws IOException
+   */
+  public MappedByteBuffer mmap(
+      @Nullable FsVolumeSpi volume, FileChannel fileCh, long position,
+      long size) throws IOException {
+    final long begin = profilingEventHook.beforeMetadataOp(volume, MMAP);
+    try {
+      faultInjectorEventHook.beforeMetadataOp(volume, MMAP);
+      MappedByteBuffer buffer =
+          fileCh.map(FileChannel.MapMode.READ_ONLY, position, size);
+      profilingEventHook.afterMetadataOp(volume, MMAP, begin);
+      return buffer;
+    } catch (Exception e) {
+      onFailure(volume, begin);
+      throw e;
+    }
+  }
+
   /**
    * Create a file.
    * @param volume  target volume. null if unavailable.
@@ -19,6 +19,7 @@
 
 import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.hadoop.hdfs.protocol.Block;
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.ReplicaState;
@@ -29,6 +30,8 @@
  */
 public class FinalizedReplica extends ReplicaInfo {
   private byte[] lastPartialChunkChecksum;
+  /** The number of readers which have mapped the files of the replica. */
+  private final AtomicInteger mappedReaders = new AtomicInteger();
   /**
    * Constructor
    * @param blockId block id
@@ -133,4 +136,22 @@ public void loadLastPartialChunkChecksum()
         getBlockFile(), getMetaFile());
     setLastPartialChunkChecksum(lastChecksum);
   }
+
+  /**
+   * Count a reader which maps the files of the replica, until it calls
+   * {@link #unmapped()}.  The files of a mapped replica must not be shortened
+   * in place, since the readers would fault on the pages past the new end.
+   */
+  public void mapped() {
+    mappedReaders.incrementAndGet();
+  }
+
+  public void unmapped() {
+    mappedReaders.decrementAndGet();
+  }
+
+  /** @return whether a reader has mapped the files of the replica. */
+  public boolean isMapped() {
+    return mappedReaders.get() > 0;
+  }
 }
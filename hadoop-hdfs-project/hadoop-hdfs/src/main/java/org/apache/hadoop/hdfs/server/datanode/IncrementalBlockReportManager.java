@@ -138,6 +138,8 @@ int putMissing(ReceivedDeletedBlockInfo[] rdbis) {
 
   /** The timestamp of the last IBR. */
   private volatile long lastIBR;
+  /** The time the first pending block was queued, or -1 if none is. */
+  private long pendingSince = -1;
   private DataNodeMetrics dnMetrics;
 
   IncrementalBlockReportManager(
@@ -183,12 +185,17 @@ private synchronized StorageReceivedDeletedBlocks[] generateIBRs() {
     return reports.toArray(new StorageReceivedDeletedBlocks[reports.size()]);
   }
 
-  private synchronized void putMissing(StorageReceivedDeletedBlocks[] reports) {
+  private synchronized void putMissing(StorageReceivedDeletedBlocks[] reports,
+      long queuedSince) {
     for (StorageReceivedDeletedBlocks r : reports) {
       pendingIBRs.get(r.getStorage()).putMissing(r.getBlocks());
     }
     if (reports.length > 0) {
       readyToSend = true;
+      if (queuedSince >= 0
+          && (pendingSince < 0 || queuedSince < pendingSince)) {
+        pendingSince = queuedSince;
+      }
     }
   }
 
@@ -196,7 +203,13 @@ private synchronized void putMissing(StorageReceivedDeletedBlocks[] reports) {
   void sendIBRs(DatanodeProtocol namenode, DatanodeRegistration registration,
       String bpid) throws IOException {
     // Generate a list of the pending reports for each storage under the lock
-    final StorageReceivedDeletedBlocks[] reports = generateIBRs();
+    final StorageReceivedDeletedBlocks[] reports;
+    final long queuedSince;
+    synchronized (this) {
+      queuedSince = pendingSince;
+      reports = generateIBRs();
+      pendingSince = -1;
+    }
     if (reports.length == 0) {
       // Nothing new to report.
       return;
@@ -214,13 +227,20 @@ void sendIBRs(DatanodeProtocol namenode, DatanodeRegistration registration,
     } finally {
 
       if (success) {
-        dnMetrics.addIncrementalBlockReport(monotonicNow() - startTime);
+        final long endTime = monotonicNow();
+        dnMetrics.addIncrementalBlockReport(endTime - startTime);
+        int blocks = 0;
+        for (StorageReceivedDeletedBlocks r : reports) {
+          blocks += r.getBlocks().length;
+        }
+        dnMetrics.addIncrementalBlockReportBatch(
+            queuedSince < 0 ? 0 : endTime - queuedSince, blocks);
         lastIBR = startTime;
       } else {
         // If we didn't succeed in sending the report, put all of the
         // blocks back onto our queue, but only in the case where we
         // didn't put something newer in the meantime.
-        putMissing(reports);
+        putMissing(reports, queuedSince);
       }
     }
   }
@@ -253,6 +273,9 @@ synchronized void addRDBI(ReceivedDeletedBlockInfo rdbi,
       }
     }
     getPerStorageIBR(storage).put(rdbi);
+    if (pendingSince < 0) {
+      pendingSince = monotonicNow();
+    }
   }
 
   synchronized void notifyNamenodeBlock(ReceivedDeletedBlockInfo rdbi,
@@ -292,8 +315,9 @@ synchronized void triggerDeletionReportForTests() {
     }
   }
 
-  void clearIBRs() {
+  synchronized void clearIBRs() {
     pendingIBRs.clear();
+    pendingSince = -1;
   }
 
   @VisibleForTesting
@@ -0,0 +1,126 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeSpi;
+import org.slf4j.Logger;
+
+/**
+ * The thread pools which write the packets received by the
+ * {@link BlockReceiver}s to disk, one for each volume.
+ * <p>
+ * When enabled, a receiver verifies a packet, forwards it to the mirror and
+ * hands it over to the pool of its volume, rather than writing it itself.
+ * The packets of a block are written in order, by at most one thread at a
+ * time, and the packets received while a write is in progress are
+ * coalesced into the next write.  A slow disk then delays the writes of its
+ * own blocks, rather than the pipelines which write them, and the many small
+ * packets of a busy block are written with a few large writes.
+ */
+class PacketWriterService {
+  static final Logger LOG = DataNode.LOG;
+
+  // ThreadPool keep-alive time for the idle threads
+  private static final long THREADS_KEEP_ALIVE_SECONDS = 60;
+
+  private final int threadsPerVolume;
+  private final int coalesceBytes;
+  private final ThreadGroup threadGroup;
+  private Map<String, ThreadPoolExecutor> executors = new HashMap<>();
+
+  PacketWriterService(int threadsPerVolume, int coalesceBytes) {
+    this.threadsPerVolume = threadsPerVolume;
+    this.coalesceBytes = coalesceBytes;
+    this.threadGroup = new ThreadGroup(getClass().getSimpleName());
+  }
+
+  /** @return the number of bytes above which the writes are not coalesced. */
+  int getCoalesceBytes() {
+    return coalesceBytes;
+  }
+
+  private ThreadPoolExecutor getExecutor(final FsVolumeSpi volume) {
+    ThreadPoolExecutor executor = executors.get(volume.getStorageID());
+    if (executor == null) {
+      ThreadFactory threadFactory = new ThreadFactory() {
+        private int counter = 0;
+
+        @Override
+        public Thread newThread(Runnable r) {
+          int thisIndex;
+          synchronized (this) {
+            thisIndex = counter++;
+          }
+          Thread t = new Thread(threadGroup, r);
+          t.setName("Packet writer #" + thisIndex + " for volume "
+              + volume.getBasePath());
+          t.setDaemon(true);
+          return t;
+        }
+      };
+      executor = new ThreadPoolExecutor(threadsPerVolume, threadsPerVolume,
+          THREADS_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+          new LinkedBlockingQueue<Runnable>(), threadFactory);
+      // The volumes which are not written do not keep their threads.
+      executor.allowCoreThreadTimeOut(true);
+      executors.put(volume.getStorageID(), executor);
+    }
+    return executor;
+  }
+
+  /**
+   * Write some packets on the pool of a volume.
+   * @throws IOException if the service is shut down
+   */
+  synchronized void execute(FsVolumeSpi volume, Runnable task)
+      throws IOException {
+    if (executors == null) {
+      throw new IOException("PacketWriterService is already shut down");
+    }
+    try {
+      getExecutor(volume).execute(task);
+    } catch (RejectedExecutionException e) {
+      throw new IOException("Failed to write the packets on " + volume, e);
+    }
+  }
+
+  /**
+   * Shut down the pools.  The writes in progress are completed, since the
+   * receivers wait for them before closing their replicas.
+   */
+  synchronized void shutdown() {
+    if (executors == null) {
+      LOG.warn("PacketWriterService has already shut down.");
+      return;
+    }
+    LOG.info("Shutting down all packet writer threads");
+    for (ThreadPoolExecutor executor : executors.values()) {
+      executor.shutdown();
+    }
+    executors = null;
+  }
+}
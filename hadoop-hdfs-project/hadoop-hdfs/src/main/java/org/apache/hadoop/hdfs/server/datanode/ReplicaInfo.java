@@ -28,7 +28,6 @@
 import org.apache.hadoop.hdfs.protocol.Block;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeSpi;
 import org.apache.hadoop.io.IOUtils;
-import org.apache.hadoop.util.LightWeightResizableGSet;
 
 import com.google.common.annotations.VisibleForTesting;
 
@@ -37,30 +36,39 @@
  * It provides a general interface for meta information of a replica.
  */
 @InterfaceAudience.Private
-abstract public class ReplicaInfo extends Block
-    implements Replica, LightWeightResizableGSet.LinkedElement {
-
-  /** For implementing {@link LightWeightResizableGSet.LinkedElement} interface */
-  private LightWeightResizableGSet.LinkedElement next;
+abstract public class ReplicaInfo extends Block implements Replica {
 
   /** volume where the replica belongs */
   private FsVolumeSpi volume;
   
   /** directory where block & meta files belong */
-  
+  private BaseDir baseDir;
+
   /**
    * Base directory containing numerically-identified sub directories and
-   * possibly blocks.
+   * possibly blocks.  The base directories are interned, so that a replica
+   * only holds a reference to a shared instance.
    */
-  private File baseDir;
-  
+  private static final class BaseDir {
+    private final File dir;
+    /**
+     * Whether or not this replica's parent directory includes subdirs, in
+     * which case we can generate them based on the replica's block ID
+     */
+    private final boolean hasSubdirs;
+
+    private BaseDir(File dir, boolean hasSubdirs) {
+      this.dir = dir;
+      this.hasSubdirs = hasSubdirs;
+    }
+  }
+
   /**
-   * Whether or not this replica's parent directory includes subdirs, in which
-   * case we can generate them based on the replica's block ID
+   * The interned base directories, by path.  A path may be interned both
+   * without and with subdirs, at index 0 and 1 of the array.
    */
-  private boolean hasSubdirs;
-  
-  private static final Map<String, File> internedBaseDirs = new HashMap<String, File>();
+  private static final Map<String, BaseDir[]> internedBaseDirs =
+      new HashMap<String, BaseDir[]>();
 
   /** This is used by some tests and FsDatasetUtil#computeChecksum. */
   private static final FileIoProvider DEFAULT_FILE_IO_PROVIDER =
@@ -156,8 +164,11 @@ public String getStorageUuid() {
    * @return the parent directory path where this replica is located
    */
   File getDir() {
-    return hasSubdirs ? DatanodeUtil.idToBlockDir(baseDir,
-        getBlockId()) : baseDir;
+    if (baseDir == null) {
+      return null;
+    }
+    return baseDir.hasSubdirs ? DatanodeUtil.idToBlockDir(baseDir.dir,
+        getBlockId()) : baseDir.dir;
   }
 
   /**
@@ -175,16 +186,20 @@ private void setDirInternal(File dir) {
     }
 
     ReplicaDirInfo dirInfo = parseBaseDir(dir, getBlockId());
-    this.hasSubdirs = dirInfo.hasSubidrs;
-    
+    final int index = dirInfo.hasSubidrs ? 1 : 0;
     synchronized (internedBaseDirs) {
-      if (!internedBaseDirs.containsKey(dirInfo.baseDirPath)) {
+      BaseDir[] interned = internedBaseDirs.get(dirInfo.baseDirPath);
+      if (interned == null) {
+        interned = new BaseDir[2];
+        internedBaseDirs.put(dirInfo.baseDirPath, interned);
+      }
+      if (interned[index] == null) {
         // Create a new String path of this file and make a brand new File object
         // to guarantee we drop the reference to the underlying char[] storage.
-        File baseDir = new File(dirInfo.baseDirPath);
-        internedBaseDirs.put(dirInfo.baseDirPath, baseDir);
+        interned[index] = new BaseDir(new File(dirInfo.baseDirPath),
+            dirInfo.hasSubidrs);
       }
-      this.baseDir = internedBaseDirs.get(dirInfo.baseDirPath);
+      this.baseDir = interned[index];
     }
   }
 
@@ -307,6 +322,21 @@ public boolean breakHardLinksIfNeeded() throws IOException {
     return true;
   }
 
+  /**
+   * Replace the block file and the meta file of the replica with copies, so
+   * that the readers which mapped the old files keep reading them while the
+   * new ones are changed.
+   */
+  public void replaceFilesWithCopies() throws IOException {
+    File file = getBlockFile();
+    if (file == null || getVolume() == null) {
+      throw new IOException("replaceFilesWithCopies: Block not found. " + this);
+    }
+    DataNode.LOG.info("Copying the files of block " + this);
+    breakHardlinks(file, this);
+    breakHardlinks(getMetaFile(), this);
+  }
+
   @Override  //Object
   public String toString() {
     return getClass().getSimpleName()
@@ -324,16 +354,6 @@ public boolean isOnTransientStorage() {
     return volume.isTransientStorage();
   }
 
-  @Override
-  public LightWeightResizableGSet.LinkedElement getNext() {
-    return next;
-  }
-
-  @Override
-  public void setNext(LightWeightResizableGSet.LinkedElement next) {
-    this.next = next;
-  }
-
   int getHardLinkCount(File fileName) throws IOException {
     return getFileIoProvider().getHardLinkCount(getVolume(), fileName);
   }
@@ -27,6 +27,7 @@
 import org.apache.hadoop.metrics2.lib.DefaultMetricsSystem;
 import org.apache.hadoop.metrics2.lib.MetricsRegistry;
 import org.apache.hadoop.metrics2.lib.MutableCounterLong;
+import org.apache.hadoop.metrics2.lib.MutableGaugeInt;
 import org.apache.hadoop.metrics2.lib.MutableQuantiles;
 import org.apache.hadoop.metrics2.lib.MutableRate;
 
@@ -71,11 +72,28 @@ public class DataNodeVolumeMetrics {
   private MutableRate writeIoRate;
   private MutableQuantiles[] writeIoLatencyQuantiles;
 
+  @Metric("dataset lock wait rate in micros")
+  private MutableRate lockWaitRate;
+  private MutableQuantiles[] lockWaitLatencyQuantiles;
+
   @Metric("number of file io errors")
   private MutableCounterLong totalFileIoErrors;
   @Metric("file io error rate")
   private MutableRate fileIoErrorRate;
 
+  @Metric("number of subdirs listed by the incremental directory scans")
+  private MutableCounterLong directoryScanSubdirsScanned;
+  @Metric("number of unchanged subdirs skipped by the incremental " +
+      "directory scans")
+  private MutableCounterLong directoryScanSubdirsSkipped;
+  @Metric("number of differences found by the directory scans")
+  private MutableCounterLong directoryScanDifferences;
+  @Metric("number of complete passes of the incremental directory scans")
+  private MutableCounterLong directoryScanPasses;
+  @Metric("percentage of the subdirs covered by the current pass of the " +
+      "incremental directory scans")
+  private MutableGaugeInt directoryScanProgress;
+
   public long getTotalMetadataOperations() {
     return totalMetadataOperations.value();
   }
@@ -162,6 +180,15 @@ public double getWriteIoStdDev() {
     return syncIoRate.lastStat().stddev();
   }
 
+  // Based on lockWaitRate
+  public long getLockWaitSampleCount() {
+    return lockWaitRate.lastStat().numSamples();
+  }
+
+  public double getLockWaitMean() {
+    return lockWaitRate.lastStat().mean();
+  }
+
   public long getTotalFileIoErrors() {
     return totalFileIoErrors.value();
   }
@@ -179,6 +206,26 @@ public double getFileIoErrorStdDev() {
     return fileIoErrorRate.lastStat().stddev();
   }
 
+  public long getDirectoryScanSubdirsScanned() {
+    return directoryScanSubdirsScanned.value();
+  }
+
+  public long getDirectoryScanSubdirsSkipped() {
+    return directoryScanSubdirsSkipped.value();
+  }
+
+  public long getDirectoryScanDifferences() {
+    return directoryScanDifferences.value();
+  }
+
+  public long getDirectoryScanPasses() {
+    return directoryScanPasses.value();
+  }
+
+  public int getDirectoryScanProgress() {
+    return directoryScanProgress.value();
+  }
+
   private final String name;
   private final MetricsSystem ms;
 
@@ -193,6 +240,7 @@ public DataNodeVolumeMetrics(final MetricsSystem metricsSystem,
     syncIoLatencyQuantiles = new MutableQuantiles[len];
     readIoLatencyQuantiles = new MutableQuantiles[len];
     writeIoLatencyQuantiles = new MutableQuantiles[len];
+    lockWaitLatencyQuantiles = new MutableQuantiles[len];
     for (int i = 0; i < len; i++) {
       int interval = intervals[i];
       metadataOperationLatencyQuantiles[i] = registry.newQuantiles(
@@ -213,6 +261,9 @@ public DataNodeVolumeMetrics(final MetricsSystem metricsSystem,
       writeIoLatencyQuantiles[i] = registry.newQuantiles(
           "writeIoLatency" + interval + "s",
           "Data write Io Latency in ms", "ops", "latency", interval);
+      lockWaitLatencyQuantiles[i] = registry.newQuantiles(
+          "lockWaitLatency" + interval + "s",
+          "Dataset lock wait Latency in micros", "ops", "latency", interval);
     }
   }
 
@@ -282,8 +333,40 @@ public void addWriteIoLatency(final long latency) {
     }
   }
 
+  /**
+   * Add the time spent waiting for the dataset lock of the volume.
+   * @param waitTime the wait time in microseconds.
+   */
+  public void addLockWaitTime(final long waitTime) {
+    lockWaitRate.add(waitTime);
+    for (MutableQuantiles q : lockWaitLatencyQuantiles) {
+      q.add(waitTime);
+    }
+  }
+
   public void addFileIoError(final long latency) {
     totalFileIoErrors.incr();
     fileIoErrorRate.add(latency);
   }
-}
\ No newline at end of file
+
+  /**
+   * Add the subdirs verified by an incremental directory scan.
+   * @param scanned the number of subdirs which were listed.
+   * @param skipped the number of subdirs which were unchanged.
+   * @param progress the percentage of the subdirs covered by the pass.
+   */
+  public void addDirectoryScanSubdirs(final long scanned, final long skipped,
+      final int progress) {
+    directoryScanSubdirsScanned.incr(scanned);
+    directoryScanSubdirsSkipped.incr(skipped);
+    directoryScanProgress.set(progress);
+  }
+
+  public void incrDirectoryScanDifferences() {
+    directoryScanDifferences.incr();
+  }
+
+  public void incrDirectoryScanPasses() {
+    directoryScanPasses.incr();
+  }
+}
@@ -240,8 +240,8 @@ StorageReport[] getStorageReports(String bpid)
    * Gets a list of references to the finalized blocks for the given block pool.
    * <p>
    * Callers of this function should call
-   * {@link FsDatasetSpi#acquireDatasetLock} to avoid blocks' status being
-   * changed during list iteration.
+   * {@link FsDatasetSpi#acquireBlockPoolReadLock} to avoid blocks' status
+   * being changed during list iteration.
    * </p>
    * @return a list of references to the finalized blocks for the given block
    *         pool.
@@ -668,6 +668,23 @@ ReplicaInfo moveBlockAcrossStorage(final ExtendedBlock block,
    */
   AutoCloseableLock acquireDatasetReadLock();
 
+  /**
+   * Acquire the shared lock of a block pool, to look up its replicas.
+   * @param bpid Specified block pool id.
+   * @return The AutoClosable lock instance.
+   */
+  AutoCloseableLock acquireBlockPoolReadLock(String bpid);
+
+  /**
+   * Acquire the lock of the volume of a replica, so that the replica does not
+   * change while it is in use.  If there is no such replica, the exclusive
+   * lock of the block pool is acquired instead.
+   * @param bpid Specified block pool id.
+   * @param blockId Specified block id.
+   * @return The AutoClosable lock instance.
+   */
+  AutoCloseableLock acquireReplicaLock(String bpid, long blockId);
+
   /**
    * Deep copy the replica info belonging to given block pool.
    * @param bpid Specified block pool id.
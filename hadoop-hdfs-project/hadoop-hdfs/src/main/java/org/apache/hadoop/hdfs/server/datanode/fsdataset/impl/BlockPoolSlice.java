@@ -30,10 +30,12 @@
 import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Queue;
 import java.util.Scanner;
 import java.util.concurrent.ConcurrentLinkedQueue;
@@ -55,6 +57,7 @@
 import org.apache.hadoop.hdfs.protocol.Block;
 import org.apache.hadoop.hdfs.protocol.BlockListAsLongs;
 import org.apache.hadoop.hdfs.protocol.BlockListAsLongs.BlockReportReplica;
+import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.ReplicaState;
 import org.apache.hadoop.hdfs.server.datanode.FSCachingGetSpaceUsed;
 import org.apache.hadoop.hdfs.server.datanode.FileIoProvider;
 import org.apache.hadoop.hdfs.server.datanode.BlockMetadataHeader;
@@ -67,6 +70,7 @@
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.ReplicaInputStreams;
 import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.io.MultipleIOException;
+import org.apache.hadoop.util.AutoCloseableLock;
 import org.apache.hadoop.util.DataChecksum;
 import org.apache.hadoop.util.DataChecksum.Type;
 import org.apache.hadoop.util.DiskChecker;
@@ -107,6 +111,8 @@ class BlockPoolSlice {
   private final Timer timer;
   private final int maxDataLength;
   private final FileIoProvider fileIoProvider;
+  // journal of the finalized replicas, null if disabled
+  private final ReplicaJournal journal;
 
   private static ForkJoinPool addReplicaThreadPool = null;
   private static final int VOLUMES_REPLICA_ADD_THREADPOOL_SIZE = Runtime
@@ -163,6 +169,17 @@ public int compare(File f1, File f2) {
 
     this.timer = timer;
 
+    if (conf.getBoolean(DFSConfigKeys.DFS_DATANODE_REPLICA_JOURNAL_ENABLED_KEY,
+        DFSConfigKeys.DFS_DATANODE_REPLICA_JOURNAL_ENABLED_DEFAULT)
+        && !volume.isTransientStorage()) {
+      this.journal = new ReplicaJournal(volume, currentDir, conf.getLong(
+          DFSConfigKeys.DFS_DATANODE_REPLICA_JOURNAL_COMPACTION_RECORDS_KEY,
+          DFSConfigKeys.DFS_DATANODE_REPLICA_JOURNAL_COMPACTION_RECORDS_DEFAULT));
+    } else {
+      this.journal = null;
+      ReplicaJournal.delete(volume, currentDir);
+    }
+
     // Files that were being written when the datanode was last shutdown
     // are now moved back to the data directory. It is possible that
     // in the future, we might want to do some sort of datanode-local
@@ -405,31 +422,40 @@ void getVolumeMap(ReplicaMap volumeMap,
       throws IOException {
     // Recover lazy persist replicas, they will be added to the volumeMap
     // when we scan the finalized directory.
+    int numRecovered = 0;
     if (lazypersistDir.exists()) {
-      int numRecovered = moveLazyPersistReplicasToFinalized(lazypersistDir);
+      numRecovered = moveLazyPersistReplicasToFinalized(lazypersistDir);
       FsDatasetImpl.LOG.info(
           "Recovered " + numRecovered + " replicas from " + lazypersistDir);
     }
 
     boolean  success = readReplicasFromCache(volumeMap, lazyWriteReplicaMap);
     if (!success) {
+      // The journal misses the replicas recovered from lazypersist.
+      final boolean journaled = journal != null && numRecovered == 0 &&
+          readReplicasFromJournal(volumeMap, lazyWriteReplicaMap);
       List<IOException> exceptions = Collections
           .synchronizedList(new ArrayList<IOException>());
       Queue<RecursiveAction> subTaskQueue =
           new ConcurrentLinkedQueue<RecursiveAction>();
 
        // add finalized replicas
-      AddReplicaProcessor task = new AddReplicaProcessor(volumeMap,
-          finalizedDir, lazyWriteReplicaMap, true, exceptions, subTaskQueue);
-      ForkJoinTask<Void> finalizedTask = addReplicaThreadPool.submit(task);
+      ForkJoinTask<Void> finalizedTask = null;
+      if (!journaled) {
+        AddReplicaProcessor task = new AddReplicaProcessor(volumeMap,
+            finalizedDir, lazyWriteReplicaMap, true, exceptions, subTaskQueue);
+        finalizedTask = addReplicaThreadPool.submit(task);
+      }
 
        // add rbw replicas
-      task = new AddReplicaProcessor(volumeMap, rbwDir, lazyWriteReplicaMap,
-          false, exceptions, subTaskQueue);
+      AddReplicaProcessor task = new AddReplicaProcessor(volumeMap, rbwDir,
+          lazyWriteReplicaMap, false, exceptions, subTaskQueue);
       ForkJoinTask<Void> rbwTask = addReplicaThreadPool.submit(task);
 
       try {
-        finalizedTask.get();
+        if (finalizedTask != null) {
+          finalizedTask.get();
+        }
         rbwTask.get();
       } catch (InterruptedException | ExecutionException e) {
         exceptions.add(new IOException(
@@ -440,6 +466,93 @@ void getVolumeMap(ReplicaMap volumeMap,
       //wait for all the tasks to finish.
       waitForSubTaskToFinish(subTaskQueue, exceptions);
     }
+
+    if (journal != null) {
+      // Start the journal from the replicas loaded, however they were.
+      try {
+        journal.open(getFinalizedReplicas(volumeMap));
+      } catch (IOException e) {
+        LOG.warn("Failed to open the replica journal in " + currentDir
+            + ", the replicas will not be journaled until restart", e);
+      }
+    }
+  }
+
+  /**
+   * @return copies of the finalized replicas of this slice in a replica map.
+   */
+  private List<Block> getFinalizedReplicas(ReplicaMap volumeMap) {
+    final List<Block> replicas = new ArrayList<Block>();
+    try (AutoCloseableLock l = volumeMap.getLock().acquire()) {
+      final Collection<ReplicaInfo> all = volumeMap.replicas(bpid);
+      if (all != null) {
+        for (ReplicaInfo r : all) {
+          if (r.getVolume() == volume &&
+              r.getState() == ReplicaState.FINALIZED) {
+            replicas.add(new Block(r));
+          }
+        }
+      }
+    }
+    return replicas;
+  }
+
+  /**
+   * Record a finalized replica of the slice, or a change of its length or
+   * generation stamp, in the replica journal if enabled.
+   */
+  void journalReplica(Block b) {
+    if (journal != null) {
+      journal.add(b);
+      compactJournalIfNeeded();
+    }
+  }
+
+  /**
+   * Record that a replica of the slice was removed or is no longer
+   * finalized, in the replica journal if enabled.
+   */
+  void journalRemoval(long blockId) {
+    if (journal != null) {
+      journal.remove(blockId);
+      compactJournalIfNeeded();
+    }
+  }
+
+  private void compactJournalIfNeeded() {
+    if (!journal.startCompaction()) {
+      return;
+    }
+    final FsDatasetImpl dataset = (FsDatasetImpl) volume.getDataset();
+    try {
+      dataset.asyncDiskService.execute(volume.getCurrentDir(),
+          new Runnable() {
+            @Override
+            public void run() {
+              final List<Block> replicas = new ArrayList<Block>();
+              for (FinalizedReplica r : dataset.getFinalizedBlocks(bpid)) {
+                if (r.getVolume() == volume) {
+                  replicas.add(new Block(r));
+                }
+              }
+              journal.finishCompaction(replicas);
+            }
+
+            @Override
+            public String toString() {
+              return "Compaction of the replica journal in " + currentDir;
+            }
+          });
+    } catch (RuntimeException e) {
+      // The next log keeps the changes until the journal is compacted on
+      // restart.
+      LOG.warn("Failed to compact the replica journal in " + currentDir, e);
+    }
+  }
+
+  @VisibleForTesting
+  ReplicaJournal getReplicaJournal() {
+    return journal;
   }
 
   /**
@@ -838,6 +951,9 @@ public String toString() {
   }
 
   void shutdown(BlockListAsLongs blocksListToPersist) {
+    if (journal != null) {
+      journal.close();
+    }
     saveReplicas(blocksListToPersist);
     saveDfsUsed();
     dfsUsedSaved = true;
@@ -898,8 +1014,8 @@ private boolean readReplicasFromCache(ReplicaMap volumeMap,
       for (Iterator<ReplicaInfo> iter =
           tmpReplicaMap.replicas(bpid).iterator(); iter.hasNext(); ) {
         ReplicaInfo info = iter.next();
-        // We use a lightweight GSet to store replicaInfo, we need to remove
-        // it from one GSet before adding to another.
+        // Remove the replica from the temporary map as it is moved, so that
+        // the temporary map does not keep the replicas reachable.
         iter.remove();
         volumeMap.add(bpid, info);
       }
@@ -923,6 +1039,29 @@ private boolean readReplicasFromCache(ReplicaMap volumeMap,
     }
   }
 
+  private boolean readReplicasFromJournal(ReplicaMap volumeMap,
+      final RamDiskReplicaTracker lazyWriteReplicaMap) {
+    final long start = timer.monotonicNow();
+    final Map<Long, Block> replicas = journal.load();
+    if (replicas == null) {
+      return false;
+    }
+    try {
+      for (Block b : replicas.values()) {
+        addReplicaToReplicasMap(b, volumeMap, lazyWriteReplicaMap, true);
+      }
+    } catch (IOException e) {
+      // Scan the finalized directory, as the replicas are checked again.
+      LOG.warn("Failed to add the replicas of the journal in " + currentDir,
+          e);
+      return false;
+    }
+    LOG.info("Loaded " + replicas.size() + " finalized replicas from the"
+        + " journal in " + currentDir + " in "
+        + (timer.monotonicNow() - start) + "ms");
+    return true;
+  }
+
   private void saveReplicas(BlockListAsLongs blocksListToPersist) {
     if (blocksListToPersist == null ||
         blocksListToPersist.getNumberOfBlocks()== 0) {
@@ -0,0 +1,340 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode.fsdataset.impl;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.DataNodeVolumeMetrics;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeSpi;
+import org.apache.hadoop.util.AutoCloseableLock;
+import org.apache.hadoop.util.Time;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * The lock hierarchy of {@link FsDatasetImpl}.
+ * <p>
+ * The dataset lock is at the top of the hierarchy.  Its write lock is held
+ * by the operations which change the set of volumes or block pools, or which
+ * move replicas across volumes.  Every other operation holds its read lock,
+ * then the lock of a block pool:
+ * <ul>
+ * <li>the write lock of the block pool, for the operations on the whole
+ * block pool, such as the block reports</li>
+ * <li>the read lock of the block pool, for the lookups of a replica</li>
+ * <li>the read lock of the block pool, then the lock of a volume, for the
+ * changes to the replicas of the block pool on that volume</li>
+ * </ul>
+ * so that the writes to a volume are not held up by a slow operation on
+ * another volume.  The locks are always taken in that order.
+ * <p>
+ * The {@link ReplicaMap} has its own lock, since it is shared by the
+ * operations on different volumes.
+ * <p>
+ * The chain of locks down to a block pool or a volume is built once, and
+ * reused by every operation until the block pool or the volume is removed.
+ */
+class DatasetLockManager {
+  private final ReadWriteLock datasetLock;
+  private final boolean fair;
+  private final ConcurrentMap<String, BlockPoolLocks> blockPoolLocks =
+      new ConcurrentHashMap<String, BlockPoolLocks>();
+  private final ConcurrentMap<String, ReentrantLock> volumeLocks =
+      new ConcurrentHashMap<String, ReentrantLock>();
+
+  DatasetLockManager(ReadWriteLock datasetLock, boolean fair) {
+    this.datasetLock = datasetLock;
+    this.fair = fair;
+  }
+
+  /**
+   * The lock of a block pool, and the chains of locks down to the block
+   * pool and to its volumes.
+   */
+  private final class BlockPoolLocks {
+    private final ReentrantReadWriteLock lock =
+        new ReentrantReadWriteLock(fair);
+    private final AutoCloseableLock exclusiveLock = new AutoCloseableLock(
+        new LockChain(datasetLock.readLock(), lock.writeLock(), null, null));
+    private final AutoCloseableLock sharedLock = new AutoCloseableLock(
+        new LockChain(datasetLock.readLock(), lock.readLock(), null, null));
+    private final ConcurrentMap<String, AutoCloseableLock> volumeLocks =
+        new ConcurrentHashMap<String, AutoCloseableLock>();
+
+    AutoCloseableLock getVolumeLock(FsVolumeSpi volume) {
+      final String storageId = volume.getStorageID();
+      AutoCloseableLock volumeLock = volumeLocks.get(storageId);
+      if (volumeLock == null) {
+        final DataNodeVolumeMetrics metrics = volume instanceof FsVolumeImpl
+            ? ((FsVolumeImpl) volume).getMetrics() : null;
+        final AutoCloseableLock newLock = new AutoCloseableLock(
+            new LockChain(datasetLock.readLock(), lock.readLock(),
+                DatasetLockManager.this.getVolumeLock(storageId), metrics));
+        volumeLock = volumeLocks.putIfAbsent(storageId, newLock);
+        if (volumeLock == null) {
+          volumeLock = newLock;
+        }
+      }
+      return volumeLock;
+    }
+  }
+
+  private BlockPoolLocks getBlockPoolLocks(String bpid) {
+    BlockPoolLocks locks = blockPoolLocks.get(bpid);
+    if (locks == null) {
+      final BlockPoolLocks newLocks = new BlockPoolLocks();
+      locks = blockPoolLocks.putIfAbsent(bpid, newLocks);
+      if (locks == null) {
+        locks = newLocks;
+      }
+    }
+    return locks;
+  }
+
+  private ReentrantLock getVolumeLock(String storageId) {
+    ReentrantLock lock = volumeLocks.get(storageId);
+    if (lock == null) {
+      final ReentrantLock newLock = new ReentrantLock(fair);
+      lock = volumeLocks.putIfAbsent(storageId, newLock);
+      if (lock == null) {
+        lock = newLock;
+      }
+    }
+    return lock;
+  }
+
+  /**
+   * Acquire the exclusive lock of a block pool.
+   */
+  AutoCloseableLock acquireBlockPoolLock(String bpid) {
+    return getBlockPoolLocks(bpid).exclusiveLock.acquire();
+  }
+
+  /**
+   * Acquire the shared lock of a block pool, to look up its replicas.
+   */
+  AutoCloseableLock acquireBlockPoolReadLock(String bpid) {
+    return getBlockPoolLocks(bpid).sharedLock.acquire();
+  }
+
+  /**
+   * Acquire the lock of a volume, to change the replicas of a block pool on
+   * the volume.  The time spent waiting for the lock of the volume is added
+   * to the metrics of the volume.
+   */
+  AutoCloseableLock acquireVolumeLock(String bpid, FsVolumeSpi volume) {
+    return getBlockPoolLocks(bpid).getVolumeLock(volume).acquire();
+  }
+
+  /**
+   * Forget the locks of a removed block pool.  The caller holds the write
+   * lock of the dataset, so that none of them is held.
+   */
+  void removeBlockPoolLock(String bpid) {
+    blockPoolLocks.remove(bpid);
+  }
+
+  /**
+   * Forget the locks of a removed volume.  The caller holds the write lock
+   * of the dataset, so that none of them is held.
+   */
+  void removeVolumeLock(String storageId) {
+    volumeLocks.remove(storageId);
+    for (BlockPoolLocks locks : blockPoolLocks.values()) {
+      locks.volumeLocks.remove(storageId);
+    }
+  }
+
+  @VisibleForTesting
+  boolean isVolumeLocked(String storageId) {
+    final ReentrantLock lock = volumeLocks.get(storageId);
+    return lock != null && lock.isLocked();
+  }
+
+  /**
+   * The locks from the top of the hierarchy down to a block pool or a volume.
+   * They are acquired in that order, and released on failure.  A condition
+   * of the chain is a condition of its lowest lock: waiting for it releases
+   * that lock only.
+   */
+  private static final class LockChain implements Lock {
+    private final Lock datasetLock;
+    private final Lock blockPoolLock;
+    private final Lock volumeLock;
+    private final DataNodeVolumeMetrics metrics;
+
+    LockChain(Lock datasetLock, Lock blockPoolLock, Lock volumeLock,
+        DataNodeVolumeMetrics metrics) {
+      this.datasetLock = datasetLock;
+      this.blockPoolLock = blockPoolLock;
+      this.volumeLock = volumeLock;
+      this.metrics = metrics;
+    }
+
+    @Override
+    public void lock() {
+      boolean locked = false;
+      int held = 0;
+      try {
+        datasetLock.lock();
+        held++;
+        blockPoolLock.lock();
+        held++;
+        if (volumeLock != null) {
+          lockVolume();
+        }
+        locked = true;
+      } finally {
+        if (!locked) {
+          unlock(held);
+        }
+      }
+    }
+
+    private void lockVolume() {
+      if (volumeLock.tryLock()) {
+        addLockWaitTime(0);
+        return;
+      }
+      final long start = Time.monotonicNowNanos();
+      volumeLock.lock();
+      addLockWaitTime(Time.monotonicNowNanos() - start);
+    }
+
+    private void addLockWaitTime(long nanos) {
+      if (metrics != null) {
+        metrics.addLockWaitTime(TimeUnit.NANOSECONDS.toMicros(nanos));
+      }
+    }
+
+    @Override
+    public void lockInterruptibly() throws InterruptedException {
+      boolean locked = false;
+      int held = 0;
+      try {
+        datasetLock.lockInterruptibly();
+        held++;
+        blockPoolLock.lockInterruptibly();
+        held++;
+        if (volumeLock != null) {
+          final long start = Time.monotonicNowNanos();
+          volumeLock.lockInterruptibly();
+          addLockWaitTime(Time.monotonicNowNanos() - start);
+        }
+        locked = true;
+      } finally {
+        if (!locked) {
+          unlock(held);
+        }
+      }
+    }
+
+    @Override
+    public boolean tryLock() {
+      boolean locked = false;
+      int held = 0;
+      try {
+        if (!datasetLock.tryLock()) {
+          return false;
+        }
+        held++;
+        if (!blockPoolLock.tryLock()) {
+          return false;
+        }
+        held++;
+        if (volumeLock != null && !volumeLock.tryLock()) {
+          return false;
+        }
+        locked = true;
+        return true;
+      } finally {
+        if (!locked) {
+          unlock(held);
+        }
+      }
+    }
+
+    @Override
+    public boolean tryLock(long time, TimeUnit unit)
+        throws InterruptedException {
+      final long deadline = Time.monotonicNowNanos() + unit.toNanos(time);
+      boolean locked = false;
+      int held = 0;
+      try {
+        if (!datasetLock.tryLock(time, unit)) {
+          return false;
+        }
+        held++;
+        if (!blockPoolLock.tryLock(deadline - Time.monotonicNowNanos(),
+            TimeUnit.NANOSECONDS)) {
+          return false;
+        }
+        held++;
+        if (volumeLock != null) {
+          final long start = Time.monotonicNowNanos();
+          if (!volumeLock.tryLock(deadline - start, TimeUnit.NANOSECONDS)) {
+            return false;
+          }
+          addLockWaitTime(Time.monotonicNowNanos() - start);
+        }
+        locked = true;
+        return true;
+      } finally {
+        if (!locked) {
+          unlock(held);
+        }
+      }
+    }
+
+    @Override
+    public void unlock() {
+      unlock(volumeLock != null ? 3 : 2);
+    }
+
+    /** Release the given number of locks of the chain, bottom up. */
+    private void unlock(int held) {
+      try {
+        if (held > 2) {
+          volumeLock.unlock();
+        }
+      } finally {
+        try {
+          if (held > 1) {
+            blockPoolLock.unlock();
+          }
+        } finally {
+          if (held > 0) {
+            datasetLock.unlock();
+          }
+        }
+      }
+    }
+
+    @Override
+    public Condition newCondition() {
+      return (volumeLock != null ? volumeLock : blockPoolLock).newCondition();
+    }
+  }
+}
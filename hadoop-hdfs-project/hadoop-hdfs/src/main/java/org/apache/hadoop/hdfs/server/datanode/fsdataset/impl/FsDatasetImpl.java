@@ -179,7 +179,8 @@ public StorageReport[] getStorageReports(String bpid)
 
   @Override
   public FsVolumeImpl getVolume(final ExtendedBlock b) {
-    try(AutoCloseableLock lock = datasetWriteLock.acquire()) {
+    try(AutoCloseableLock lock =
+        lockManager.acquireBlockPoolReadLock(b.getBlockPoolId())) {
       final ReplicaInfo r =
           volumeMap.get(b.getBlockPoolId(), b.getLocalBlock());
       return r != null ? (FsVolumeImpl) r.getVolume() : null;
@@ -189,7 +190,7 @@ public FsVolumeImpl getVolume(final ExtendedBlock b) {
   @Override // FsDatasetSpi
   public Block getStoredBlock(String bpid, long blkid)
       throws IOException {
-    try(AutoCloseableLock lock = datasetWriteLock.acquire()) {
+    try(AutoCloseableLock lock = lockManager.acquireBlockPoolReadLock(bpid)) {
       File blockfile = null;
 
       ReplicaInfo info = volumeMap.get(bpid, blkid);
@@ -210,7 +211,7 @@ public Block getStoredBlock(String bpid, long blkid)
   public Set<? extends Replica> deepCopyReplica(String bpid)
       throws IOException {
     Set<? extends Replica> replicas = null;
-    try (AutoCloseableLock lock = datasetWriteLock.acquire()) {
+    try (AutoCloseableLock lock = lockManager.acquireBlockPoolLock(bpid)) {
       replicas = new HashSet<>(volumeMap.replicas(bpid) == null ? Collections.
           EMPTY_SET : volumeMap.replicas(bpid));
     }
@@ -255,7 +256,8 @@ public LengthInputStream getMetaDataInputStream(ExtendedBlock b)
     }
 
     FsVolumeSpi volume = null;
-    try (AutoCloseableLock lock = datasetWriteLock.acquire()) {
+    try (AutoCloseableLock lock =
+        lockManager.acquireBlockPoolReadLock(b.getBlockPoolId())) {
       final ReplicaInfo replicaInfo = getReplicaInfo(b);
       if (replicaInfo != null) {
         volume = replicaInfo.getVolume();
@@ -305,6 +307,8 @@ public LengthInputStream getMetaDataInputStream(ExtendedBlock b)
   @VisibleForTesting
   final InstrumentedReadWriteLock datasetRWLock;
   private final Condition datasetWriteLockCondition;
+  // the locks of the block pools and volumes, under the dataset lock.
+  private final DatasetLockManager lockManager;
 
   /**
    * An FSDataset has a directory where it loads its data files.
@@ -330,6 +334,9 @@ public LengthInputStream getMetaDataInputStream(ExtendedBlock b)
     this.datasetWriteLock = new AutoCloseableLock(datasetRWLock.writeLock());
     this.datasetReadLock = new AutoCloseableLock(datasetRWLock.readLock());
     this.datasetWriteLockCondition = datasetWriteLock.newCondition();
+    this.lockManager = new DatasetLockManager(datasetRWLock,
+        conf.getBoolean(DFSConfigKeys.DFS_DATANODE_LOCK_FAIR_KEY,
+            DFSConfigKeys.DFS_DATANODE_LOCK_FAIR_DEFAULT));
 
     // The number of volumes required for operation is the total number
     // of volumes minus the number of failed volumes we can tolerate.
@@ -368,7 +375,7 @@ public LengthInputStream getMetaDataInputStream(ExtendedBlock b)
     }
 
     storageMap = new ConcurrentHashMap<String, DatanodeStorage>();
-    volumeMap = new ReplicaMap(datasetRWLock);
+    volumeMap = new ReplicaMap(new ReentrantReadWriteLock());
     ramDiskReplicaTracker = RamDiskReplicaTracker.getInstance(conf, this);
 
     @SuppressWarnings("unchecked")
@@ -489,7 +496,7 @@ private void addVolume(Collection<StorageLocation> dataLocations,
     FsVolumeImpl fsVolume = new FsVolumeImpl(
         this, sd.getStorageUuid(), dir, this.conf, storageType);
     FsVolumeReference ref = fsVolume.obtainReference();
-    ReplicaMap tempVolumeMap = new ReplicaMap(datasetRWLock);
+    ReplicaMap tempVolumeMap = new ReplicaMap(new ReentrantReadWriteLock());
     fsVolume.getVolumeMap(tempVolumeMap, ramDiskReplicaTracker);
 
     activateVolume(tempVolumeMap, sd, storageType, ref);
@@ -635,6 +642,7 @@ public void removeVolumes(Set<File> storageLocsToRemove,
     try(AutoCloseableLock lock = datasetWriteLock.acquire()) {
       for(String storageUuid : storageToRemove) {
         storageMap.remove(storageUuid);
+        lockManager.removeVolumeLock(storageUuid);
       }
     }
   }
@@ -830,7 +838,8 @@ File getBlockFile(String bpid, long blockId) throws IOException {
   public InputStream getBlockInputStream(ExtendedBlock b,
       long seekOffset) throws IOException {
     ReplicaInfo info;
-    try (AutoCloseableLock lock = datasetWriteLock.acquire()) {
+    try (AutoCloseableLock lock =
+        lockManager.acquireBlockPoolReadLock(b.getBlockPoolId())) {
       info = volumeMap.get(b.getBlockPoolId(), b.getLocalBlock());
     }
 
@@ -920,7 +929,8 @@ private ReplicaInfo getReplicaInfo(String bpid, long blkid)
   @Override // FsDatasetSpi
   public ReplicaInputStreams getTmpInputStreams(ExtendedBlock b,
       long blkOffset, long metaOffset) throws IOException {
-    try(AutoCloseableLock lock = datasetWriteLock.acquire()) {
+    try(AutoCloseableLock lock =
+        lockManager.acquireBlockPoolReadLock(b.getBlockPoolId())) {
       final ReplicaInfo info = getReplicaInfo(b);
       final FileIoProvider fileIoProvider = datanode.getFileIoProvider();
       FsVolumeReference ref = info.getVolume().obtainReference();
@@ -1206,7 +1216,8 @@ private void truncateBlock(FsVolumeSpi volume, File blockFile, File metaFile,
   @Override  // FsDatasetSpi
   public ReplicaHandler append(ExtendedBlock b,
       long newGS, long expectedBlockLen) throws IOException {
-    try(AutoCloseableLock lock = datasetWriteLock.acquire()) {
+    try(AutoCloseableLock lock = acquireReplicaLock(
+        b.getBlockPoolId(), b.getBlockId())) {
       // If the block was successfully finalized because all packets
       // were successfully processed at the Datanode but the ack for
       // some of the packets were not received by the client. The client
@@ -1258,7 +1269,8 @@ public ReplicaHandler append(ExtendedBlock b,
   private ReplicaBeingWritten append(String bpid,
       FinalizedReplica replicaInfo, long newGS, long estimateBlockLen)
       throws IOException {
-    try(AutoCloseableLock lock = datasetWriteLock.acquire()) {
+    try(AutoCloseableLock lock = acquireVolumeLock(
+        bpid, replicaInfo.getVolume())) {
       // If the block is cached, start uncaching it.
       cacheManager.uncacheBlock(bpid, replicaInfo.getBlockId());
 
@@ -1322,6 +1334,7 @@ private ReplicaBeingWritten append(String bpid,
 
       // Replace finalized replica by a RBW replica in replicas map
       volumeMap.add(bpid, newReplicaInfo);
+      v.journalRemoval(bpid, newReplicaInfo.getBlockId());
       v.reserveSpaceForReplica(bytesReserved);
       return newReplicaInfo;
     }
@@ -1394,7 +1407,8 @@ public ReplicaHandler recoverAppend(
 
     while (true) {
       try {
-        try(AutoCloseableLock lock = datasetWriteLock.acquire()) {
+        try(AutoCloseableLock lock = acquireReplicaLock(
+            b.getBlockPoolId(), b.getBlockId())) {
           ReplicaInfo replicaInfo = recoverCheck(b, newGS, expectedBlockLen);
 
           FsVolumeReference ref = replicaInfo.getVolume().obtainReference();
@@ -1426,7 +1440,8 @@ public Replica recoverClose(ExtendedBlock b, long newGS,
     LOG.info("Recover failed close " + b);
     while (true) {
       try {
-        try(AutoCloseableLock lock = datasetWriteLock.acquire()) {
+        try(AutoCloseableLock lock = acquireReplicaLock(
+            b.getBlockPoolId(), b.getBlockId())) {
           // check replica's state
           ReplicaInfo replicaInfo = recoverCheck(b, newGS, expectedBlockLen);
           // bump the replica's GS
@@ -1434,6 +1449,9 @@ public Replica recoverClose(ExtendedBlock b, long newGS,
           // finalize the replica if RBW
           if (replicaInfo.getState() == ReplicaState.RBW) {
             finalizeReplica(b.getBlockPoolId(), replicaInfo);
+          } else {
+            ((FsVolumeImpl) replicaInfo.getVolume()).journalReplica(
+                b.getBlockPoolId(), replicaInfo);
           }
           return replicaInfo;
         }
@@ -1477,10 +1495,23 @@ private void bumpReplicaGS(ReplicaInfo replicaInfo,
   public ReplicaHandler createRbw(
       StorageType storageType, ExtendedBlock b, boolean allowLazyPersist)
       throws IOException {
-    try(AutoCloseableLock lock = datasetWriteLock.acquire()) {
+    // Use ramdisk only if block size is a multiple of OS page size.
+    // This simplifies reservation for partially used replicas
+    // significantly.
+    // The memory is reserved before locking the block pool, since the
+    // evictions which free it lock the whole dataset.
+    final boolean reserved = allowLazyPersist &&
+        lazyWriter != null &&
+        b.getNumBytes() % cacheManager.getOsPageSize() == 0 &&
+        reserveLockedMemory(b.getNumBytes());
+    try(AutoCloseableLock lock =
+        lockManager.acquireBlockPoolReadLock(b.getBlockPoolId())) {
       ReplicaInfo replicaInfo = volumeMap.get(b.getBlockPoolId(),
           b.getBlockId());
       if (replicaInfo != null) {
+        if (reserved) {
+          cacheManager.release(b.getNumBytes());
+        }
         throw new ReplicaAlreadyExistsException("Block " + b +
             " already exists in state " + replicaInfo.getState() +
             " and thus cannot be created.");
@@ -1488,13 +1519,7 @@ public ReplicaHandler createRbw(
       // create a new block
       FsVolumeReference ref = null;
 
-      // Use ramdisk only if block size is a multiple of OS page size.
-      // This simplifies reservation for partially used replicas
-      // significantly.
-      if (allowLazyPersist &&
-          lazyWriter != null &&
-          b.getNumBytes() % cacheManager.getOsPageSize() == 0 &&
-          reserveLockedMemory(b.getNumBytes())) {
+      if (reserved) {
         try {
           // First try to place the block on a transient volume.
           ref = volumes.getNextTransientVolume(b.getNumBytes());
@@ -1519,19 +1544,29 @@ public ReplicaHandler createRbw(
         datanode.getMetrics().incrRamDiskBlocksWriteFallback();
       }
 
-      File f;
-      try {
-        f = v.createRbwFile(b.getBlockPoolId(), b.getLocalBlock());
-      } catch (IOException e) {
-        IOUtils.cleanup(null, ref);
-        throw e;
-      }
+      try (AutoCloseableLock volumeLock =
+          acquireVolumeLock(b.getBlockPoolId(), v)) {
+        File f;
+        try {
+          f = v.createRbwFile(b.getBlockPoolId(), b.getLocalBlock());
+        } catch (IOException e) {
+          IOUtils.cleanup(null, ref);
+          throw e;
+        }
 
-      ReplicaBeingWritten newReplicaInfo =
-          new ReplicaBeingWritten(b.getBlockId(),
-          b.getGenerationStamp(), v, f.getParentFile(), b.getNumBytes());
-      volumeMap.add(b.getBlockPoolId(), newReplicaInfo);
-      return new ReplicaHandler(newReplicaInfo, ref);
+        ReplicaBeingWritten newReplicaInfo =
+            new ReplicaBeingWritten(b.getBlockId(),
+            b.getGenerationStamp(), v, f.getParentFile(), b.getNumBytes());
+        try {
+          addNewReplica(b, newReplicaInfo, f, ref);
+        } catch (ReplicaAlreadyExistsException e) {
+          if (reserved && v.isTransientStorage()) {
+            cacheManager.release(b.getNumBytes());
+          }
+          throw e;
+        }
+        return new ReplicaHandler(newReplicaInfo, ref);
+      }
     }
   }
 
@@ -1543,7 +1578,8 @@ public ReplicaHandler recoverRbw(
 
     while (true) {
       try {
-        try(AutoCloseableLock lock = datasetWriteLock.acquire()) {
+        try(AutoCloseableLock lock = acquireReplicaLock(
+            b.getBlockPoolId(), b.getBlockId())) {
           ReplicaInfo replicaInfo = getReplicaInfo(b.getBlockPoolId(), b.getBlockId());
 
           // check the replica's state
@@ -1567,7 +1603,8 @@ public ReplicaHandler recoverRbw(
   private ReplicaHandler recoverRbwImpl(ReplicaBeingWritten rbw,
       ExtendedBlock b, long newGS, long minBytesRcvd, long maxBytesRcvd)
       throws IOException {
-    try(AutoCloseableLock lock = datasetWriteLock.acquire()) {
+    try(AutoCloseableLock lock = acquireVolumeLock(
+        b.getBlockPoolId(), rbw.getVolume())) {
       // check generation stamp
       long replicaGenerationStamp = rbw.getGenerationStamp();
       if (replicaGenerationStamp < b.getGenerationStamp() ||
@@ -1629,7 +1666,8 @@ private ReplicaHandler recoverRbwImpl(ReplicaBeingWritten rbw,
   @Override // FsDatasetSpi
   public ReplicaInPipeline convertTemporaryToRbw(
       final ExtendedBlock b) throws IOException {
-    try(AutoCloseableLock lock = datasetWriteLock.acquire()) {
+    try(AutoCloseableLock lock = acquireReplicaLock(
+        b.getBlockPoolId(), b.getBlockId())) {
       final long blockId = b.getBlockId();
       final long expectedGs = b.getGenerationStamp();
       final long visible = b.getNumBytes();
@@ -1703,7 +1741,8 @@ public ReplicaHandler createTemporary(StorageType storageType,
     ReplicaInfo lastFoundReplicaInfo = null;
     boolean isInPipeline = false;
     do {
-      try(AutoCloseableLock lock = datasetWriteLock.acquire()) {
+      try(AutoCloseableLock lock =
+          lockManager.acquireBlockPoolReadLock(b.getBlockPoolId())) {
         ReplicaInfo currentReplicaInfo =
             volumeMap.get(b.getBlockPoolId(), b.getBlockId());
         if (currentReplicaInfo == lastFoundReplicaInfo) {
@@ -1749,10 +1788,10 @@ public ReplicaHandler createTemporary(StorageType storageType,
       invalidate(b.getBlockPoolId(), new Block[] { lastFoundReplicaInfo },
           false);
     }
-    try (AutoCloseableLock lock = datasetWriteLock.acquire()) {
-      FsVolumeReference ref = volumes.getNextVolume(storageType, b
-          .getNumBytes());
-      FsVolumeImpl v = (FsVolumeImpl) ref.getVolume();
+    FsVolumeReference ref = volumes.getNextVolume(storageType, b
+        .getNumBytes());
+    FsVolumeImpl v = (FsVolumeImpl) ref.getVolume();
+    try (AutoCloseableLock lock = acquireVolumeLock(b.getBlockPoolId(), v)) {
       // create a temporary file to hold block in the designated volume
       File f;
       try {
@@ -1764,11 +1803,32 @@ public ReplicaHandler createTemporary(StorageType storageType,
       ReplicaInPipeline newReplicaInfo = new ReplicaInPipeline(b.getBlockId(), b
           .getGenerationStamp(), v, f.getParentFile(), b.getLocalBlock()
               .getNumBytes());
-      volumeMap.add(b.getBlockPoolId(), newReplicaInfo);
+      addNewReplica(b, newReplicaInfo, f, ref);
       return new ReplicaHandler(newReplicaInfo, ref);
     }
   }
 
+  /**
+   * Add a newly created replica to the volume map.  The block was checked to
+   * have no replica under the shared lock of the block pool only, so another
+   * volume may have created one since: the new replica is then dropped, and
+   * its file deleted.
+   */
+  private void addNewReplica(ExtendedBlock b, ReplicaInfo newReplicaInfo,
+      File f, FsVolumeReference ref) throws ReplicaAlreadyExistsException {
+    final ReplicaInfo replicaInfo =
+        volumeMap.addAndGet(b.getBlockPoolId(), newReplicaInfo);
+    if (replicaInfo != newReplicaInfo) {
+      if (!f.delete()) {
+        LOG.warn("Failed to delete " + f);
+      }
+      IOUtils.cleanup(null, ref);
+      throw new ReplicaAlreadyExistsException("Block " + b +
+          " already exists in state " + replicaInfo.getState() +
+          " and thus cannot be created.");
+    }
+  }
+
   /**
    * Sets the offset in the meta file so that the
    * last checksum will be overwritten.
@@ -1803,7 +1863,8 @@ public void finalizeBlock(ExtendedBlock b, boolean fsyncDir)
       throws IOException {
     ReplicaInfo replicaInfo = null;
     ReplicaInfo finalizedReplicaInfo = null;
-    try(AutoCloseableLock lock = datasetWriteLock.acquire()) {
+    try(AutoCloseableLock lock = acquireReplicaLock(
+        b.getBlockPoolId(), b.getBlockId())) {
       if (Thread.interrupted()) {
         // Don't allow data modifications from interrupted threads
         throw new IOException("Cannot finalize block from Interrupted Thread");
@@ -1833,7 +1894,8 @@ public void finalizeBlock(ExtendedBlock b, boolean fsyncDir)
 
   private FinalizedReplica finalizeReplica(String bpid, ReplicaInfo replicaInfo)
       throws IOException {
-    try(AutoCloseableLock lock = datasetWriteLock.acquire()) {
+    try(AutoCloseableLock lock = acquireVolumeLock(
+        bpid, replicaInfo.getVolume())) {
       FinalizedReplica newReplicaInfo = null;
       if (replicaInfo.getState() == ReplicaState.RUR &&
           ((ReplicaUnderRecovery) replicaInfo).getOriginalReplica().getState()
@@ -1877,6 +1939,8 @@ private FinalizedReplica finalizeReplica(String bpid, ReplicaInfo replicaInfo)
         }
       }
       volumeMap.add(bpid, newReplicaInfo);
+      ((FsVolumeImpl) newReplicaInfo.getVolume()).journalReplica(
+          bpid, newReplicaInfo);
 
       return newReplicaInfo;
     }
@@ -1887,7 +1951,8 @@ private FinalizedReplica finalizeReplica(String bpid, ReplicaInfo replicaInfo)
    */
   @Override // FsDatasetSpi
   public void unfinalizeBlock(ExtendedBlock b) throws IOException {
-    try(AutoCloseableLock lock = datasetWriteLock.acquire()) {
+    try(AutoCloseableLock lock = acquireReplicaLock(
+        b.getBlockPoolId(), b.getBlockId())) {
       ReplicaInfo replicaInfo = volumeMap.get(b.getBlockPoolId(),
           b.getLocalBlock());
       if (replicaInfo != null
@@ -1942,7 +2007,7 @@ public Map<DatanodeStorage, BlockListAsLongs> getBlockReports(String bpid) {
         new HashMap<String, BlockListAsLongs.Builder>();
 
     List<FsVolumeImpl> curVolumes = null;
-    try(AutoCloseableLock lock = datasetWriteLock.acquire()) {
+    try(AutoCloseableLock lock = lockManager.acquireBlockPoolLock(bpid)) {
       curVolumes = volumes.getVolumes();
       for (FsVolumeSpi v : curVolumes) {
         builders.put(v.getStorageID(), BlockListAsLongs.builder(maxDataLength));
@@ -1999,15 +2064,16 @@ public List<Long> getCacheReport(String bpid) {
    * Gets a list of references to the finalized blocks for the given block pool.
    * <p>
    * Callers of this function should call
-   * {@link FsDatasetSpi#acquireDatasetLock()} to avoid blocks' status being
-   * changed during list iteration.
+   * {@link FsDatasetSpi#acquireBlockPoolReadLock(String)} to avoid blocks'
+   * status being changed during list iteration.
    * </p>
    * @return a list of references to the finalized blocks for the given block
    *         pool.
    */
   @Override
   public List<FinalizedReplica> getFinalizedBlocks(String bpid) {
-    try(AutoCloseableLock lock = datasetWriteLock.acquire()) {
+    try(AutoCloseableLock lock = lockManager.acquireBlockPoolReadLock(bpid);
+        AutoCloseableLock l = volumeMap.getLock().acquire()) {
       final ArrayList<FinalizedReplica> finalized =
           new ArrayList<FinalizedReplica>(volumeMap.size(bpid));
       for (ReplicaInfo b : volumeMap.replicas(bpid)) {
@@ -2093,7 +2159,7 @@ File validateBlockFile(String bpid, long blockId) {
     //Should we check for metadata file too?
     File f = null;
     ReplicaInfo info;
-    try(AutoCloseableLock lock = datasetWriteLock.acquire()) {
+    try(AutoCloseableLock lock = lockManager.acquireBlockPoolReadLock(bpid)) {
       info = volumeMap.get(bpid, blockId);
       if (info != null) {
         f = info.getBlockFile();
@@ -2151,7 +2217,8 @@ private void invalidate(String bpid, Block[] invalidBlks, boolean async)
     for (int i = 0; i < invalidBlks.length; i++) {
       final File f;
       final FsVolumeImpl v;
-      try(AutoCloseableLock lock = datasetWriteLock.acquire()) {
+      try(AutoCloseableLock lock = acquireReplicaLock(
+          bpid, invalidBlks[i].getBlockId())) {
         final ReplicaInfo info = volumeMap.get(bpid, invalidBlks[i]);
         if (info == null) {
           ReplicaInfo infoByBlockId =
@@ -2182,6 +2249,7 @@ private void invalidate(String bpid, Block[] invalidBlks, boolean async)
           continue;
         }
         ReplicaInfo removing = volumeMap.remove(bpid, invalidBlks[i]);
+        v.journalRemoval(bpid, removing.getBlockId());
         addDeletingBlock(bpid, removing.getBlockId());
         if (LOG.isDebugEnabled()) {
           LOG.debug("Block file " + removing.getBlockFile().getName()
@@ -2274,7 +2342,7 @@ private void cacheBlock(String bpid, long blockId) {
     long length, genstamp;
     Executor volumeExecutor;
 
-    try(AutoCloseableLock lock = datasetWriteLock.acquire()) {
+    try(AutoCloseableLock lock = lockManager.acquireBlockPoolReadLock(bpid)) {
       ReplicaInfo info = volumeMap.get(bpid, blockId);
       boolean success = false;
       try {
@@ -2342,7 +2410,8 @@ public boolean isCached(String bpid, long blockId) {
 
   @Override // FsDatasetSpi
   public boolean contains(final ExtendedBlock block) {
-    try(AutoCloseableLock lock = datasetWriteLock.acquire()) {
+    try(AutoCloseableLock lock = lockManager.acquireBlockPoolReadLock(
+        block.getBlockPoolId())) {
       final long blockId = block.getLocalBlock().getBlockId();
       return getFile(block.getBlockPoolId(), blockId, false) != null;
     }
@@ -2473,7 +2542,7 @@ public void checkAndUpdate(String bpid, long blockId, File diskFile,
       File diskMetaFile, FsVolumeSpi vol) throws IOException {
     Block corruptBlock = null;
     ReplicaInfo memBlockInfo;
-    try(AutoCloseableLock lock = datasetWriteLock.acquire()) {
+    try(AutoCloseableLock lock = lockManager.acquireBlockPoolLock(bpid)) {
       memBlockInfo = volumeMap.get(bpid, blockId);
       if (memBlockInfo != null && memBlockInfo.getState() != ReplicaState.FINALIZED) {
         // Block is not finalized - ignore the difference
@@ -2504,6 +2573,8 @@ public void checkAndUpdate(String bpid, long blockId, File diskFile,
           // Block is in memory and not on the disk
           // Remove the block from volumeMap
           volumeMap.remove(bpid, blockId);
+          ((FsVolumeImpl) memBlockInfo.getVolume()).journalRemoval(
+              bpid, blockId);
           if (vol.isTransientStorage()) {
             ramDiskReplicaTracker.discardReplica(bpid, blockId, true);
           }
@@ -2525,6 +2596,7 @@ public void checkAndUpdate(String bpid, long blockId, File diskFile,
         ReplicaInfo diskBlockInfo = new FinalizedReplica(blockId,
             diskFile.length(), diskGS, vol, diskFile.getParentFile());
         volumeMap.add(bpid, diskBlockInfo);
+        ((FsVolumeImpl) vol).journalReplica(bpid, diskBlockInfo);
         if (vol.isTransientStorage()) {
           long lockedBytesReserved =
               cacheManager.reserve(diskBlockInfo.getNumBytes()) > 0 ?
@@ -2612,6 +2684,12 @@ public void checkAndUpdate(String bpid, long blockId, File diskFile,
             + memBlockInfo.getNumBytes() + " to " + memFile.length());
         memBlockInfo.setNumBytes(memFile.length());
       }
+
+      // Journal the replica as updated, possibly on another volume.
+      final ReplicaInfo replica = volumeMap.get(bpid, blockId);
+      if (replica != null && replica.getState() == ReplicaState.FINALIZED) {
+        ((FsVolumeImpl) replica.getVolume()).journalReplica(bpid, replica);
+      }
     }
 
     // Send corrupt block report outside the lock
@@ -2638,7 +2716,7 @@ public ReplicaInfo getReplica(String bpid, long blockId) {
 
   @Override
   public String getReplicaString(String bpid, long blockId) {
-    try(AutoCloseableLock lock = datasetWriteLock.acquire()) {
+    try(AutoCloseableLock lock = lockManager.acquireBlockPoolReadLock(bpid)) {
       final Replica r = volumeMap.get(bpid, blockId);
       return r == null ? "null" : r.toString();
     }
@@ -2647,9 +2725,20 @@ public String getReplicaString(String bpid, long blockId) {
   @Override // FsDatasetSpi
   public ReplicaRecoveryInfo initReplicaRecovery(RecoveringBlock rBlock)
       throws IOException {
-    return initReplicaRecovery(rBlock.getBlock().getBlockPoolId(), volumeMap,
-        rBlock.getBlock().getLocalBlock(), rBlock.getNewGenerationStamp(),
-        datanode.getDnConf().getXceiverStopTimeout());
+    final String bpid = rBlock.getBlock().getBlockPoolId();
+    final Block block = rBlock.getBlock().getLocalBlock();
+    while (true) {
+      try {
+        try (AutoCloseableLock lock =
+            acquireReplicaLock(bpid, block.getBlockId())) {
+          return initReplicaRecoveryImpl(bpid, volumeMap, block,
+              rBlock.getNewGenerationStamp());
+        }
+      } catch (MustStopExistingWriter e) {
+        e.getReplica().stopWriter(
+            datanode.getDnConf().getXceiverStopTimeout());
+      }
+    }
   }
 
   /** static version of {@link #initReplicaRecovery(RecoveringBlock)}. */
@@ -2743,7 +2832,8 @@ public Replica updateReplicaUnderRecovery(
                                     final long recoveryId,
                                     final long newBlockId,
                                     final long newlength) throws IOException {
-    try(AutoCloseableLock lock = datasetWriteLock.acquire()) {
+    try(AutoCloseableLock lock = lockManager.acquireBlockPoolLock(
+        oldBlock.getBlockPoolId())) {
       //get replica
       final String bpid = oldBlock.getBlockPoolId();
       final ReplicaInfo replica = volumeMap.get(bpid, oldBlock.getBlockId());
@@ -2837,6 +2927,13 @@ private FinalizedReplica updateReplicaUnderRecovery(
     }
     if (rur.getNumBytes() > newlength) {
       rur.breakHardLinksIfNeeded();
+      final ReplicaInfo original = rur.getOriginalReplica();
+      if (!copyOnTruncate && original instanceof FinalizedReplica
+          && ((FinalizedReplica) original).isMapped()) {
+        // The readers which mapped the finalized replica would fault on the
+        // pages past the new length: leave them the old files.
+        rur.replaceFilesWithCopies();
+      }
       truncateBlock(
           rur.getVolume(), blockFile, metaFile,
           rur.getNumBytes(), newlength);
@@ -2885,7 +2982,8 @@ private File[] copyReplicaWithNewBlockIdAndGS(
   @Override // FsDatasetSpi
   public long getReplicaVisibleLength(final ExtendedBlock block)
   throws IOException {
-    try(AutoCloseableLock lock = datasetWriteLock.acquire()) {
+    try(AutoCloseableLock lock = lockManager.acquireBlockPoolReadLock(
+        block.getBlockPoolId())) {
       final Replica replica = getReplicaInfo(block.getBlockPoolId(),
           block.getBlockId());
       if (replica.getGenerationStamp() < block.getGenerationStamp()) {
@@ -2916,6 +3014,7 @@ public void shutdownBlockPool(String bpid) {
           getBlockReports(bpid);
       volumeMap.cleanUpBlockPool(bpid);
       volumes.removeBlockPool(bpid, blocksPerVolume);
+      lockManager.removeBlockPoolLock(bpid);
     }
   }
 
@@ -3013,7 +3112,8 @@ public void deleteBlockPool(String bpid, boolean force)
   @Override // FsDatasetSpi
   public BlockLocalPathInfo getBlockLocalPathInfo(ExtendedBlock block)
       throws IOException {
-    try(AutoCloseableLock lock = datasetWriteLock.acquire()) {
+    try(AutoCloseableLock lock = lockManager.acquireBlockPoolReadLock(
+        block.getBlockPoolId())) {
       final Replica replica = volumeMap.get(block.getBlockPoolId(),
           block.getBlockId());
       if (replica == null) {
@@ -3202,6 +3302,9 @@ private void removeOldReplica(ReplicaInfo replicaInfo,
         extendedBlock, null, newReplicaInfo.getStorageUuid(),
         newReplicaInfo.isOnTransientStorage());
 
+    ((FsVolumeImpl) replicaInfo.getVolume()).journalRemoval(
+        bpid, replicaInfo.getBlockId());
+
     // Remove the old replicas
     if (blockFile.delete() || !blockFile.exists()) {
       FsVolumeImpl volume = (FsVolumeImpl) replicaInfo.getVolume();
@@ -3338,6 +3441,7 @@ public void evictBlocks(long bytesNeeded) throws IOException {
 
           // Update the volumeMap entry.
           volumeMap.add(bpid, newReplicaInfo);
+          bpSlice.journalReplica(newReplicaInfo);
 
           // Update metrics
           datanode.getMetrics().incrRamDiskBlocksEvicted();
@@ -3420,6 +3524,47 @@ public boolean isDeletingBlock(String bpid, long blockId) {
     }
   }
 
+  /**
+   * Acquire the lock of a volume, to change the replicas of a block pool
+   * stored on it.
+   */
+  private AutoCloseableLock acquireVolumeLock(String bpid,
+      FsVolumeSpi volume) {
+    if (volume == null) {
+      // the operation fails, there is nothing to change.
+      return lockManager.acquireBlockPoolReadLock(bpid);
+    }
+    return lockManager.acquireVolumeLock(bpid, volume);
+  }
+
+  /**
+   * Acquire the lock of the volume of a replica, to change the replica.  If
+   * there is no such replica, the exclusive lock of the block pool is
+   * acquired instead, so that none is added by another volume meanwhile.
+   */
+  @Override
+  public AutoCloseableLock acquireReplicaLock(String bpid, long blockId) {
+    while (true) {
+      final ReplicaInfo replica = volumeMap.get(bpid, blockId);
+      if (replica == null) {
+        return lockManager.acquireBlockPoolLock(bpid);
+      }
+      final FsVolumeSpi volume = replica.getVolume();
+      final AutoCloseableLock lock = acquireVolumeLock(bpid, volume);
+      final ReplicaInfo current = volumeMap.get(bpid, blockId);
+      if (current != null && current.getVolume() == volume) {
+        return lock;
+      }
+      // the replica was removed or moved to another volume, try again.
+      lock.release();
+    }
+  }
+
+  @VisibleForTesting
+  DatasetLockManager getLockManager() {
+    return lockManager;
+  }
+
   @Override
   public AutoCloseableLock acquireDatasetLock() {
     return datasetWriteLock.acquire();
@@ -3430,6 +3575,11 @@ public AutoCloseableLock acquireDatasetReadLock() {
     return datasetReadLock.acquire();
   }
 
+  @Override
+  public AutoCloseableLock acquireBlockPoolReadLock(String bpid) {
+    return lockManager.acquireBlockPoolReadLock(bpid);
+  }
+
   public void removeDeletedBlocks(String bpid, Set<Long> blockIds) {
     synchronized (deletingBlock) {
       Set<Long> s = deletingBlock.get(bpid);
@@ -902,6 +902,28 @@ File addFinalizedBlock(String bpid, Block b, File f, long bytesReserved)
     return getBlockPoolSlice(bpid).addBlock(b, f);
   }
 
+  /**
+   * Record a finalized replica of a block pool, or a change of its length or
+   * generation stamp, in the replica journal of the volume if enabled.
+   */
+  void journalReplica(String bpid, Block b) {
+    BlockPoolSlice bp = bpSlices.get(bpid);
+    if (bp != null) {
+      bp.journalReplica(b);
+    }
+  }
+
+  /**
+   * Record that a replica of a block pool was removed from the volume or is
+   * no longer finalized, in the replica journal of the volume if enabled.
+   */
+  void journalRemoval(String bpid, long blockId) {
+    BlockPoolSlice bp = bpSlices.get(bpid);
+    if (bp != null) {
+      bp.journalRemoval(blockId);
+    }
+  }
+
   Executor getCacheExecutor() {
     return cacheExecutor;
   }
@@ -0,0 +1,238 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode.fsdataset.impl;
+
+import java.util.AbstractCollection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.apache.hadoop.hdfs.protocol.Block;
+import org.apache.hadoop.hdfs.server.datanode.ReplicaInfo;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * The replicas of a block pool, indexed by their block id.
+ * <p>
+ * The replicas are kept in a single array, with open addressing and linear
+ * probing.  The block id of a slot is read from its replica, so the index
+ * needs one reference per replica, without any entry object or link in the
+ * replica, and a lookup by block id does not allocate.  The removed slots
+ * are marked until the array is rebuilt, so that the replicas can be removed
+ * while iterating over them.
+ * <p>
+ * This class is not thread safe.
+ */
+class ReplicaIndex extends AbstractCollection<ReplicaInfo> {
+  private static final int MIN_CAPACITY = 16;
+  /** A removed slot, which does not end a probe sequence. */
+  private static final Object REMOVED = new Object();
+
+  private Object[] slots;
+  private int size;
+  /** The number of the slots which are used or removed. */
+  private int used;
+  private int modCount;
+
+  ReplicaIndex() {
+    this(MIN_CAPACITY);
+  }
+
+  ReplicaIndex(int expectedSize) {
+    slots = new Object[capacityFor(expectedSize)];
+  }
+
+  /** @return a power of two with room for the given number of replicas. */
+  private static int capacityFor(int n) {
+    int capacity = MIN_CAPACITY;
+    while (capacity - (capacity >>> 2) <= n) {
+      capacity <<= 1;
+    }
+    return capacity;
+  }
+
+  /**
+   * The block ids are allocated sequentially, so the consecutive blocks go
+   * to consecutive slots, as in {@link Block#hashCode()}, which keeps the
+   * probe sequences short and the lookups of recent blocks cache friendly.
+   */
+  private static int hash(long blockId, int mask) {
+    return (int) (blockId ^ (blockId >>> 32)) & mask;
+  }
+
+  /** @return the slot of a block id, or -1 if it is not in the index. */
+  private int find(long blockId) {
+    final int mask = slots.length - 1;
+    for (int i = hash(blockId, mask); ; i = (i + 1) & mask) {
+      final Object o = slots[i];
+      if (o == null) {
+        return -1;
+      }
+      if (o != REMOVED && ((ReplicaInfo) o).getBlockId() == blockId) {
+        return i;
+      }
+    }
+  }
+
+  ReplicaInfo get(long blockId) {
+    final int i = find(blockId);
+    return i < 0 ? null : (ReplicaInfo) slots[i];
+  }
+
+  /**
+   * Add a replica, replacing the replica of the same block id if any.
+   * @return the replaced replica, or null.
+   */
+  ReplicaInfo put(ReplicaInfo replica) {
+    final long blockId = replica.getBlockId();
+    final int mask = slots.length - 1;
+    int free = -1;
+    int i = hash(blockId, mask);
+    for (; ; i = (i + 1) & mask) {
+      final Object o = slots[i];
+      if (o == null) {
+        break;
+      }
+      if (o == REMOVED) {
+        if (free < 0) {
+          free = i;
+        }
+      } else if (((ReplicaInfo) o).getBlockId() == blockId) {
+        slots[i] = replica;
+        return (ReplicaInfo) o;
+      }
+    }
+    modCount++;
+    size++;
+    if (free >= 0) {
+      slots[free] = replica;
+    } else {
+      slots[i] = replica;
+      if (++used > slots.length - (slots.length >>> 2)) {
+        resize(capacityFor(size));
+      }
+    }
+    return null;
+  }
+
+  /** @return the removed replica, or null. */
+  ReplicaInfo remove(long blockId) {
+    final int i = find(blockId);
+    if (i < 0) {
+      return null;
+    }
+    final ReplicaInfo replica = (ReplicaInfo) slots[i];
+    removeAt(i);
+    return replica;
+  }
+
+  private void removeAt(int i) {
+    slots[i] = REMOVED;
+    size--;
+    modCount++;
+  }
+
+  private void resize(int capacity) {
+    final Object[] old = slots;
+    slots = new Object[capacity];
+    used = size;
+    final int mask = capacity - 1;
+    for (Object o : old) {
+      if (o != null && o != REMOVED) {
+        int i = hash(((ReplicaInfo) o).getBlockId(), mask);
+        while (slots[i] != null) {
+          i = (i + 1) & mask;
+        }
+        slots[i] = o;
+      }
+    }
+  }
+
+  @VisibleForTesting
+  int capacity() {
+    return slots.length;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public void clear() {
+    slots = new Object[MIN_CAPACITY];
+    size = 0;
+    used = 0;
+    modCount++;
+  }
+
+  /**
+   * The iterator visits the replicas in the order of their slots.  It
+   * supports {@link Iterator#remove()}; any other change of the index while
+   * iterating fails the iterator.
+   */
+  @Override
+  public Iterator<ReplicaInfo> iterator() {
+    return new Iterator<ReplicaInfo>() {
+      private final Object[] current = slots;
+      private int expectedModCount = modCount;
+      private int next = advance(0);
+      private int last = -1;
+
+      private int advance(int i) {
+        while (i < current.length
+            && (current[i] == null || current[i] == REMOVED)) {
+          i++;
+        }
+        return i;
+      }
+
+      @Override
+      public boolean hasNext() {
+        return next < current.length;
+      }
+
+      @Override
+      public ReplicaInfo next() {
+        if (modCount != expectedModCount) {
+          throw new ConcurrentModificationException();
+        }
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        last = next;
+        next = advance(next + 1);
+        return (ReplicaInfo) current[last];
+      }
+
+      @Override
+      public void remove() {
+        if (last < 0) {
+          throw new IllegalStateException();
+        }
+        if (modCount != expectedModCount) {
+          throw new ConcurrentModificationException();
+        }
+        removeAt(last);
+        expectedModCount = modCount;
+        last = -1;
+      }
+    };
+  }
+}
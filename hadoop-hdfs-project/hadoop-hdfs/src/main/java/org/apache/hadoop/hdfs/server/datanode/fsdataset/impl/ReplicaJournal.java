@@ -0,0 +1,377 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode.fsdataset.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.apache.commons.logging.Log;
+import org.apache.hadoop.hdfs.protocol.Block;
+import org.apache.hadoop.hdfs.server.datanode.FileIoProvider;
+import org.apache.hadoop.io.IOUtils;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * The journal of the finalized replicas of a {@link BlockPoolSlice}, which
+ * lets the slice load its finalized replicas without listing its finalized
+ * directory, after a clean shutdown or not.
+ * <p>
+ * The journal is an append-only log of the replicas finalized, updated and
+ * removed.  Each record has its own checksum, so that a record torn by a
+ * crash ends the log rather than corrupting it.  The records are written
+ * without a sync, so that they survive a crash of the DataNode but not
+ * always a crash of its host; the replicas which the journal misses or still
+ * has after such a crash are reconciled by the directory scanner.
+ * <p>
+ * Once the log has more records than it had replicas when it was written,
+ * it is compacted into the list of its replicas.  The changes made during a
+ * compaction are appended to a second log, which is replayed after the
+ * first, and appended to the compacted log once it is written.  Since every
+ * record sets or removes a replica, replaying a change twice is harmless.
+ * <p>
+ * This class is thread safe.
+ */
+class ReplicaJournal {
+  static final Log LOG = BlockPoolSlice.LOG;
+
+  static final String JOURNAL_FILE = "replicas.journal";
+  private static final String NEXT_SUFFIX = ".next";
+  private static final String TMP_SUFFIX = ".tmp";
+
+  private static final int LAYOUT_VERSION = 1;
+  private static final int HEADER_SIZE = 4;
+  private static final byte OP_ADD = 1;
+  private static final byte OP_REMOVE = 2;
+  /** The op, block id, generation stamp, length and checksum of a record. */
+  private static final int RECORD_SIZE = 1 + 8 + 8 + 8 + 4;
+
+  private final FsVolumeImpl volume;
+  private final FileIoProvider fileIoProvider;
+  private final File file;
+  private final File nextFile;
+  private final File tmpFile;
+  private final long compactionRecords;
+
+  /** The log which the changes are appended to, null once closed. */
+  private FileOutputStream out;
+  private boolean compacting = false;
+  /** The number of replicas in the log when it was last compacted. */
+  private long numReplicas;
+  /** The number of records in the log. */
+  private long numRecords;
+
+  ReplicaJournal(FsVolumeImpl volume, File dir, long compactionRecords) {
+    this.volume = volume;
+    this.fileIoProvider = volume.getFileIoProvider();
+    this.file = new File(dir, JOURNAL_FILE);
+    this.nextFile = new File(dir, JOURNAL_FILE + NEXT_SUFFIX);
+    this.tmpFile = new File(dir, JOURNAL_FILE + TMP_SUFFIX);
+    this.compactionRecords = compactionRecords;
+  }
+
+  /**
+   * Delete the journal in a directory, which would miss the changes made
+   * while it is disabled.
+   */
+  static void delete(FsVolumeImpl volume, File dir) {
+    final FileIoProvider fileIoProvider = volume.getFileIoProvider();
+    for (String suffix : new String[] {"", NEXT_SUFFIX, TMP_SUFFIX}) {
+      final File f = new File(dir, JOURNAL_FILE + suffix);
+      if (!fileIoProvider.deleteWithExistsCheck(volume, f)) {
+        LOG.warn("Failed to delete the replica journal " + f);
+      }
+    }
+  }
+
+  /**
+   * Read the replicas of the journal.
+   * @return the replicas by block id, or null if there is no valid journal.
+   */
+  Map<Long, Block> load() {
+    if (!file.exists()) {
+      LOG.info("Replica journal " + file + " doesn't exist");
+      return null;
+    }
+    final Map<Long, Block> replicas = new HashMap<Long, Block>();
+    try {
+      replay(file, replicas, true);
+      if (nextFile.exists()) {
+        replay(nextFile, replicas, false);
+      }
+      return replicas;
+    } catch (IOException e) {
+      LOG.warn("Failed to read the replica journal " + file, e);
+      return null;
+    }
+  }
+
+  private void replay(File f, Map<Long, Block> replicas,
+      boolean headerRequired) throws IOException {
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+        fileIoProvider.getFileInputStream(volume, f)))) {
+      try {
+        final int version = in.readInt();
+        if (version != LAYOUT_VERSION) {
+          throw new IOException("Unexpected layout version " + version
+              + " of the replica journal " + f);
+        }
+      } catch (EOFException e) {
+        if (headerRequired) {
+          throw e;
+        }
+        // The log was created, but not written before a crash.
+        return;
+      }
+      final byte[] record = new byte[RECORD_SIZE];
+      final CRC32 crc = new CRC32();
+      long numRead = 0;
+      while (true) {
+        try {
+          in.readFully(record);
+        } catch (EOFException e) {
+          break;
+        }
+        final ByteBuffer buf = ByteBuffer.wrap(record);
+        crc.reset();
+        crc.update(record, 0, RECORD_SIZE - 4);
+        if ((int) crc.getValue() != buf.getInt(RECORD_SIZE - 4)) {
+          LOG.warn("Ignoring the records of the replica journal " + f
+              + " after the first " + numRead + ", with a bad checksum");
+          break;
+        }
+        final byte op = buf.get();
+        final long blockId = buf.getLong();
+        final long genStamp = buf.getLong();
+        final long numBytes = buf.getLong();
+        if (op == OP_ADD) {
+          replicas.put(blockId, new Block(blockId, numBytes, genStamp));
+        } else if (op == OP_REMOVE) {
+          replicas.remove(blockId);
+        } else {
+          throw new IOException("Unexpected op " + op + " in record "
+              + numRead + " of the replica journal " + f);
+        }
+        numRead++;
+      }
+    }
+  }
+
+  private static void writeRecord(OutputStream os, byte op, long blockId,
+      long genStamp, long numBytes) throws IOException {
+    final byte[] record = new byte[RECORD_SIZE];
+    final ByteBuffer buf = ByteBuffer.wrap(record);
+    buf.put(op).putLong(blockId).putLong(genStamp).putLong(numBytes);
+    final CRC32 crc = new CRC32();
+    crc.update(record, 0, RECORD_SIZE - 4);
+    buf.putInt((int) crc.getValue());
+    os.write(record);
+  }
+
+  private FileOutputStream create(File f) throws IOException {
+    final FileOutputStream fos = fileIoProvider.getFileOutputStream(volume, f);
+    try {
+      fos.write(ByteBuffer.allocate(HEADER_SIZE).putInt(LAYOUT_VERSION)
+          .array());
+      return fos;
+    } catch (IOException e) {
+      IOUtils.closeStream(fos);
+      throw e;
+    }
+  }
+
+  /** Write the replicas to the temporary file, and sync it. */
+  private void writeTmpFile(Collection<? extends Block> replicas)
+      throws IOException {
+    try (FileOutputStream fos = create(tmpFile)) {
+      final OutputStream os = new BufferedOutputStream(fos);
+      for (Block b : replicas) {
+        writeRecord(os, OP_ADD, b.getBlockId(), b.getGenerationStamp(),
+            b.getNumBytes());
+      }
+      fileIoProvider.flush(volume, os);
+      fileIoProvider.sync(volume, fos);
+    }
+  }
+
+  /**
+   * Append the records of the next log to the temporary file, and sync it.
+   * @return the number of records appended.
+   */
+  private long appendNextFile() throws IOException {
+    try (FileOutputStream fos =
+             fileIoProvider.getFileOutputStream(volume, tmpFile, true);
+         FileInputStream in =
+             fileIoProvider.getFileInputStream(volume, nextFile)) {
+      IOUtils.skipFully(in, HEADER_SIZE);
+      IOUtils.copyBytes(in, fos, 64 * 1024, false);
+      fileIoProvider.sync(volume, fos);
+    }
+    return (nextFile.length() - HEADER_SIZE) / RECORD_SIZE;
+  }
+
+  /**
+   * Replace the journal by the given replicas, and open it to append the
+   * changes to them.
+   */
+  synchronized void open(Collection<? extends Block> replicas)
+      throws IOException {
+    try {
+      writeTmpFile(replicas);
+      // The changes of the next log are already in the replicas, and
+      // replaying them after the new log may revert the later ones.
+      if (!fileIoProvider.deleteWithExistsCheck(volume, nextFile)) {
+        throw new IOException("Failed to delete " + nextFile);
+      }
+      fileIoProvider.replaceFile(volume, tmpFile, file);
+      out = fileIoProvider.getFileOutputStream(volume, file, true);
+      numReplicas = replicas.size();
+      numRecords = replicas.size();
+    } catch (IOException e) {
+      discard();
+      throw e;
+    } finally {
+      fileIoProvider.deleteWithExistsCheck(volume, tmpFile);
+    }
+  }
+
+  /** Record a finalized replica, or a change of its length or stamp. */
+  synchronized void add(Block b) {
+    append(OP_ADD, b.getBlockId(), b.getGenerationStamp(), b.getNumBytes());
+  }
+
+  /** Record that a replica was removed or is no longer finalized. */
+  synchronized void remove(long blockId) {
+    append(OP_REMOVE, blockId, 0, 0);
+  }
+
+  private void append(byte op, long blockId, long genStamp, long numBytes) {
+    if (out == null) {
+      return;
+    }
+    try {
+      writeRecord(out, op, blockId, genStamp, numBytes);
+      numRecords++;
+    } catch (IOException e) {
+      LOG.warn("Failed to append to the replica journal " + file
+          + ", discarding it", e);
+      discard();
+    }
+  }
+
+  /** Delete the journal, which misses some changes. */
+  private void discard() {
+    IOUtils.closeStream(out);
+    out = null;
+    delete(volume, file.getParentFile());
+  }
+
+  /**
+   * Start a compaction if the log has too many records: the changes from
+   * now on are appended to the next log, until
+   * {@link #finishCompaction(Collection)}.
+   * @return true if a compaction was started.
+   */
+  synchronized boolean startCompaction() {
+    if (out == null || compacting ||
+        numRecords - numReplicas <= Math.max(compactionRecords, numReplicas)) {
+      return false;
+    }
+    try {
+      final FileOutputStream next = create(nextFile);
+      IOUtils.closeStream(out);
+      out = next;
+      compacting = true;
+      return true;
+    } catch (IOException e) {
+      LOG.warn("Failed to start compacting the replica journal " + file, e);
+      discard();
+      return false;
+    }
+  }
+
+  /**
+   * Finish a compaction.
+   * @param replicas the finalized replicas of the slice, as of after the
+   *                 compaction was started.
+   */
+  void finishCompaction(Collection<? extends Block> replicas) {
+    final long start = System.currentTimeMillis();
+    try {
+      writeTmpFile(replicas);
+      synchronized (this) {
+        if (out == null) {
+          // The journal was closed, and its logs are replayed on restart.
+          return;
+        }
+        // The changes made since the compaction started follow the replicas.
+        out.close();
+        out = null;
+        final long n = appendNextFile();
+        fileIoProvider.replaceFile(volume, tmpFile, file);
+        if (!fileIoProvider.delete(volume, nextFile)) {
+          throw new IOException("Failed to delete " + nextFile);
+        }
+        out = fileIoProvider.getFileOutputStream(volume, file, true);
+        numReplicas = replicas.size();
+        numRecords = numReplicas + n;
+      }
+      LOG.info("Compacted the replica journal " + file + " to "
+          + replicas.size() + " replicas in "
+          + (System.currentTimeMillis() - start) + "ms");
+    } catch (IOException e) {
+      LOG.warn("Failed to compact the replica journal " + file, e);
+      synchronized (this) {
+        discard();
+      }
+    } finally {
+      synchronized (this) {
+        compacting = false;
+        fileIoProvider.deleteWithExistsCheck(volume, tmpFile);
+      }
+    }
+  }
+
+  /** Close the journal, which is then read on restart. */
+  synchronized void close() {
+    IOUtils.closeStream(out);
+    out = null;
+  }
+
+  @VisibleForTesting
+  synchronized long getNumRecords() {
+    return numRecords;
+  }
+
+  @VisibleForTesting
+  File getFile() {
+    return file;
+  }
+}
@@ -25,7 +25,6 @@
 import org.apache.hadoop.HadoopIllegalArgumentException;
 import org.apache.hadoop.hdfs.protocol.Block;
 import org.apache.hadoop.hdfs.server.datanode.ReplicaInfo;
-import org.apache.hadoop.util.LightWeightResizableGSet;
 import org.apache.hadoop.util.AutoCloseableLock;
 
 /**
@@ -37,9 +36,9 @@ class ReplicaMap {
   private final AutoCloseableLock readLock;
   private final AutoCloseableLock writeLock;
   
-  // Map of block pool Id to another map of block Id to ReplicaInfo.
-  private final Map<String, LightWeightResizableGSet<Block, ReplicaInfo>> map =
-    new HashMap<String, LightWeightResizableGSet<Block, ReplicaInfo>>();
+  // Map of block pool Id to the index of its replicas by block Id.
+  private final Map<String, ReplicaIndex> map =
+    new HashMap<String, ReplicaIndex>();
 
   ReplicaMap(ReadWriteLock lock) {
     if (lock == null) {
@@ -52,7 +51,7 @@ class ReplicaMap {
   }
   
   String[] getBlockPoolList() {
-    try (AutoCloseableLock l = writeLock.acquire()) {
+    try (AutoCloseableLock l = readLock.acquire()) {
       return map.keySet().toArray(new String[map.keySet().size()]);   
     }
   }
@@ -97,9 +96,9 @@ ReplicaInfo get(String bpid, Block block) {
    */
   ReplicaInfo get(String bpid, long blockId) {
     checkBlockPool(bpid);
-    try (AutoCloseableLock l = writeLock.acquire()) {
-      LightWeightResizableGSet<Block, ReplicaInfo> m = map.get(bpid);
-      return m != null ? m.get(new Block(blockId)) : null;
+    try (AutoCloseableLock l = readLock.acquire()) {
+      ReplicaIndex m = map.get(bpid);
+      return m != null ? m.get(blockId) : null;
     }
   }
   
@@ -115,10 +114,10 @@ ReplicaInfo add(String bpid, ReplicaInfo replicaInfo) {
     checkBlockPool(bpid);
     checkBlock(replicaInfo);
     try (AutoCloseableLock l = writeLock.acquire()) {
-      LightWeightResizableGSet<Block, ReplicaInfo> m = map.get(bpid);
+      ReplicaIndex m = map.get(bpid);
       if (m == null) {
         // Add an entry for block pool if it does not exist already
-        m = new LightWeightResizableGSet<Block, ReplicaInfo>();
+        m = new ReplicaIndex();
         map.put(bpid, m);
       }
       return  m.put(replicaInfo);
@@ -133,13 +132,13 @@ ReplicaInfo addAndGet(String bpid, ReplicaInfo replicaInfo) {
     checkBlockPool(bpid);
     checkBlock(replicaInfo);
     try (AutoCloseableLock l = writeLock.acquire()) {
-      LightWeightResizableGSet<Block, ReplicaInfo> m = map.get(bpid);
+      ReplicaIndex m = map.get(bpid);
       if (m == null) {
         // Add an entry for block pool if it does not exist already
-        m = new LightWeightResizableGSet<Block, ReplicaInfo>();
+        m = new ReplicaIndex();
         map.put(bpid, m);
       }
-      ReplicaInfo oldReplicaInfo = m.get(new Block(replicaInfo.getBlockId()));
+      ReplicaInfo oldReplicaInfo = m.get(replicaInfo.getBlockId());
       if (oldReplicaInfo != null) {
         return oldReplicaInfo;
       } else {
@@ -180,12 +179,12 @@ ReplicaInfo remove(String bpid, Block block) {
     checkBlockPool(bpid);
     checkBlock(block);
     try (AutoCloseableLock l = writeLock.acquire()) {
-      LightWeightResizableGSet<Block, ReplicaInfo> m = map.get(bpid);
+      ReplicaIndex m = map.get(bpid);
       if (m != null) {
-        ReplicaInfo replicaInfo = m.get(block);
+        ReplicaInfo replicaInfo = m.get(block.getBlockId());
         if (replicaInfo != null &&
             block.getGenerationStamp() == replicaInfo.getGenerationStamp()) {
-          return m.remove(block);
+          return m.remove(block.getBlockId());
         }
       }
     }
@@ -202,9 +201,9 @@ ReplicaInfo remove(String bpid, Block block) {
   ReplicaInfo remove(String bpid, long blockId) {
     checkBlockPool(bpid);
     try (AutoCloseableLock l = writeLock.acquire()) {
-      LightWeightResizableGSet<Block, ReplicaInfo> m = map.get(bpid);
+      ReplicaIndex m = map.get(bpid);
       if (m != null) {
-        return m.remove(new Block(blockId));
+        return m.remove(blockId);
       }
     }
     return null;
@@ -216,8 +215,8 @@ ReplicaInfo remove(String bpid, long blockId) {
    * @return the number of replicas in the map
    */
   int size(String bpid) {
-    LightWeightResizableGSet<Block, ReplicaInfo> m = null;
-    try (AutoCloseableLock l = writeLock.acquire()) {
+    ReplicaIndex m = null;
+    try (AutoCloseableLock l = readLock.acquire()) {
       m = map.get(bpid);
       return m != null ? m.size() : 0;
     }
@@ -234,18 +233,18 @@ int size(String bpid) {
    * @return a collection of the replicas belonging to the block pool
    */
   Collection<ReplicaInfo> replicas(String bpid) {
-    LightWeightResizableGSet<Block, ReplicaInfo> m = null;
+    ReplicaIndex m = null;
     m = map.get(bpid);
-    return m != null ? m.values() : null;
+    return m;
   }
 
   void initBlockPool(String bpid) {
     checkBlockPool(bpid);
     try (AutoCloseableLock l = writeLock.acquire()) {
-      LightWeightResizableGSet<Block, ReplicaInfo> m = map.get(bpid);
+      ReplicaIndex m = map.get(bpid);
       if (m == null) {
         // Add an entry for block pool if it does not exist already
-        m = new LightWeightResizableGSet<Block, ReplicaInfo>();
+        m = new ReplicaIndex();
         map.put(bpid, m);
       }
     }
@@ -30,6 +30,7 @@
 import org.apache.hadoop.metrics2.lib.MutableCounterLong;
 import org.apache.hadoop.metrics2.lib.MutableQuantiles;
 import org.apache.hadoop.metrics2.lib.MutableRate;
+import org.apache.hadoop.metrics2.lib.MutableStat;
 import org.apache.hadoop.metrics2.lib.MutableGaugeLong;
 import org.apache.hadoop.metrics2.source.JvmMetrics;
 
@@ -112,6 +113,15 @@ public class DataNodeMetrics {
   @Metric MutableRate lifelines;
   @Metric MutableRate blockReports;
   @Metric MutableRate incrementalBlockReports;
+  @Metric("Milliseconds from queueing the first block of an IBR to its"
+      + " acknowledgement by the NameNode")
+  MutableRate incrementalBlockReportLatency;
+  @Metric(value = "Number of blocks reported together by an IBR",
+      sampleName = "Reports", valueName = "Blocks")
+  MutableStat incrementalBlockReportBatch;
+  @Metric(value = "Number of packets written together by a packet writer",
+      sampleName = "Writes", valueName = "Packets")
+  MutableStat packetWriterBatch;
   @Metric MutableRate cacheReports;
   @Metric MutableRate packetAckRoundTripTimeNanos;
   final MutableQuantiles[] packetAckRoundTripTimeNanosQuantiles;
@@ -227,6 +237,20 @@ public void addIncrementalBlockReport(long latency) {
     incrementalBlockReports.add(latency);
   }
 
+  /**
+   * Add a sent IBR.
+   * @param latency milliseconds since the first block of the IBR was queued
+   * @param blocks number of blocks in the IBR
+   */
+  public void addIncrementalBlockReportBatch(long latency, int blocks) {
+    incrementalBlockReportLatency.add(latency);
+    incrementalBlockReportBatch.add(blocks);
+  }
+
+  public void addPacketWriterBatch(int packets) {
+    packetWriterBatch.add(packets);
+  }
+
   public void addCacheReport(long latency) {
     cacheReports.add(latency);
   }
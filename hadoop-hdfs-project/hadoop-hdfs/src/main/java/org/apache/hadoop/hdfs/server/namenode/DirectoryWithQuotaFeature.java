@@ -36,6 +36,8 @@ public final class DirectoryWithQuotaFeature implements INode.Feature {
 
   private QuotaCounts quota;
   private QuotaCounts usage;
+  /** Maintain the usage even if no quota is set. */
+  private boolean usageTracked;
 
   public static class Builder {
     private QuotaCounts quota;
@@ -243,10 +245,18 @@ void verifyQuota(QuotaCounts counts) throws QuotaExceededException {
   }
 
   boolean isQuotaSet() {
-    return quota.anyNsSsCountGreaterOrEqual(0) ||
+    return usageTracked || quota.anyNsSsCountGreaterOrEqual(0) ||
         quota.anyTypeSpaceCountGreaterOrEqual(0);
   }
 
+  boolean isUsageTracked() {
+    return usageTracked;
+  }
+
+  void setUsageTracked(boolean usageTracked) {
+    this.usageTracked = usageTracked;
+  }
+
   boolean isQuotaByStorageTypeSet() {
     return quota.anyTypeSpaceCountGreaterOrEqual(0);
   }
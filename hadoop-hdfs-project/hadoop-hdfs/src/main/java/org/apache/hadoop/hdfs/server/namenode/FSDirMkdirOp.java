@@ -216,8 +216,11 @@ private static INodesInPath unprotectedMkdir(FSDirectory fsd, long inodeId,
         timestamp);
 
     INodesInPath iip = fsd.addLastINode(parent, dir, true);
-    if (iip != null && aclEntries != null) {
-      AclStorage.updateINodeAcl(dir, aclEntries, Snapshot.CURRENT_STATE_ID);
+    if (iip != null) {
+      if (aclEntries != null) {
+        AclStorage.updateINodeAcl(dir, aclEntries, Snapshot.CURRENT_STATE_ID);
+      }
+      fsd.trackUsageIfConfigured(iip);
     }
     return iip;
   }
@@ -109,7 +109,30 @@ static HdfsFileStatus getFileInfo(
     } else {
       iip = fsd.resolvePath(pc, srcArg, dirOp);
     }
-    return getFileInfo(fsd, iip);
+
+    final FileStatusCache cache = iip.isRaw() ? null
+        : fsd.getFileStatusCache();
+    if (cache == null) {
+      return getFileInfo(fsd, iip);
+    }
+    fsd.readLock();
+    try {
+      HdfsFileStatus status = cache.getFileInfo(iip.getPath(), resolveLink);
+      if (status == null) {
+        status = getFileInfo(fsd, iip);
+        final INode node = iip.getLastINode();
+        if (status != null && node != null && !isUnderConstruction(node)) {
+          cache.putFileInfo(iip.getPath(), resolveLink, status);
+        }
+      }
+      return status;
+    } finally {
+      fsd.readUnlock();
+    }
+  }
+
+  private static boolean isUnderConstruction(INode inode) {
+    return inode.isFile() && inode.asFile().isUnderConstruction();
   }
 
   /**
@@ -221,6 +244,17 @@ private static DirectoryListing getListing(FSDirectory fsd, INodesInPath iip,
         return null;
       }
 
+      // listings with block locations change without edits
+      final FileStatusCache cache = needLocation || iip.isRaw() ? null
+          : fsd.getFileStatusCache();
+      if (cache != null) {
+        final DirectoryListing cached = cache.getListing(
+            iip.getPath(), startAfter, includeStoragePolicy);
+        if (cached != null) {
+          return cached;
+        }
+      }
+
       byte parentStoragePolicy = includeStoragePolicy
           ? targetNode.getStoragePolicyID()
           : HdfsConstants.BLOCK_STORAGE_POLICY_ID_UNSPECIFIED;
@@ -228,10 +262,15 @@ private static DirectoryListing getListing(FSDirectory fsd, INodesInPath iip,
       if (!targetNode.isDirectory()) {
         // return the file's status. note that the iip already includes the
         // target INode
-        return new DirectoryListing(
+        final DirectoryListing fileListing = new DirectoryListing(
             new HdfsFileStatus[]{ createFileStatus(
                 fsd, iip, null, parentStoragePolicy, needLocation)
             }, 0);
+        if (cache != null && !isUnderConstruction(targetNode)) {
+          cache.putListing(iip.getPath(), startAfter, includeStoragePolicy,
+              fileListing);
+        }
+        return fileListing;
       }
 
       final INodeDirectory dirInode = targetNode.asDirectory();
@@ -242,9 +281,14 @@ private static DirectoryListing getListing(FSDirectory fsd, INodesInPath iip,
           fsd.getLsLimit());
       int locationBudget = fsd.getLsLimit();
       int listingCnt = 0;
+      boolean cacheable = cache != null;
       HdfsFileStatus listing[] = new HdfsFileStatus[numOfListing];
       for (int i = 0; i < numOfListing && locationBudget > 0; i++) {
         INode child = contents.get(startChild+i);
+        if (cacheable && isUnderConstruction(child)) {
+          // the length of a file being written changes without edits
+          cacheable = false;
+        }
         byte childStoragePolicy = (includeStoragePolicy && !child.isSymlink())
             ? getStoragePolicyID(child.getLocalStoragePolicyID(),
                                  parentStoragePolicy)
@@ -266,8 +310,13 @@ private static DirectoryListing getListing(FSDirectory fsd, INodesInPath iip,
       if (listingCnt < numOfListing) {
           listing = Arrays.copyOf(listing, listingCnt);
       }
-      return new DirectoryListing(
+      final DirectoryListing dirListing = new DirectoryListing(
           listing, totalNumChildren-startChild-listingCnt);
+      if (cacheable) {
+        cache.putListing(iip.getPath(), startAfter, includeStoragePolicy,
+            dirListing);
+      }
+      return dirListing;
     } finally {
       fsd.readUnlock();
     }
@@ -164,6 +164,14 @@ private static INodeDirectory createRoot(FSNamesystem namesystem) {
   // Each entry in this set must be a normalized path.
   private volatile SortedSet<String> protectedDirectories;
 
+  // A set of directories configured with
+  // dfs.namenode.quota.usage.tracked.directories.  Their usage is maintained
+  // like the usage of directories with quota, so getQuotaUsage does not
+  // need to walk the subtree.
+  //
+  // Each entry in this set must be a normalized path.
+  private final SortedSet<String> usageTrackedDirectories;
+
   // lock to protect the directory and BlockMap
   private final ReentrantReadWriteLock dirLock;
 
@@ -189,6 +197,8 @@ private static INodeDirectory createRoot(FSNamesystem namesystem) {
   private final INodeId inodeId;
 
   private final FSEditLog editLog;
+  /** Cache of getFileInfo and getListing responses, null if disabled. */
+  private final FileStatusCache fileStatusCache;
 
   private HdfsFileStatus[] reservedStatuses;
 
@@ -261,7 +271,10 @@ public enum DirOp {
     this.dirLock = new ReentrantReadWriteLock(true); // fair
     this.inodeId = new INodeId();
     rootDir = createRoot(ns);
-    inodeMap = INodeMap.newInstance(rootDir);
+    float inodeMapPercent = conf.getFloat(
+        DFSConfigKeys.DFS_NAMENODE_INODE_MAP_ALLOCATION_PERCENT,
+        DFSConfigKeys.DFS_NAMENODE_INODE_MAP_ALLOCATION_PERCENT_DEFAULT);
+    inodeMap = INodeMap.newInstance(rootDir, inodeMapPercent);
     this.isPermissionEnabled = conf.getBoolean(
       DFSConfigKeys.DFS_PERMISSIONS_ENABLED_KEY,
       DFSConfigKeys.DFS_PERMISSIONS_ENABLED_DEFAULT);
@@ -325,6 +338,10 @@ public enum DirOp {
         DFSConfigKeys.DFS_NAMENODE_MAX_XATTRS_PER_INODE_DEFAULT);
 
     this.protectedDirectories = parseProtectedDirectories(conf);
+    this.usageTrackedDirectories = new TreeSet<>(normalizePaths(
+        conf.getTrimmedStringCollection(
+            DFSConfigKeys.DFS_NAMENODE_QUOTA_USAGE_TRACKED_DIRECTORIES_KEY),
+        DFSConfigKeys.DFS_NAMENODE_QUOTA_USAGE_TRACKED_DIRECTORIES_KEY));
 
     Preconditions.checkArgument(this.inodeXAttrsLimit >= 0,
         "Cannot set a negative limit on the number of xattrs per inode (%s).",
@@ -348,6 +365,24 @@ public enum DirOp {
     this.editLog = ns.getEditLog();
     ezManager = new EncryptionZoneManager(this, conf);
 
+    if (conf.getBoolean(
+        DFSConfigKeys.DFS_NAMENODE_FILE_STATUS_CACHE_ENABLED_KEY,
+        DFSConfigKeys.DFS_NAMENODE_FILE_STATUS_CACHE_ENABLED_DEFAULT)) {
+      long cacheSize = conf.getLong(
+          DFSConfigKeys.DFS_NAMENODE_FILE_STATUS_CACHE_SIZE_KEY,
+          DFSConfigKeys.DFS_NAMENODE_FILE_STATUS_CACHE_SIZE_DEFAULT);
+      Preconditions.checkArgument(cacheSize > 0,
+          "The file status cache size should be > 0: (%s).",
+          DFSConfigKeys.DFS_NAMENODE_FILE_STATUS_CACHE_SIZE_KEY);
+      LOG.info("Caching up to " + cacheSize + " file statuses");
+      fileStatusCache = new FileStatusCache(cacheSize);
+      if (editLog != null) {
+        editLog.setFileStatusCache(fileStatusCache);
+      }
+    } else {
+      fileStatusCache = null;
+    }
+
     this.quotaInitThreads = conf.getInt(
         DFSConfigKeys.DFS_NAMENODE_QUOTA_INIT_THREADS_KEY,
         DFSConfigKeys.DFS_NAMENODE_QUOTA_INIT_THREADS_DEFAULT);
@@ -396,6 +431,15 @@ private INodeAttributeProvider getUserFilteredAttributeProvider(
     return attributeProvider;
   }
 
+  /**
+   * @return the cache of getFileInfo and getListing responses, or null if it
+   *         is disabled or an attribute provider may change the attributes
+   *         of inodes without edits.
+   */
+  FileStatusCache getFileStatusCache() {
+    return attributeProvider == null ? fileStatusCache : null;
+  }
+
   /**
    * Get HdfsFileStatuses of the reserved paths: .inodes and raw.
    *
@@ -493,6 +537,19 @@ String setProtectedDirectories(String protectedDirsString) {
     return Joiner.on(",").skipNulls().join(protectedDirectories);
   }
 
+  /**
+   * Start tracking the usage of a newly created directory if it is one of
+   * the configured usage tracked directories.
+   */
+  void trackUsageIfConfigured(INodesInPath iip) {
+    assert hasWriteLock();
+    if (!usageTrackedDirectories.isEmpty()
+        && usageTrackedDirectories.contains(iip.getPath())) {
+      // the directory is empty, so it starts with the right usage.
+      iip.getLastINode().asDirectory().trackUsage();
+    }
+  }
+
   BlockManager getBlockManager() {
     return getFSNamesystem().getBlockManager();
   }
@@ -734,6 +791,17 @@ void updateCountForQuota(int initThreads) {
       int threads = (initThreads < 1) ? 1 : initThreads;
       LOG.info("Initializing quota with " + threads + " thread(s)");
       long start = Time.monotonicNow();
+      for (String path : usageTrackedDirectories) {
+        try {
+          final INode inode = getINode(path, DirOp.READ);
+          if (inode != null && inode.isDirectory()) {
+            // the usage is initialized with the other quota directories below.
+            inode.asDirectory().trackUsage();
+          }
+        } catch (IOException e) {
+          LOG.warn("Cannot track the usage of " + path, e);
+        }
+      }
       QuotaCounts counts = new QuotaCounts.Builder().build();
       ForkJoinPool p = new ForkJoinPool(threads);
       RecursiveAction task = new InitQuotaTask(getBlockStoragePolicySuite(),
@@ -1384,6 +1452,10 @@ long totalInodes() {
     return getInodeMapSize();
   }
 
+  int getInodeMapCapacity() {
+    return inodeMap.getCapacity();
+  }
+
   /**
    * Reset the entire namespace tree.
    */
@@ -1395,6 +1467,9 @@ void reset() {
       addToInodeMap(rootDir);
       nameCache.reset();
       inodeId.setCurrentValue(INodeId.LAST_RESERVED_ID);
+      if (fileStatusCache != null) {
+        fileStatusCache.clear();
+      }
     } finally {
       writeUnlock();
     }
@@ -181,6 +181,8 @@ private enum State {
   private final AtomicLong numTransactionsBatchedInSync = new AtomicLong();
   private long totalTimeTransactions;  // total time for all transactions
   private NameNodeMetrics metrics;
+  // invalidated by each logged op, null if the cache is disabled.
+  private volatile FileStatusCache fileStatusCache;
 
   private final NNStorage storage;
   private final Configuration conf;
@@ -443,6 +445,22 @@ synchronized List<FormatConfirmable> getFormatConfirmables() {
     return ret;
   }
 
+  void setFileStatusCache(FileStatusCache fileStatusCache) {
+    this.fileStatusCache = fileStatusCache;
+  }
+
+  /**
+   * Drop the cached file statuses of the paths touched by the op. The op is
+   * logged with the namesystem write lock held, so no reader can cache a
+   * status of the namespace between the change and its invalidation.
+   */
+  void invalidateFileStatusCache(FSEditLogOp op) {
+    final FileStatusCache c = fileStatusCache;
+    if (c != null) {
+      c.invalidate(op);
+    }
+  }
+
   /**
    * Write an operation to the edit log.
    * <p/>
@@ -452,6 +470,7 @@ synchronized List<FormatConfirmable> getFormatConfirmables() {
    */
   void logEdit(final FSEditLogOp op) {
     boolean needsSync = false;
+    invalidateFileStatusCache(op);
     synchronized (this) {
       assert isOpenForWrite() :
         "bad state: " + state;
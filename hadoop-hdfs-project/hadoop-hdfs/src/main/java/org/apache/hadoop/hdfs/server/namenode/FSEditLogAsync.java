@@ -31,8 +31,12 @@
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.server.common.HdfsServerConstants;
+import org.apache.hadoop.hdfs.server.namenode.metrics.NameNodeMetrics;
 import org.apache.hadoop.ipc.Server;
 import org.apache.hadoop.util.ExitUtil;
+import org.apache.hadoop.util.Time;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 
@@ -42,21 +46,56 @@ class FSEditLogAsync extends FSEditLog implements Runnable {
   // use separate mutex to avoid possible deadlock when stopping the thread.
   private final Object syncThreadLock = new Object();
   private Thread syncThread;
+  private Thread flushThread;
   private static ThreadLocal<Edit> threadEdit = new ThreadLocal<Edit>();
 
   // requires concurrent access from caller threads and syncing thread.
-  private final BlockingQueue<Edit> editPendingQ =
-      new ArrayBlockingQueue<Edit>(4096);
+  private final BlockingQueue<Edit> editPendingQ;
 
   // only accessed by syncing thread so no synchronization required.
   // queue is unbounded because it's effectively limited by the size
   // of the edit log buffer - ie. a sync will eventually be forced.
   private final Deque<Edit> syncWaitQ = new ArrayDeque<Edit>();
 
+  // when the sync is pipelined, the syncing thread only writes edits to the
+  // log buffer and hands them off to the flushing thread.  the next batch
+  // fills the buffer while the previous one is being flushed to the
+  // journals, so the size of each batch adapts to the journal latency.
+  private final boolean pipelinedSync;
+  private final Object flushLock = new Object();
+  // guarded by flushLock.
+  private Deque<Edit> flushWaitQ = new ArrayDeque<Edit>();
+  // guarded by flushLock.
+  private long flushTxId = HdfsServerConstants.INVALID_TXID;
+  // txid of the last op written to the log buffer.  only accessed by the
+  // syncing thread.
+  private long lastEditTxId = HdfsServerConstants.INVALID_TXID;
+
+  private final NameNodeMetrics metrics;
+
+  // free ops kept per op code, enough to cover the ops in flight for all
+  // but the largest bursts.
+  private static final int OP_POOL_SIZE = 256;
+
   FSEditLogAsync(Configuration conf, NNStorage storage, List<URI> editsDirs) {
     super(conf, storage, editsDirs);
     // op instances cannot be shared due to queuing for background thread.
-    cache.disableCache();
+    // they are pooled instead, and returned to the pool once written.
+    cache.enablePooling(OP_POOL_SIZE);
+    int pendingQueueSize = conf.getInt(
+        DFSConfigKeys.DFS_NAMENODE_EDITS_ASYNC_LOGGING_PENDING_QUEUE_SIZE,
+        DFSConfigKeys.
+            DFS_NAMENODE_EDITS_ASYNC_LOGGING_PENDING_QUEUE_SIZE_DEFAULT);
+    Preconditions.checkArgument(pendingQueueSize > 0,
+        DFSConfigKeys.DFS_NAMENODE_EDITS_ASYNC_LOGGING_PENDING_QUEUE_SIZE
+            + " must be greater than zero");
+    editPendingQ = new ArrayBlockingQueue<Edit>(pendingQueueSize);
+    pipelinedSync = conf.getBoolean(
+        DFSConfigKeys.DFS_NAMENODE_EDITS_ASYNC_LOGGING_PIPELINED_SYNC,
+        DFSConfigKeys.DFS_NAMENODE_EDITS_ASYNC_LOGGING_PIPELINED_SYNC_DEFAULT);
+    LOG.info("Async edit logging pending queue size: " + pendingQueueSize
+        + ", pipelined sync: " + pipelinedSync);
+    metrics = NameNode.getNameNodeMetrics();
   }
 
   private boolean isSyncThreadAlive() {
@@ -70,23 +109,37 @@ private void startSyncThread() {
       if (!isSyncThreadAlive()) {
         syncThread = new Thread(this, this.getClass().getSimpleName());
         syncThread.start();
+        if (pipelinedSync) {
+          flushThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+              flushEdits();
+            }
+          }, this.getClass().getSimpleName() + "Flusher");
+          flushThread.start();
+        }
       }
     }
   }
 
   private void stopSyncThread() {
     synchronized(syncThreadLock) {
-      if (syncThread != null) {
-        try {
-          syncThread.interrupt();
-          syncThread.join();
-        } catch (InterruptedException e) {
-          // we're quitting anyway.
-        } finally {
-          syncThread = null;
-        }
+      // stop the syncing thread first so it cannot hand off more edits.
+      syncThread = stopThread(syncThread);
+      flushThread = stopThread(flushThread);
+    }
+  }
+
+  private static Thread stopThread(Thread thread) {
+    if (thread != null) {
+      try {
+        thread.interrupt();
+        thread.join();
+      } catch (InterruptedException e) {
+        // we're quitting anyway.
       }
     }
+    return null;
   }
 
   @VisibleForTesting
@@ -117,6 +170,7 @@ public void close() {
   void logEdit(final FSEditLogOp op) {
     assert isOpenForWrite();
 
+    invalidateFileStatusCache(op);
     Edit edit = getEditInstance(op);
     threadEdit.set(edit);
     synchronized(this) {
@@ -125,6 +179,16 @@ void logEdit(final FSEditLogOp op) {
     }
   }
 
+  @Override
+  synchronized boolean doEditTransaction(final FSEditLogOp op) {
+    // the transaction id is cleared once the op is written.
+    lastEditTxId = op.getTransactionId();
+    final boolean doSync = super.doEditTransaction(op);
+    // the op was reset after being written, it can be reused.
+    cache.release(op);
+    return doSync;
+  }
+
   @Override
   public void logSync() {
     Edit edit = threadEdit.get();
@@ -186,6 +250,7 @@ private void enqueueEdit(Edit edit) {
     if (LOG.isDebugEnabled()) {
       LOG.debug("logEdit " + edit);
     }
+    edit.enqueueTime = Time.monotonicNowNanos();
     try {
       // not checking for overflow yet to avoid penalizing performance of
       // the common case.  if there is persistent overflow, a mutex will be
@@ -231,28 +296,65 @@ public void run() {
     try {
       while (true) {
         boolean doSync;
+        boolean bufferFull = false;
         Edit edit = dequeueEdit();
         if (edit != null) {
+          if (metrics != null) {
+            metrics.addAsyncEditLogQueueWait(
+                (Time.monotonicNowNanos() - edit.enqueueTime) / 1000);
+          }
           // sync if requested by edit log.
-          doSync = edit.logEdit();
+          doSync = bufferFull = edit.logEdit();
           syncWaitQ.add(edit);
         } else {
           // sync when editq runs dry, but have edits pending a sync.
           doSync = !syncWaitQ.isEmpty();
         }
         if (doSync) {
-          // normally edit log exceptions cause the NN to terminate, but tests
-          // relying on ExitUtil.terminate need to see the exception.
-          RuntimeException syncEx = null;
-          try {
-            logSync(getLastWrittenTxId());
-          } catch (RuntimeException ex) {
-            syncEx = ex;
+          if (pipelinedSync) {
+            handOffEdits(bufferFull);
+          } else {
+            syncEdits(getLastWrittenTxId(), syncWaitQ);
           }
-          while ((edit = syncWaitQ.poll()) != null) {
-            edit.logSyncNotify(syncEx);
+        }
+      }
+    } catch (InterruptedException ie) {
+      LOG.info(Thread.currentThread().getName() + " was interrupted, exiting");
+    } catch (Throwable t) {
+      terminate(t);
+    }
+  }
+
+  // pass the written edits to the flushing thread.  if the log buffer is
+  // full, wait until the flushing thread has picked them up so the unflushed
+  // edits are bounded by the buffers being flushed and filled.
+  private void handOffEdits(boolean bufferFull) throws InterruptedException {
+    synchronized(flushLock) {
+      flushWaitQ.addAll(syncWaitQ);
+      syncWaitQ.clear();
+      flushTxId = lastEditTxId;
+      flushLock.notifyAll();
+      while (bufferFull && !flushWaitQ.isEmpty()) {
+        flushLock.wait();
+      }
+    }
+  }
+
+  private void flushEdits() {
+    try {
+      while (true) {
+        Deque<Edit> batch;
+        long txid;
+        synchronized(flushLock) {
+          while (flushWaitQ.isEmpty()) {
+            flushLock.wait();
           }
+          batch = flushWaitQ;
+          txid = flushTxId;
+          flushWaitQ = new ArrayDeque<Edit>();
+          flushLock.notifyAll();
         }
+        syncEdits(txid, batch);
       }
     } catch (InterruptedException ie) {
       LOG.info(Thread.currentThread().getName() + " was interrupted, exiting");
@@ -261,6 +363,25 @@ public void run() {
     }
   }
 
+  private void syncEdits(long txid, Deque<Edit> edits) {
+    // normally edit log exceptions cause the NN to terminate, but tests
+    // relying on ExitUtil.terminate need to see the exception.
+    RuntimeException syncEx = null;
+    try {
+      logSync(txid);
+    } catch (RuntimeException ex) {
+      syncEx = ex;
+    }
+    if (metrics != null) {
+      metrics.addAsyncEditLogBatch(edits.size());
+      metrics.setAsyncEditLogPendingQueueSize(editPendingQ.size());
+    }
+    Edit edit;
+    while ((edit = edits.poll()) != null) {
+      edit.logSyncNotify(syncEx);
+    }
+  }
+
   private void terminate(Throwable t) {
     String message = "Exception while edit logging: "+t.getMessage();
     LOG.fatal(message, t);
@@ -281,7 +402,10 @@ private Edit getEditInstance(FSEditLogOp op) {
 
   private abstract static class Edit {
     final FSEditLog log;
-    final FSEditLogOp op;
+    // cleared once written since the op is then reused for other edits.
+    FSEditLogOp op;
+    // nanos when the edit was queued for the syncing thread.
+    long enqueueTime;
 
     Edit(FSEditLog log, FSEditLogOp op) {
       this.log = log;
@@ -290,7 +414,11 @@ private abstract static class Edit {
 
     // return whether edit log wants to sync.
     boolean logEdit() {
-      return log.doEditTransaction(op);
+      try {
+        return log.doEditTransaction(op);
+      } finally {
+        op = null;
+      }
     }
 
     // wait for background thread to finish syncing.
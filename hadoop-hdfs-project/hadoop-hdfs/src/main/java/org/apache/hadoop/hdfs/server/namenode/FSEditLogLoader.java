@@ -128,6 +128,8 @@ public class FSEditLogLoader {
   private long lastAppliedTxId;
   /** Total number of end transactions loaded. */
   private int totalEdits = 0;
+  /** Number of ops decoded ahead of replay, 0 to decode them inline. */
+  private int decodeQueueSize = 0;
   
   public FSEditLogLoader(FSNamesystem fsNamesys, long lastAppliedTxId) {
     this(fsNamesys, lastAppliedTxId, new Timer());
@@ -141,6 +143,14 @@ public FSEditLogLoader(FSNamesystem fsNamesys, long lastAppliedTxId) {
     this.timer = timer;
   }
   
+  /**
+   * Decode the ops on a separate thread, up to the given number of ops ahead
+   * of the op being applied.
+   */
+  void setDecodeQueueSize(int decodeQueueSize) {
+    this.decodeQueueSize = decodeQueueSize;
+  }
+
   long loadFSEdits(EditLogInputStream edits, long expectedStartingTxId)
       throws IOException {
     return loadFSEdits(edits, expectedStartingTxId, null, null);
@@ -213,6 +223,9 @@ long loadEditRecords(EditLogInputStream in, boolean closeOnExit,
     Counter counter = prog.getCounter(Phase.LOADING_EDITS, step);
     long lastLogTime = timer.monotonicNow();
     long lastInodeId = fsNamesys.dir.getLastInodeId();
+    if (decodeQueueSize > 0 && recovery == null) {
+      in = new PrefetchingEditLogInputStream(in, decodeQueueSize);
+    }
     
     try {
       while (true) {
@@ -313,6 +326,9 @@ long loadEditRecords(EditLogInputStream in, boolean closeOnExit,
       }
     } finally {
       fsNamesys.dir.resetLastInodeId(lastInodeId);
+      if (in instanceof PrefetchingEditLogInputStream) {
+        ((PrefetchingEditLogInputStream) in).stopDecoding();
+      }
       if(closeOnExit) {
         in.close();
       }
@@ -360,6 +376,10 @@ private long applyEditLogOp(FSEditLogOp op, FSDirectory fsDir,
       LOG.trace("replaying edit log: " + op);
     }
     final boolean toAddRetryCache = fsNamesys.hasRetryCache() && op.hasRpcIds();
+    final FileStatusCache fileStatusCache = fsDir.getFileStatusCache();
+    if (fileStatusCache != null) {
+      fileStatusCache.invalidate(op);
+    }
 
     switch (op.opCode) {
     case OP_ADD: {
@@ -76,6 +76,8 @@
 import java.util.Arrays;
 import java.util.EnumMap;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.zip.CheckedInputStream;
 import java.util.zip.Checksum;
 
@@ -146,6 +148,8 @@ public abstract class FSEditLogOp {
   long txid;
   byte[] rpcClientId;
   int rpcCallId;
+  // the cache which pooled this op, null if it is not pooled.
+  private OpInstanceCache pool;
 
   public static class OpInstanceCache {
     private static ThreadLocal<OpInstanceCacheMap> cache =
@@ -168,18 +172,70 @@ static final class OpInstanceCacheMap extends
     }
 
     private boolean useCache = true;
+    // per op code free lists of ops, shared by all threads, null if the ops
+    // are not pooled.
+    private EnumMap<FSEditLogOpCodes, BlockingQueue<FSEditLogOp>> pools;
 
     void disableCache() {
       useCache = false;
     }
 
+    /**
+     * Instead of a per thread instance, hand out a distinct instance from a
+     * shared pool for each call to {@link #get(FSEditLogOpCodes)}.  The ops
+     * may then be passed to another thread, which returns them to the pool
+     * with {@link #release(FSEditLogOp)} once they are written.
+     * @param poolSize the maximum number of free ops kept per op code.
+     */
+    void enablePooling(int poolSize) {
+      Preconditions.checkArgument(poolSize > 0,
+          "The op pool size should be > 0: %s", poolSize);
+      pools = new EnumMap<FSEditLogOpCodes, BlockingQueue<FSEditLogOp>>(
+          FSEditLogOpCodes.class);
+      for (FSEditLogOpCodes opCode : FSEditLogOpCodes.values()) {
+        pools.put(opCode, new ArrayBlockingQueue<FSEditLogOp>(poolSize));
+      }
+      useCache = false;
+    }
+
+    /**
+     * Return an op obtained from this cache to its pool.  The op must have
+     * been reset and must not be used by the caller afterwards.  Ops which
+     * were not pooled by this cache are ignored.
+     */
+    void release(FSEditLogOp op) {
+      if (pools != null && op.pool == this) {
+        pools.get(op.opCode).offer(op);
+      }
+    }
+
+    /**
+     * Disable the reuse of op instances by all the caches used by the calling
+     * thread, e.g. by a thread handing the ops it decodes to another thread.
+     */
+    static void disableCacheForCurrentThread() {
+      cache.set(null);
+    }
+
     public OpInstanceCache get() {
       return this;
     }
 
     @SuppressWarnings("unchecked")
     public <T extends FSEditLogOp> T get(FSEditLogOpCodes opCode) {
-      return useCache ? (T)cache.get().get(opCode) : (T)newInstance(opCode);
+      if (pools != null) {
+        FSEditLogOp op = pools.get(opCode).poll();
+        if (op == null) {
+          op = newInstance(opCode);
+          if (op != null) {
+            op.pool = this;
+          }
+        }
+        return (T)op;
+      }
+      final OpInstanceCacheMap instances = useCache ? cache.get() : null;
+      return instances != null
+          ? (T)instances.get(opCode) : (T)newInstance(opCode);
     }
 
     private static FSEditLogOp newInstance(FSEditLogOpCodes opCode) {
@@ -536,7 +592,7 @@ public void writeFields(DataOutputStream out) throws IOException {
       FSImageSerialization.writeLong(atime, out);
       FSImageSerialization.writeLong(blockSize, out);
       new ArrayWritable(Block.class, blocks).write(out);
-      permissions.write(out);
+      FSImageSerialization.writePermissionStatus(permissions, out);
 
       if (this.opCode == OP_ADD) {
         AclEditLogUtil.write(aclEntries, out);
@@ -1617,7 +1673,7 @@ void writeFields(DataOutputStream out) throws IOException {
       FSImageSerialization.writeString(path, out);
       FSImageSerialization.writeLong(timestamp, out); // mtime
       FSImageSerialization.writeLong(timestamp, out); // atime, unused at this
-      permissions.write(out);
+      FSImageSerialization.writePermissionStatus(permissions, out);
       AclEditLogUtil.write(aclEntries, out);
       XAttrEditLogProto.Builder b = XAttrEditLogProto.newBuilder();
       b.addAllXAttrs(PBHelperClient.convertXAttrProto(xAttrs));
@@ -2522,7 +2578,7 @@ public void writeFields(DataOutputStream out) throws IOException {
       FSImageSerialization.writeString(value, out);
       FSImageSerialization.writeLong(mtime, out);
       FSImageSerialization.writeLong(atime, out);
-      permissionStatus.write(out);
+      FSImageSerialization.writePermissionStatus(permissionStatus, out);
       writeRpcIds(rpcClientId, rpcCallId, out);
     }
 
@@ -895,6 +895,9 @@ private long loadEdits(Iterable<EditLogInputStream> editStreams,
     long prevLastAppliedTxId = lastAppliedTxId;  
     try {    
       FSEditLogLoader loader = new FSEditLogLoader(target, lastAppliedTxId);
+      loader.setDecodeQueueSize(conf.getInt(
+          DFSConfigKeys.DFS_NAMENODE_EDITS_REPLAY_DECODE_QUEUE_SIZE,
+          DFSConfigKeys.DFS_NAMENODE_EDITS_REPLAY_DECODE_QUEUE_SIZE_DEFAULT));
       
       // Load latest edits
       for (EditLogInputStream editIn : editStreams) {
@@ -447,7 +447,14 @@ public int compare(FileSummary.Section s1, FileSummary.Section s2) {
           snapshotLoader.loadSnapshotSection(in);
           break;
         case SNAPSHOT_DIFF:
-          snapshotLoader.loadSnapshotDiffSection(in);
+          stageSubSections = getSubSectionsOfName(
+              subSections, SectionName.SNAPSHOT_DIFF_SUB);
+          if (loadInParallel && stageSubSections.size() > 0) {
+            snapshotLoader.loadSnapshotDiffSectionInParallel(executorService,
+                stageSubSections, summary.getCodec());
+          } else {
+            snapshotLoader.loadSnapshotDiffSection(in);
+          }
           break;
         case SECRET_MANAGER: {
           prog.endStep(Phase.LOADING_FSIMAGE, currentStep);
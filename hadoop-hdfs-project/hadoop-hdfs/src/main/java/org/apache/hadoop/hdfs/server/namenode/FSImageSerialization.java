@@ -96,7 +96,45 @@ private static void writePermissionStatus(INodeAttributes inode,
       DataOutput out) throws IOException {
     final FsPermission p = TL_DATA.get().FILE_PERM;
     p.fromShort(inode.getFsPermissionShort());
-    PermissionStatus.write(out, inode.getUserName(), inode.getGroupName(), p);
+    writePermissionStatus(inode.getUserName(), inode.getGroupName(), p, out);
+  }
+
+  /**
+   * Serialize a {@link PermissionStatus} in the format of
+   * {@link PermissionStatus#write(DataOutput)}.
+   */
+  static void writePermissionStatus(PermissionStatus permissions,
+      DataOutput out) throws IOException {
+    writePermissionStatus(permissions.getUserName(),
+        permissions.getGroupName(), permissions.getPermission(), out);
+  }
+
+  private static void writePermissionStatus(String user, String group,
+      FsPermission permission, DataOutput out) throws IOException {
+    writeText(user, out);
+    writeText(group, out);
+    permission.write(out);
+  }
+
+  /**
+   * Same as {@link Text#writeString(DataOutput, String, int)}, but ASCII
+   * strings, i.e. nearly all user and group names, are written as is instead
+   * of being encoded into a new buffer first.
+   */
+  private static void writeText(String s, DataOutput out) throws IOException {
+    final int length = s.length();
+    if (length <= Text.DEFAULT_MAX_LEN) {
+      int i = 0;
+      while (i < length && s.charAt(i) < 0x80) {
+        i++;
+      }
+      if (i == length) {
+        WritableUtils.writeVInt(out, length);
+        out.writeBytes(s);
+        return;
+      }
+    }
+    Text.writeString(out, s, Text.DEFAULT_MAX_LEN);
   }
 
   private static void writeBlocks(final Block[] blocks,
@@ -4590,6 +4590,19 @@ public long getScheduledReplicationBlocks() {
     return blockManager.getScheduledReplicationBlocksCount();
   }
 
+  @Metric({"ReplicationRecoveryMBPerSec",
+      "Average rate of the completed replication transfers in MB/s"})
+  public float getReplicationRecoveryMBPerSec() {
+    return (float) (blockManager.getReplicationRecoveryBytesPerSec()
+        / (1024 * 1024));
+  }
+
+  @Metric({"ReplicationQueueEtaSeconds",
+      "Estimated seconds to replicate the under replicated blocks"})
+  public long getReplicationQueueEtaSeconds() {
+    return blockManager.getReplicationQueueEtaSeconds();
+  }
+
   @Override
   @Metric
   public long getPendingDeletionBlocks() {
@@ -4644,6 +4657,11 @@ public int getBlockCapacity() {
     return blockManager.getCapacity();
   }
 
+  @Metric({"INodeMapCapacity", "Number of hash buckets of the inode map"})
+  public int getINodeMapCapacity() {
+    return dir.getInodeMapCapacity();
+  }
+
   public HAServiceState getState() {
     return haContext == null ? null : haContext.getState().getServiceState();
   }
@@ -55,10 +55,13 @@
  * FSN(Read|Write)LockNanosOperationName, where OperationName denotes the name
  * of the operation that initiated the lock hold (this will be OTHER for certain
  * uncategorized operations) and they export the hold time values in
- * nanoseconds. Note that if a thread dies, metrics produced after the
- * most recent snapshot will be lost due to the use of
- * {@link MutableRatesWithAggregation}. However since threads are re-used
- * between operations this should not generally be an issue.
+ * nanoseconds. The time spent waiting to acquire the lock is exported as
+ * FSN(Read|Write)LockOverallWaitNanos, so that the share of operation latency
+ * caused by contention can be told apart from the hold times. Note that if
+ * a thread dies, metrics produced after the most recent snapshot will be lost
+ * due to the use of {@link MutableRatesWithAggregation}. However since
+ * threads are re-used between operations this should not generally be an
+ * issue.
  */
 class FSNamesystemLock {
   @VisibleForTesting
@@ -119,6 +122,7 @@ public Long initialValue() {
   private static final String LOCK_METRIC_SUFFIX = "Nanos";
 
   private static final String OVERALL_METRIC_NAME = "Overall";
+  private static final String OVERALL_WAIT_METRIC_NAME = "OverallWait";
 
   FSNamesystemLock(Configuration conf,
       MutableRatesWithAggregation detailedHoldTimeMetrics) {
@@ -352,14 +356,28 @@ private void updateLockWait(long startNanos, boolean isWrite) {
     if (isWrite) {
       if (coarseLock.getWriteHoldCount() == 1) {
         writeLockHeldTimeStampNanos = now;
+        addWaitMetric(now - startNanos, true);
       }
     } else {
       if (coarseLock.getReadHoldCount() == 1) {
         readLockHeldTimeStampNanos.set(now);
+        addWaitMetric(now - startNanos, false);
       }
     }
   }
 
+  /**
+   * Add the time spent waiting for an outermost lock acquisition to the
+   * metrics.
+   * @param value Length of time spent waiting for the lock (nanoseconds)
+   */
+  private void addWaitMetric(long value, boolean isWrite) {
+    if (metricsEnabled) {
+      detailedHoldTimeMetrics.add(
+          getMetricName(OVERALL_WAIT_METRIC_NAME, isWrite), value);
+    }
+  }
+
   private static void updateProcessingDetails(Timing type, long deltaNanos) {
     Server.Call call = Server.getCurCall().get();
     if (call != null) {
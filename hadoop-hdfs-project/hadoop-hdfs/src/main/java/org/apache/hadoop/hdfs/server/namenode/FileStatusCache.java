@@ -0,0 +1,397 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSUtil;
+import org.apache.hadoop.hdfs.protocol.DirectoryListing;
+import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.AddBlockOp;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.AddCloseOp;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.AllowSnapshotOp;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.AppendOp;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.ClearNSQuotaOp;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.ConcatDeleteOp;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.CreateSnapshotOp;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.DeleteOp;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.DeleteSnapshotOp;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.DisallowSnapshotOp;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.MkdirOp;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.ReassignLeaseOp;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.RemoveXAttrOp;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.RenameOldOp;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.RenameOp;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.RenameSnapshotOp;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.SetAclOp;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.SetNSQuotaOp;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.SetOwnerOp;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.SetPermissionsOp;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.SetQuotaByStorageTypeOp;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.SetQuotaOp;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.SetReplicationOp;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.SetStoragePolicyOp;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.SetXAttrOp;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.SymlinkOp;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.TimesOp;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.TruncateOp;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.UpdateBlocksOp;
+import org.apache.hadoop.hdfs.server.namenode.metrics.NameNodeMetrics;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * Cache of the {@link HdfsFileStatus} and {@link DirectoryListing} responses
+ * built for getFileInfo and getListing calls, keyed by path.
+ * <p>
+ * The cache is kept consistent with the namespace through the edit stream:
+ * each op logged by the active NameNode, or applied by a standby, drops the
+ * entries of the paths it touches, of everything below them, and of their
+ * parent and grandparent, whose status and listing embed the modification
+ * time and children count of the changed directory. Only responses which
+ * cannot change without an edit are cached, i.e. no block locations and no
+ * files under construction. Permission checks are done by the callers before
+ * the cache is consulted.
+ * <p>
+ * Entries are put by readers holding the namesystem read lock and
+ * invalidated by writers holding the write lock. The size is bounded by the
+ * number of cached file statuses and entries are evicted in CLOCK order.
+ */
+@InterfaceAudience.Private
+class FileStatusCache {
+  /** Separates the path from the variant part of a key. */
+  private static final char KEY_SEPARATOR = '\0';
+  private static final String FILE_INFO = KEY_SEPARATOR + "F";
+  private static final String LISTING = KEY_SEPARATOR + "L";
+
+  private static class Entry {
+    private final Object value;
+    private final int weight;
+    private volatile boolean referenced;
+
+    Entry(Object value, int weight) {
+      this.value = value;
+      this.weight = weight;
+    }
+  }
+
+  private final ConcurrentSkipListMap<String, Entry> entries =
+      new ConcurrentSkipListMap<String, Entry>();
+  /** Number of file statuses currently cached. */
+  private final AtomicLong size = new AtomicLong();
+  private final long maxSize;
+  private final ReentrantLock evictionLock = new ReentrantLock();
+  /** Key of the last entry visited by eviction, guarded by evictionLock. */
+  private String clockHand;
+
+  FileStatusCache(long maxSize) {
+    this.maxSize = maxSize;
+  }
+
+  HdfsFileStatus getFileInfo(String path, boolean resolveLink) {
+    return (HdfsFileStatus) get(fileInfoKey(path, resolveLink));
+  }
+
+  void putFileInfo(String path, boolean resolveLink, HdfsFileStatus status) {
+    put(fileInfoKey(path, resolveLink), status, 1);
+  }
+
+  DirectoryListing getListing(String path, byte[] startAfter,
+      boolean includeStoragePolicy) {
+    return (DirectoryListing) get(
+        listingKey(path, startAfter, includeStoragePolicy));
+  }
+
+  void putListing(String path, byte[] startAfter,
+      boolean includeStoragePolicy, DirectoryListing listing) {
+    put(listingKey(path, startAfter, includeStoragePolicy), listing,
+        Math.max(1, listing.getPartialListing().length));
+  }
+
+  private static String fileInfoKey(String path, boolean resolveLink) {
+    return path + FILE_INFO + (resolveLink ? '1' : '0');
+  }
+
+  private static String listingKey(String path, byte[] startAfter,
+      boolean includeStoragePolicy) {
+    return path + LISTING + (includeStoragePolicy ? '1' : '0')
+        + DFSUtil.bytes2String(startAfter);
+  }
+
+  private Object get(String key) {
+    final Entry e = entries.get(key);
+    final NameNodeMetrics metrics = NameNode.getNameNodeMetrics();
+    if (e == null) {
+      if (metrics != null) {
+        metrics.incrFileStatusCacheMisses();
+      }
+      return null;
+    }
+    e.referenced = true;
+    if (metrics != null) {
+      metrics.incrFileStatusCacheHits();
+    }
+    return e.value;
+  }
+
+  private void put(String key, Object value, int weight) {
+    if (weight > maxSize) {
+      return;
+    }
+    if (entries.putIfAbsent(key, new Entry(value, weight)) == null
+        && size.addAndGet(weight) > maxSize) {
+      evict();
+    }
+  }
+
+  /**
+   * Evict entries until the cache is within its size. An entry referenced
+   * since the clock hand last passed it gets a second chance.
+   */
+  private void evict() {
+    // a single reader evicting is enough, the others need not wait for it
+    if (!evictionLock.tryLock()) {
+      return;
+    }
+    try {
+      final NameNodeMetrics metrics = NameNode.getNameNodeMetrics();
+      while (size.get() > maxSize) {
+        Map.Entry<String, Entry> next =
+            clockHand == null ? null : entries.higherEntry(clockHand);
+        if (next == null) {
+          next = entries.firstEntry();
+          if (next == null) {
+            break;
+          }
+        }
+        clockHand = next.getKey();
+        final Entry e = next.getValue();
+        if (e.referenced) {
+          e.referenced = false;
+        } else if (entries.remove(next.getKey(), e)) {
+          size.addAndGet(-e.weight);
+          if (metrics != null) {
+            metrics.incrFileStatusCacheEvictions();
+          }
+        }
+      }
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  /**
+   * Invalidate the entries affected by the given edit log op. Ops not known
+   * to leave the namespace untouched clear the whole cache.
+   */
+  void invalidate(FSEditLogOp op) {
+    if (entries.isEmpty()) {
+      return;
+    }
+    switch (op.opCode) {
+    case OP_ADD:
+    case OP_CLOSE:
+      invalidate(((AddCloseOp) op).path);
+      break;
+    case OP_APPEND:
+      invalidate(((AppendOp) op).path);
+      break;
+    case OP_ADD_BLOCK:
+      invalidate(((AddBlockOp) op).getPath());
+      break;
+    case OP_UPDATE_BLOCKS:
+      invalidate(((UpdateBlocksOp) op).getPath());
+      break;
+    case OP_SET_REPLICATION:
+      invalidate(((SetReplicationOp) op).path);
+      break;
+    case OP_CONCAT_DELETE:
+      final ConcatDeleteOp concatOp = (ConcatDeleteOp) op;
+      invalidate(concatOp.trg);
+      for (String src : concatOp.srcs) {
+        invalidate(src);
+      }
+      break;
+    case OP_RENAME_OLD:
+      invalidate(((RenameOldOp) op).src);
+      invalidate(((RenameOldOp) op).dst);
+      break;
+    case OP_RENAME:
+      invalidate(((RenameOp) op).src);
+      invalidate(((RenameOp) op).dst);
+      break;
+    case OP_DELETE:
+      invalidate(((DeleteOp) op).path);
+      break;
+    case OP_MKDIR:
+      invalidate(((MkdirOp) op).path);
+      break;
+    case OP_SET_PERMISSIONS:
+      invalidate(((SetPermissionsOp) op).src);
+      break;
+    case OP_SET_OWNER:
+      invalidate(((SetOwnerOp) op).src);
+      break;
+    case OP_SET_NS_QUOTA:
+      invalidate(((SetNSQuotaOp) op).src);
+      break;
+    case OP_CLEAR_NS_QUOTA:
+      invalidate(((ClearNSQuotaOp) op).src);
+      break;
+    case OP_SET_QUOTA:
+      invalidate(((SetQuotaOp) op).src);
+      break;
+    case OP_SET_QUOTA_BY_STORAGETYPE:
+      invalidate(((SetQuotaByStorageTypeOp) op).src);
+      break;
+    case OP_TIMES:
+      invalidate(((TimesOp) op).path);
+      break;
+    case OP_SYMLINK:
+      invalidate(((SymlinkOp) op).path);
+      break;
+    case OP_TRUNCATE:
+      invalidate(((TruncateOp) op).src);
+      break;
+    case OP_REASSIGN_LEASE:
+      invalidate(((ReassignLeaseOp) op).path);
+      break;
+    case OP_CREATE_SNAPSHOT:
+      invalidate(((CreateSnapshotOp) op).snapshotRoot);
+      break;
+    case OP_DELETE_SNAPSHOT:
+      invalidate(((DeleteSnapshotOp) op).snapshotRoot);
+      break;
+    case OP_RENAME_SNAPSHOT:
+      invalidate(((RenameSnapshotOp) op).snapshotRoot);
+      break;
+    case OP_ALLOW_SNAPSHOT:
+      invalidate(((AllowSnapshotOp) op).snapshotRoot);
+      break;
+    case OP_DISALLOW_SNAPSHOT:
+      invalidate(((DisallowSnapshotOp) op).snapshotRoot);
+      break;
+    case OP_SET_ACL:
+      invalidate(((SetAclOp) op).src);
+      break;
+    case OP_SET_XATTR:
+      invalidate(((SetXAttrOp) op).src);
+      break;
+    case OP_REMOVE_XATTR:
+      invalidate(((RemoveXAttrOp) op).src);
+      break;
+    case OP_SET_STORAGE_POLICY:
+      invalidate(((SetStoragePolicyOp) op).path);
+      break;
+    case OP_SET_GENSTAMP_V1:
+    case OP_SET_GENSTAMP_V2:
+    case OP_ALLOCATE_BLOCK_ID:
+    case OP_GET_DELEGATION_TOKEN:
+    case OP_RENEW_DELEGATION_TOKEN:
+    case OP_CANCEL_DELEGATION_TOKEN:
+    case OP_UPDATE_MASTER_KEY:
+    case OP_START_LOG_SEGMENT:
+    case OP_END_LOG_SEGMENT:
+    case OP_ADD_CACHE_DIRECTIVE:
+    case OP_MODIFY_CACHE_DIRECTIVE:
+    case OP_REMOVE_CACHE_DIRECTIVE:
+    case OP_ADD_CACHE_POOL:
+    case OP_MODIFY_CACHE_POOL:
+    case OP_REMOVE_CACHE_POOL:
+    case OP_ROLLING_UPGRADE_START:
+    case OP_ROLLING_UPGRADE_FINALIZE:
+      break;
+    default:
+      clear();
+    }
+  }
+
+  /**
+   * Invalidate the entries of a path, of its subtree, and of its parent and
+   * grandparent.
+   */
+  void invalidate(String path) {
+    if (path == null || path.isEmpty()) {
+      return;
+    }
+    long removed;
+    if (path.equals(Path.SEPARATOR)) {
+      removed = remove(entries);
+    } else {
+      removed = removePath(path)
+          + remove(entries.subMap(path + Path.SEPARATOR_CHAR,
+              path + (char) (Path.SEPARATOR_CHAR + 1)));
+      final String parent = getParent(path);
+      if (parent != null) {
+        removed += removePath(parent);
+        final String grandparent = getParent(parent);
+        if (grandparent != null) {
+          removed += removePath(grandparent);
+        }
+      }
+    }
+    final NameNodeMetrics metrics = NameNode.getNameNodeMetrics();
+    if (removed > 0 && metrics != null) {
+      metrics.incrFileStatusCacheInvalidations(removed);
+    }
+  }
+
+  private static String getParent(String path) {
+    final int i = path.lastIndexOf(Path.SEPARATOR_CHAR);
+    if (i < 0 || path.length() == 1) {
+      return null;
+    }
+    return i == 0 ? Path.SEPARATOR : path.substring(0, i);
+  }
+
+  /** Remove the entries of the given path only. */
+  private long removePath(String path) {
+    return remove(entries.subMap(path + KEY_SEPARATOR,
+        path + (char) (KEY_SEPARATOR + 1)));
+  }
+
+  private long remove(ConcurrentNavigableMap<String, Entry> range) {
+    long removed = 0;
+    for (Map.Entry<String, Entry> e; (e = range.pollFirstEntry()) != null;) {
+      size.addAndGet(-e.getValue().weight);
+      removed++;
+    }
+    return removed;
+  }
+
+  /** Remove all the entries. */
+  void clear() {
+    final long removed = remove(entries);
+    final NameNodeMetrics metrics = NameNode.getNameNodeMetrics();
+    if (removed > 0 && metrics != null) {
+      metrics.incrFileStatusCacheInvalidations(removed);
+    }
+  }
+
+  /** @return the number of file statuses currently cached. */
+  @VisibleForTesting
+  long size() {
+    return size.get();
+  }
+}
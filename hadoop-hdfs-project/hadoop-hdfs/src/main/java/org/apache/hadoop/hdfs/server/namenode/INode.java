@@ -522,9 +522,15 @@ public QuotaCounts getQuotaCounts() {
         build();
   }
 
+  /**
+   * @return true if a quota is set on this inode or its usage is tracked
+   *         like a directory with quota.  In both cases the usage of the
+   *         subtree is maintained incrementally.
+   */
   public final boolean isQuotaSet() {
     final QuotaCounts qc = getQuotaCounts();
-    return qc.anyNsSsCountGreaterOrEqual(0) || qc.anyTypeSpaceCountGreaterOrEqual(0);
+    return qc.anyNsSsCountGreaterOrEqual(0) || qc.anyTypeSpaceCountGreaterOrEqual(0)
+        || (isDirectory() && asDirectory().isUsageTracked());
   }
 
   /**
@@ -41,12 +41,14 @@
 import org.apache.hadoop.hdfs.server.namenode.snapshot.Snapshot;
 import org.apache.hadoop.hdfs.util.Diff.ListType;
 import org.apache.hadoop.hdfs.util.ReadOnlyList;
+import org.apache.hadoop.hdfs.util.SegmentedArrayList;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import org.apache.hadoop.security.AccessControlException;
 
 import static org.apache.hadoop.hdfs.protocol.HdfsConstants.BLOCK_STORAGE_POLICY_ID_UNSPECIFIED;
+import static org.apache.hadoop.hdfs.protocol.HdfsConstants.QUOTA_RESET;
 
 /**
  * Directory INode class.
@@ -71,6 +73,16 @@ public static INodeDirectory valueOf(INode inode, Object path
   // Thus allocate the corresponding ArrayLists with a small initial capacity.
   public static final int DEFAULT_FILES_PER_DIRECTORY = 2;
 
+  /**
+   * Children lists growing beyond this size are converted to a
+   * {@link SegmentedArrayList}, so adding or removing a child in a huge
+   * directory does not shift the whole list under the write lock.
+   */
+  static final int DEFAULT_SEGMENTED_CHILDREN_THRESHOLD = 8192;
+  static final int CHILDREN_SEGMENT_SIZE = 4096;
+  private static int segmentedChildrenThreshold =
+      DEFAULT_SEGMENTED_CHILDREN_THRESHOLD;
+
   static final byte[] ROOT_NAME = DFSUtil.string2Bytes("");
 
   private List<INode> children = null;
@@ -195,6 +207,28 @@ final boolean isWithQuota() {
     return getDirectoryWithQuotaFeature() != null;
   }
 
+  /** Is the usage of this directory maintained without a quota? */
+  final boolean isUsageTracked() {
+    final DirectoryWithQuotaFeature q = getDirectoryWithQuotaFeature();
+    return q != null && q.isUsageTracked();
+  }
+
+  /**
+   * Maintain the usage of this directory like a directory with quota, so it
+   * can be read without computing it from the subtree.  Resetting the quota
+   * keeps the usage tracked.  If the directory has no quota feature yet, the
+   * new feature starts with the usage of an empty directory, so the caller
+   * must initialize the usage unless the directory is empty.
+   */
+  void trackUsage() {
+    DirectoryWithQuotaFeature q = getDirectoryWithQuotaFeature();
+    if (q == null) {
+      q = addDirectoryWithQuotaFeature(new DirectoryWithQuotaFeature.Builder()
+          .nameSpaceQuota(QUOTA_RESET).build());
+    }
+    q.setUsageTracked(true);
+  }
+
   DirectoryWithQuotaFeature addDirectoryWithQuotaFeature(
       DirectoryWithQuotaFeature q) {
     Preconditions.checkState(!isWithQuota(), "Directory is already with quota");
@@ -563,6 +597,9 @@ public boolean addChild(INode node) {
   private void addChild(final INode node, final int insertionPoint) {
     if (children == null) {
       children = new ArrayList<>(DEFAULT_FILES_PER_DIRECTORY);
+    } else if (children.size() >= segmentedChildrenThreshold
+        && !(children instanceof SegmentedArrayList)) {
+      children = new SegmentedArrayList<>(CHILDREN_SEGMENT_SIZE, children);
     }
     node.setParent(this);
     children.add(-insertionPoint - 1, node);
@@ -755,6 +792,11 @@ public void undoRename4DstParent(final BlockStoragePolicySuite bsps,
     }
   }
 
+  @VisibleForTesting
+  static void setSegmentedChildrenThreshold(int threshold) {
+    segmentedChildrenThreshold = threshold;
+  }
+
   /** Set the children list to null. */
   public void clearChildren() {
     this.children = null;
@@ -21,6 +21,7 @@
 
 import org.apache.hadoop.fs.permission.FsPermission;
 import org.apache.hadoop.fs.permission.PermissionStatus;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.protocol.HdfsConstants;
 import org.apache.hadoop.hdfs.server.blockmanagement.BlockStoragePolicySuite;
 import org.apache.hadoop.util.GSet;
@@ -35,24 +36,34 @@
 public class INodeMap {
   
   static INodeMap newInstance(INodeDirectory rootDir) {
-    // Compute the map capacity by allocating 1% of total memory
-    int capacity = LightWeightGSet.computeCapacity(1, "INodeMap");
+    return newInstance(rootDir,
+        DFSConfigKeys.DFS_NAMENODE_INODE_MAP_ALLOCATION_PERCENT_DEFAULT);
+  }
+
+  static INodeMap newInstance(INodeDirectory rootDir, float percent) {
+    // Compute the map capacity by allocating the given percentage of total
+    // memory
+    int capacity = LightWeightGSet.computeCapacity(percent, "INodeMap");
     GSet<INode, INodeWithAdditionalFields> map =
         new LightWeightGSet<>(capacity);
     map.put(rootDir);
-    return new INodeMap(map);
+    return new INodeMap(map, capacity);
   }
 
   /** Synchronized by external lock. */
   private final GSet<INode, INodeWithAdditionalFields> map;
+  /** The number of hash buckets of the map. */
+  private final int capacity;
   
   public Iterator<INodeWithAdditionalFields> getMapIterator() {
     return map.iterator();
   }
 
-  private INodeMap(GSet<INode, INodeWithAdditionalFields> map) {
+  private INodeMap(GSet<INode, INodeWithAdditionalFields> map,
+      int capacity) {
     Preconditions.checkArgument(map != null);
     this.map = map;
+    this.capacity = capacity;
   }
   
   /**
@@ -80,6 +91,13 @@ public final void remove(INode inode) {
   public int size() {
     return map.size();
   }
+
+  /**
+   * @return The number of hash buckets of the map.
+   */
+  public int getCapacity() {
+    return capacity;
+  }
   
   /**
    * Get the {@link INode} with the given id from the map.
@@ -1514,7 +1514,7 @@ public DatanodeCommand blockReport(final DatanodeRegistration nodeReg,
           // call of this loop is the final updated value for noStaleStorage.
           //
           final int index = r;
-          noStaleStorages = bm.runBlockOp(new Callable<Boolean>() {
+          noStaleStorages = bm.runBlockReportOp(new Callable<Boolean>() {
             @Override
             public Boolean call() throws IOException {
               return bm.processReport(nodeReg, reports[index].getStorage(),
@@ -1559,7 +1559,8 @@ public DatanodeCommand cacheReport(DatanodeRegistration nodeReg,
 
   @Override // DatanodeProtocol
   public void blockReceivedAndDeleted(final DatanodeRegistration nodeReg,
-      String poolId, StorageReceivedDeletedBlocks[] receivedAndDeletedBlocks)
+      String poolId,
+      final StorageReceivedDeletedBlocks[] receivedAndDeletedBlocks)
           throws IOException {
     checkNNStartup();
     verifyRequest(nodeReg);
@@ -1569,11 +1570,13 @@ public void blockReceivedAndDeleted(final DatanodeRegistration nodeReg,
           +"from "+nodeReg+" "+receivedAndDeletedBlocks.length
           +" blocks.");
     }
+    // The storages of the report are queued as one operation, which is
+    // batched with the other queued reports under one hold of the lock.
     final BlockManager bm = namesystem.getBlockManager();
-    for (final StorageReceivedDeletedBlocks r : receivedAndDeletedBlocks) {
-      bm.enqueueBlockOp(new Runnable() {
-        @Override
-        public void run() {
+    bm.enqueueBlockOp(new Runnable() {
+      @Override
+      public void run() {
+        for (StorageReceivedDeletedBlocks r : receivedAndDeletedBlocks) {
           try {
             namesystem.processIncrementalBlockReport(nodeReg, r);
           } catch (Exception ex) {
@@ -1584,8 +1587,8 @@ public void run() {
                     + "failed from " + nodeReg + ": " + ex.getMessage());
           }
         }
-      });
-    }
+      }
+    });
   }
   
   @Override // DatanodeProtocol
@@ -0,0 +1,220 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.OpInstanceCache;
+import org.apache.hadoop.util.Daemon;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * An {@link EditLogInputStream} which reads and decodes the ops of another
+ * stream on a separate thread, ahead of the thread replaying them. Replaying
+ * an edit log is then bounded by the slower of decoding and applying the
+ * ops instead of their sum, while the ops are still applied one at a time
+ * in transaction order.
+ * <p>
+ * Once the first op has been read, the wrapped stream must only be accessed
+ * through this stream until {@link #stopDecoding()} or {@link #close()} is
+ * called. Decoding errors are rethrown by {@link #readOp()} in place of the
+ * op which failed to decode. Not suitable for recovery mode, which needs to
+ * resync the wrapped stream.
+ */
+@InterfaceAudience.Private
+class PrefetchingEditLogInputStream extends EditLogInputStream {
+  /** Queued after the last op of the wrapped stream. */
+  private static final Object END_OF_STREAM = new Object();
+
+  /** An op with the state of the wrapped stream right after decoding it. */
+  private static final class DecodedOp {
+    private final FSEditLogOp op;
+    private final int version;
+    private final long position;
+
+    DecodedOp(FSEditLogOp op, int version, long position) {
+      this.op = op;
+      this.version = version;
+      this.position = position;
+    }
+  }
+
+  private final EditLogInputStream in;
+  /** Holds {@link DecodedOp}s, then a Throwable or {@link #END_OF_STREAM}. */
+  private final BlockingQueue<Object> decoded;
+  private Daemon decoder;
+  private volatile boolean stopped = false;
+  /** The last op returned by {@link #nextOp()}. */
+  private DecodedOp current;
+  private boolean done = false;
+
+  PrefetchingEditLogInputStream(EditLogInputStream in, int queueSize) {
+    Preconditions.checkArgument(queueSize > 0,
+        "The decode queue size should be > 0: %s", queueSize);
+    this.in = in;
+    this.decoded = new ArrayBlockingQueue<Object>(queueSize);
+  }
+
+  private void decode() {
+    // the ops are handed to another thread, they must not be reused.
+    OpInstanceCache.disableCacheForCurrentThread();
+    Object next;
+    do {
+      try {
+        final FSEditLogOp op = in.readOp();
+        next = op == null ? END_OF_STREAM
+            : new DecodedOp(op, in.getVersion(true), in.getPosition());
+      } catch (Throwable t) {
+        next = t;
+      }
+      // stopped is set before the interrupt, which a read may have consumed.
+      if (stopped) {
+        return;
+      }
+      try {
+        decoded.put(next);
+      } catch (InterruptedException e) {
+        return;
+      }
+    } while (next instanceof DecodedOp);
+  }
+
+  @Override
+  protected FSEditLogOp nextOp() throws IOException {
+    if (done) {
+      return null;
+    }
+    if (decoder == null) {
+      decoder = new Daemon(new Runnable() {
+        @Override
+        public void run() {
+          decode();
+        }
+      });
+      decoder.setName("Edit log decoder for " + in.getName());
+      decoder.start();
+    }
+
+    final Object next;
+    try {
+      next = decoded.take();
+    } catch (InterruptedException e) {
+      throw new InterruptedIOException(
+          "Interrupted while waiting for an op from " + in.getName());
+    }
+    if (next instanceof DecodedOp) {
+      current = (DecodedOp) next;
+      return current.op;
+    }
+    done = true;
+    if (next == END_OF_STREAM) {
+      return null;
+    } else if (next instanceof IOException) {
+      throw (IOException) next;
+    } else if (next instanceof RuntimeException) {
+      throw (RuntimeException) next;
+    } else if (next instanceof Error) {
+      throw (Error) next;
+    }
+    throw new IOException((Throwable) next);
+  }
+
+  /**
+   * Stop the decoding thread and wait for it to exit. The wrapped stream
+   * can be accessed again afterwards, unless the calling thread was
+   * interrupted while waiting.
+   */
+  void stopDecoding() {
+    stopped = true;
+    if (decoder == null) {
+      return;
+    }
+    decoder.interrupt();
+    try {
+      decoder.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      decoded.clear();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      stopDecoding();
+    } finally {
+      in.close();
+    }
+  }
+
+  @Override
+  public String getName() {
+    return in.getName();
+  }
+
+  @Override
+  public long getFirstTxId() {
+    return in.getFirstTxId();
+  }
+
+  @Override
+  public long getLastTxId() {
+    return in.getLastTxId();
+  }
+
+  @Override
+  public int getVersion(boolean verifyVersion) throws IOException {
+    return current != null ? current.version : in.getVersion(verifyVersion);
+  }
+
+  @Override
+  public long getPosition() {
+    return current != null ? current.position : in.getPosition();
+  }
+
+  @Override
+  public long length() throws IOException {
+    return in.length();
+  }
+
+  @Override
+  public boolean isInProgress() {
+    return in.isInProgress();
+  }
+
+  @Override
+  public void setMaxOpSize(int maxOpSize) {
+    in.setMaxOpSize(maxOpSize);
+  }
+
+  @Override
+  public boolean isLocalLog() {
+    return in.isLocalLog();
+  }
+
+  @Override
+  public String toString() {
+    return in.toString();
+  }
+}
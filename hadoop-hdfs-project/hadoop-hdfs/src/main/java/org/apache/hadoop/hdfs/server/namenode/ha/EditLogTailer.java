@@ -55,6 +55,7 @@
 import org.apache.hadoop.hdfs.server.namenode.FSImage;
 import org.apache.hadoop.hdfs.server.namenode.FSNamesystem;
 import org.apache.hadoop.hdfs.server.namenode.NameNode;
+import org.apache.hadoop.hdfs.server.namenode.metrics.NameNodeMetrics;
 import org.apache.hadoop.hdfs.server.protocol.NamenodeProtocol;
 import org.apache.hadoop.ipc.RPC;
 import org.apache.hadoop.security.SecurityUtil;
@@ -101,6 +102,12 @@ public class EditLogTailer {
    */
   private long lastLoadTimeMs;
 
+  /**
+   * The last time the tailer selected the edit streams to load. Once those
+   * are loaded, the namespace includes all the edits readable at that time.
+   */
+  private long lastSelectTimeMs;
+
   /**
    * The last time we triggered a edit log roll on active namenode.
    */
@@ -161,6 +168,7 @@ public EditLogTailer(FSNamesystem namesystem, Configuration conf) {
 
     lastLoadTimeMs = monotonicNow();
     lastRollTimeMs = monotonicNow();
+    lastSelectTimeMs = monotonicNow();
 
     logRollPeriodMs = conf.getTimeDuration(
         DFSConfigKeys.DFS_HA_LOGROLL_PERIOD_KEY,
@@ -308,6 +316,7 @@ public long doTailEdits() throws IOException, InterruptedException {
         LOG.debug("lastTxnId: " + lastTxnId);
       }
       Collection<EditLogInputStream> streams;
+      final long selectTimeMs = monotonicNow();
       try {
         streams = editLog.selectInputStreams(lastTxnId + 1, 0,
             null, inProgressOk, true);
@@ -322,6 +331,14 @@ public long doTailEdits() throws IOException, InterruptedException {
       if (LOG.isDebugEnabled()) {
         LOG.debug("edit streams to load from: " + streams.size());
       }
+      final NameNodeMetrics metrics = NameNode.getNameNodeMetrics();
+      if (metrics != null) {
+        long lastReadableTxId = lastTxnId;
+        for (EditLogInputStream stream : streams) {
+          lastReadableTxId = Math.max(lastReadableTxId, stream.getLastTxId());
+        }
+        metrics.setEditLogTailLagTxns(lastReadableTxId - lastTxnId);
+      }
 
       // Once we have streams to load, errors encountered are legitimate cause
       // for concern, so we don't catch them here. Simple errors reading from
@@ -341,7 +358,12 @@ public long doTailEdits() throws IOException, InterruptedException {
 
       if (editsLoaded > 0) {
         lastLoadTimeMs = monotonicNow();
+        // the edits just loaded were not readable at the previous selection
+        if (metrics != null) {
+          metrics.setEditLogTailLagMillis(lastLoadTimeMs - lastSelectTimeMs);
+        }
       }
+      lastSelectTimeMs = selectTimeMs;
       lastLoadedTxnId = image.getLastAppliedTxId();
       return editsLoaded;
     } finally {
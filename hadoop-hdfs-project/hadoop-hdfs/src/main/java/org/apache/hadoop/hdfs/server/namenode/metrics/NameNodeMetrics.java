@@ -30,8 +30,10 @@
 import org.apache.hadoop.metrics2.lib.MetricsRegistry;
 import org.apache.hadoop.metrics2.lib.MutableCounterLong;
 import org.apache.hadoop.metrics2.lib.MutableGaugeInt;
+import org.apache.hadoop.metrics2.lib.MutableGaugeLong;
 import org.apache.hadoop.metrics2.lib.MutableQuantiles;
 import org.apache.hadoop.metrics2.lib.MutableRate;
+import org.apache.hadoop.metrics2.lib.MutableStat;
 import org.apache.hadoop.metrics2.source.JvmMetrics;
 
 /**
@@ -86,6 +88,16 @@ public class NameNodeMetrics {
   MutableGaugeInt blockOpsQueued;
   @Metric("Number of blockReports and blockReceivedAndDeleted batch processed")
   MutableCounterLong blockOpsBatched;
+  @Metric("Number of getFileInfo and getListing calls served from the file " +
+      "status cache")
+  MutableCounterLong fileStatusCacheHits;
+  @Metric("Number of getFileInfo and getListing calls missing the file " +
+      "status cache")
+  MutableCounterLong fileStatusCacheMisses;
+  @Metric("Number of file status cache entries evicted to stay within size")
+  MutableCounterLong fileStatusCacheEvictions;
+  @Metric("Number of file status cache entries invalidated by edits")
+  MutableCounterLong fileStatusCacheInvalidations;
 
   @Metric("Number of file system operations")
   public long totalFileOps(){
@@ -117,8 +129,25 @@ public long totalFileOps(){
   final MutableQuantiles[] syncsQuantiles;
   @Metric("Journal transactions batched in sync")
   MutableCounterLong transactionsBatchedInSync;
+  @Metric("Time in microseconds edits wait to be written by async edit log")
+  MutableRate asyncEditLogQueueWaitMicros;
+  final MutableQuantiles[] asyncEditLogQueueWaitMicrosQuantiles;
+  @Metric(value = "Number of edits synced together by async edit log",
+      sampleName = "Syncs", valueName = "Edits")
+  MutableStat asyncEditLogBatch;
+  final MutableQuantiles[] asyncEditLogBatchQuantiles;
+  @Metric("Number of edits queued for async edit log")
+  MutableGaugeInt asyncEditLogPendingQueueSize;
+  @Metric("Number of transactions the standby was behind when it last " +
+      "tailed edits")
+  MutableGaugeLong editLogTailLagTxns;
+  @Metric("Upper bound in milliseconds of the staleness of the edits loaded " +
+      "by the last tail of the standby")
+  MutableGaugeLong editLogTailLagMillis;
   @Metric("Block report") MutableRate blockReport;
   final MutableQuantiles[] blockReportQuantiles;
+  @Metric("Namesystem lock hold of a block report chunk in micros")
+  MutableRate blockReportLockHold;
   @Metric("Cache report") MutableRate cacheReport;
   final MutableQuantiles[] cacheReportQuantiles;
   @Metric("Generate EDEK time") private MutableRate generateEDEKTime;
@@ -149,6 +178,8 @@ public long totalFileOps(){
     
     final int len = intervals.length;
     syncsQuantiles = new MutableQuantiles[len];
+    asyncEditLogQueueWaitMicrosQuantiles = new MutableQuantiles[len];
+    asyncEditLogBatchQuantiles = new MutableQuantiles[len];
     blockReportQuantiles = new MutableQuantiles[len];
     cacheReportQuantiles = new MutableQuantiles[len];
     generateEDEKTimeQuantiles = new MutableQuantiles[len];
@@ -160,6 +191,12 @@ public long totalFileOps(){
       syncsQuantiles[i] = registry.newQuantiles(
           "syncs" + interval + "s",
           "Journal syncs", "ops", "latency", interval);
+      asyncEditLogQueueWaitMicrosQuantiles[i] = registry.newQuantiles(
+          "asyncEditLogQueueWaitMicros" + interval + "s",
+          "Async edit log queue wait in micros", "ops", "latency", interval);
+      asyncEditLogBatchQuantiles[i] = registry.newQuantiles(
+          "asyncEditLogBatch" + interval + "s",
+          "Edits per async edit log sync", "syncs", "edits", interval);
       blockReportQuantiles[i] = registry.newQuantiles(
           "blockReport" + interval + "s", 
           "Block report", "ops", "latency", interval);
@@ -251,6 +288,22 @@ public void incrFileInfoOps() {
     fileInfoOps.incr();
   }
 
+  public void incrFileStatusCacheHits() {
+    fileStatusCacheHits.incr();
+  }
+
+  public void incrFileStatusCacheMisses() {
+    fileStatusCacheMisses.incr();
+  }
+
+  public void incrFileStatusCacheEvictions() {
+    fileStatusCacheEvictions.incr();
+  }
+
+  public void incrFileStatusCacheInvalidations(long delta) {
+    fileStatusCacheInvalidations.incr(delta);
+  }
+
   public void incrCreateSymlinkOps() {
     createSymlinkOps.incr();
   }
@@ -323,6 +376,32 @@ public void incTimeoutReReplications() {
     timeoutReReplications.incr();
   }
 
+  public void addAsyncEditLogQueueWait(long micros) {
+    asyncEditLogQueueWaitMicros.add(micros);
+    for (MutableQuantiles q : asyncEditLogQueueWaitMicrosQuantiles) {
+      q.add(micros);
+    }
+  }
+
+  public void addAsyncEditLogBatch(int edits) {
+    asyncEditLogBatch.add(edits);
+    for (MutableQuantiles q : asyncEditLogBatchQuantiles) {
+      q.add(edits);
+    }
+  }
+
+  public void setAsyncEditLogPendingQueueSize(int size) {
+    asyncEditLogPendingQueueSize.set(size);
+  }
+
+  public void setEditLogTailLagTxns(long txns) {
+    editLogTailLagTxns.set(txns);
+  }
+
+  public void setEditLogTailLagMillis(long millis) {
+    editLogTailLagMillis.set(millis);
+  }
+
   public void addSync(long elapsed) {
     syncs.add(elapsed);
     for (MutableQuantiles q : syncsQuantiles) {
@@ -341,6 +420,10 @@ public void addBlockReport(long latency) {
     }
   }
 
+  public void addBlockReportLockHold(long micros) {
+    blockReportLockHold.add(micros);
+  }
+
   public void addCacheBlockReport(long latency) {
     cacheReport.add(latency);
     for (MutableQuantiles q : cacheReportQuantiles) {
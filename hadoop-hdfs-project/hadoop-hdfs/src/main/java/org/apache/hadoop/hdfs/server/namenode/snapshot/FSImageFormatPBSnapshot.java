@@ -34,6 +34,10 @@
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.locks.ReentrantLock;
 
 import com.google.common.collect.ImmutableList;
 import org.apache.hadoop.classification.InterfaceAudience;
@@ -95,12 +99,18 @@ public final static class Loader {
     private final FSDirectory fsDir;
     private final FSImageFormatProtobuf.Loader parent;
     private final Map<Integer, Snapshot> snapshotMap;
+    /**
+     * Guards the blocks map, which is shared between the threads loading
+     * the snapshot diff sub-sections in parallel.
+     */
+    private final ReentrantLock blockMapLock;
 
     public Loader(FSNamesystem fsn, FSImageFormatProtobuf.Loader parent) {
       this.fsn = fsn;
       this.fsDir = fsn.getFSDirectory();
       this.snapshotMap = new HashMap<Integer, Snapshot>();
       this.parent = parent;
+      this.blockMapLock = new ReentrantLock(true);
     }
 
     /**
@@ -179,6 +189,60 @@ private void loadSnapshots(InputStream in, int size) throws IOException {
       }
     }
 
+    /**
+     * Load the snapshot diff section from fsimage using the given sub-sections.
+     * Each sub-section holds the diff entries of a disjoint set of inodes, so
+     * they can be decoded and applied concurrently once the inode, inode
+     * reference and directory sections have been loaded.
+     */
+    public void loadSnapshotDiffSectionInParallel(ExecutorService service,
+        ArrayList<FileSummary.Section> sections, final String compressionCodec)
+        throws IOException {
+      FSImage.LOG.info("Loading the snapshot diff section in parallel with "
+          + sections.size() + " sub-sections");
+      final CountDownLatch latch = new CountDownLatch(sections.size());
+      final CopyOnWriteArrayList<IOException> exceptions =
+          new CopyOnWriteArrayList<>();
+      for (final FileSummary.Section s : sections) {
+        service.submit(new Runnable() {
+          @Override
+          public void run() {
+            InputStream ins = null;
+            try {
+              ins = parent.getInputStreamForSection(s, compressionCodec);
+              Loader.this.loadSnapshotDiffSection(ins);
+            } catch (Exception e) {
+              FSImage.LOG.error("An exception occurred loading snapshot " +
+                  "diffs in parallel", e);
+              exceptions.add(new IOException(e));
+            } finally {
+              latch.countDown();
+              try {
+                if (ins != null) {
+                  ins.close();
+                }
+              } catch (IOException ioe) {
+                FSImage.LOG.warn("Failed to close the input stream, ignoring",
+                    ioe);
+              }
+            }
+          }
+        });
+      }
+      try {
+        latch.await();
+      } catch (InterruptedException e) {
+        FSImage.LOG.error("Interrupted waiting for countdown latch", e);
+        throw new IOException(e);
+      }
+      if (exceptions.size() != 0) {
+        FSImage.LOG.error(exceptions.size() + " exceptions occurred loading "
+            + "snapshot diffs");
+        throw exceptions.get(0);
+      }
+      FSImage.LOG.info("Completed loading all snapshot diff sub-sections");
+    }
+
     /**
      * Load the snapshot diff section from fsimage.
      */
@@ -246,14 +310,20 @@ private void loadFileDiffList(InputStream in, INodeFile file, int size)
             pbf.getFileSize());
         List<BlockProto> bpl = pbf.getBlocksList();
         BlockInfo[] blocks = new BlockInfo[bpl.size()];
-        for(int j = 0, e = bpl.size(); j < e; ++j) {
-          Block blk = PBHelperClient.convert(bpl.get(j));
-          BlockInfo storedBlock = bm.getStoredBlock(blk);
-          if(storedBlock == null) {
-            storedBlock = bm.addBlockCollection(
-                new BlockInfoContiguous(blk, copy.getFileReplication()), file);
+        blockMapLock.lock();
+        try {
+          for(int j = 0, e = bpl.size(); j < e; ++j) {
+            Block blk = PBHelperClient.convert(bpl.get(j));
+            BlockInfo storedBlock = bm.getStoredBlock(blk);
+            if(storedBlock == null) {
+              storedBlock = bm.addBlockCollection(
+                  new BlockInfoContiguous(blk, copy.getFileReplication()),
+                  file);
+            }
+            blocks[j] = storedBlock;
           }
-          blocks[j] = storedBlock;
+        } finally {
+          blockMapLock.unlock();
         }
         if(blocks.length > 0) {
           diff.setBlocks(blocks);
@@ -262,10 +332,15 @@ private void loadFileDiffList(InputStream in, INodeFile file, int size)
       }
       file.addSnapshotFeature(diffs);
       short repl = file.getPreferredBlockReplication();
-      for (BlockInfo b : file.getBlocks()) {
-        if (b.getReplication() < repl) {
-          bm.setReplication(b.getReplication(), repl, b);
+      blockMapLock.lock();
+      try {
+        for (BlockInfo b : file.getBlocks()) {
+          if (b.getReplication() < repl) {
+            bm.setReplication(b.getReplication(), repl, b);
+          }
         }
+      } finally {
+        blockMapLock.unlock();
       }
     }
 
@@ -285,7 +360,12 @@ private List<INode> loadCreatedList(InputStream in, INodeDirectory dir,
     private void addToDeletedList(INode dnode, INodeDirectory parent) {
       dnode.setParent(parent);
       if (dnode.isFile()) {
-        updateBlocksMap(dnode.asFile(), fsn.getBlockManager());
+        blockMapLock.lock();
+        try {
+          updateBlocksMap(dnode.asFile(), fsn.getBlockManager());
+        } finally {
+          blockMapLock.unlock();
+        }
       }
     }
 
@@ -0,0 +1,263 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.util;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A {@link java.util.List} stored as a sequence of array segments of bounded
+ * size.  Inserting or removing an element only shifts the elements of one
+ * segment and the start offsets of the following segments, so it costs
+ * O(segment size + number of segments) instead of O(size) for an
+ * {@link ArrayList}.  Random access costs O(log(number of segments)).
+ *
+ * It is meant for very large lists which are kept sorted and modified in
+ * place, such as the children of a huge directory.  This class does not
+ * support null elements and is not thread safe.
+ *
+ * @param <E> The type of the list elements.
+ */
+@InterfaceAudience.Private
+public class SegmentedArrayList<E> extends AbstractList<E>
+    implements RandomAccess {
+  private final int maxSegmentSize;
+  private final ArrayList<ArrayList<E>> segments =
+      new ArrayList<ArrayList<E>>();
+  /**
+   * starts[i] is the index of the first element of segments.get(i).
+   * Only the first segments.size() entries are used.
+   */
+  private int[] starts = new int[4];
+  private int size = 0;
+
+  /**
+   * @param maxSegmentSize the maximum number of elements in a segment.
+   */
+  public SegmentedArrayList(int maxSegmentSize) {
+    Preconditions.checkArgument(maxSegmentSize > 1,
+        "maxSegmentSize = %s <= 1", maxSegmentSize);
+    this.maxSegmentSize = maxSegmentSize;
+  }
+
+  /**
+   * Create a list containing the elements of the given collection, in the
+   * order they are returned by its iterator.
+   */
+  public SegmentedArrayList(int maxSegmentSize, Collection<? extends E> c) {
+    this(maxSegmentSize);
+    for (E e : c) {
+      add(size, e);
+    }
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public E get(int index) {
+    checkIndex(index, size);
+    final int s = segmentOf(index);
+    return segments.get(s).get(index - starts[s]);
+  }
+
+  @Override
+  public E set(int index, E element) {
+    Preconditions.checkNotNull(element);
+    checkIndex(index, size);
+    final int s = segmentOf(index);
+    return segments.get(s).set(index - starts[s], element);
+  }
+
+  @Override
+  public void add(int index, E element) {
+    Preconditions.checkNotNull(element);
+    checkIndex(index, size + 1);
+    if (segments.isEmpty()) {
+      insertSegment(0, new ArrayList<E>(), 0);
+    }
+    int s = index == size ? segments.size() - 1 : segmentOf(index);
+    ArrayList<E> segment = segments.get(s);
+    if (segment.size() == maxSegmentSize && index == size) {
+      // appending to a full segment, start a new one.  this keeps the
+      // segments full when a list is built in order.
+      segment = new ArrayList<E>();
+      insertSegment(++s, segment, size);
+    }
+    segment.add(index - starts[s], element);
+    shiftStarts(s + 1, 1);
+    size++;
+    modCount++;
+    if (segment.size() > maxSegmentSize) {
+      split(s);
+    }
+  }
+
+  @Override
+  public E remove(int index) {
+    checkIndex(index, size);
+    final int s = segmentOf(index);
+    final ArrayList<E> segment = segments.get(s);
+    final E removed = segment.remove(index - starts[s]);
+    shiftStarts(s + 1, -1);
+    size--;
+    modCount++;
+    if (segment.isEmpty()) {
+      removeSegment(s);
+    }
+    return removed;
+  }
+
+  @Override
+  public void clear() {
+    segments.clear();
+    size = 0;
+    modCount++;
+  }
+
+  @Override
+  public Iterator<E> iterator() {
+    return new Itr();
+  }
+
+  /** @return the number of segments, for testing. */
+  int getNumSegments() {
+    return segments.size();
+  }
+
+  private static void checkIndex(int index, int bound) {
+    if (index < 0 || index >= bound) {
+      throw new IndexOutOfBoundsException(
+          "index = " + index + ", size = " + (bound));
+    }
+  }
+
+  /** @return the segment containing the element at the given index. */
+  private int segmentOf(int index) {
+    int lower = 0;
+    for (int upper = segments.size() - 1; lower < upper; ) {
+      final int mid = (lower + upper + 1) >>> 1;
+      if (starts[mid] <= index) {
+        lower = mid;
+      } else {
+        upper = mid - 1;
+      }
+    }
+    return lower;
+  }
+
+  private void shiftStarts(int from, int delta) {
+    for (int i = from; i < segments.size(); i++) {
+      starts[i] += delta;
+    }
+  }
+
+  /** Move the upper half of the given segment to a new segment. */
+  private void split(int s) {
+    final ArrayList<E> segment = segments.get(s);
+    final int half = segment.size() / 2;
+    final ArrayList<E> upper =
+        new ArrayList<E>(segment.subList(half, segment.size()));
+    segment.subList(half, segment.size()).clear();
+    insertSegment(s + 1, upper, starts[s] + half);
+  }
+
+  private void insertSegment(int s, ArrayList<E> segment, int start) {
+    final int n = segments.size();
+    if (n == starts.length) {
+      starts = Arrays.copyOf(starts, n * 2);
+    }
+    System.arraycopy(starts, s, starts, s + 1, n - s);
+    starts[s] = start;
+    segments.add(s, segment);
+  }
+
+  private void removeSegment(int s) {
+    final int n = segments.size();
+    System.arraycopy(starts, s + 1, starts, s, n - s - 1);
+    segments.remove(s);
+  }
+
+  /** Iterate the segments directly instead of searching for each index. */
+  private class Itr implements Iterator<E> {
+    private int segment = 0;
+    private int offset = 0;
+    private int lastIndex = -1;
+    private int expectedModCount = modCount;
+
+    @Override
+    public boolean hasNext() {
+      return nextIndex() < size;
+    }
+
+    @Override
+    public E next() {
+      checkForComodification();
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      ArrayList<E> current = segments.get(segment);
+      if (offset == current.size()) {
+        current = segments.get(++segment);
+        offset = 0;
+      }
+      lastIndex = starts[segment] + offset;
+      return current.get(offset++);
+    }
+
+    @Override
+    public void remove() {
+      Preconditions.checkState(lastIndex >= 0);
+      checkForComodification();
+      SegmentedArrayList.this.remove(lastIndex);
+      // reposition since the segment may have been removed.
+      final int next = lastIndex;
+      lastIndex = -1;
+      expectedModCount = modCount;
+      if (next < size) {
+        segment = segmentOf(next);
+        offset = next - starts[segment];
+      } else {
+        segment = Math.max(segments.size() - 1, 0);
+        offset = segments.isEmpty() ? 0 : segments.get(segment).size();
+      }
+    }
+
+    private int nextIndex() {
+      return segments.isEmpty() ? 0 : starts[segment] + offset;
+    }
+
+    private void checkForComodification() {
+      if (modCount != expectedModCount) {
+        throw new ConcurrentModificationException();
+      }
+    }
+  }
+}
@@ -22,19 +22,29 @@
 import static org.junit.Assert.assertNotNull;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ExecutionException;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileRange;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.StreamCapabilities;
 import org.apache.hadoop.hdfs.client.HdfsClientConfigKeys;
 import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
 import org.apache.hadoop.hdfs.server.blockmanagement.DatanodeDescriptor;
+import org.apache.hadoop.io.ByteBufferPool;
+import org.apache.hadoop.io.ElasticByteBufferPool;
 import org.apache.hadoop.net.unix.DomainSocket;
 import org.apache.hadoop.net.unix.TemporarySocketDirectory;
 import org.apache.hadoop.hdfs.client.impl.DfsClientConf;
@@ -220,4 +230,75 @@ public void testNullCheckSumWhenDNRestarted()
       cluster.shutdown();
     }
   }
+
+  @Test(timeout=60000)
+  public void testReadVectored() throws Exception {
+    final int blockSize = 64 * 1024;
+    Configuration conf = new Configuration();
+    conf.setLong(DFSConfigKeys.DFS_NAMENODE_MIN_BLOCK_SIZE_KEY, 0);
+    conf.setInt(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, blockSize);
+    conf.setInt(HdfsClientConfigKeys.VectoredRead.MIN_SEEK_SIZE_KEY, 4096);
+    conf.setInt(HdfsClientConfigKeys.VectoredRead.MAX_MERGED_SIZE_KEY,
+        32 * 1024);
+    MiniDFSCluster cluster =
+        new MiniDFSCluster.Builder(conf).numDataNodes(3).build();
+    try {
+      DistributedFileSystem fs = cluster.getFileSystem();
+      Path file = new Path("/testfile");
+      int fileLength = 5 * blockSize + 1000;
+      byte[] fileContent = new byte[fileLength];
+      new Random(0).nextBytes(fileContent);
+      try (FSDataOutputStream fout = fs.create(file)) {
+        fout.write(fileContent);
+      }
+
+      ByteBufferPool pool = new ElasticByteBufferPool();
+      try (FSDataInputStream fin = fs.open(file)) {
+        assertTrue(fin.hasCapability(StreamCapabilities.VECTOREDREAD));
+        // Merged ranges, a range across blocks, a range too long to merge,
+        // the end of the file, and an empty range, out of order.
+        List<FileRange> ranges = Arrays.asList(
+            new FileRange(3 * blockSize, 40000),
+            new FileRange(0, 100),
+            new FileRange(200, 100),
+            new FileRange(5000, 10),
+            new FileRange(blockSize - 50, 100),
+            new FileRange(blockSize + 100, 0),
+            new FileRange(fileLength - 10, 10));
+        fin.readVectored(ranges, pool);
+        for (FileRange r : ranges) {
+          ByteBuffer data = r.getData().get();
+          assertEquals(r.toString(), r.getLength(), data.remaining());
+          byte[] bytes = new byte[r.getLength()];
+          data.get(bytes);
+          assertTrue(r.toString(), Arrays.equals(Arrays.copyOfRange(
+              fileContent, (int) r.getOffset(), (int) r.getEnd()), bytes));
+          pool.putBuffer(data);
+        }
+        // The stream was not moved.
+        assertEquals(0, fin.getPos());
+
+        // A range past the end of the file fails on its own.
+        List<FileRange> pastEnd = Arrays.asList(new FileRange(0, 10),
+            new FileRange(fileLength - 10, 20));
+        fin.readVectored(pastEnd, pool);
+        assertEquals(10, pastEnd.get(0).getData().get().remaining());
+        try {
+          pastEnd.get(1).getData().get();
+          fail("Reading past the end of the file should fail");
+        } catch (ExecutionException e) {
+          assertTrue(e.getCause() instanceof EOFException);
+        }
+
+        try {
+          fin.readVectored(Arrays.asList(new FileRange(0, 100),
+              new FileRange(50, 100)), pool);
+          fail("Overlapping ranges should be rejected");
+        } catch (IllegalArgumentException expected) {
+        }
+      }
+    } finally {
+      cluster.shutdown();
+    }
+  }
 }
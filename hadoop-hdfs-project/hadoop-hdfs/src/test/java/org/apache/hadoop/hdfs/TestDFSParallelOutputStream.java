@@ -0,0 +1,178 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileAlreadyExistsException;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.client.HdfsClientConfigKeys;
+import org.apache.hadoop.hdfs.protocol.HdfsConstants;
+import org.apache.hadoop.hdfs.protocol.LocatedBlocks;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.apache.hadoop.util.StringUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test writing a file through several block pipelines at once.
+ */
+public class TestDFSParallelOutputStream {
+  private static final int BLOCK_SIZE = 1024;
+
+  private MiniDFSCluster cluster;
+  private DistributedFileSystem fs;
+
+  @Before
+  public void setUp() throws IOException {
+    final Configuration conf = new HdfsConfiguration();
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, BLOCK_SIZE);
+    conf.setLong(DFSConfigKeys.DFS_NAMENODE_MIN_BLOCK_SIZE_KEY, 0);
+    conf.setInt(HdfsClientConfigKeys.DFS_CLIENT_WRITE_PACKET_SIZE_KEY, 512);
+    // Buffer a few chunks only, so that the writer waits for the pipelines.
+    conf.setLong(HdfsClientConfigKeys.ParallelWrite.BUFFER_SIZE_KEY, 4096);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(3).build();
+    cluster.waitActive();
+    fs = cluster.getFileSystem();
+  }
+
+  @After
+  public void tearDown() {
+    if (cluster != null) {
+      cluster.shutdown();
+      cluster = null;
+    }
+  }
+
+  @Test(timeout = 120000)
+  public void testParallelWrite() throws IOException {
+    // Partial last block, whole blocks only, and less than a block.
+    writeAndCheck(new Path("/dir1/file"), 10 * BLOCK_SIZE + 300, 4);
+    writeAndCheck(new Path("/dir2/file"), 8 * BLOCK_SIZE, 3);
+    writeAndCheck(new Path("/dir3/file"), 100, 4);
+    writeAndCheck(new Path("/dir4/file"), 0, 4);
+    writeAndCheck(new Path("/dir5/file"), 5 * BLOCK_SIZE + 1, 1);
+  }
+
+  @Test(timeout = 120000)
+  public void testOverwrite() throws IOException {
+    final Path file = new Path("/dir/file");
+    DFSTestUtil.writeFile(fs, file, "data");
+    try {
+      fs.createFile(file).overwrite(false).parallelStreams(2).build();
+      fail("Created an existing file");
+    } catch (FileAlreadyExistsException e) {
+      // Expected.
+    }
+    writeAndCheck(file, 3 * BLOCK_SIZE, 2);
+  }
+
+  /**
+   * Test that the part files left by a writer which crashed are deleted when
+   * the file is written again.
+   */
+  @Test(timeout = 120000)
+  public void testStalePartFiles() throws IOException {
+    final Path file = new Path("/dir/file");
+    DFSTestUtil.writeFile(fs, new Path("/dir/.file.part.1234.1"), "part");
+    DFSTestUtil.writeFile(fs, new Path("/dir/.file.part.1234.2"), "part");
+    writeAndCheck(file, 3 * BLOCK_SIZE, 2);
+  }
+
+  /**
+   * Test a write which fails when its segments exceed the space quota: the
+   * file keeps the segments committed before the failure, the part files
+   * are deleted, and close() throws the failure.
+   */
+  @Test(timeout = 120000)
+  public void testFailedWrite() throws IOException {
+    final Path dir = new Path("/dir");
+    final Path file = new Path(dir, "file");
+    fs.mkdirs(dir);
+    // Room for 4 blocks of 3 replicas.
+    fs.setQuota(dir, HdfsConstants.QUOTA_DONT_SET, 4 * 3 * BLOCK_SIZE);
+    final byte[] data = new byte[10 * BLOCK_SIZE];
+    new Random(0).nextBytes(data);
+
+    final FSDataOutputStream out =
+        fs.createFile(file).parallelStreams(4).build();
+    try {
+      out.write(data);
+      out.close();
+      fail("Wrote more than the quota");
+    } catch (IOException e) {
+      final String trace = StringUtils.stringifyException(e);
+      assertTrue(trace, trace.contains("DSQuotaExceededException"));
+    }
+    // The stream is aborted, and keeps failing.
+    try {
+      out.close();
+      fail("Closed an aborted stream");
+    } catch (IOException e) {
+      GenericTestUtils.assertExceptionContains("Failed to write", e);
+    }
+
+    final byte[] written = DFSTestUtil.readFileBuffer(fs, file);
+    assertEquals(0, written.length % BLOCK_SIZE);
+    assertTrue(written.length < data.length);
+    assertArrayEquals(Arrays.copyOf(data, written.length), written);
+    assertEquals(1, fs.listStatus(dir).length);
+  }
+
+  private void writeAndCheck(Path file, int length, int numStreams)
+      throws IOException {
+    final byte[] data = new byte[length];
+    final Random random = new Random(length);
+    random.nextBytes(data);
+    try (FSDataOutputStream out =
+        fs.createFile(file).recursive().parallelStreams(numStreams)
+            .build()) {
+      int off = 0;
+      while (off < length) {
+        if (random.nextInt(10) == 0) {
+          out.write(data[off++]);
+        } else {
+          final int len = Math.min(length - off, random.nextInt(3000));
+          out.write(data, off, len);
+          off += len;
+        }
+      }
+    }
+
+    assertArrayEquals(data, DFSTestUtil.readFileBuffer(fs, file));
+    final LocatedBlocks blocks = fs.getClient().getLocatedBlocks(
+        file.toString(), 0, Long.MAX_VALUE);
+    assertEquals((length + BLOCK_SIZE - 1) / BLOCK_SIZE,
+        blocks.locatedBlockCount());
+    // The part files are gone.
+    final FileStatus[] statuses = fs.listStatus(file.getParent());
+    assertEquals(1, statuses.length);
+    assertEquals(length, statuses[0].getLen());
+  }
+}
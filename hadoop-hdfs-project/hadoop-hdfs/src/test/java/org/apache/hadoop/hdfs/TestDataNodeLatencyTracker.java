@@ -0,0 +1,183 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
+import org.apache.hadoop.util.FakeTimer;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the tracking of the read latency of the datanodes by the client.
+ */
+public class TestDataNodeLatencyTracker {
+  private static final long WINDOW_MS = 60000;
+  private static final long SMALL = 4096;
+  private static final long LARGE = 1 << 20;
+
+  private final DatanodeInfo fast = DFSTestUtil.getLocalDatanodeInfo(10001);
+  private final DatanodeInfo medium = DFSTestUtil.getLocalDatanodeInfo(10002);
+  private final DatanodeInfo slow = DFSTestUtil.getLocalDatanodeInfo(10003);
+  private FakeTimer timer;
+  private DataNodeLatencyTracker tracker;
+
+  @Before
+  public void setUp() {
+    timer = new FakeTimer();
+    tracker = new DataNodeLatencyTracker(WINDOW_MS, 10, 3.0f, timer);
+  }
+
+  @Test
+  public void testBuckets() {
+    int lastBucket = 0;
+    for (long micros = 0; micros < 1L << 20; micros += 1 + micros / 64) {
+      final int bucket = DataNodeLatencyTracker.getBucket(micros);
+      assertTrue(bucket >= lastBucket);
+      lastBucket = bucket;
+      final long upper = DataNodeLatencyTracker.getBucketUpperBound(bucket);
+      assertTrue(micros + " in bucket up to " + upper, micros <= upper);
+      assertTrue(micros + " in bucket up to " + upper,
+          upper <= micros + micros / 4);
+      if (bucket > 0) {
+        assertTrue(
+            DataNodeLatencyTracker.getBucketUpperBound(bucket - 1) < micros);
+      }
+    }
+    assertEquals(DataNodeLatencyTracker.NUM_BUCKETS - 1,
+        DataNodeLatencyTracker.getBucket(Long.MAX_VALUE));
+    assertEquals(0, DataNodeLatencyTracker.getBucket(-1));
+  }
+
+  @Test
+  public void testPercentiles() {
+    addSamples(fast, 9, 1000);
+    assertEquals(-1, tracker.getPercentileMicros(fast, SMALL, 0.95));
+    assertEquals(-1, tracker.getPercentileMicros(slow, SMALL, 0.95));
+    addSamples(fast, 86, 1000);
+    addSamples(fast, 5, 100000);
+    assertEquals(1023, tracker.getPercentileMicros(fast, SMALL, 0.5));
+    assertEquals(1023, tracker.getPercentileMicros(fast, SMALL, 0.95));
+    assertEquals(114687, tracker.getPercentileMicros(fast, SMALL, 0.99));
+  }
+
+  @Test
+  public void testSlowNode() {
+    addSamples(fast, 20, 1000);
+    addSamples(medium, 20, 2000);
+    addSamples(slow, 20, 50000);
+    // The reference is the p95 of the medium node, 2047us.
+    assertEquals(2047, tracker.getReferenceMicros(SMALL));
+    assertFalse(tracker.isSlow(fast));
+    assertFalse(tracker.isSlow(medium));
+    assertTrue(tracker.isSlow(slow));
+    assertFalse(tracker.isSlow(DFSTestUtil.getLocalDatanodeInfo(10004)));
+
+    // Hedge after the p95 of the datanode, or the reference if it is slow.
+    assertEquals(2, tracker.getHedgedReadThresholdMillis(fast, SMALL, 1, 500));
+    assertEquals(10,
+        tracker.getHedgedReadThresholdMillis(fast, SMALL, 10, 500));
+    assertEquals(3, tracker.getHedgedReadThresholdMillis(slow, SMALL, 1, 500));
+    assertEquals(500, tracker.getHedgedReadThresholdMillis(
+        DFSTestUtil.getLocalDatanodeInfo(10004), SMALL, 1, 500));
+
+    // Once the fast node gets slow, the reference is the p95 of the slow
+    // node, when computed again after a second.
+    addSamples(fast, 20, 1000000);
+    assertEquals(2047, tracker.getReferenceMicros(SMALL));
+    timer.advance(1000);
+    assertEquals(57343, tracker.getReferenceMicros(SMALL));
+    assertTrue(tracker.isSlow(fast));
+    assertEquals(58, tracker.getHedgedReadThresholdMillis(fast, SMALL, 1, 500));
+    assertEquals(50, tracker.getHedgedReadThresholdMillis(fast, SMALL, 1, 50));
+  }
+
+  @Test
+  public void testWindows() {
+    addSamples(fast, 20, 1000);
+    addSamples(medium, 20, 1000);
+    addSamples(slow, 20, 50000);
+    assertTrue(tracker.isSlow(slow));
+
+    // The previous window still counts.
+    timer.advance(WINDOW_MS);
+    addSamples(slow, 20, 1000);
+    assertTrue(tracker.isSlow(slow));
+
+    // Once the slow reads are two windows old, the datanode has recovered.
+    timer.advance(WINDOW_MS);
+    addSamples(fast, 20, 1000);
+    addSamples(medium, 20, 1000);
+    addSamples(slow, 20, 1000);
+    assertFalse(tracker.isSlow(slow));
+    assertEquals(1023, tracker.getPercentileMicros(slow, SMALL, 0.99));
+
+    // Without reads for two windows, nothing is known of a datanode.
+    timer.advance(2 * WINDOW_MS);
+    assertEquals(-1, tracker.getPercentileMicros(fast, SMALL, 0.5));
+    assertEquals(-1, tracker.getReferenceMicros(SMALL));
+  }
+
+  @Test
+  public void testSizeClasses() {
+    assertEquals(0, DataNodeLatencyTracker.getSizeClass(0));
+    assertEquals(0, DataNodeLatencyTracker.getSizeClass(16 << 10));
+    assertEquals(1, DataNodeLatencyTracker.getSizeClass((16 << 10) + 1));
+    assertEquals(3, DataNodeLatencyTracker.getSizeClass(Long.MAX_VALUE));
+
+    // A datanode serving large reads is not slow next to the small reads of
+    // the others.
+    addSamples(fast, 20, SMALL, 1000);
+    addSamples(medium, 20, SMALL, 1000);
+    addSamples(slow, 20, LARGE, 50000);
+    assertEquals(1023, tracker.getReferenceMicros(SMALL));
+    assertEquals(57343, tracker.getReferenceMicros(LARGE));
+    assertFalse(tracker.isSlow(slow));
+    assertEquals(-1, tracker.getPercentileMicros(slow, SMALL, 0.95));
+    assertEquals(500, tracker.getHedgedReadThresholdMillis(slow, SMALL,
+        1, 500));
+    assertEquals(58, tracker.getHedgedReadThresholdMillis(slow, LARGE,
+        1, 500));
+
+    // It is slow once its reads are slow next to reads of the same size.
+    addSamples(fast, 20, LARGE, 5000);
+    addSamples(medium, 20, LARGE, 5000);
+    timer.advance(1000);
+    assertEquals(5119, tracker.getReferenceMicros(LARGE));
+    assertTrue(tracker.isSlow(slow));
+    assertFalse(tracker.isSlow(fast));
+    assertEquals(6, tracker.getHedgedReadThresholdMillis(slow, LARGE,
+        1, 500));
+  }
+
+  private void addSamples(DatanodeInfo node, int num, long micros) {
+    addSamples(node, num, SMALL, micros);
+  }
+
+  private void addSamples(DatanodeInfo node, int num, long bytes,
+      long micros) {
+    for (int i = 0; i < num; i++) {
+      tracker.addSample(node, bytes, TimeUnit.MICROSECONDS.toNanos(micros));
+    }
+  }
+}
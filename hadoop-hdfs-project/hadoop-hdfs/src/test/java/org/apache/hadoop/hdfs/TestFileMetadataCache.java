@@ -0,0 +1,302 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.BlockLocation;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.AclEntry;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.hdfs.client.HdfsClientConfigKeys;
+import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
+import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
+import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
+import org.apache.hadoop.hdfs.protocol.LocatedBlock;
+import org.apache.hadoop.hdfs.protocol.LocatedBlocks;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.apache.hadoop.util.FakeTimer;
+import org.junit.Test;
+
+import com.google.common.base.Supplier;
+
+/**
+ * Test the client cache of the block locations and status of closed files.
+ */
+public class TestFileMetadataCache {
+  private static final String NS = "nn:8020";
+  private static final String USER = "alice";
+  private static final long BLOCK_SIZE = 1024;
+
+  /** @return the located blocks of a closed file of numBlocks full blocks. */
+  private static LocatedBlocks newBlocks(long firstBlockId, int numBlocks,
+      boolean underConstruction) {
+    final List<LocatedBlock> blocks = new ArrayList<>();
+    for (int i = 0; i < numBlocks; i++) {
+      blocks.add(new LocatedBlock(
+          new ExtendedBlock("bp", firstBlockId + i, BLOCK_SIZE, 1),
+          new DatanodeInfo[] {DFSTestUtil.getLocalDatanodeInfo()}, null,
+          null, i * BLOCK_SIZE, false, new DatanodeInfo[0]));
+    }
+    return new LocatedBlocks(numBlocks * BLOCK_SIZE, underConstruction,
+        blocks, blocks.get(numBlocks - 1), !underConstruction, null);
+  }
+
+  private static HdfsFileStatus newStatus(long length) {
+    return new HdfsFileStatus(length, false, 1, BLOCK_SIZE, 0, 0,
+        FsPermission.getFileDefault(), USER, "users", null, null, 1, 0, null,
+        (byte) 0);
+  }
+
+  /** Cache the metadata as a lookup with no concurrent invalidation. */
+  private static void putLocatedBlocks(FileMetadataCache cache, String user,
+      String src, LocatedBlocks blocks) {
+    cache.putLocatedBlocks(NS, user, src, blocks, cache.getGeneration(NS));
+  }
+
+  private static void putFileStatus(FileMetadataCache cache, String user,
+      String src, HdfsFileStatus status) {
+    cache.putFileStatus(NS, user, src, status, cache.getGeneration(NS));
+  }
+
+  @Test
+  public void testClosedFiles() {
+    final FakeTimer timer = new FakeTimer();
+    final FileMetadataCache cache = new FileMetadataCache(1000, 10, timer);
+    assertNull(cache.getLocatedBlocks(NS, USER, "/f"));
+    assertEquals(1, cache.getMisses());
+
+    // Files being written, or not returned whole, are not cached.
+    putLocatedBlocks(cache, USER, "/f", newBlocks(1, 2, true));
+    assertNull(cache.getLocatedBlocks(NS, USER, "/f"));
+    final LocatedBlocks partial = newBlocks(1, 3, false);
+    partial.getLocatedBlocks().remove(2);
+    putLocatedBlocks(cache, USER, "/f", partial);
+    assertNull(cache.getLocatedBlocks(NS, USER, "/f"));
+
+    putLocatedBlocks(cache, USER, "/f", newBlocks(1, 3, false));
+    final LocatedBlocks cached = cache.getLocatedBlocks(NS, USER, "/f");
+    assertEquals(3, cached.locatedBlockCount());
+    assertEquals(1, cache.getHits());
+    // The copies given out are not shared.
+    cached.getLocatedBlocks().clear();
+    assertEquals(3,
+        cache.getLocatedBlocks(NS, USER, "/f").locatedBlockCount());
+    // Only the blocks in the range are returned, as by the namenode.
+    assertBlockIds(cache.getLocatedBlocks(NS, USER, "/f", 1000, 100), 1, 2);
+    assertBlockIds(cache.getLocatedBlocks(NS, USER, "/f", 2048, 0), 3);
+    assertBlockIds(cache.getLocatedBlocks(NS, USER, "/f", 0, 4096), 1, 2, 3);
+
+    // Other users and namenodes do not see the entry.
+    assertNull(cache.getLocatedBlocks(NS, "bob", "/f"));
+    assertNull(cache.getLocatedBlocks("nn2:8020", USER, "/f"));
+    putLocatedBlocks(cache, "bob", "/f", newBlocks(1, 3, false));
+    assertNotNull(cache.getLocatedBlocks(NS, "bob", "/f"));
+
+    // The status is cached once the file is known to be closed.
+    putFileStatus(cache, USER, "/g", newStatus(1024));
+    assertNull(cache.getFileStatus(NS, USER, "/g"));
+    putFileStatus(cache, USER, "/f", newStatus(3 * BLOCK_SIZE));
+    assertEquals(3 * BLOCK_SIZE, cache.getFileStatus(NS, USER, "/f").getLen());
+
+    // A file which changed invalidates the entry.
+    putLocatedBlocks(cache, USER, "/f", newBlocks(1, 2, true));
+    assertNull(cache.getLocatedBlocks(NS, USER, "/f"));
+    assertNull(cache.getFileStatus(NS, "bob", "/f"));
+
+    // The entries expire.
+    putLocatedBlocks(cache, USER, "/f", newBlocks(1, 3, false));
+    timer.advance(999);
+    assertNotNull(cache.getLocatedBlocks(NS, USER, "/f"));
+    timer.advance(1);
+    assertNull(cache.getLocatedBlocks(NS, USER, "/f"));
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void testEvictionAndInvalidation() {
+    final FileMetadataCache cache =
+        new FileMetadataCache(60000, 3, new FakeTimer());
+    putLocatedBlocks(cache, USER, "/a/1", newBlocks(1, 1, false));
+    putLocatedBlocks(cache, USER, "/a/2", newBlocks(2, 1, false));
+    putLocatedBlocks(cache, USER, "/b", newBlocks(3, 1, false));
+    // The least recently used entry is evicted.
+    assertNotNull(cache.getLocatedBlocks(NS, USER, "/a/1"));
+    putLocatedBlocks(cache, USER, "/a0", newBlocks(4, 1, false));
+    assertEquals(1, cache.getEvictions());
+    assertNull(cache.getLocatedBlocks(NS, USER, "/a/2"));
+    assertEquals(3, cache.size());
+
+    // Invalidating a directory invalidates the files under it only.
+    putLocatedBlocks(cache, USER, "/a/2", newBlocks(2, 1, false));
+    cache.invalidate(NS, "/a");
+    assertNull(cache.getLocatedBlocks(NS, USER, "/a/1"));
+    assertNull(cache.getLocatedBlocks(NS, USER, "/a/2"));
+    assertNotNull(cache.getLocatedBlocks(NS, USER, "/a0"));
+    assertEquals(2, cache.getInvalidations());
+
+    cache.invalidate("nn2:8020", "/");
+    assertEquals(1, cache.size());
+    cache.invalidate(NS, "/");
+    assertEquals(0, cache.size());
+  }
+
+  /**
+   * Test that the result of a lookup is not cached if a path was invalidated
+   * while the namenode was asked, since it may predate the change.
+   */
+  @Test
+  public void testInvalidationDuringLookup() {
+    final FileMetadataCache cache =
+        new FileMetadataCache(60000, 10, new FakeTimer());
+    long generation = cache.getGeneration(NS);
+    cache.invalidate(NS, "/f");
+    cache.putLocatedBlocks(NS, USER, "/f", newBlocks(1, 1, false),
+        generation);
+    assertNull(cache.getLocatedBlocks(NS, USER, "/f"));
+    // The invalidations of other namespaces do not matter.
+    generation = cache.getGeneration(NS);
+    cache.invalidateAll("nn2:8020");
+    cache.putLocatedBlocks(NS, USER, "/f", newBlocks(1, 1, false),
+        generation);
+    assertNotNull(cache.getLocatedBlocks(NS, USER, "/f"));
+
+    generation = cache.getGeneration(NS);
+    cache.invalidate(NS, "/g");
+    cache.putFileStatus(NS, USER, "/f", newStatus(BLOCK_SIZE), generation);
+    assertNull(cache.getFileStatus(NS, USER, "/f"));
+    putFileStatus(cache, USER, "/f", newStatus(BLOCK_SIZE));
+    assertNotNull(cache.getFileStatus(NS, USER, "/f"));
+  }
+
+  private static void assertBlockIds(LocatedBlocks blocks, long... ids) {
+    assertEquals(ids.length, blocks.locatedBlockCount());
+    for (int i = 0; i < ids.length; i++) {
+      assertEquals(ids[i], blocks.get(i).getBlock().getBlockId());
+    }
+  }
+
+  @Test(timeout = 120000)
+  public void testCacheWithCluster() throws Exception {
+    final Configuration conf = new HdfsConfiguration();
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, BLOCK_SIZE);
+    conf.setLong(DFSConfigKeys.DFS_NAMENODE_MIN_BLOCK_SIZE_KEY, 0);
+    conf.setBoolean(HdfsClientConfigKeys.MetadataCache.ENABLED_KEY, true);
+    conf.setBoolean(HdfsClientConfigKeys.MetadataCache.INOTIFY_ENABLED_KEY,
+        true);
+    conf.setBoolean(DFSConfigKeys.DFS_NAMENODE_ACLS_ENABLED_KEY, true);
+    final MiniDFSCluster cluster =
+        new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+    try {
+      cluster.waitActive();
+      final DistributedFileSystem fs = cluster.getFileSystem();
+      final FileMetadataCache cache = fs.getClient().getFileMetadataCache();
+      assertNotNull(cache);
+      final Path file = new Path("/testCacheWithCluster/file");
+      final byte[] data = new byte[3000];
+      for (int i = 0; i < data.length; i++) {
+        data[i] = (byte) i;
+      }
+      try (FSDataOutputStream out = fs.create(file)) {
+        out.write(data);
+      }
+
+      // The second open and getFileStatus do not call the namenode.
+      assertArrayEquals(data, DFSTestUtil.readFileBuffer(fs, file));
+      fs.getFileStatus(file);
+      final long hits = cache.getHits();
+      assertArrayEquals(data, DFSTestUtil.readFileBuffer(fs, file));
+      assertEquals(data.length, fs.getFileStatus(file).getLen());
+      final BlockLocation[] locations =
+          fs.getFileBlockLocations(file, BLOCK_SIZE, 10);
+      assertEquals(1, locations.length);
+      assertEquals(BLOCK_SIZE, locations[0].getOffset());
+      assertEquals(hits + 3, cache.getHits());
+
+      // Appending invalidates the file.
+      try (FSDataOutputStream out = fs.append(file)) {
+        out.write(data);
+      }
+      assertEquals(2 * data.length, fs.getFileStatus(file).getLen());
+      assertEquals(2 * data.length,
+          DFSTestUtil.readFileBuffer(fs, file).length);
+
+      final String ns = fs.getUri().getAuthority();
+      final String user = UserGroupInformation.getCurrentUser().getUserName();
+      final String src = file.toUri().getPath();
+      // So do the changes of its ACL and xattrs.
+      assertNotNull(cache.getLocatedBlocks(ns, user, src));
+      fs.modifyAclEntries(file, AclEntry.parseAclSpec("user:bob:r--", true));
+      assertNull(cache.getLocatedBlocks(ns, user, src));
+      assertTrue(fs.getFileStatus(file).getPermission().getAclBit());
+      DFSTestUtil.readFileBuffer(fs, file);
+      fs.removeAcl(file);
+      assertNull(cache.getLocatedBlocks(ns, user, src));
+      assertFalse(fs.getFileStatus(file).getPermission().getAclBit());
+      DFSTestUtil.readFileBuffer(fs, file);
+      fs.setXAttr(file, "user.a", new byte[] {1});
+      assertNull(cache.getLocatedBlocks(ns, user, src));
+
+      // So does a change by another client, once the namenode logs it.
+      DFSTestUtil.readFileBuffer(fs, file);
+      assertNotNull(cache.getLocatedBlocks(ns, user, src));
+      cluster.getNameNodeRpc().setTimes(src, 1000, -1);
+      GenericTestUtils.waitFor(new Supplier<Boolean>() {
+        @Override
+        public Boolean get() {
+          return cache.getLocatedBlocks(ns, user, src) == null;
+        }
+      }, 100, 30000);
+      assertEquals(1000, fs.getFileStatus(file).getModificationTime());
+    } finally {
+      cluster.shutdown();
+    }
+  }
+
+  @Test(timeout = 120000)
+  public void testDeletedFile() throws IOException {
+    final Configuration conf = new HdfsConfiguration();
+    conf.setBoolean(HdfsClientConfigKeys.MetadataCache.ENABLED_KEY, true);
+    final MiniDFSCluster cluster =
+        new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+    try {
+      cluster.waitActive();
+      final DistributedFileSystem fs = cluster.getFileSystem();
+      final Path file = new Path("/testDeletedFile/file");
+      DFSTestUtil.writeFile(fs, file, "data");
+      DFSTestUtil.readFile(fs, file);
+      fs.getFileStatus(file);
+      fs.delete(file.getParent(), true);
+      assertFalse(fs.exists(file));
+    } finally {
+      cluster.shutdown();
+    }
+  }
+}
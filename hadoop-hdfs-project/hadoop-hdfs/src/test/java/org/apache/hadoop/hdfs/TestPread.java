@@ -617,6 +617,83 @@ public Void answer(InvocationOnMock invocation) throws Throwable {
     }
   }
 
+  /**
+   * Test that a datanode found slow by the latency tracker is read last, and
+   * that the hedged reads start after the tracked latency rather than the
+   * configured threshold.
+   */
+  @Test(timeout=60000)
+  public void testHedgedReadWithSlowDataNode() throws Exception {
+    Configuration conf = new Configuration();
+    conf.setInt(HdfsClientConfigKeys.HedgedRead.THREADPOOL_SIZE_KEY, 5);
+    conf.setLong(HdfsClientConfigKeys.HedgedRead.THRESHOLD_MILLIS_KEY,
+        600000);
+    conf.setBoolean(HdfsClientConfigKeys.DataNodeLatency.TRACKING_ENABLED_KEY,
+        true);
+    conf.setInt(HdfsClientConfigKeys.DataNodeLatency.MIN_SAMPLES_KEY, 1);
+    // Do not share the ClientContext of the other tests, without a tracker.
+    conf.set(HdfsClientConfigKeys.DFS_CLIENT_CONTEXT,
+        "testHedgedReadWithSlowDataNode");
+    DFSClientFaultInjector.set(Mockito.mock(DFSClientFaultInjector.class));
+    DFSClientFaultInjector injector = DFSClientFaultInjector.get();
+    Mockito.doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        Thread.sleep(200);
+        return null;
+      }
+    }).when(injector).readFromDatanodeDelay();
+
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf).numDataNodes(3)
+        .format(true).build();
+    DistributedFileSystem fileSys = cluster.getFileSystem();
+    DFSClient dfsClient = fileSys.getClient();
+    DFSHedgedReadMetrics metrics = dfsClient.getHedgedReadMetrics();
+    DFSInputStream input = null;
+    String filename = "/hedgedReadWithSlowDataNode.dat";
+    try {
+      Path file = new Path(filename);
+      byte[] data = new byte[64 * 1024];
+      new Random(0).nextBytes(data);
+      FSDataOutputStream output = fileSys.create(file, (short) 3);
+      output.write(data);
+      output.close();
+      DFSTestUtil.waitReplication(fileSys, file, (short) 3);
+
+      DataNodeLatencyTracker tracker =
+          dfsClient.getClientContext().getDataNodeLatencyTracker();
+      Assert.assertNotNull(tracker);
+      LocatedBlock block = dfsClient.getLocatedBlocks(filename, 0).get(0);
+      DatanodeInfo[] nodes = block.getLocations();
+      assertEquals(3, nodes.length);
+      tracker.addSample(nodes[0], 1024, TimeUnit.SECONDS.toNanos(1));
+      tracker.addSample(nodes[1], 1024, TimeUnit.MILLISECONDS.toNanos(1));
+      tracker.addSample(nodes[2], 1024, TimeUnit.MILLISECONDS.toNanos(1));
+      assertTrue(tracker.isSlow(nodes[0]));
+
+      input = dfsClient.open(filename);
+      long slowNodeSkips = metrics.getSlowNodeSkips();
+      Assert.assertEquals(nodes[1],
+          input.getBestNodeDNAddrPair(block, null).info);
+      assertEquals(slowNodeSkips + 1, metrics.getSlowNodeSkips());
+      // The slow datanode is still read when no other can be.
+      Assert.assertEquals(nodes[0], input.getBestNodeDNAddrPair(block,
+          Arrays.asList(nodes[1], nodes[2])).info);
+
+      // The 200ms reads are hedged after about 1ms, not 10 minutes.
+      long hedgedReadOps = metrics.getHedgedReadOps();
+      byte[] buffer = new byte[1024];
+      input.readFully(1024, buffer, 0, buffer.length);
+      Assert.assertArrayEquals(Arrays.copyOfRange(data, 1024, 2048), buffer);
+      assertTrue(metrics.getHedgedReadOps() > hedgedReadOps);
+    } finally {
+      Mockito.reset(injector);
+      IOUtils.cleanupWithLogger(LOG, input);
+      fileSys.close();
+      cluster.shutdown();
+    }
+  }
+
   /**
    * Scenario: 1. Write a file with RF=2, DN1 and DN2<br>
    * 2. Open the stream, Consider Locations are [DN1, DN2] in LocatedBlock.<br>
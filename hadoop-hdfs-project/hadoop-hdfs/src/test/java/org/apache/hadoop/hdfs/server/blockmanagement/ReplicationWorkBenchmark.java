@@ -0,0 +1,348 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.blockmanagement;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.protocol.Block;
+import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.NamenodeRole;
+import org.apache.hadoop.hdfs.server.namenode.CacheManager;
+import org.apache.hadoop.hdfs.server.namenode.FSDirectory;
+import org.apache.hadoop.hdfs.server.namenode.INodeFile;
+import org.apache.hadoop.hdfs.server.namenode.INodeId;
+import org.apache.hadoop.hdfs.server.namenode.NameNode;
+import org.apache.hadoop.hdfs.server.namenode.NameNode.OperationCategory;
+import org.apache.hadoop.hdfs.server.namenode.Namesystem;
+import org.apache.hadoop.hdfs.server.namenode.TestINodeFile;
+import org.apache.hadoop.hdfs.server.namenode.ha.ActiveState;
+import org.apache.hadoop.hdfs.server.namenode.ha.HAContext;
+import org.apache.hadoop.hdfs.server.namenode.ha.HAState;
+import org.apache.hadoop.net.NetworkTopology;
+import org.apache.hadoop.util.Time;
+
+/**
+ * Benchmark the recovery from the failure of a rack: the time taken to
+ * queue the blocks which lost a replica, and the number of blocks per second
+ * for which the replication work is scheduled.
+ *
+ * <pre>
+ * Usage: ReplicationWorkBenchmark [-racks R] [-nodesPerRack N]
+ *     [-blocks B] [-threads T]
+ * </pre>
+ * B blocks are placed on R racks of N DataNodes each by the default policy,
+ * with one replica on a rack and two on another, then the DataNodes of the
+ * first rack are removed.  The replication work is computed as by the
+ * replication monitor, with T threads, until every block lost by the rack
+ * is scheduled; the replication commands are taken from the DataNodes after
+ * each iteration, as by their heartbeats.
+ */
+public class ReplicationWorkBenchmark {
+  private static final long BLOCK_SIZE = 128L * 1024 * 1024;
+  private static final long CAPACITY = 1L << 50;
+
+  /**
+   * A namesystem with a real lock and a single file, which is active and out
+   * of safe mode, without any cache.  It is not a mock, since a mock would record the millions
+   * of calls made by the benchmark.
+   */
+  private static class BenchmarkNamesystem implements Namesystem {
+    private final ReentrantReadWriteLock lock =
+        new ReentrantReadWriteLock(true);
+    private final INodeFile file =
+        TestINodeFile.createINodeFile(INodeId.ROOT_INODE_ID + 1);
+    private final HAContext haContext = new HAContext() {
+      private final HAState state = new ActiveState();
+
+      @Override
+      public void setState(HAState s) {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override
+      public HAState getState() {
+        return state;
+      }
+
+      @Override
+      public void startActiveServices() {
+      }
+
+      @Override
+      public void stopActiveServices() {
+      }
+
+      @Override
+      public void startStandbyServices() {
+      }
+
+      @Override
+      public void prepareToStopStandbyServices() {
+      }
+
+      @Override
+      public void stopStandbyServices() {
+      }
+
+      @Override
+      public void writeLock() {
+        BenchmarkNamesystem.this.writeLock();
+      }
+
+      @Override
+      public void writeUnlock() {
+        BenchmarkNamesystem.this.writeUnlock();
+      }
+
+      @Override
+      public void checkOperation(OperationCategory op) {
+      }
+
+      @Override
+      public boolean allowStaleReads() {
+        return false;
+      }
+    };
+
+    INodeFile getFile() {
+      return file;
+    }
+
+    @Override
+    public void readLock() {
+      lock.readLock().lock();
+    }
+
+    @Override
+    public void readLockInterruptibly() throws InterruptedException {
+      lock.readLock().lockInterruptibly();
+    }
+
+    @Override
+    public void readUnlock() {
+      lock.readLock().unlock();
+    }
+
+    @Override
+    public boolean hasReadLock() {
+      return lock.getReadHoldCount() > 0 || hasWriteLock();
+    }
+
+    @Override
+    public void writeLock() {
+      lock.writeLock().lock();
+    }
+
+    @Override
+    public void writeLockInterruptibly() throws InterruptedException {
+      lock.writeLock().lockInterruptibly();
+    }
+
+    @Override
+    public void writeUnlock() {
+      lock.writeLock().unlock();
+    }
+
+    @Override
+    public boolean hasWriteLock() {
+      return lock.isWriteLockedByCurrentThread();
+    }
+
+    @Override
+    public boolean isInSafeMode() {
+      return false;
+    }
+
+    @Override
+    public boolean isInStartupSafeMode() {
+      return false;
+    }
+
+    @Override
+    public boolean isRunning() {
+      return true;
+    }
+
+    @Override
+    public BlockCollection getBlockCollection(long id) {
+      return file;
+    }
+
+    @Override
+    public FSDirectory getFSDirectory() {
+      return null;
+    }
+
+    @Override
+    public void startSecretManagerIfNecessary() {
+    }
+
+    @Override
+    public boolean isInSnapshot(long blockCollectionID) {
+      return false;
+    }
+
+    @Override
+    public CacheManager getCacheManager() {
+      return null;
+    }
+
+    @Override
+    public HAContext getHAContext() {
+      return haContext;
+    }
+
+    @Override
+    public boolean inTransitionToActive() {
+      return false;
+    }
+  }
+
+  /** @return the result line. */
+  static String run(int numRacks, int nodesPerRack, int numBlocks,
+      int numThreads) throws IOException {
+    if (numRacks < 2) {
+      throw new IllegalArgumentException("At least two racks are needed");
+    }
+    final Configuration conf = new HdfsConfiguration();
+    conf.set(DFSConfigKeys.NET_TOPOLOGY_SCRIPT_FILE_NAME_KEY,
+        "need to set a dummy value here so it assumes a multi-rack cluster");
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_REPLICATION_WORK_THREADS_KEY,
+        numThreads);
+    if (NameNode.getNameNodeMetrics() == null) {
+      NameNode.initMetrics(conf, NamenodeRole.NAMENODE);
+    }
+    final BenchmarkNamesystem fsn = new BenchmarkNamesystem();
+    final BlockManager bm = new BlockManager(fsn, false, conf);
+    try {
+      final NetworkTopology cluster =
+          bm.getDatanodeManager().getNetworkTopology();
+      final List<List<DatanodeDescriptor>> racks = new ArrayList<>();
+      for (int r = 0; r < numRacks; r++) {
+        final List<DatanodeDescriptor> rack = new ArrayList<>();
+        for (int n = 0; n < nodesPerRack; n++) {
+          final DatanodeDescriptor dn = BlockManagerTestUtil
+              .getDatanodeDescriptor("10." + r + "." + (n >> 8) + "."
+                  + (n & 0xff), "/rack" + r, true);
+          dn.getStorageInfos()[0].setUtilizationForTesting(
+              CAPACITY, 0L, CAPACITY, 0L);
+          dn.updateHeartbeat(
+              BlockManagerTestUtil.getStorageReportsForDatanode(dn), 0L, 0L,
+              0, 0, null);
+          cluster.add(dn);
+          bm.getDatanodeManager().checkIfClusterIsNowMultiRack(dn);
+          rack.add(dn);
+        }
+        racks.add(rack);
+      }
+
+      final INodeFile file = fsn.getFile();
+      for (int i = 0; i < numBlocks; i++) {
+        final BlockInfo block = new BlockInfoContiguous(
+            new Block(1073741825L + i, BLOCK_SIZE, 1001 + i), (short) 3);
+        block.setBlockCollectionId(file.getId());
+        bm.blocksMap.addBlockCollection(block, file);
+        final int local = i % numRacks;
+        final int remote = (local + 1 + (i / numRacks) % (numRacks - 1))
+            % numRacks;
+        addReplica(block, racks.get(local), i);
+        addReplica(block, racks.get(remote), i);
+        addReplica(block, racks.get(remote), i + 1);
+      }
+
+      // Fail the first rack.
+      bm.setInitializedReplQueues(true);
+      long start = Time.monotonicNowNanos();
+      fsn.writeLock();
+      try {
+        for (DatanodeDescriptor dn : racks.get(0)) {
+          cluster.remove(dn);
+          bm.removeBlocksAssociatedTo(dn);
+        }
+      } finally {
+        fsn.writeUnlock();
+      }
+      final long failureNanos = Time.monotonicNowNanos() - start;
+      final int underReplicated = bm.neededReplications.size();
+
+      final int liveNodes = (numRacks - 1) * nodesPerRack;
+      final int blocksToProcess = liveNodes * bm.blocksReplWorkMultiplier;
+      int scheduled = 0;
+      int idleIterations = 0;
+      start = Time.monotonicNowNanos();
+      while (bm.neededReplications.size() > 0 && idleIterations < 2) {
+        final int work = bm.computeReplicationWork(blocksToProcess);
+        idleIterations = work == 0 ? idleIterations + 1 : 0;
+        scheduled += work;
+        for (int r = 1; r < numRacks; r++) {
+          for (DatanodeDescriptor dn : racks.get(r)) {
+            dn.getReplicationCommand(Integer.MAX_VALUE);
+          }
+        }
+      }
+      final long scheduleNanos = Time.monotonicNowNanos() - start;
+
+      return String.format("racks=%d nodesPerRack=%d blocks=%d threads=%d"
+          + " underReplicated=%d rackFailure=%dms scheduled=%d"
+          + " blocksScheduledPerSec=%.0f",
+          numRacks, nodesPerRack, numBlocks, numThreads, underReplicated,
+          failureNanos / 1000000, scheduled,
+          scheduled * 1e9 / Math.max(scheduleNanos, 1));
+    } finally {
+      fsn.writeLock();
+      try {
+        bm.close();
+      } finally {
+        fsn.writeUnlock();
+      }
+    }
+  }
+
+  private static void addReplica(BlockInfo block,
+      List<DatanodeDescriptor> rack, int i) {
+    rack.get(i % rack.size()).getStorageInfos()[0].addBlock(block);
+  }
+
+  public static void main(String[] args) throws IOException {
+    int numRacks = 10;
+    int nodesPerRack = 20;
+    int numBlocks = 1000000;
+    int numThreads = 1;
+    for (int i = 0; i < args.length; i++) {
+      if ("-racks".equals(args[i]) && i + 1 < args.length) {
+        numRacks = Integer.parseInt(args[++i]);
+      } else if ("-nodesPerRack".equals(args[i]) && i + 1 < args.length) {
+        nodesPerRack = Integer.parseInt(args[++i]);
+      } else if ("-blocks".equals(args[i]) && i + 1 < args.length) {
+        numBlocks = Integer.parseInt(args[++i]);
+      } else if ("-threads".equals(args[i]) && i + 1 < args.length) {
+        numThreads = Integer.parseInt(args[++i]);
+      } else {
+        System.err.println("Usage: ReplicationWorkBenchmark [-racks R]"
+            + " [-nodesPerRack N] [-blocks B] [-threads T]");
+        System.exit(-1);
+      }
+    }
+    System.out.println(run(numRacks, nodesPerRack, numBlocks, numThreads));
+  }
+}
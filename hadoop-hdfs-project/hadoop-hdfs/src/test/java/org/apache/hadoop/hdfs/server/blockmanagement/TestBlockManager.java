@@ -38,7 +38,9 @@
 import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.EnumSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map.Entry;
@@ -67,6 +69,7 @@
 import org.apache.hadoop.hdfs.DistributedFileSystem;
 import org.apache.hadoop.hdfs.HdfsConfiguration;
 import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.client.BlockReportOptions;
 import org.apache.hadoop.hdfs.protocol.Block;
 import org.apache.hadoop.hdfs.protocol.BlockListAsLongs;
 import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
@@ -111,9 +114,11 @@
 import org.mockito.Mockito;
 
 import com.google.common.base.Joiner;
+import com.google.common.base.Supplier;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.LinkedListMultimap;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Uninterruptibles;
 
 public class TestBlockManager {
   private DatanodeStorageInfo[] storages;
@@ -713,6 +718,55 @@ public void testFavorDecomUntilHardLimit() throws Exception {
 
 
 
+  /**
+   * Test that, with a budget of bytes in flight per DataNode, the source with
+   * the fewest bytes in flight is chosen, and that a source over its budget
+   * is only chosen for a block with the highest priority.
+   */
+  @Test
+  public void testReplicationSourceBudget() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.set(DFSConfigKeys.NET_TOPOLOGY_SCRIPT_FILE_NAME_KEY,
+        "need to set a dummy value here so it assumes a multi-rack cluster");
+    conf.set(DFSConfigKeys.DFS_NAMENODE_REPLICATION_MAX_INFLIGHT_BYTES_PER_NODE_KEY,
+        "1m");
+    bm = new BlockManager(fsn, false, conf);
+    ReplicationBandwidthBudget budget = bm.pendingReplications.getBudget();
+
+    long blockId = 42;         // arbitrary
+    Block aBlock = new Block(blockId, 0, 0);
+    addBlockOnNodes(blockId, getNodes(0, 3));
+    budget.tryAcquire(nodes.get(0),
+        new DatanodeStorageInfo[] {storages[1]}, 512 * 1024, false);
+
+    List<DatanodeDescriptor> cntNodes = new LinkedList<DatanodeDescriptor>();
+    List<DatanodeStorageInfo> liveNodes = new LinkedList<DatanodeStorageInfo>();
+    for (int i = 0; i < 10; i++) {
+      assertEquals("Chooses the source with the fewest bytes in flight",
+          nodes.get(3), bm.chooseSourceDatanode(aBlock, cntNodes, liveNodes,
+              new NumberReplicas(),
+              UnderReplicatedBlocks.QUEUE_UNDER_REPLICATED));
+    }
+
+    budget.tryAcquire(nodes.get(3),
+        new DatanodeStorageInfo[] {storages[4]}, 2 * 1024 * 1024, false);
+    assertEquals(nodes.get(0), bm.chooseSourceDatanode(aBlock, cntNodes,
+        liveNodes, new NumberReplicas(),
+        UnderReplicatedBlocks.QUEUE_UNDER_REPLICATED));
+
+    budget.tryAcquire(nodes.get(0),
+        new DatanodeStorageInfo[] {storages[2]}, 512 * 1024, false);
+    assertNull("Does not choose a source over its budget",
+        bm.chooseSourceDatanode(aBlock, cntNodes, liveNodes,
+            new NumberReplicas(),
+            UnderReplicatedBlocks.QUEUE_UNDER_REPLICATED));
+    assertNotNull("Chooses a source over its budget for a highest-priority"
+        + " replication",
+        bm.chooseSourceDatanode(aBlock, cntNodes, liveNodes,
+            new NumberReplicas(),
+            UnderReplicatedBlocks.QUEUE_HIGHEST_PRIORITY));
+  }
+
   @Test
   public void testSafeModeIBR() throws Exception {
     DatanodeDescriptor node = spy(nodes.get(0));
@@ -906,6 +960,76 @@ public void testUCBlockNotConsideredMissing() throws Exception {
     bm.setInitializedReplQueues(false);
   }
 
+  @Test(timeout = 60000)
+  public void testChunkedBlockReport() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_CHUNK_SIZE_KEY, 2);
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, 1024);
+    conf.setLong(DFSConfigKeys.DFS_NAMENODE_MIN_BLOCK_SIZE_KEY, 0);
+    final MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf)
+        .storagesPerDatanode(1).build();
+    try {
+      cluster.waitActive();
+      final FSNamesystem fsn = cluster.getNamesystem();
+      final BlockManager bm = fsn.getBlockManager();
+      DFSTestUtil.createFile(cluster.getFileSystem(), new Path("/file"),
+          5 * 1024, (short) 1, 0L);
+      final DataNode dn = cluster.getDataNodes().get(0);
+      final DatanodeStorageInfo ds = bm.getDatanodeManager()
+          .getDatanode(dn.getDatanodeId()).getStorageInfos()[0];
+
+      // each time the report releases the lock, another writer takes it
+      // and checks the blocks of the storage
+      final List<Integer> numBlocksSeen =
+          Collections.synchronizedList(new ArrayList<Integer>());
+      final AtomicBoolean lockHeld = new AtomicBoolean(false);
+      BlockManagerFaultInjector.instance = new BlockManagerFaultInjector() {
+        @Override
+        public void blockReportLockReleased() {
+          if (fsn.hasWriteLock()) {
+            lockHeld.set(true);
+            return;
+          }
+          final Thread writer = new Thread() {
+            @Override
+            public void run() {
+              fsn.writeLock();
+              try {
+                int n = 0;
+                for (Iterator<BlockInfo> it = ds.getBlockIterator();
+                    it.hasNext(); n++) {
+                  assertNotNull(bm.getStoredBlock(it.next()));
+                }
+                if (n == ds.numBlocks()) {
+                  numBlocksSeen.add(n);
+                }
+              } finally {
+                fsn.writeUnlock();
+              }
+            }
+          };
+          writer.start();
+          Uninterruptibles.joinUninterruptibly(writer, 10, TimeUnit.SECONDS);
+        }
+      };
+      dn.triggerBlockReport(
+          new BlockReportOptions.Factory().setIncremental(false).build());
+      // 2 yields between the 3 chunks of the 5 blocks
+      GenericTestUtils.waitFor(new Supplier<Boolean>() {
+        @Override
+        public Boolean get() {
+          return numBlocksSeen.size() >= 2 || lockHeld.get();
+        }
+      }, 100, 30000);
+      assertFalse("The lock was not released", lockHeld.get());
+      assertEquals(Arrays.asList(5, 5), numBlocksSeen);
+      assertEquals(5, ds.numBlocks());
+    } finally {
+      BlockManagerFaultInjector.instance = new BlockManagerFaultInjector();
+      cluster.shutdown();
+    }
+  }
+
   private BlockInfo addBlockToBM(long blkId) {
     Block block = new Block(blkId);
     BlockInfo blockInfo = new BlockInfoContiguous(block, (short) 3);
@@ -0,0 +1,169 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.blockmanagement;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.protocol.Block;
+import org.apache.hadoop.hdfs.server.blockmanagement.ReplicationBandwidthBudget.Transfer;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the accounting of the bytes in flight of the replication transfers.
+ */
+public class TestReplicationBandwidthBudget {
+  private static final long BLOCK_SIZE = 1024 * 1024;
+
+  private DatanodeStorageInfo[] storages;
+  private DatanodeDescriptor[] nodes;
+
+  @Before
+  public void setUp() {
+    storages = DFSTestUtil.createDatanodeStorageInfos(
+        new String[] {"/r1", "/r1", "/r2", "/r2"});
+    nodes = DatanodeStorageInfo.toDatanodeDescriptors(storages);
+  }
+
+  @Test
+  public void testSourceBudget() {
+    ReplicationBandwidthBudget budget =
+        new ReplicationBandwidthBudget(2 * BLOCK_SIZE, 0, 0);
+    assertTrue(budget.isSourceAvailable(nodes[0]));
+    assertNotNull(budget.tryAcquire(nodes[0],
+        new DatanodeStorageInfo[] {storages[1], storages[2]}, BLOCK_SIZE,
+        false));
+    assertEquals(2 * BLOCK_SIZE, budget.getSourceBytes(nodes[0]));
+    assertFalse(budget.isSourceAvailable(nodes[0]));
+    assertNull(budget.tryAcquire(nodes[0],
+        new DatanodeStorageInfo[] {storages[3]}, BLOCK_SIZE, false));
+
+    // The blocks with the highest priority are replicated regardless.
+    Transfer[] forced = budget.tryAcquire(nodes[0],
+        new DatanodeStorageInfo[] {storages[3]}, BLOCK_SIZE, true);
+    assertNotNull(forced);
+    assertEquals(3 * BLOCK_SIZE, budget.getSourceBytes(nodes[0]));
+    budget.release(forced[0], true);
+    assertEquals(2 * BLOCK_SIZE, budget.getSourceBytes(nodes[0]));
+
+    // An idle source is never limited, even by a budget smaller than a block.
+    assertNotNull(budget.tryAcquire(nodes[1],
+        new DatanodeStorageInfo[] {storages[2]}, 3 * BLOCK_SIZE, false));
+
+    // A decommissioning source is not limited.
+    nodes[0].startDecommission();
+    assertTrue(budget.isSourceAvailable(nodes[0]));
+    assertNotNull(budget.tryAcquire(nodes[0],
+        new DatanodeStorageInfo[] {storages[3]}, BLOCK_SIZE, false));
+  }
+
+  @Test
+  public void testRackBudget() {
+    ReplicationBandwidthBudget budget =
+        new ReplicationBandwidthBudget(0, BLOCK_SIZE, 0);
+    Transfer[] crossRack = budget.tryAcquire(nodes[0],
+        new DatanodeStorageInfo[] {storages[2]}, BLOCK_SIZE, false);
+    assertNotNull(crossRack);
+    assertEquals(BLOCK_SIZE, budget.getRackBytes("/r1"));
+    assertEquals(BLOCK_SIZE, budget.getRackBytes("/r2"));
+    assertTrue(budget.getSaturatedRacks().contains("/r1"));
+    assertTrue(budget.getSaturatedRacks().contains("/r2"));
+
+    // Another transfer across the racks does not fit, within a rack it does.
+    assertNull(budget.tryAcquire(nodes[1],
+        new DatanodeStorageInfo[] {storages[3]}, BLOCK_SIZE, false));
+    assertNotNull(budget.tryAcquire(nodes[1],
+        new DatanodeStorageInfo[] {storages[0]}, BLOCK_SIZE, false));
+    assertEquals(BLOCK_SIZE, budget.getRackBytes("/r1"));
+
+    budget.release(crossRack[0], false);
+    assertEquals(0, budget.getRackBytes("/r1"));
+    assertEquals(0, budget.getRackBytes("/r2"));
+    assertTrue(budget.getSaturatedRacks().isEmpty());
+    // The racks charged are released even if the target moved meanwhile.
+    crossRack = budget.tryAcquire(nodes[0],
+        new DatanodeStorageInfo[] {storages[2]}, BLOCK_SIZE, false);
+    nodes[2].setNetworkLocation("/r3");
+    budget.release(crossRack[0], false);
+    assertEquals(0, budget.getRackBytes("/r1"));
+    assertEquals(0, budget.getRackBytes("/r2"));
+    assertEquals(0, budget.getRackBytes("/r3"));
+    assertTrue(budget.getSaturatedRacks().isEmpty());
+  }
+
+  @Test
+  public void testVolumeBudget() {
+    ReplicationBandwidthBudget budget =
+        new ReplicationBandwidthBudget(0, 0, BLOCK_SIZE);
+    assertNotNull(budget.tryAcquire(nodes[0],
+        new DatanodeStorageInfo[] {storages[2]}, BLOCK_SIZE, false));
+    assertEquals(BLOCK_SIZE, budget.getVolumeBytes(storages[2]));
+    assertTrue(budget.getSaturatedNodes().contains(nodes[2]));
+    assertFalse(budget.getSaturatedNodes().contains(nodes[3]));
+    assertNull(budget.tryAcquire(nodes[1],
+        new DatanodeStorageInfo[] {storages[3], storages[2]}, BLOCK_SIZE,
+        false));
+    assertEquals(0, budget.getVolumeBytes(storages[3]));
+  }
+
+  /**
+   * Test that the transfers are released when their target reports the
+   * replica, or when the pending replication is removed, and that only the
+   * completed transfers count in the recovery rate.
+   */
+  @Test
+  public void testReleaseByPendingReplications() {
+    ReplicationBandwidthBudget budget =
+        new ReplicationBandwidthBudget(0, 0, 0);
+    PendingReplicationBlocks pendingReplications =
+        new PendingReplicationBlocks(60 * 1000, budget);
+    BlockInfo block1 = new BlockInfoContiguous(
+        new Block(1, BLOCK_SIZE, 1), (short) 3);
+    BlockInfo block2 = new BlockInfoContiguous(
+        new Block(2, BLOCK_SIZE, 1), (short) 3);
+    budget.updateRate(0);
+    pendingReplications.increment(block1, budget.tryAcquire(nodes[0],
+        new DatanodeStorageInfo[] {storages[2], storages[3]}, BLOCK_SIZE,
+        false));
+    pendingReplications.increment(block2, budget.tryAcquire(nodes[0],
+        new DatanodeStorageInfo[] {storages[1]}, BLOCK_SIZE, false));
+    assertEquals(3 * BLOCK_SIZE, budget.getSourceBytes(nodes[0]));
+    assertEquals(2, pendingReplications.getNumReplicas(block1));
+
+    assertFalse(pendingReplications.decrement(block1, nodes[2]));
+    assertEquals(0, budget.getVolumeBytes(storages[2]));
+    assertEquals(BLOCK_SIZE, budget.getVolumeBytes(storages[3]));
+    assertTrue(pendingReplications.decrement(block1, nodes[3]));
+    assertEquals(BLOCK_SIZE, budget.getSourceBytes(nodes[0]));
+
+    pendingReplications.remove(block2);
+    assertEquals(0, budget.getSourceBytes(nodes[0]));
+    assertEquals(0, budget.getVolumeBytes(storages[1]));
+
+    // Two transfers completed within a minute.
+    budget.updateRate(60 * 1000);
+    final double expected = (1 - Math.exp(-1)) * 2 * BLOCK_SIZE / 60;
+    assertEquals(expected, budget.getBytesPerSec(), 1);
+    assertEquals(expected / BLOCK_SIZE, budget.getTransfersPerSec(), 0.001);
+  }
+}
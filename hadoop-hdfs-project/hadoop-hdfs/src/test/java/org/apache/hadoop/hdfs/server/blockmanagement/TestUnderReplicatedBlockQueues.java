@@ -18,7 +18,15 @@
 
 package org.apache.hadoop.hdfs.server.blockmanagement;
 
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.hadoop.hdfs.protocol.Block;
 import org.junit.Test;
@@ -87,6 +95,143 @@ public void testBlockPriorities() throws Throwable {
     assertEquals(2, queues.getCorruptReplOneBlockSize());
   }
 
+  /**
+   * Test that a block is moved to the level of its new priority by an
+   * update, and that it is removed whatever the level given to remove it.
+   */
+  @Test
+  public void testUpdateAndRemove() throws Throwable {
+    UnderReplicatedBlocks queues = new UnderReplicatedBlocks();
+    BlockInfo block = genBlockInfo(1);
+    assertAdded(queues, block, 2, 0, 3);
+    assertInLevel(queues, block, UnderReplicatedBlocks.QUEUE_UNDER_REPLICATED);
+
+    queues.update(block, 1, 0, 0, 3, -1, 0);
+    assertInLevel(queues, block, UnderReplicatedBlocks.QUEUE_HIGHEST_PRIORITY);
+    assertEquals(1, queues.size());
+    assertEquals(0, queues.getCorruptBlockSize());
+
+    assertTrue(queues.remove(block,
+        UnderReplicatedBlocks.QUEUE_REPLICAS_BADLY_DISTRIBUTED));
+    assertEquals(0, queues.size());
+    assertFalse(queues.remove(block,
+        UnderReplicatedBlocks.QUEUE_HIGHEST_PRIORITY));
+    assertFalse(queues.iterator().hasNext());
+  }
+
+  /**
+   * Test that the blocks are chosen in the order of their priority, then in
+   * the order they were added, and that the next call resumes after the last
+   * block chosen.
+   */
+  @Test
+  public void testChooseInOrder() throws Throwable {
+    UnderReplicatedBlocks queues = new UnderReplicatedBlocks();
+    for (int i = 0; i < 10; i++) {
+      assertAdded(queues, genBlockInfo(i), 2, 0, 3);
+    }
+    assertAdded(queues, genBlockInfo(100), 1, 0, 3);
+
+    List<List<BlockInfo>> chosen = queues.chooseUnderReplicatedBlocks(4);
+    assertEquals(1, chosen.get(
+        UnderReplicatedBlocks.QUEUE_HIGHEST_PRIORITY).size());
+    assertEquals(100, chosen.get(
+        UnderReplicatedBlocks.QUEUE_HIGHEST_PRIORITY).get(0).getBlockId());
+    List<BlockInfo> level = chosen.get(
+        UnderReplicatedBlocks.QUEUE_UNDER_REPLICATED);
+    assertEquals(3, level.size());
+    for (int i = 0; i < 3; i++) {
+      assertEquals(i, level.get(i).getBlockId());
+    }
+
+    chosen = queues.chooseUnderReplicatedBlocks(4);
+    assertEquals(0, chosen.get(
+        UnderReplicatedBlocks.QUEUE_HIGHEST_PRIORITY).size());
+    level = chosen.get(UnderReplicatedBlocks.QUEUE_UNDER_REPLICATED);
+    assertEquals(4, level.size());
+    for (int i = 0; i < 4; i++) {
+      assertEquals(3 + i, level.get(i).getBlockId());
+    }
+  }
+
+  /**
+   * Test that the threads which choose the blocks concurrently, while the
+   * queues are changed by another thread, do not choose the same block
+   * twice in a round, and choose the blocks which were added first.
+   */
+  @Test(timeout = 60000)
+  public void testConcurrentChoose() throws Throwable {
+    final UnderReplicatedBlocks queues = new UnderReplicatedBlocks();
+    final int numBlocks = 10000;
+    final int numThreads = 4;
+    for (int i = 0; i < numBlocks; i++) {
+      assertAdded(queues, genBlockInfo(i), 2, 0, 3);
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads + 1);
+    try {
+      List<Future<List<BlockInfo>>> choosers = new ArrayList<>();
+      for (int t = 0; t < numThreads; t++) {
+        choosers.add(executor.submit(new Callable<List<BlockInfo>>() {
+          @Override
+          public List<BlockInfo> call() {
+            List<BlockInfo> blocks = new ArrayList<>();
+            for (int i = 0; i < numBlocks / numThreads / 10; i++) {
+              for (List<BlockInfo> level
+                  : queues.chooseUnderReplicatedBlocks(10)) {
+                blocks.addAll(level);
+              }
+            }
+            return blocks;
+          }
+        }));
+      }
+      Future<Void> updater = executor.submit(new Callable<Void>() {
+        @Override
+        public Void call() {
+          for (int i = numBlocks; i < 2 * numBlocks; i++) {
+            queues.add(genBlockInfo(i), 2, 0, 0, 3);
+            if (i % 2 == 1) {
+              queues.remove(genBlockInfo(i),
+                  UnderReplicatedBlocks.QUEUE_UNDER_REPLICATED);
+            }
+          }
+          return null;
+        }
+      });
+
+      Set<BlockInfo> chosen = new HashSet<>();
+      int total = 0;
+      for (Future<List<BlockInfo>> f : choosers) {
+        for (BlockInfo b : f.get()) {
+          assertTrue("Block " + b + " chosen twice", chosen.add(b));
+          assertTrue("Block " + b + " chosen out of order",
+              b.getBlockId() < numBlocks);
+          total++;
+        }
+      }
+      updater.get();
+      assertEquals(numBlocks, total);
+      assertEquals(numBlocks + numBlocks / 2, queues.size());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Run a small replication work benchmark, with one and several threads, and
+   * check that every block lost by the failed rack is scheduled.
+   */
+  @Test(timeout = 120000)
+  public void testReplicationWorkBenchmark() throws Exception {
+    for (int threads : new int[] {1, 4}) {
+      String result = ReplicationWorkBenchmark.run(3, 4, 3000, threads);
+      assertTrue(result, result.startsWith("racks=3"));
+      assertTrue(result, result.contains(" underReplicated=2000 "));
+      assertTrue(result, result.contains(" scheduled=2000 "));
+    }
+  }
+
   private void assertAdded(UnderReplicatedBlocks queues,
                            BlockInfo block,
                            int curReplicas,
@@ -0,0 +1,189 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
+import org.apache.hadoop.hdfs.protocol.LocatedBlock;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.util.Time;
+
+/**
+ * Benchmark the throughput of the reads served by a DataNode, in the style
+ * of TestDFSIO.
+ *
+ * <pre>
+ * Usage: DataNodeReadBenchmark [-read | -scan] [-nrFiles N] [-fileSize MB]
+ *     [-threads T] [-mmap true|false] [-transferTo true|false]
+ * </pre>
+ * N files of the given size are written to a single DataNode, then read
+ * by T threads.  With -read, the files are read by clients, over the data
+ * transfer protocol.  With -scan, the blocks of the files are read and their
+ * checksums verified on the DataNode, as by the block scanner.  The mapped
+ * reads and transferTo are enabled or disabled on the DataNode as given.
+ */
+public class DataNodeReadBenchmark {
+  private static final int BUFFER_SIZE = 1024 * 1024;
+  private static final long MEGA = 1024 * 1024;
+
+  /** @return the result lines. */
+  static String run(final boolean scan, int nrFiles, long fileSizeMB,
+      int threads, boolean mmap, boolean transferTo)
+      throws IOException, InterruptedException {
+    final Configuration conf = new HdfsConfiguration();
+    conf.setBoolean(DFSConfigKeys.DFS_DATANODE_MMAP_READS_ENABLED_KEY, mmap);
+    conf.setBoolean(DFSConfigKeys.DFS_DATANODE_TRANSFERTO_ALLOWED_KEY,
+        transferTo);
+    final MiniDFSCluster cluster =
+        new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+    final ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      cluster.waitActive();
+      final FileSystem fs = cluster.getFileSystem();
+      final DataNode dn = cluster.getDataNodes().get(0);
+      final byte[] buffer = new byte[BUFFER_SIZE];
+      final List<Path> files = new ArrayList<>();
+      for (int i = 0; i < nrFiles; i++) {
+        final Path file = new Path("/benchmark/file_" + i);
+        try (FSDataOutputStream out = fs.create(file)) {
+          for (long left = fileSizeMB * MEGA; left > 0; left -= BUFFER_SIZE) {
+            out.write(buffer, 0, (int) Math.min(left, BUFFER_SIZE));
+          }
+        }
+        files.add(file);
+      }
+
+      // The first pass reads the files into the page cache, so that the
+      // second measures the DataNode rather than the disk.
+      long execTime = 0;
+      long bytes = 0;
+      for (int pass = 0; pass < 2; pass++) {
+        final List<Future<Long>> futures = new ArrayList<>();
+        final long start = Time.monotonicNow();
+        for (final Path file : files) {
+          futures.add(executor.submit(new Callable<Long>() {
+            @Override
+            public Long call() throws IOException {
+              return scan ? scanFile(fs, dn, file) : readFile(fs, file);
+            }
+          }));
+        }
+        bytes = 0;
+        for (Future<Long> f : futures) {
+          try {
+            bytes += f.get();
+          } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+          }
+        }
+        execTime = Math.max(Time.monotonicNow() - start, 1);
+      }
+
+      final double megaBytes = (double) bytes / MEGA;
+      return String.format("----- DataNodeReadBenchmark ----- : %s%n"
+          + "          Mapped reads: %b%n"
+          + "            TransferTo: %b%n"
+          + "       Number of files: %d%n"
+          + "     Number of threads: %d%n"
+          + "Total MBytes processed: %.2f%n"
+          + "     Throughput mb/sec: %.2f%n"
+          + "    Test exec time sec: %.3f%n",
+          scan ? "scan" : "read", mmap, transferTo, nrFiles, threads,
+          megaBytes, megaBytes * 1000 / execTime, execTime / 1000.0);
+    } finally {
+      executor.shutdownNow();
+      cluster.shutdown();
+    }
+  }
+
+  private static long readFile(FileSystem fs, Path file) throws IOException {
+    final byte[] buffer = new byte[BUFFER_SIZE];
+    long bytes = 0;
+    try (FSDataInputStream in = fs.open(file)) {
+      for (int n; (n = in.read(buffer)) > 0;) {
+        bytes += n;
+      }
+    }
+    return bytes;
+  }
+
+  private static long scanFile(FileSystem fs, DataNode dn, Path file)
+      throws IOException {
+    long bytes = 0;
+    for (LocatedBlock b : DFSTestUtil.getAllBlocks(fs, file)) {
+      final ExtendedBlock block = b.getBlock();
+      // The sender is closed once the block is sent.
+      new BlockSender(block, 0, -1, false, true, true, dn, null,
+          CachingStrategy.newDefaultStrategy()).sendBlock(
+              new DataOutputStream(new IOUtils.NullOutputStream()), null, null);
+      bytes += block.getNumBytes();
+    }
+    return bytes;
+  }
+
+  public static void main(String[] args) throws Exception {
+    boolean scan = false;
+    int nrFiles = 4;
+    long fileSizeMB = 256;
+    int threads = 4;
+    boolean mmap = true;
+    boolean transferTo = true;
+    for (int i = 0; i < args.length; i++) {
+      if ("-read".equals(args[i])) {
+        scan = false;
+      } else if ("-scan".equals(args[i])) {
+        scan = true;
+      } else if ("-nrFiles".equals(args[i]) && i + 1 < args.length) {
+        nrFiles = Integer.parseInt(args[++i]);
+      } else if ("-fileSize".equals(args[i]) && i + 1 < args.length) {
+        fileSizeMB = Long.parseLong(args[++i]);
+      } else if ("-threads".equals(args[i]) && i + 1 < args.length) {
+        threads = Integer.parseInt(args[++i]);
+      } else if ("-mmap".equals(args[i]) && i + 1 < args.length) {
+        mmap = Boolean.parseBoolean(args[++i]);
+      } else if ("-transferTo".equals(args[i]) && i + 1 < args.length) {
+        transferTo = Boolean.parseBoolean(args[++i]);
+      } else {
+        System.err.println("Usage: DataNodeReadBenchmark [-read | -scan]"
+            + " [-nrFiles N] [-fileSize MB] [-threads T]"
+            + " [-mmap true|false] [-transferTo true|false]");
+        System.exit(-1);
+      }
+    }
+    System.out.print(
+        run(scan, nrFiles, fileSizeMB, threads, mmap, transferTo));
+  }
+}
@@ -1537,6 +1537,16 @@ public AutoCloseableLock acquireDatasetReadLock() {
     return datasetLock.acquire();
   }
 
+  @Override
+  public AutoCloseableLock acquireBlockPoolReadLock(String bpid) {
+    return datasetLock.acquire();
+  }
+
+  @Override
+  public AutoCloseableLock acquireReplicaLock(String bpid, long blockId) {
+    return datasetLock.acquire();
+  }
+
   @Override
   public Set<? extends Replica> deepCopyReplica(String bpid)
       throws IOException {
@@ -0,0 +1,192 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import static org.apache.hadoop.test.MetricsAsserts.getDoubleGauge;
+import static org.apache.hadoop.test.MetricsAsserts.getLongCounter;
+import static org.apache.hadoop.test.MetricsAsserts.getMetrics;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.AppendTestUtil;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
+import org.apache.hadoop.hdfs.protocol.LocatedBlock;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.metrics2.MetricsRecordBuilder;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Test writing the received packets on the packet writer threads of the
+ * volumes.
+ */
+public class TestBlockReceiverPacketWriter {
+  private static final int BLOCK_SIZE = 1024 * 1024;
+
+  private MiniDFSCluster cluster;
+
+  @After
+  public void tearDown() {
+    DataNodeFaultInjector.set(new DataNodeFaultInjector());
+    if (cluster != null) {
+      cluster.shutdown();
+      cluster = null;
+    }
+  }
+
+  private FileSystem startCluster(int numDataNodes, int coalesceBytes)
+      throws IOException {
+    Configuration conf = new HdfsConfiguration();
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, BLOCK_SIZE);
+    conf.setInt(DFSConfigKeys.DFS_DATANODE_PACKET_WRITER_THREADS_PER_VOLUME_KEY,
+        1);
+    conf.setInt(DFSConfigKeys.DFS_DATANODE_PACKET_WRITER_COALESCE_BYTES_KEY,
+        coalesceBytes);
+    conf.setBoolean(DFSConfigKeys.DFS_DATANODE_SYNC_BEHIND_WRITES_KEY, true);
+    cluster = new MiniDFSCluster.Builder(conf)
+        .numDataNodes(numDataNodes).build();
+    cluster.waitActive();
+    return cluster.getFileSystem();
+  }
+
+  /**
+   * Check that every replica of the file has the data and its checksums.
+   */
+  private void checkReplicas(FileSystem fs, Path path, byte[] data)
+      throws IOException {
+    AppendTestUtil.checkFullFile(fs, path, data.length, data);
+    for (LocatedBlock b : DFSTestUtil.getAllBlocks(fs, path)) {
+      final ExtendedBlock block = b.getBlock();
+      final int offset = (int) b.getStartOffset();
+      final byte[] expected = Arrays.copyOfRange(data, offset,
+          offset + (int) block.getNumBytes());
+      for (int i = 0; i < cluster.getDataNodes().size(); i++) {
+        final File blockFile = cluster.getBlockFile(i, block);
+        if (blockFile == null) {
+          continue;
+        }
+        assertArrayEquals(expected, Files.readAllBytes(blockFile.toPath()));
+        // The sender verifies the checksums of the replica.
+        new BlockSender(block, 0, -1, false, true, true,
+            cluster.getDataNodes().get(i), null,
+            CachingStrategy.newDefaultStrategy()).sendBlock(
+                new DataOutputStream(new IOUtils.NullOutputStream()), null,
+                null);
+      }
+    }
+  }
+
+  /**
+   * Test that the packets are acknowledged before they are written, and
+   * that the packets received during a write are coalesced into the next.
+   */
+  @Test(timeout = 60000)
+  public void testCoalescedWrites() throws Exception {
+    final FileSystem fs = startCluster(1, BLOCK_SIZE);
+    final CountDownLatch written = new CountDownLatch(1);
+    final AtomicBoolean delayed = new AtomicBoolean(false);
+    DataNodeFaultInjector.set(new DataNodeFaultInjector() {
+      @Override
+      public void delayWritingPackets() throws IOException {
+        if (delayed.compareAndSet(false, true)) {
+          try {
+            written.await();
+          } catch (InterruptedException e) {
+            throw new IOException(e);
+          }
+        }
+      }
+    });
+
+    final Path path = new Path("/testCoalescedWrites");
+    final byte[] data = AppendTestUtil.randomBytes(0xCAFE, BLOCK_SIZE / 2);
+    try (FSDataOutputStream out = fs.create(path, (short) 1)) {
+      out.write(data);
+      // The first write is blocked, so that the packets are acknowledged
+      // while none of them is on disk.
+      out.hflush();
+      assertTrue(delayed.get());
+      written.countDown();
+    }
+    checkReplicas(fs, path, data);
+
+    final MetricsRecordBuilder rb =
+        getMetrics(cluster.getDataNodes().get(0).getMetrics().name());
+    final long writes = getLongCounter("PacketWriterBatchNumWrites", rb);
+    assertTrue("writes=" + writes, writes >= 2);
+    assertTrue(getDoubleGauge("PacketWriterBatchAvgPackets", rb) > 1);
+    assertEquals(BLOCK_SIZE / 2, getLongCounter("BytesWritten", rb));
+  }
+
+  /**
+   * Test a pipeline which writes packets unaligned with the chunks, after
+   * hflush and hsync, and appends to the blocks, with a coalesced write
+   * smaller than a block.
+   */
+  @Test(timeout = 120000)
+  public void testPipelineWrites() throws Exception {
+    final FileSystem fs = startCluster(3, 128 * 1024);
+    final Path path = new Path("/testPipelineWrites");
+    final int length = 2 * BLOCK_SIZE + BLOCK_SIZE / 3;
+    final byte[] data = AppendTestUtil.randomBytes(0xBEEF, 2 * length);
+
+    int pos = 0;
+    try (FSDataOutputStream out = fs.create(path, (short) 3)) {
+      for (int i = 0; pos < length; i++) {
+        final int n = Math.min(10000 + i * 1000, length - pos);
+        out.write(data, pos, n);
+        pos += n;
+        if (i % 5 == 1) {
+          out.hflush();
+        } else if (i % 7 == 3) {
+          out.hsync();
+        }
+      }
+    }
+    checkReplicas(fs, path, Arrays.copyOf(data, pos));
+
+    try (FSDataOutputStream out = fs.append(path)) {
+      for (int i = 0; pos < data.length; i++) {
+        final int n = Math.min(70000 + i, data.length - pos);
+        out.write(data, pos, n);
+        pos += n;
+        if (i % 3 == 0) {
+          out.hflush();
+        }
+      }
+    }
+    checkReplicas(fs, path, data);
+  }
+}
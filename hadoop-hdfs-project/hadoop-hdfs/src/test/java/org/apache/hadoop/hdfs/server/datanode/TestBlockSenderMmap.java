@@ -0,0 +1,184 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.ChecksumException;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.AppendTestUtil;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsDatasetSpi;
+import org.apache.hadoop.hdfs.server.protocol.BlockRecoveryCommand.RecoveringBlock;
+import org.apache.hadoop.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test sending the replicas from their mapped data and checksums.
+ */
+public class TestBlockSenderMmap {
+  private static final int BLOCK_SIZE = 1024 * 1024;
+  private static final int FILE_SIZE = 2 * BLOCK_SIZE + BLOCK_SIZE / 2 + 17;
+
+  private MiniDFSCluster cluster;
+  private FileSystem fs;
+  private DataNode dn;
+
+  @Before
+  public void setUp() throws IOException {
+    Configuration conf = new HdfsConfiguration();
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, BLOCK_SIZE);
+    conf.setBoolean(DFSConfigKeys.DFS_DATANODE_MMAP_READS_ENABLED_KEY, true);
+    // Send the mapped data to the clients, rather than with transferTo.
+    conf.setBoolean(DFSConfigKeys.DFS_DATANODE_TRANSFERTO_ALLOWED_KEY, false);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+    cluster.waitActive();
+    fs = cluster.getFileSystem();
+    dn = cluster.getDataNodes().get(0);
+  }
+
+  @After
+  public void tearDown() {
+    if (cluster != null) {
+      cluster.shutdown();
+      cluster = null;
+    }
+  }
+
+  private byte[] createFile(Path path) throws IOException {
+    final byte[] data = AppendTestUtil.randomBytes(0xBEEF, FILE_SIZE);
+    try (FSDataOutputStream out = fs.create(path)) {
+      out.write(data);
+    }
+    return data;
+  }
+
+  private BlockSender newBlockSender(ExtendedBlock block, long offset,
+      long length) throws IOException {
+    return new BlockSender(block, offset, length, false, true, true, dn, null,
+        CachingStrategy.newDropBehind());
+  }
+
+  @Test(timeout = 60000)
+  public void testMappedReads() throws IOException {
+    final Path path = new Path("/testMappedReads");
+    final byte[] data = createFile(path);
+
+    try (FSDataInputStream in = fs.open(path)) {
+      final byte[] read = new byte[FILE_SIZE];
+      IOUtils.readFully(in, read, 0, FILE_SIZE);
+      assertArrayEquals(data, read);
+
+      // Positional reads within a chunk, across the chunks and the blocks,
+      // and up to the end of the file.
+      final int[][] ranges = {{100, 200}, {1000, 5000},
+          {BLOCK_SIZE - 100, 300}, {FILE_SIZE - 1000, 1000}};
+      for (int[] range : ranges) {
+        final byte[] buf = new byte[range[1]];
+        in.readFully(range[0], buf);
+        for (int i = 0; i < range[1]; i++) {
+          assertEquals(data[range[0] + i], buf[i]);
+        }
+      }
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testVerifyMappedChecksums() throws IOException {
+    final Path path = new Path("/testVerifyMappedChecksums");
+    createFile(path);
+    final ExtendedBlock block = DFSTestUtil.getFirstBlock(fs, path);
+
+    BlockSender sender = newBlockSender(block, 0, -1);
+    assertTrue(sender.isMapped());
+    final long read = sender.sendBlock(
+        new DataOutputStream(new IOUtils.NullOutputStream()), null, null);
+    assertEquals(BLOCK_SIZE + BLOCK_SIZE / 512 * 4, read);
+    assertFalse(sender.isMapped());
+
+    // A range of the block is mapped from its first chunk.
+    sender = newBlockSender(block, 1000, 3000);
+    assertTrue(sender.isMapped());
+    sender.sendBlock(
+        new DataOutputStream(new IOUtils.NullOutputStream()), null, null);
+
+    cluster.getMaterializedReplica(0, block).corruptData();
+    sender = newBlockSender(block, 0, -1);
+    try {
+      sender.sendBlock(
+          new DataOutputStream(new IOUtils.NullOutputStream()), null, null);
+      fail("The corrupt replica should fail the verification");
+    } catch (ChecksumException e) {
+      assertEquals(0, e.getPos());
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testTruncateMappedReplica() throws IOException {
+    final Path path = new Path("/testTruncateMappedReplica");
+    createFile(path);
+    final ExtendedBlock block = DFSTestUtil.getFirstBlock(fs, path);
+    final BlockSender sender = newBlockSender(block, 0, -1);
+    assertTrue(sender.isMapped());
+
+    // Truncate the replica in place, as the recovery of a truncated block
+    // does.
+    final FsDatasetSpi<?> dataset = dn.getFSDataset();
+    final long recoveryId = block.getGenerationStamp() + 1;
+    final long newLength = BLOCK_SIZE / 2 + 100;
+    dataset.initReplicaRecovery(new RecoveringBlock(block, null, recoveryId));
+    dataset.updateReplicaUnderRecovery(block, recoveryId, block.getBlockId(),
+        newLength);
+    assertEquals(newLength, dataset.getStoredBlock(block.getBlockPoolId(),
+        block.getBlockId()).getNumBytes());
+
+    // The sender still reads and verifies the whole replica it mapped.
+    final long read = sender.sendBlock(
+        new DataOutputStream(new IOUtils.NullOutputStream()), null, null);
+    assertEquals(BLOCK_SIZE + BLOCK_SIZE / 512 * 4, read);
+    assertFalse(sender.isMapped());
+  }
+
+  @Test(timeout = 120000)
+  public void testReadBenchmark() throws Exception {
+    tearDown();
+    assertThat(DataNodeReadBenchmark.run(false, 2, 2, 2, true, false),
+        containsString("Total MBytes processed: 4.00"));
+    assertThat(DataNodeReadBenchmark.run(true, 2, 2, 2, true, true),
+        containsString("Total MBytes processed: 4.00"));
+  }
+}
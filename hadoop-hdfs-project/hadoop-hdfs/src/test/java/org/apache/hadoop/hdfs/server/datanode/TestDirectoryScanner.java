@@ -1127,6 +1127,88 @@ public void testDirectoryScannerInFederatedCluster() throws Exception {
     }
   }
 
+  /**
+   * Test that the incremental scans verify a slice of the block subdirs at a
+   * time, skip the unchanged subdirs and find the differences in the changed
+   * ones.
+   */
+  @Test(timeout = 120000)
+  public void testIncrementalScan() throws Exception {
+    final Configuration conf = new HdfsConfiguration(CONF);
+    conf.setInt(
+        DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_INCREMENTAL_SUBDIRS_KEY,
+        DatanodeUtil.NUM_BLOCK_DIRS / 2);
+    cluster = new MiniDFSCluster.Builder(conf).build();
+    try {
+      cluster.waitActive();
+      bpid = cluster.getNamesystem().getBlockPoolId();
+      fds = DataNodeTestUtils.getFSDataset(cluster.getDataNodes().get(0));
+      client = cluster.getFileSystem().getClient();
+      scanner = new DirectoryScanner(cluster.getDataNodes().get(0), fds,
+          conf);
+      scanner.setRetainDiffs(true);
+
+      // The blocks of the file are all in the first subdir of their volumes.
+      createFile(GenericTestUtils.getMethodName(), BLOCK_LENGTH * 100, false);
+      // A subdir is only skipped once its modification time is old enough
+      // to tell its later changes.
+      Thread.sleep(3000);
+
+      // Each scan verifies half of the subdirs of the two volumes.
+      final int subdirs = DatanodeUtil.NUM_BLOCK_DIRS;
+      scanner.reconcileIncremental();
+      verifyStats(100, 0, 0, 0, 0, 0, 0);
+      verifySubdirs(subdirs, 0, 50, 0);
+      scanner.reconcileIncremental();
+      verifyStats(0, 0, 0, 0, 0, 0, 0);
+      verifySubdirs(2 * subdirs, 0, 100, 2);
+
+      // The second pass skips every subdir.
+      scanner.reconcileIncremental();
+      verifyStats(0, 0, 0, 0, 0, 0, 0);
+      verifySubdirs(2 * subdirs, subdirs, 50, 2);
+      scanner.reconcileIncremental();
+      verifySubdirs(2 * subdirs, 2 * subdirs, 100, 4);
+
+      // The subdir which changed is verified.
+      final long blockId = deleteBlockFile();
+      scanner.reconcileIncremental();
+      assertEquals(1, scanner.diffs.get(bpid).size());
+      assertEquals(1, scanner.stats.get(bpid).missingBlockFile);
+      verifyDeletion(blockId);
+      verifySubdirs(2 * subdirs + 1, 3 * subdirs - 1, 50, 4);
+    } finally {
+      if (scanner != null) {
+        scanner.shutdown();
+        scanner = null;
+      }
+      cluster.shutdown();
+    }
+  }
+
+  /**
+   * Verify the incremental scan metrics, summed over the volumes.
+   */
+  private void verifySubdirs(long scanned, long skipped, int progress,
+      long passes) throws IOException {
+    long totalScanned = 0;
+    long totalSkipped = 0;
+    long totalPasses = 0;
+    try (FsDatasetSpi.FsVolumeReferences volumes =
+        fds.getFsVolumeReferences()) {
+      for (FsVolumeSpi volume : volumes) {
+        final DataNodeVolumeMetrics metrics = volume.getMetrics();
+        totalScanned += metrics.getDirectoryScanSubdirsScanned();
+        totalSkipped += metrics.getDirectoryScanSubdirsSkipped();
+        totalPasses += metrics.getDirectoryScanPasses();
+        assertEquals(progress, metrics.getDirectoryScanProgress());
+      }
+      assertEquals(scanned, totalScanned);
+      assertEquals(skipped, totalSkipped);
+      assertEquals(passes, totalPasses);
+    }
+  }
+
   private static final String SEP = System.getProperty("file.separator");
 
   /**
@@ -17,13 +17,24 @@
  */
 package org.apache.hadoop.hdfs.server.datanode;
 
+import static org.apache.hadoop.test.MetricsAsserts.getDoubleGauge;
+import static org.apache.hadoop.test.MetricsAsserts.getLongCounter;
+import static org.apache.hadoop.test.MetricsAsserts.getMetrics;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.times;
 
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -39,10 +50,16 @@
 import org.apache.hadoop.hdfs.server.protocol.ReceivedDeletedBlockInfo.BlockStatus;
 
 import org.apache.hadoop.hdfs.server.protocol.StorageReceivedDeletedBlocks;
+import org.apache.hadoop.metrics2.MetricsRecordBuilder;
+import org.apache.hadoop.test.GenericTestUtils;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mockito;
 import org.mockito.exceptions.base.MockitoAssertionError;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.google.common.base.Supplier;
 
 /**
  * Verify that incremental block reports are generated in response to
@@ -168,8 +185,9 @@ public void testReportBlockDeleted() throws InterruptedException, IOException {
       // Trigger a heartbeat, this also triggers an IBR.
       DataNodeTestUtils.triggerHeartbeat(singletonDn);
 
-      // Ensure that the deleted block is reported.
-      Mockito.verify(nnSpy, times(1)).blockReceivedAndDeleted(
+      // Ensure that the deleted block is reported.  The IBR is sent by its
+      // own thread, once it wakes up.
+      Mockito.verify(nnSpy, timeout(10000).times(1)).blockReceivedAndDeleted(
           any(DatanodeRegistration.class),
           anyString(),
           any(StorageReceivedDeletedBlocks[].class));
@@ -230,4 +248,145 @@ public void testReplaceReceivedBlock() throws InterruptedException, IOException
       cluster = null;
     }
   }
+
+  /**
+   * Ensure that the blocks queued together are reported by a single IBR,
+   * and that the size and the latency of the IBR are in the metrics.
+   */
+  @Test (timeout=60000)
+  public void testIncrementalBlockReportBatch() throws Exception {
+    try {
+      final IncrementalBlockReportManager ibrManager = actor.getIbrManager();
+      final DatanodeStorage s =
+          singletonDn.getFSDataset().getStorage(storageUuid);
+      synchronized (ibrManager) {
+        for (int i = 0; i < 3; i++) {
+          ibrManager.addRDBI(new ReceivedDeletedBlockInfo(
+              new Block(DUMMY_BLOCK_ID + i, DUMMY_BLOCK_LENGTH,
+                  DUMMY_BLOCK_GENSTAMP),
+              BlockStatus.DELETED_BLOCK, null), s);
+        }
+      }
+      ibrManager.triggerDeletionReportForTests();
+
+      // The metrics are updated once the NameNode acknowledges the IBR.
+      final String name = singletonDn.getMetrics().name();
+      GenericTestUtils.waitFor(new Supplier<Boolean>() {
+        @Override
+        public Boolean get() {
+          return getLongCounter("IncrementalBlockReportBatchNumReports",
+              getMetrics(name)) > 0;
+        }
+      }, 100, 10000);
+      MetricsRecordBuilder rb = getMetrics(name);
+      assertEquals(1, getLongCounter("IncrementalBlockReportBatchNumReports",
+          rb));
+      assertEquals(3.0, getDoubleGauge("IncrementalBlockReportBatchAvgBlocks",
+          rb), 0);
+      assertEquals(1, getLongCounter("IncrementalBlockReportLatencyNumOps",
+          rb));
+    } finally {
+      cluster.shutdown();
+      cluster = null;
+    }
+  }
+
+  /**
+   * Ensure that the heartbeat thread keeps waiting for its timer while the
+   * IBR thread is stuck sending an IBR, and other blocks are pending.
+   */
+  @Test (timeout=60000)
+  public void testNoBusyHeartbeatWhileIBRInFlight() throws Exception {
+    final DataNodeFaultInjector oldInjector = DataNodeFaultInjector.get();
+    final CountDownLatch ibrInFlight = new CountDownLatch(1);
+    final CountDownLatch releaseIBR = new CountDownLatch(1);
+    try {
+      DatanodeProtocolClientSideTranslatorPB nnSpy = spyOnDnCallsToNn();
+      Mockito.doAnswer(new Answer<Object>() {
+        @Override
+        public Object answer(InvocationOnMock invocation) throws Throwable {
+          ibrInFlight.countDown();
+          releaseIBR.await();
+          return invocation.callRealMethod();
+        }
+      }).when(nnSpy).blockReceivedAndDeleted(
+          any(DatanodeRegistration.class),
+          anyString(),
+          any(StorageReceivedDeletedBlocks[].class));
+      final AtomicInteger iterations = new AtomicInteger();
+      DataNodeFaultInjector.set(new DataNodeFaultInjector() {
+        @Override
+        public void startOfferService() {
+          iterations.incrementAndGet();
+        }
+      });
+
+      injectBlockReceived();
+      ibrInFlight.await();
+      // The block is received again, and is pending until the IBR in flight
+      // completes.
+      injectBlockReceived();
+      assertTrue(actor.getIbrManager().sendImmediately());
+
+      iterations.set(0);
+      Thread.sleep(1000);
+      assertTrue("offerService iterated " + iterations.get() + " times",
+          iterations.get() <= 2);
+    } finally {
+      releaseIBR.countDown();
+      DataNodeFaultInjector.set(oldInjector);
+      cluster.shutdown();
+      cluster = null;
+    }
+  }
+
+  /**
+   * Ensure that the IBR thread keeps waiting for its own timer while the
+   * heartbeat thread is stuck and the heartbeat is overdue, and that it
+   * still reports the deleted blocks meanwhile.
+   */
+  @Test (timeout=60000)
+  public void testNoBusyIBRWhileHeartbeatStalled() throws Exception {
+    final DataNodeFaultInjector oldInjector = DataNodeFaultInjector.get();
+    final CountDownLatch heartbeatStalled = new CountDownLatch(1);
+    final CountDownLatch releaseHeartbeat = new CountDownLatch(1);
+    try {
+      DatanodeProtocolClientSideTranslatorPB nnSpy = spyOnDnCallsToNn();
+      DataNodeFaultInjector.set(new DataNodeFaultInjector() {
+        @Override
+        public void startOfferService() throws Exception {
+          heartbeatStalled.countDown();
+          releaseHeartbeat.await();
+        }
+      });
+      heartbeatStalled.await();
+      actor.getScheduler().scheduleHeartbeat();
+
+      final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+      long ibrThreadId = -1;
+      for (ThreadInfo info : threads.getThreadInfo(threads.getAllThreadIds())) {
+        if (info != null && info.getThreadName().startsWith("ibr-executor")) {
+          ibrThreadId = info.getThreadId();
+        }
+      }
+      assertTrue(ibrThreadId >= 0);
+      final long startCpuTime = threads.getThreadCpuTime(ibrThreadId);
+      Thread.sleep(1000);
+      final long cpuTimeMs =
+          (threads.getThreadCpuTime(ibrThreadId) - startCpuTime) / 1000000;
+      assertTrue("IBR thread used " + cpuTimeMs + "ms of CPU in 1s",
+          cpuTimeMs < 200);
+
+      injectBlockDeleted();
+      Mockito.verify(nnSpy, timeout(10000)).blockReceivedAndDeleted(
+          any(DatanodeRegistration.class),
+          anyString(),
+          any(StorageReceivedDeletedBlocks[].class));
+    } finally {
+      releaseHeartbeat.countDown();
+      DataNodeFaultInjector.set(oldInjector);
+      cluster.shutdown();
+      cluster = null;
+    }
+  }
 }
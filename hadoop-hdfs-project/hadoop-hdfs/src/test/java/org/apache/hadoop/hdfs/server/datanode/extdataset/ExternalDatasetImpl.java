@@ -455,6 +455,16 @@ public AutoCloseableLock acquireDatasetReadLock() {
     return null;
   }
 
+  @Override
+  public AutoCloseableLock acquireBlockPoolReadLock(String bpid) {
+    return null;
+  }
+
+  @Override
+  public AutoCloseableLock acquireReplicaLock(String bpid, long blockId) {
+    return null;
+  }
+
   @Override
   public Set<? extends Replica> deepCopyReplica(String bpid)
       throws IOException {
@@ -0,0 +1,123 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode.fsdataset.impl;
+
+import java.io.File;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.hadoop.hdfs.protocol.Block;
+import org.apache.hadoop.hdfs.protocol.BlockListAsLongs;
+import org.apache.hadoop.hdfs.server.datanode.DatanodeUtil;
+import org.apache.hadoop.hdfs.server.datanode.FinalizedReplica;
+import org.apache.hadoop.hdfs.server.datanode.ReplicaInfo;
+import org.apache.hadoop.util.Time;
+
+/**
+ * Benchmark the heap used by the {@link ReplicaMap} and its replicas, the
+ * lookups of replicas and the building of the block reports from the map.
+ *
+ * <pre>
+ * Usage: ReplicaMapBenchmark [-replicas N] [-volumes V]
+ * </pre>
+ * N finalized replicas are spread over V volume directories, in the
+ * id-based layout of the finalized directory.  The heap used is measured
+ * after a GC, so the heap of the benchmark should be large enough for the
+ * replicas not to be collected by the JVM in the middle of the run.
+ */
+public class ReplicaMapBenchmark {
+  private static final String BPID = "BP-BENCHMARK";
+
+  private static long usedHeap() {
+    final Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  /** @return the result line. */
+  static String run(int numReplicas, int numVolumes) {
+    final File[] finalizedDirs = new File[numVolumes];
+    for (int v = 0; v < numVolumes; v++) {
+      finalizedDirs[v] = new File("/data/" + v + "/current/" + BPID
+          + "/current/finalized");
+    }
+
+    final long heapBefore = usedHeap();
+    long start = Time.monotonicNowNanos();
+    final ReplicaMap map = new ReplicaMap(new ReentrantReadWriteLock());
+    for (int i = 0; i < numReplicas; i++) {
+      final long blockId = 1073741825L + i;
+      final File dir = DatanodeUtil.idToBlockDir(
+          finalizedDirs[i % numVolumes], blockId);
+      map.add(BPID, new FinalizedReplica(
+          new Block(blockId, 134217728L, 1001 + i), null, dir));
+    }
+    final long addNanos = Time.monotonicNowNanos() - start;
+    final long heapUsed = usedHeap() - heapBefore;
+
+    start = Time.monotonicNowNanos();
+    for (int i = 0; i < numReplicas; i++) {
+      if (map.get(BPID, 1073741825L + i) == null) {
+        throw new IllegalStateException("Replica " + i + " not found");
+      }
+    }
+    final long getNanos = Time.monotonicNowNanos() - start;
+
+    start = Time.monotonicNowNanos();
+    final BlockListAsLongs.Builder[] builders =
+        new BlockListAsLongs.Builder[numVolumes];
+    for (int v = 0; v < numVolumes; v++) {
+      builders[v] = BlockListAsLongs.builder();
+    }
+    for (ReplicaInfo r : map.replicas(BPID)) {
+      builders[(int) ((r.getBlockId() - 1073741825L) % numVolumes)].add(r);
+    }
+    int reported = 0;
+    for (BlockListAsLongs.Builder builder : builders) {
+      reported += builder.build().getNumberOfBlocks();
+    }
+    final long reportNanos = Time.monotonicNowNanos() - start;
+    if (reported != numReplicas) {
+      throw new IllegalStateException("Reported " + reported + " replicas");
+    }
+
+    return String.format("replicas=%d volumes=%d heap=%.1fbytes/replica"
+        + " add=%.3fus/op get=%.3fus/op blockReport=%dms",
+        numReplicas, numVolumes, (double) heapUsed / numReplicas,
+        addNanos / 1000.0 / numReplicas, getNanos / 1000.0 / numReplicas,
+        reportNanos / 1000000);
+  }
+
+  public static void main(String[] args) {
+    int numReplicas = 1000000;
+    int numVolumes = 12;
+    for (int i = 0; i < args.length; i++) {
+      if ("-replicas".equals(args[i]) && i + 1 < args.length) {
+        numReplicas = Integer.parseInt(args[++i]);
+      } else if ("-volumes".equals(args[i]) && i + 1 < args.length) {
+        numVolumes = Integer.parseInt(args[++i]);
+      } else {
+        System.err.println(
+            "Usage: ReplicaMapBenchmark [-replicas N] [-volumes V]");
+        System.exit(-1);
+      }
+    }
+    System.out.println(run(numReplicas, numVolumes));
+  }
+}
@@ -52,9 +52,12 @@
 import org.apache.hadoop.hdfs.server.datanode.ShortCircuitRegistry;
 import org.apache.hadoop.hdfs.server.datanode.StorageLocation;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsDatasetSpi;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeSpi;
 import org.apache.hadoop.hdfs.server.protocol.NamespaceInfo;
 import org.apache.hadoop.io.MultipleIOException;
+import org.apache.hadoop.metrics2.MetricsRecordBuilder;
 import org.apache.hadoop.test.GenericTestUtils;
+import org.apache.hadoop.util.AutoCloseableLock;
 import org.apache.hadoop.util.FakeTimer;
 import org.apache.hadoop.util.StringUtils;
 import org.junit.Assert;
@@ -75,12 +78,18 @@
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DN_CACHED_DFSUSED_CHECK_INTERVAL_MS;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_SCAN_PERIOD_HOURS_KEY;
+import static org.apache.hadoop.test.MetricsAsserts.getDoubleGauge;
+import static org.apache.hadoop.test.MetricsAsserts.getLongCounter;
+import static org.apache.hadoop.test.MetricsAsserts.getMetrics;
 import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.assertNull;
@@ -307,6 +316,119 @@ public void run() {}
                  totalNumReplicas);
   }
 
+  @Test(timeout = 30000)
+  public void testVolumeLockIsolation() throws Exception {
+    final String bpid = BLOCK_POOL_IDS[0];
+    final ExtendedBlock[] blocks = new ExtendedBlock[NUM_INIT_VOLUMES];
+    final FsVolumeImpl[] vols = new FsVolumeImpl[NUM_INIT_VOLUMES];
+    for (int i = 0; i < NUM_INIT_VOLUMES; i++) {
+      blocks[i] = new ExtendedBlock(bpid, i);
+      try (ReplicaHandler replica =
+          dataset.createRbw(StorageType.DEFAULT, blocks[i], false)) {
+        vols[i] = (FsVolumeImpl) replica.getVolume();
+      }
+    }
+    assertFalse(vols[0] == vols[1]);
+
+    // a stuck operation holds the lock of the first volume.
+    final DatasetLockManager lockManager = dataset.getLockManager();
+    final CountDownLatch locked = new CountDownLatch(1);
+    final CountDownLatch unlock = new CountDownLatch(1);
+    final Thread stuck = new Thread() {
+      @Override
+      public void run() {
+        try (AutoCloseableLock lock =
+            lockManager.acquireVolumeLock(bpid, vols[0])) {
+          locked.countDown();
+          unlock.await();
+        } catch (InterruptedException e) {
+          LOG.warn("Interrupted", e);
+        }
+      }
+    };
+    stuck.start();
+    locked.await();
+
+    // the replicas of the other volume are not held up.
+    dataset.invalidate(bpid, new Block[] {blocks[1].getLocalBlock()});
+    assertNull(dataset.fetchReplicaInfo(bpid, blocks[1].getBlockId()));
+
+    final Thread waiting = new Thread() {
+      @Override
+      public void run() {
+        try {
+          dataset.invalidate(bpid, new Block[] {blocks[0].getLocalBlock()});
+        } catch (IOException e) {
+          LOG.warn("Failed to invalidate " + blocks[0], e);
+        }
+      }
+    };
+    waiting.start();
+    GenericTestUtils.waitFor(new Supplier<Boolean>() {
+      @Override
+      public Boolean get() {
+        return waiting.getState() == Thread.State.WAITING;
+      }
+    }, 10, 10000);
+    assertTrue(lockManager.isVolumeLocked(vols[0].getStorageID()));
+    assertTrue(dataset.contains(blocks[0]));
+    unlock.countDown();
+    waiting.join();
+    stuck.join();
+    assertNull(dataset.fetchReplicaInfo(bpid, blocks[0].getBlockId()));
+
+    final MetricsRecordBuilder rb = getMetrics(vols[0].getMetrics().name());
+    assertTrue(getLongCounter("LockWaitRateNumOps", rb) >= 2);
+    assertTrue(getDoubleGauge("LockWaitRateAvgTime", rb) > 0);
+  }
+
+  @Test(timeout = 30000)
+  public void testVolumeLockTryLockAndRemoval() throws Exception {
+    final String bpid = BLOCK_POOL_IDS[0];
+    final ReentrantReadWriteLock datasetLock = new ReentrantReadWriteLock();
+    final DatasetLockManager lockManager =
+        new DatasetLockManager(datasetLock, false);
+    final FsVolumeSpi volume = Mockito.mock(FsVolumeSpi.class);
+    when(volume.getStorageID()).thenReturn("storage-1");
+
+    // a failed tryLock releases the locks it took above the volume.
+    final AutoCloseableLock lock = lockManager.acquireVolumeLock(bpid, volume);
+    final AtomicBoolean locked = new AtomicBoolean(true);
+    final Thread other = new Thread() {
+      @Override
+      public void run() {
+        locked.set(lock.tryLock());
+      }
+    };
+    other.start();
+    other.join();
+    assertFalse(locked.get());
+    assertEquals(1, datasetLock.getReadLockCount());
+    lock.release();
+    assertEquals(0, datasetLock.getReadLockCount());
+    assertTrue(lock.tryLock());
+    lock.release();
+
+    // the locks are reused until the volume or the block pool is removed.
+    try (AutoCloseableLock l = lockManager.acquireVolumeLock(bpid, volume)) {
+      assertSame(lock, l);
+    }
+    lockManager.removeVolumeLock(volume.getStorageID());
+    try (AutoCloseableLock l = lockManager.acquireVolumeLock(bpid, volume)) {
+      assertNotSame(lock, l);
+    }
+    final AutoCloseableLock blockPoolLock =
+        lockManager.acquireBlockPoolLock(bpid);
+    blockPoolLock.release();
+    try (AutoCloseableLock l = lockManager.acquireBlockPoolLock(bpid)) {
+      assertSame(blockPoolLock, l);
+    }
+    lockManager.removeBlockPoolLock(bpid);
+    try (AutoCloseableLock l = lockManager.acquireBlockPoolLock(bpid)) {
+      assertNotSame(blockPoolLock, l);
+    }
+  }
+
   @Test(timeout = 30000)
   public void testRemoveTwoVolumes() throws IOException {
     // Feed FsDataset with block metadata.
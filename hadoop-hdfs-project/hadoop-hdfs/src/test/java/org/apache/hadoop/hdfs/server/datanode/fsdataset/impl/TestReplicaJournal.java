@@ -0,0 +1,263 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode.fsdataset.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.MiniDFSCluster.DataNodeProperties;
+import org.apache.hadoop.hdfs.protocol.Block;
+import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
+import org.apache.hadoop.hdfs.server.datanode.FileIoProvider;
+import org.apache.hadoop.hdfs.server.datanode.FinalizedReplica;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Supplier;
+
+/**
+ * Test the journal of the finalized replicas of the block pool slices.
+ */
+public class TestReplicaJournal {
+  private static final int BLOCK_SIZE = 4096;
+
+  private File dir;
+
+  @Before
+  public void setUp() {
+    dir = GenericTestUtils.getTestDir(getClass().getSimpleName());
+    FileUtil.fullyDelete(dir);
+    assertTrue(dir.mkdirs());
+  }
+
+  @After
+  public void tearDown() {
+    FileUtil.fullyDelete(dir);
+  }
+
+  private ReplicaJournal newJournal(long compactionRecords) {
+    FsVolumeImpl volume = mock(FsVolumeImpl.class);
+    doReturn(new FileIoProvider(null, null)).when(volume).getFileIoProvider();
+    return new ReplicaJournal(volume, dir, compactionRecords);
+  }
+
+  private static Map<Long, Block> toMap(Block... blocks) {
+    final Map<Long, Block> map = new HashMap<Long, Block>();
+    for (Block b : blocks) {
+      map.put(b.getBlockId(), b);
+    }
+    return map;
+  }
+
+  /** Compare the blocks with their lengths, unlike {@link Block#equals}. */
+  private static void assertReplicas(Map<Long, Block> expected,
+      Map<Long, Block> actual) {
+    assertNotNull(actual);
+    assertEquals(expected.keySet(), actual.keySet());
+    for (Block b : expected.values()) {
+      final Block a = actual.get(b.getBlockId());
+      assertEquals(b.getGenerationStamp(), a.getGenerationStamp());
+      assertEquals(b.getNumBytes(), a.getNumBytes());
+    }
+  }
+
+  @Test
+  public void testReplay() throws IOException {
+    ReplicaJournal journal = newJournal(100);
+    assertNull(journal.load());
+
+    final Block b1 = new Block(1, 100, 1001);
+    final Block b2 = new Block(2, 200, 1002);
+    final Block b3 = new Block(3, 300, 1003);
+    journal.open(Arrays.asList(b1, b2));
+    final Block b2Appended = new Block(2, 250, 1004);
+    journal.add(b2Appended);
+    journal.add(b3);
+    journal.remove(1);
+    journal.close();
+    assertReplicas(toMap(b2Appended, b3), newJournal(100).load());
+
+    // A record torn by a crash ends the log.
+    try (FileOutputStream out =
+             new FileOutputStream(journal.getFile(), true)) {
+      out.write(new byte[] {1, 0, 0, 0, 0, 0, 0, 0, 4});
+    }
+    assertReplicas(toMap(b2Appended, b3), newJournal(100).load());
+
+    // The journal is rewritten when opened, without the torn record.
+    journal = newJournal(100);
+    journal.open(journal.load().values());
+    journal.remove(3);
+    journal.close();
+    assertReplicas(toMap(b2Appended), newJournal(100).load());
+  }
+
+  @Test
+  public void testCompaction() throws IOException {
+    final ReplicaJournal journal = newJournal(4);
+    final List<Block> replicas = new ArrayList<Block>();
+    journal.open(replicas);
+    for (int i = 0; i < 5; i++) {
+      assertFalse(journal.startCompaction());
+      replicas.add(new Block(i, i, i));
+      journal.add(replicas.get(i));
+    }
+    assertEquals(5, journal.getNumRecords());
+    assertTrue(journal.startCompaction());
+    assertFalse(journal.startCompaction());
+
+    // The changes made during the compaction follow the replicas.
+    final Block changed = new Block(1, 10, 10);
+    journal.add(changed);
+    journal.remove(3);
+    journal.remove(4);
+    final Map<Long, Block> expected = toMap(replicas.get(0), changed,
+        replicas.get(2));
+    assertReplicas(expected, newJournal(4).load());
+
+    journal.finishCompaction(replicas);
+    assertEquals(8, journal.getNumRecords());
+    assertReplicas(expected, newJournal(4).load());
+    assertFalse(
+        new File(dir, ReplicaJournal.JOURNAL_FILE + ".next").exists());
+
+    journal.add(new Block(5, 5, 5));
+    journal.close();
+    expected.put(5L, new Block(5, 5, 5));
+    assertReplicas(expected, newJournal(4).load());
+  }
+
+  /**
+   * Test that a DataNode loads its finalized replicas from the journals
+   * when it was not shut down cleanly, and that the changes missed by the
+   * journals are reconciled.
+   */
+  @Test(timeout = 120000)
+  public void testLoadReplicasFromJournal() throws Exception {
+    final Configuration conf = new HdfsConfiguration();
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, BLOCK_SIZE);
+    conf.setBoolean(DFSConfigKeys.DFS_DATANODE_REPLICA_JOURNAL_ENABLED_KEY,
+        true);
+    conf.setLong(
+        DFSConfigKeys.DFS_DATANODE_REPLICA_JOURNAL_COMPACTION_RECORDS_KEY, 4);
+    conf.setInt(DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_INTERVAL_KEY, -1);
+    final MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf)
+        .numDataNodes(1).storagesPerDatanode(1).build();
+    try {
+      cluster.waitActive();
+      final FileSystem fs = cluster.getFileSystem();
+      final String bpid = cluster.getNamesystem().getBlockPoolId();
+      for (int i = 0; i < 10; i++) {
+        DFSTestUtil.createFile(fs, new Path("/file" + i), BLOCK_SIZE / 2,
+            (short) 1, i);
+      }
+      for (int i = 0; i < 3; i++) {
+        fs.delete(new Path("/file" + i), false);
+      }
+      try (FSDataOutputStream out = fs.append(new Path("/file3"))) {
+        out.write(new byte[100]);
+      }
+      final ExtendedBlock appended =
+          DFSTestUtil.getFirstBlock(fs, new Path("/file3"));
+      final ExtendedBlock lost =
+          DFSTestUtil.getFirstBlock(fs, new Path("/file4"));
+      final FsDatasetImpl dataset =
+          (FsDatasetImpl) cluster.getDataNodes().get(0).getFSDataset();
+      GenericTestUtils.waitFor(new Supplier<Boolean>() {
+        @Override
+        public Boolean get() {
+          return dataset.getFinalizedBlocks(bpid).size() == 7 &&
+              dataset.asyncDiskService.countPendingDeletions() == 0;
+        }
+      }, 100, 30000);
+      final FsVolumeImpl volume = (FsVolumeImpl)
+          dataset.getFinalizedBlocks(bpid).get(0).getVolume();
+      final ReplicaJournal journal =
+          volume.getBlockPoolSlice(bpid).getReplicaJournal();
+      assertNotNull(journal);
+      // The journal was compacted, from 15 changes.
+      GenericTestUtils.waitFor(new Supplier<Boolean>() {
+        @Override
+        public Boolean get() {
+          return journal.getNumRecords() < 15;
+        }
+      }, 100, 30000);
+
+      // Stop the DataNode without the cache of its replicas, as on a crash,
+      // and lose a replica which is still in the journal.
+      final File lostFile = cluster.getBlockFile(0, lost);
+      final File bpDir = volume.getBlockPoolSlice(bpid).getDirectory();
+      DataNodeProperties dnProps = cluster.stopDataNode(0);
+      new File(new File(bpDir, "current"), "replicas").delete();
+      assertTrue(lostFile.delete());
+      cluster.restartDataNode(dnProps, true);
+      cluster.waitActive();
+
+      final FsDatasetImpl restarted =
+          (FsDatasetImpl) cluster.getDataNodes().get(0).getFSDataset();
+      List<FinalizedReplica> replicas = restarted.getFinalizedBlocks(bpid);
+      assertEquals(7, replicas.size());
+      final FinalizedReplica replica = (FinalizedReplica)
+          restarted.fetchReplicaInfo(bpid, appended.getBlockId());
+      assertEquals(appended.getGenerationStamp(),
+          replica.getGenerationStamp());
+      assertEquals(BLOCK_SIZE / 2 + 100, replica.getNumBytes());
+      assertNotNull(restarted.fetchReplicaInfo(bpid, lost.getBlockId()));
+
+      // The directory scanner reconciles the replica missed by the journal,
+      // and journals the change.
+      restarted.checkAndUpdate(bpid, lost.getBlockId(), null, null,
+          replica.getVolume());
+      assertEquals(6, restarted.getFinalizedBlocks(bpid).size());
+      dnProps = cluster.stopDataNode(0);
+      new File(new File(bpDir, "current"), "replicas").delete();
+      cluster.restartDataNode(dnProps, true);
+      cluster.waitActive();
+      replicas = ((FsDatasetImpl) cluster.getDataNodes().get(0)
+          .getFSDataset()).getFinalizedBlocks(bpid);
+      assertEquals(6, replicas.size());
+    } finally {
+      cluster.shutdown();
+    }
+  }
+}
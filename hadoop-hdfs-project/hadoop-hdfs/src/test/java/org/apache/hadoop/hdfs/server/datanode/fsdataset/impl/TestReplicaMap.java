@@ -17,14 +17,20 @@
  */
 package org.apache.hadoop.hdfs.server.datanode.fsdataset.impl;
 
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import org.apache.hadoop.hdfs.protocol.Block;
 import org.apache.hadoop.hdfs.server.datanode.FinalizedReplica;
+import org.apache.hadoop.hdfs.server.datanode.ReplicaInfo;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -131,4 +137,74 @@ public void testAddAll() {
     assertNull(map.get(bpid, 1234));
     assertNotNull(map.get(bpid, 5678));
   }
+
+  @Test
+  public void testReplicaIndex() {
+    final ReplicaIndex index = new ReplicaIndex();
+    final int n = 10000;
+    // block ids with the same low bits, and negative ones
+    for (int i = 0; i < n; i++) {
+      assertNull(index.put(newReplica(((long) i << 32) - n)));
+    }
+    assertEquals(n, index.size());
+    assertTrue(index.capacity() > n);
+    for (int i = 0; i < n; i++) {
+      final long blockId = ((long) i << 32) - n;
+      assertEquals(blockId, index.get(blockId).getBlockId());
+    }
+    assertNull(index.get(-n + 1));
+
+    // replace a replica
+    final ReplicaInfo replica = newReplica(-n);
+    assertNotNull(index.put(replica));
+    assertSame(replica, index.get(-n));
+    assertEquals(n, index.size());
+
+    // remove every other replica while iterating
+    int visited = 0;
+    for (Iterator<ReplicaInfo> it = index.iterator(); it.hasNext(); ) {
+      final ReplicaInfo r = it.next();
+      if (((r.getBlockId() + n) >>> 32) % 2 == 0) {
+        it.remove();
+      }
+      visited++;
+    }
+    assertEquals(n, visited);
+    assertEquals(n / 2, index.size());
+    for (int i = 0; i < n; i++) {
+      final long blockId = ((long) i << 32) - n;
+      assertEquals(i % 2 == 1, index.get(blockId) != null);
+      assertEquals(i % 2 == 1, index.remove(blockId) != null);
+    }
+    assertEquals(0, index.size());
+
+    // the removed slots are reused
+    for (int i = 0; i < n; i++) {
+      index.put(newReplica(i));
+    }
+    assertEquals(n, index.size());
+    int count = 0;
+    for (ReplicaInfo r : index) {
+      assertSame(r, index.get(r.getBlockId()));
+      count++;
+    }
+    assertEquals(n, count);
+
+    try {
+      for (ReplicaInfo r : index) {
+        index.remove(r.getBlockId());
+      }
+      fail("Expected exception not thrown");
+    } catch (ConcurrentModificationException expected) { }
+  }
+
+  @Test
+  public void testReplicaMapBenchmark() throws Exception {
+    final String result = ReplicaMapBenchmark.run(10000, 4);
+    assertTrue(result, result.startsWith("replicas=10000 "));
+  }
+
+  private static ReplicaInfo newReplica(long blockId) {
+    return new FinalizedReplica(new Block(blockId, 1, 1), null, null);
+  }
 }
@@ -0,0 +1,139 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.fs.permission.PermissionStatus;
+import org.apache.hadoop.hdfs.DFSUtil;
+import org.apache.hadoop.hdfs.server.namenode.snapshot.Snapshot;
+import org.apache.hadoop.hdfs.util.ReadOnlyList;
+import org.apache.hadoop.util.StringUtils;
+import org.apache.hadoop.util.Time;
+
+/**
+ * Benchmark adding, listing and removing the children of a single
+ * {@link INodeDirectory} as the directory grows.  Only the in-memory cost of
+ * the children list is measured, without RPC, locking or edit logging.
+ *
+ * <pre>
+ * Usage: DirectoryChildrenBenchmark [-sizes N1,N2,...] [-threshold T]
+ * </pre>
+ * Children are added and removed in random order and listed in batches of
+ * {@link #LIST_BATCH} like getListing does.  Children lists larger than the
+ * threshold are segmented; a very large threshold measures a plain
+ * {@link ArrayList}.
+ */
+public class DirectoryChildrenBenchmark {
+  static final int LIST_BATCH = 1000;
+  private static final PermissionStatus PERM = PermissionStatus.createImmutable(
+      "user", "group", FsPermission.createImmutable((short)0755));
+
+  /** @return one result line per directory size. */
+  static List<String> run(int[] sizes, int threshold) {
+    INodeDirectory.setSegmentedChildrenThreshold(threshold);
+    final List<String> results = new ArrayList<String>();
+    try {
+      for (int size : sizes) {
+        results.add(run(size));
+      }
+    } finally {
+      INodeDirectory.setSegmentedChildrenThreshold(
+          INodeDirectory.DEFAULT_SEGMENTED_CHILDREN_THRESHOLD);
+    }
+    return results;
+  }
+
+  private static String run(int size) {
+    final Random random = new Random(size);
+    final List<INode> children = new ArrayList<INode>(size);
+    for (int i = 0; i < size; i++) {
+      children.add(new INodeDirectory(i + 2,
+          DFSUtil.string2Bytes("child" + i), PERM, 0L));
+    }
+    final INodeDirectory dir = new INodeDirectory(1,
+        DFSUtil.string2Bytes("dir"), PERM, 0L);
+
+    Collections.shuffle(children, random);
+    long start = Time.monotonicNowNanos();
+    for (INode child : children) {
+      dir.addChild(child);
+    }
+    final long createNanos = Time.monotonicNowNanos() - start;
+
+    start = Time.monotonicNowNanos();
+    byte[] startAfter = new byte[0];
+    int listed = 0;
+    for (;;) {
+      final ReadOnlyList<INode> list = dir.getChildrenList(
+          Snapshot.CURRENT_STATE_ID);
+      final int from = INodeDirectory.nextChild(list, startAfter);
+      final int to = Math.min(from + LIST_BATCH, list.size());
+      for (int i = from; i < to; i++) {
+        startAfter = list.get(i).getLocalNameBytes();
+        listed++;
+      }
+      if (to == list.size()) {
+        break;
+      }
+    }
+    final long listNanos = Time.monotonicNowNanos() - start;
+    if (listed != size) {
+      throw new IllegalStateException("listed " + listed + " != " + size);
+    }
+
+    Collections.shuffle(children, random);
+    start = Time.monotonicNowNanos();
+    for (INode child : children) {
+      dir.removeChild(child);
+    }
+    final long deleteNanos = Time.monotonicNowNanos() - start;
+
+    return String.format(
+        "size=%d create=%.3fus/op list=%.3fus/op delete=%.3fus/op",
+        size, createNanos / 1000.0 / size, listNanos / 1000.0 / size,
+        deleteNanos / 1000.0 / size);
+  }
+
+  public static void main(String[] args) {
+    int[] sizes = {1000, 10000, 100000, 1000000};
+    int threshold = INodeDirectory.DEFAULT_SEGMENTED_CHILDREN_THRESHOLD;
+    for (int i = 0; i < args.length; i++) {
+      if ("-sizes".equals(args[i]) && i + 1 < args.length) {
+        final String[] values = StringUtils.getTrimmedStrings(args[++i]);
+        sizes = new int[values.length];
+        for (int j = 0; j < values.length; j++) {
+          sizes[j] = Integer.parseInt(values[j]);
+        }
+      } else if ("-threshold".equals(args[i]) && i + 1 < args.length) {
+        threshold = Integer.parseInt(args[++i]);
+      } else {
+        System.err.println("Usage: DirectoryChildrenBenchmark"
+            + " [-sizes N1,N2,...] [-threshold T]");
+        System.exit(-1);
+      }
+    }
+    for (String result : run(sizes, threshold)) {
+      System.out.println(result);
+    }
+  }
+}
@@ -0,0 +1,147 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogLoader.PositionTrackingInputStream;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.util.Time;
+
+/**
+ * Benchmark the serialization and deserialization of each
+ * {@link FSEditLogOpCodes op code}, without any journal or namesystem cost.
+ *
+ * <pre>
+ * Usage: EditLogOpBenchmark [-edits FILE] [-ops N]
+ * </pre>
+ * One sample op per op code is taken from an edits file, the editsStored
+ * file of the offline edits viewer tests by default, since it holds every
+ * op code.  Each sample is written N times into a log buffer and read N
+ * times back, in batches of {@link #BATCH} ops.
+ */
+public class EditLogOpBenchmark {
+  static final int BATCH = 1000;
+
+  static File getDefaultEditsFile() {
+    return new File(System.getProperty("test.cache.data",
+        "target/test-classes"), "editsStored");
+  }
+
+  /** @return the serialized form of the first op of each op code. */
+  static Map<FSEditLogOpCodes, byte[]> loadSamples(File edits)
+      throws IOException {
+    final Map<FSEditLogOpCodes, byte[]> samples =
+        new EnumMap<FSEditLogOpCodes, byte[]>(FSEditLogOpCodes.class);
+    final EditLogFileInputStream in = new EditLogFileInputStream(edits);
+    try {
+      FSEditLogOp op;
+      while ((op = in.readOp()) != null) {
+        if (!samples.containsKey(op.opCode)) {
+          final DataOutputBuffer buf = new DataOutputBuffer();
+          new FSEditLogOp.Writer(buf).writeOp(op);
+          samples.put(op.opCode, Arrays.copyOf(buf.getData(), buf.getLength()));
+        }
+      }
+    } finally {
+      IOUtils.cleanup(null, in);
+    }
+    return samples;
+  }
+
+  private static FSEditLogOp.Reader newReader(byte[] data, int length) {
+    final PositionTrackingInputStream tracker = new PositionTrackingInputStream(
+        new ByteArrayInputStream(data, 0, length));
+    return FSEditLogOp.Reader.create(new DataInputStream(tracker), tracker,
+        NameNodeLayoutVersion.CURRENT_LAYOUT_VERSION);
+  }
+
+  /** @return one result line per op code. */
+  static List<String> run(File edits, int numOps) throws IOException {
+    final List<String> results = new ArrayList<String>();
+    for (Map.Entry<FSEditLogOpCodes, byte[]> e :
+        loadSamples(edits).entrySet()) {
+      results.add(run(e.getKey(), e.getValue(), numOps));
+    }
+    return results;
+  }
+
+  private static String run(FSEditLogOpCodes opCode, byte[] sample,
+      int numOps) throws IOException {
+    final FSEditLogOp op = newReader(sample, sample.length).readOp(false);
+    final DataOutputBuffer buf = new DataOutputBuffer(
+        (sample.length + 1) * BATCH);
+    final FSEditLogOp.Writer writer = new FSEditLogOp.Writer(buf);
+
+    long start = Time.monotonicNowNanos();
+    for (int i = 0; i < numOps; i++) {
+      if (i % BATCH == 0) {
+        buf.reset();
+      }
+      writer.writeOp(op);
+    }
+    final long writeNanos = Time.monotonicNowNanos() - start;
+
+    buf.reset();
+    for (int i = 0; i < BATCH; i++) {
+      writer.writeOp(op);
+    }
+    start = Time.monotonicNowNanos();
+    FSEditLogOp.Reader reader = null;
+    for (int i = 0; i < numOps; i++) {
+      if (i % BATCH == 0) {
+        reader = newReader(buf.getData(), buf.getLength());
+      }
+      if (reader.readOp(false) == null) {
+        throw new IllegalStateException("Failed to read back " + opCode);
+      }
+    }
+    final long readNanos = Time.monotonicNowNanos() - start;
+
+    return String.format("%s bytes=%d write=%.3fus/op read=%.3fus/op",
+        opCode, sample.length, writeNanos / 1000.0 / numOps,
+        readNanos / 1000.0 / numOps);
+  }
+
+  public static void main(String[] args) throws IOException {
+    File edits = getDefaultEditsFile();
+    int numOps = 1000000;
+    for (int i = 0; i < args.length; i++) {
+      if ("-edits".equals(args[i]) && i + 1 < args.length) {
+        edits = new File(args[++i]);
+      } else if ("-ops".equals(args[i]) && i + 1 < args.length) {
+        numOps = Integer.parseInt(args[++i]);
+      } else {
+        System.err.println("Usage: EditLogOpBenchmark [-edits FILE] [-ops N]");
+        System.exit(-1);
+      }
+    }
+    for (String result : run(edits, numOps)) {
+      System.out.println(result);
+    }
+  }
+}
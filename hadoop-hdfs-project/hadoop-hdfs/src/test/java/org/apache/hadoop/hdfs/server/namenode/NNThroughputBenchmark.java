@@ -107,7 +107,8 @@ public class NNThroughputBenchmark implements Tool {
   private static final Log LOG = LogFactory.getLog(NNThroughputBenchmark.class);
   private static final int BLOCK_SIZE = 16;
   private static final String GENERAL_OPTIONS_USAGE =
-      "[-keepResults] | [-logLevel L] | [-UGCacheRefreshCount G]";
+      "[-keepResults] | [-logLevel L] | [-UGCacheRefreshCount G]"
+      + " | [-threadSweep T1,T2,...]";
 
   static Configuration config;
   static NameNode nameNode;
@@ -117,6 +118,8 @@ public class NNThroughputBenchmark implements Tool {
   static RefreshUserMappingsProtocol refreshUserMappingsProto;
   static String bpid = null;
 
+  private int[] threadSweep = null;   // thread counts to sweep over
+
   NNThroughputBenchmark(Configuration conf) throws IOException {
     config = conf;
     // We do not need many handlers, since each thread simulates a handler
@@ -177,6 +180,7 @@ abstract class OperationStatsBase {
     protected boolean keepResults = false;// don't clean base directory on exit
     protected Level logLevel;             // logging level, ERROR by default
     protected int ugcRefreshCount = 0;    // user group cache refresh count
+    protected List<String> sweepResults;  // per thread count results
 
     protected List<StatsDaemon> daemons;
 
@@ -277,6 +281,43 @@ void benchmark() throws IOException {
       }
     }
 
+    /**
+     * Whether the number of threads is a pure client-side concurrency knob
+     * for this operation, so that it can be varied by -threadSweep.
+     */
+    boolean supportsThreadSweep() {
+      return true;
+    }
+
+    /**
+     * Run the benchmark once for each thread count given by -threadSweep
+     * in order to show how the operation throughput scales with the number
+     * of concurrent clients. The namespace produced by each step is removed
+     * before the next step starts.
+     */
+    void benchmarkThreadSweep(int[] threadSweep) throws IOException {
+      sweepResults = new ArrayList<String>();
+      double baseOpsPerSecond = 0;
+      for(int i = 0; i < threadSweep.length; i++) {
+        numThreads = threadSweep[i];
+        LOG.info("Starting " + getOpName() + " with " + numThreads
+            + " thread(s).");
+        benchmark();
+        double opsPerSecond = getOpsPerSecond();
+        if(i == 0)
+          baseOpsPerSecond = opsPerSecond;
+        sweepResults.add(String.format(
+            "threads = %d, ops per sec = %.2f, average time = %d,"
+            + " scaling = %.2fx", numThreads, opsPerSecond, getAverageTime(),
+            baseOpsPerSecond == 0 ? 0 : opsPerSecond / baseOpsPerSecond));
+        if(i < threadSweep.length - 1) {
+          clientProto.setSafeMode(HdfsConstants.SafeModeAction.SAFEMODE_LEAVE,
+              false);
+          clientProto.delete(getBaseDir(), true);
+        }
+      }
+    }
+
     private boolean isInProgress() {
       for(StatsDaemon d : daemons)
         if(d.isInProgress())
@@ -383,6 +424,11 @@ void printStats() {
       LOG.info("Elapsed Time: " + getElapsedTime());
       LOG.info(" Ops per sec: " + getOpsPerSecond());
       LOG.info("Average Time: " + getAverageTime());
+      if(sweepResults != null) {
+        LOG.info("--- " + getOpName() + " thread sweep ---");
+        for(String result : sweepResults)
+          LOG.info(result);
+      }
     }
   }
 
@@ -460,6 +506,11 @@ class CleanAllStats extends OperationStatsBase {
       keepResults = true;
     }
 
+    @Override
+    boolean supportsThreadSweep() {
+      return false;
+    }
+
     @Override
     String getOpName() {
       return OP_CLEAN_NAME;
@@ -769,6 +820,8 @@ void generateInputs(int[] opsPerThread) throws IOException {
             + numOpsRequired + " files have been created before.");
       }
       // use the same files for open
+      nameGenerator = new FileNameGenerator(getBaseDir(),
+          nameGenerator.getFilesPerDirectory());
       super.generateInputs(opsPerThread);
       if(clientProto.getFileInfo(opCreate.getBaseDir()) != null
           && clientProto.getFileInfo(getBaseDir()) == null) {
@@ -1103,6 +1156,11 @@ private int getNumDatanodes() {
       return numThreads;
     }
 
+    @Override
+    boolean supportsThreadSweep() {
+      return false;
+    }
+
     @Override
     String getOpName() {
       return OP_BLOCK_REPORT_NAME;
@@ -1310,6 +1368,11 @@ String getOpName() {
       return OP_REPLICATION_NAME;
     }
 
+    @Override
+    boolean supportsThreadSweep() {
+      return false;
+    }
+
     @Override
     void parseArguments(List<String> args) {
       boolean ignoreUnrelatedOptions = verifyOpArgument(args);
@@ -1470,6 +1533,23 @@ public int run(String[] aArgs) throws Exception {
     String type = args.get(1);
     boolean runAll = OperationStatsBase.OP_ALL_NAME.equals(type);
 
+    // -threadSweep applies to every operation, so parse it before
+    // the operation specific arguments
+    int tsIndex = args.indexOf("-threadSweep");
+    if(tsIndex >= 0) {
+      if(args.size() <= tsIndex + 1)
+        printUsage();
+      String[] counts = args.get(tsIndex+1).split(",");
+      threadSweep = new int[counts.length];
+      for(int i = 0; i < counts.length; i++) {
+        threadSweep[i] = Integer.parseInt(counts[i].trim());
+        if(threadSweep[i] < 1)
+          printUsage();
+      }
+      args.remove(tsIndex+1);
+      args.remove(tsIndex);
+    }
+
     final URI nnUri = FileSystem.getDefaultUri(config);
     // Start the NameNode
     String[] argv = new String[] {};
@@ -1549,7 +1629,10 @@ public int run(String[] aArgs) throws Exception {
       // run each benchmark
       for(OperationStatsBase op : ops) {
         LOG.info("Starting benchmark: " + op.getOpName());
-        op.benchmark();
+        if(threadSweep != null && op.supportsThreadSweep())
+          op.benchmarkThreadSweep(threadSweep);
+        else
+          op.benchmark();
         op.cleanUp();
       }
       // print statistics
@@ -31,6 +31,7 @@
 import org.apache.hadoop.fs.ContentSummary;
 import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.QuotaUsage;
 import org.apache.hadoop.fs.StorageType;
 import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.DFSOutputStream;
@@ -64,6 +65,8 @@ public class TestDiskspaceQuotaUpdate {
   private static final short REPLICATION = 4;
   static final long seed = 0L;
   private static final Path BASE_DIR = new Path("/TestQuotaUpdate");
+  private static final Path USAGE_TRACKED_DIR =
+      new Path(BASE_DIR, "testUsageTrackedDirectory");
 
   private static Configuration conf;
   private static MiniDFSCluster cluster;
@@ -72,6 +75,8 @@ public class TestDiskspaceQuotaUpdate {
   public static void setUp() throws Exception {
     conf = new Configuration();
     conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, BLOCKSIZE);
+    conf.set(DFSConfigKeys.DFS_NAMENODE_QUOTA_USAGE_TRACKED_DIRECTORIES_KEY,
+        USAGE_TRACKED_DIR.toString());
     cluster = new MiniDFSCluster.Builder(conf).numDataNodes(REPLICATION)
         .build();
     cluster.waitActive();
@@ -109,6 +114,49 @@ private DistributedFileSystem getDFS() throws IOException {
     return cluster.getFileSystem();
   }
 
+  /**
+   * Test that the usage of a directory configured in
+   * dfs.namenode.quota.usage.tracked.directories is maintained without a
+   * quota, and that the tracking is restored after a restart.
+   */
+  @Test (timeout=60000)
+  public void testUsageTrackedDirectory() throws Exception {
+    final Path file = new Path(USAGE_TRACKED_DIR, "dir/file");
+    DFSTestUtil.createFile(getDFS(), file, BLOCKSIZE * 2, REPLICATION, seed);
+
+    INodeDirectory dir = getFSDirectory().getINode4Write(
+        USAGE_TRACKED_DIR.toString()).asDirectory();
+    assertTrue(dir.isUsageTracked());
+    QuotaCounts cnt = dir.getDirectoryWithQuotaFeature().getSpaceConsumed();
+    assertEquals(3, cnt.getNameSpace());
+    assertEquals(BLOCKSIZE * 2 * REPLICATION, cnt.getStorageSpace());
+
+    QuotaUsage usage = getDFS().getQuotaUsage(USAGE_TRACKED_DIR);
+    assertEquals(HdfsConstants.QUOTA_RESET, usage.getQuota());
+    assertEquals(HdfsConstants.QUOTA_RESET, usage.getSpaceQuota());
+    assertEquals(3, usage.getFileAndDirectoryCount());
+    assertEquals(BLOCKSIZE * 2 * REPLICATION, usage.getSpaceConsumed());
+
+    // clearing a quota keeps the usage tracked
+    getDFS().setQuota(USAGE_TRACKED_DIR, 100, HdfsConstants.QUOTA_DONT_SET);
+    getDFS().setQuota(USAGE_TRACKED_DIR, HdfsConstants.QUOTA_RESET,
+        HdfsConstants.QUOTA_DONT_SET);
+    assertTrue(dir.isUsageTracked());
+
+    getDFS().delete(file, false);
+    cnt = dir.getDirectoryWithQuotaFeature().getSpaceConsumed();
+    assertEquals(2, cnt.getNameSpace());
+    assertEquals(0, cnt.getStorageSpace());
+
+    cluster.restartNameNode(true);
+    dir = getFSDirectory().getINode4Write(
+        USAGE_TRACKED_DIR.toString()).asDirectory();
+    assertTrue(dir.isUsageTracked());
+    cnt = dir.getDirectoryWithQuotaFeature().getSpaceConsumed();
+    assertEquals(2, cnt.getNameSpace());
+    assertEquals(0, cnt.getStorageSpace());
+  }
+
   /**
    * Test if the quota can be correctly updated for create file
    */
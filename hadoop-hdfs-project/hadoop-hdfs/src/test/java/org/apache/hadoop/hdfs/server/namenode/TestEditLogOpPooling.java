@@ -0,0 +1,96 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import static org.apache.hadoop.hdfs.server.namenode.FSEditLogOpCodes.OP_DELETE;
+import static org.apache.hadoop.hdfs.server.namenode.FSEditLogOpCodes.OP_MKDIR;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.fs.permission.PermissionStatus;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.DeleteOp;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.OpInstanceCache;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.junit.Test;
+
+/**
+ * Tests the pooling of the ops logged by the async edit log and the
+ * serialization of the ops.
+ */
+public class TestEditLogOpPooling {
+
+  @Test
+  public void testOpPooling() {
+    final OpInstanceCache cache = new OpInstanceCache();
+    cache.enablePooling(1);
+    final DeleteOp op1 = DeleteOp.getInstance(cache);
+    final DeleteOp op2 = DeleteOp.getInstance(cache);
+    assertNotSame(op1, op2);
+
+    op1.setPath("/a").setTimestamp(1);
+    op1.reset();
+    cache.release(op1);
+    // only one free op is kept per op code
+    cache.release(op2);
+    assertSame(op1, cache.get(OP_DELETE));
+    assertNotSame(op2, cache.get(OP_DELETE));
+    assertTrue(cache.get(OP_MKDIR) instanceof FSEditLogOp.MkdirOp);
+
+    // ops of other caches are not pooled
+    final DeleteOp other = DeleteOp.getInstance(new OpInstanceCache());
+    cache.release(other);
+    assertNotSame(other, cache.get(OP_DELETE));
+  }
+
+  @Test
+  public void testPermissionStatusFormat() throws IOException {
+    final FsPermission perm = new FsPermission((short) 0750);
+    for (String[] names : new String[][] {
+        {"user", "group"}, {"", "supergroup"}, {"üser", "gr一up"}}) {
+      final PermissionStatus status =
+          new PermissionStatus(names[0], names[1], perm);
+      final DataOutputBuffer expected = new DataOutputBuffer();
+      status.write(expected);
+      final DataOutputBuffer actual = new DataOutputBuffer();
+      FSImageSerialization.writePermissionStatus(status, actual);
+      assertArrayEquals(
+          Arrays.copyOf(expected.getData(), expected.getLength()),
+          Arrays.copyOf(actual.getData(), actual.getLength()));
+    }
+  }
+
+  @Test
+  public void testEditLogOpBenchmark() throws IOException {
+    final Map<FSEditLogOpCodes, byte[]> samples =
+        EditLogOpBenchmark.loadSamples(EditLogOpBenchmark.getDefaultEditsFile());
+    assertTrue(samples.containsKey(OP_MKDIR));
+    final List<String> results = EditLogOpBenchmark.run(
+        EditLogOpBenchmark.getDefaultEditsFile(),
+        EditLogOpBenchmark.BATCH + 1);
+    assertEquals(samples.size(), results.size());
+  }
+}
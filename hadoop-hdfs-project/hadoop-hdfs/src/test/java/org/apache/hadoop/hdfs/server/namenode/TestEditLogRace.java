@@ -86,15 +86,18 @@ public class TestEditLogRace {
   @Parameters
   public static Collection<Object[]> data() {
     Collection<Object[]> params = new ArrayList<Object[]>();
-    params.add(new Object[]{ false });
-    params.add(new Object[]{ true });
+    params.add(new Object[]{ false, false });
+    params.add(new Object[]{ true, false });
+    params.add(new Object[]{ true, true });
     return params;
   }
 
   private static boolean useAsyncEditLog;
+  private static boolean usePipelinedSync;
 
-  public TestEditLogRace(boolean useAsyncEditLog) {
+  public TestEditLogRace(boolean useAsyncEditLog, boolean usePipelinedSync) {
     TestEditLogRace.useAsyncEditLog = useAsyncEditLog;
+    TestEditLogRace.usePipelinedSync = usePipelinedSync;
   }
 
   private static final String NAME_DIR = MiniDFSCluster.getBaseDirectory() + "name-0-1";
@@ -376,6 +379,9 @@ private Configuration getConf() {
     Configuration conf = new HdfsConfiguration();
     conf.setBoolean(DFSConfigKeys.DFS_NAMENODE_EDITS_ASYNC_LOGGING,
         useAsyncEditLog);
+    conf.setBoolean(
+        DFSConfigKeys.DFS_NAMENODE_EDITS_ASYNC_LOGGING_PIPELINED_SYNC,
+        usePipelinedSync);
     FileSystem.setDefaultUri(conf, "hdfs://localhost:0");
     conf.set(DFSConfigKeys.DFS_NAMENODE_HTTP_ADDRESS_KEY, "0.0.0.0:0");
     conf.set(DFSConfigKeys.DFS_NAMENODE_NAME_DIR_KEY, NAME_DIR);
@@ -99,8 +99,24 @@ private static Configuration getConf() {
 
   @Test
   public void testDisplayRecentEditLogOpCodes() throws IOException {
-    // start a cluster
+    doTestDisplayRecentEditLogOpCodes(getConf());
+  }
+
+  /**
+   * Decoding errors of the ops decoded ahead of replay must be reported as
+   * if the ops were decoded inline.
+   */
+  @Test
+  public void testDisplayRecentEditLogOpCodesWithDecodeQueue()
+      throws IOException {
     Configuration conf = getConf();
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_EDITS_REPLAY_DECODE_QUEUE_SIZE, 4);
+    doTestDisplayRecentEditLogOpCodes(conf);
+  }
+
+  private void doTestDisplayRecentEditLogOpCodes(Configuration conf)
+      throws IOException {
+    // start a cluster
     MiniDFSCluster cluster = null;
     FileSystem fileSys = null;
     cluster = new MiniDFSCluster.Builder(conf).numDataNodes(NUM_DATA_NODES)
@@ -415,6 +415,76 @@ public void testParallelSaveAndLoad() throws IOException {
     }
   }
 
+  @Test
+  public void testParallelSaveAndLoadWithSnapshots() throws IOException {
+    Configuration conf = new Configuration();
+    conf.set(DFSConfigKeys.DFS_IMAGE_PARALLEL_LOAD_KEY, "true");
+    conf.set(DFSConfigKeys.DFS_IMAGE_PARALLEL_INODE_THRESHOLD_KEY, "1");
+    conf.set(DFSConfigKeys.DFS_IMAGE_PARALLEL_TARGET_SECTIONS_KEY, "4");
+    conf.set(DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_KEY, "4");
+
+    MiniDFSCluster cluster = null;
+    try {
+      cluster = new MiniDFSCluster.Builder(conf).build();
+      cluster.waitActive();
+      DistributedFileSystem fs = cluster.getFileSystem();
+
+      // Create 10 snapshottable directories, each containing 5 files, and
+      // modify them after taking a snapshot so that every directory and
+      // the deleted files have snapshot diffs
+      String baseDir = "/abc/def";
+      for (int i=0; i<10; i++) {
+        Path dir = new Path(baseDir+"/"+i);
+        for (int j=0; j<5; j++) {
+          Path f = new Path(dir, Integer.toString(j));
+          FSDataOutputStream os = fs.create(f);
+          os.write(1);
+          os.close();
+        }
+        fs.allowSnapshot(dir);
+        fs.createSnapshot(dir, "s0");
+        fs.delete(new Path(dir, "0"), false);
+        fs.setReplication(new Path(dir, "1"), (short) 2);
+      }
+
+      // checkpoint
+      fs.setSafeMode(SafeModeAction.SAFEMODE_ENTER);
+      fs.saveNamespace();
+      fs.setSafeMode(SafeModeAction.SAFEMODE_LEAVE);
+
+      FsImageProto.FileSummary summary = FSImageTestUtil.
+          getLatestImageSummary(cluster);
+      ArrayList<Section> sections = Lists.newArrayList(
+          summary.getSectionsList());
+      ArrayList<Section> diffSubSections =
+          getSubSectionsOfName(sections, SectionName.SNAPSHOT_DIFF_SUB);
+      Section diffSection = getSubSectionsOfName(sections,
+          SectionName.SNAPSHOT_DIFF).get(0);
+      assertTrue(diffSubSections.size() > 1);
+      ensureSubSectionsAlignWithParent(diffSubSections, diffSection);
+
+      cluster.restartNameNode();
+      cluster.waitActive();
+      fs = cluster.getFileSystem();
+
+      // Ensure the snapshot diffs were loaded correctly
+      for (int i=0; i<10; i++) {
+        Path dir = new Path(baseDir+"/"+i);
+        Path snapshotDir = new Path(dir, ".snapshot/s0");
+        assertFalse(fs.exists(new Path(dir, "0")));
+        for (int j=0; j<5; j++) {
+          assertTrue(fs.exists(new Path(snapshotDir, Integer.toString(j))));
+        }
+        assertEquals(2,
+            fs.getFileStatus(new Path(dir, "1")).getReplication());
+      }
+    } finally {
+      if (cluster != null) {
+        cluster.shutdown();
+      }
+    }
+  }
+
   @Test
   public void testNoParallelSectionsWithCompressionEnabled()
       throws IOException {
@@ -119,6 +119,34 @@ public void testStartupSafemode() throws IOException {
       + "isInSafeMode still returned false",  fsn.isInSafeMode());
   }
 
+  /**
+   * Test that the inode map and the blocks map are sized by the configured
+   * percentage of the heap.
+   */
+  @Test
+  public void testMapAllocationPercent() throws IOException {
+    FSNamesystem small = newNamesystemWithMapPercents(0.5f, 1.0f);
+    FSNamesystem large = newNamesystemWithMapPercents(2.0f, 4.0f);
+    // The capacities are powers of two.
+    assertEquals(4 * small.getINodeMapCapacity(),
+        large.getINodeMapCapacity());
+    assertEquals(4 * small.getBlockCapacity(), large.getBlockCapacity());
+    assertEquals(2 * small.getINodeMapCapacity(), small.getBlockCapacity());
+  }
+
+  private static FSNamesystem newNamesystemWithMapPercents(
+      float inodeMapPercent, float blocksMapPercent) throws IOException {
+    Configuration conf = new Configuration();
+    conf.setFloat(DFSConfigKeys.DFS_NAMENODE_INODE_MAP_ALLOCATION_PERCENT,
+        inodeMapPercent);
+    conf.setFloat(DFSConfigKeys.DFS_NAMENODE_BLOCKS_MAP_ALLOCATION_PERCENT,
+        blocksMapPercent);
+    FSImage fsImage = Mockito.mock(FSImage.class);
+    FSEditLog fsEditLog = Mockito.mock(FSEditLog.class);
+    Mockito.when(fsImage.getEditLog()).thenReturn(fsEditLog);
+    return new FSNamesystem(conf, fsImage);
+  }
+
   @Test
   public void testReplQueuesActiveAfterStartupSafemode() throws IOException, InterruptedException{
     Configuration conf = new Configuration();
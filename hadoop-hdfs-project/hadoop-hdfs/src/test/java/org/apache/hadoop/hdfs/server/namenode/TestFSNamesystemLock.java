@@ -364,6 +364,10 @@ public void testDetailedHoldMetrics() throws Exception {
     assertCounter("FSNReadLockOverallNanosNumOps", 3L, rb);
     assertGauge("FSNWriteLockOverallNanosAvgTime", 1000000.0, rb);
     assertCounter("FSNWriteLockOverallNanosNumOps", 1L, rb);
+
+    // Wait time is only recorded for the outermost acquisition
+    assertCounter("FSNReadLockOverallWaitNanosNumOps", 3L, rb);
+    assertCounter("FSNWriteLockOverallWaitNanosNumOps", 1L, rb);
   }
 
 }
\ No newline at end of file
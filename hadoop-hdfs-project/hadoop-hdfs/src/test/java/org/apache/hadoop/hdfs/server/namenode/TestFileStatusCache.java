@@ -0,0 +1,227 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import static org.apache.hadoop.test.MetricsAsserts.getLongCounter;
+import static org.apache.hadoop.test.MetricsAsserts.getMetrics;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.DeleteOp;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.OpInstanceCache;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.SetGenstampV2Op;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests the NameNode cache of getFileInfo and getListing responses.
+ */
+public class TestFileStatusCache {
+  private static final String NN_METRICS = "NameNodeActivity";
+  private static final long BLOCK_SIZE = 1024;
+
+  private MiniDFSCluster cluster;
+  private DistributedFileSystem fs;
+
+  @After
+  public void tearDown() {
+    if (cluster != null) {
+      cluster.shutdown();
+      cluster = null;
+    }
+  }
+
+  private void startCluster(long cacheSize) throws IOException {
+    Configuration conf = new HdfsConfiguration();
+    conf.setBoolean(DFSConfigKeys.DFS_NAMENODE_FILE_STATUS_CACHE_ENABLED_KEY,
+        true);
+    conf.setLong(DFSConfigKeys.DFS_NAMENODE_FILE_STATUS_CACHE_SIZE_KEY,
+        cacheSize);
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, BLOCK_SIZE);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+    cluster.waitActive();
+    fs = cluster.getFileSystem();
+  }
+
+  private static long getCounter(String name) {
+    return getLongCounter(name, getMetrics(NN_METRICS));
+  }
+
+  private FileStatusCache getCache() {
+    return cluster.getNamesystem().getFSDirectory().getFileStatusCache();
+  }
+
+  @Test(timeout = 60000)
+  public void testFileInfoInvalidatedByEdits() throws Exception {
+    startCluster(1000);
+    final Path dir = new Path("/a/b");
+    final Path file = new Path(dir, "f");
+    DFSTestUtil.createFile(fs, file, BLOCK_SIZE, (short) 1, 0L);
+
+    long hits = getCounter("FileStatusCacheHits");
+    long misses = getCounter("FileStatusCacheMisses");
+    fs.getFileStatus(file);
+    assertEquals(misses + 1, getCounter("FileStatusCacheMisses"));
+    FileStatus status = fs.getFileStatus(file);
+    assertEquals(hits + 1, getCounter("FileStatusCacheHits"));
+    assertEquals(BLOCK_SIZE, status.getLen());
+
+    // an attribute change must be visible right away
+    final FsPermission perm = new FsPermission((short) 0600);
+    fs.setPermission(file, perm);
+    assertEquals(perm, fs.getFileStatus(file).getPermission());
+    fs.setReplication(file, (short) 2);
+    assertEquals(2, fs.getFileStatus(file).getReplication());
+
+    // so must the new children count and mtime of the parent directory
+    fs.getFileStatus(dir);
+    final HdfsFileStatus dirStatus = fs.getClient().getFileInfo("/a/b");
+    assertEquals(1, dirStatus.getChildrenNum());
+    DFSTestUtil.createFile(fs, new Path(dir, "g"), 1, (short) 1, 0L);
+    assertEquals(2, fs.getClient().getFileInfo("/a/b").getChildrenNum());
+
+    // renaming the parent drops the entries of the whole subtree
+    fs.rename(new Path("/a"), new Path("/c"));
+    try {
+      fs.getFileStatus(file);
+      fail("Expected FileNotFoundException for " + file);
+    } catch (FileNotFoundException ignored) {
+    }
+    assertEquals(perm, fs.getFileStatus(new Path("/c/b/f")).getPermission());
+
+    fs.delete(new Path("/c/b/f"), false);
+    assertFalse(fs.exists(new Path("/c/b/f")));
+    assertTrue(getCounter("FileStatusCacheInvalidations") > 0);
+  }
+
+  @Test(timeout = 60000)
+  public void testListingInvalidatedByEdits() throws Exception {
+    startCluster(1000);
+    final Path dir = new Path("/dir");
+    fs.mkdirs(dir);
+    for (int i = 0; i < 3; i++) {
+      DFSTestUtil.createFile(fs, new Path(dir, "f" + i), 1, (short) 1, 0L);
+    }
+
+    long hits = getCounter("FileStatusCacheHits");
+    assertEquals(3, fs.listStatus(dir).length);
+    assertEquals(3, fs.listStatus(dir).length);
+    assertEquals(hits + 1, getCounter("FileStatusCacheHits"));
+
+    fs.mkdirs(new Path(dir, "sub"));
+    assertEquals(4, fs.listStatus(dir).length);
+    // a change below a child updates the child's status in the listing
+    DFSTestUtil.createFile(fs, new Path(dir, "sub/f"), 1, (short) 1, 0L);
+    for (FileStatus s : fs.listStatus(dir)) {
+      if (s.getPath().getName().equals("sub")) {
+        assertEquals(fs.getFileStatus(new Path(dir, "sub"))
+            .getModificationTime(), s.getModificationTime());
+      }
+    }
+    fs.delete(new Path(dir, "f0"), false);
+    assertEquals(3, fs.listStatus(dir).length);
+    fs.setOwner(new Path(dir, "f1"), "user1", "group1");
+    for (FileStatus s : fs.listStatus(dir)) {
+      if (s.getPath().getName().equals("f1")) {
+        assertEquals("user1", s.getOwner());
+      }
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testFilesUnderConstructionNotCached() throws Exception {
+    startCluster(1000);
+    final Path dir = new Path("/uc");
+    final Path file = new Path(dir, "file");
+    FSDataOutputStream out = fs.create(file, (short) 1);
+    try {
+      out.write(new byte[(int) BLOCK_SIZE * 2]);
+      out.hflush();
+      long hits = getCounter("FileStatusCacheHits");
+      fs.getFileStatus(file);
+      fs.getFileStatus(file);
+      fs.listStatus(dir);
+      fs.listStatus(dir);
+      assertEquals(hits, getCounter("FileStatusCacheHits"));
+    } finally {
+      out.close();
+    }
+    assertEquals(BLOCK_SIZE * 2, fs.getFileStatus(file).getLen());
+    assertEquals(BLOCK_SIZE * 2, fs.getFileStatus(file).getLen());
+  }
+
+  @Test(timeout = 60000)
+  public void testEviction() throws Exception {
+    startCluster(4);
+    for (int i = 0; i < 10; i++) {
+      final Path file = new Path("/evict/f" + i);
+      DFSTestUtil.createFile(fs, file, 1, (short) 1, 0L);
+      fs.getFileStatus(file);
+    }
+    assertTrue(getCache().size() <= 4);
+    assertTrue(getCounter("FileStatusCacheEvictions") >= 6);
+  }
+
+  @Test
+  public void testInvalidateByOp() {
+    final FileStatusCache cache = new FileStatusCache(100);
+    final HdfsFileStatus status = new HdfsFileStatus(0, true, 0, 0, 0, 0,
+        FsPermission.getDefault(), "user", "group", null,
+        HdfsFileStatus.EMPTY_NAME, 0, 0, null, (byte) 0);
+    for (String path : new String[] {"/", "/a", "/a/b", "/a/b/c", "/a/bc",
+        "/x"}) {
+      cache.putFileInfo(path, true, status);
+    }
+    assertEquals(6, cache.size());
+
+    final OpInstanceCache ops = new OpInstanceCache();
+    cache.invalidate(SetGenstampV2Op.getInstance(ops).setGenerationStamp(1));
+    assertEquals(6, cache.size());
+
+    // the path, its subtree, its parent and its grandparent
+    cache.invalidate(DeleteOp.getInstance(ops).setPath("/a/b"));
+    assertNull(cache.getFileInfo("/a/b", true));
+    assertNull(cache.getFileInfo("/a/b/c", true));
+    assertNull(cache.getFileInfo("/a", true));
+    assertNull(cache.getFileInfo("/", true));
+    assertNotNull(cache.getFileInfo("/a/bc", true));
+    assertNotNull(cache.getFileInfo("/x", true));
+    assertEquals(2, cache.size());
+
+    cache.invalidate(DeleteOp.getInstance(ops).setPath("/"));
+    assertEquals(0, cache.size());
+  }
+}
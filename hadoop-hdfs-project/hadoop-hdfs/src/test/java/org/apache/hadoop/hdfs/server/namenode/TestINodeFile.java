@@ -1027,6 +1027,63 @@ public void testLocationLimitInListingOps() throws Exception {
     }
   }
 
+  /**
+   * Test a directory whose children list is converted to a segmented list.
+   */
+  @Test
+  public void testSegmentedChildrenList() throws Exception {
+    final Configuration conf = new Configuration();
+    conf.setInt(DFSConfigKeys.DFS_LIST_LIMIT, 7);
+    INodeDirectory.setSegmentedChildrenThreshold(10);
+    MiniDFSCluster cluster = null;
+    try {
+      cluster = new MiniDFSCluster.Builder(conf).numDataNodes(0).build();
+      cluster.waitActive();
+      final DistributedFileSystem hdfs = cluster.getFileSystem();
+      final Path dir = new Path("/testSegmentedChildrenList");
+      final List<String> expected = new ArrayList<String>();
+      for (int i = 0; i < 100; i++) {
+        // create in reverse order so every child is added at the front.
+        final String name = String.format("f%03d", 99 - i);
+        assertTrue(hdfs.mkdirs(new Path(dir, name)));
+        expected.add(0, name);
+      }
+      for (int i = 0; i < 100; i += 3) {
+        assertTrue(hdfs.delete(new Path(dir, expected.get(i)), false));
+      }
+      for (int i = 99 / 3 * 3; i >= 0; i -= 3) {
+        expected.remove(i);
+      }
+      checkListing(hdfs, dir, expected);
+
+      // the children are added back in order when the image is loaded.
+      cluster.getNameNodeRpc().setSafeMode(
+          HdfsConstants.SafeModeAction.SAFEMODE_ENTER, false);
+      cluster.getNameNodeRpc().saveNamespace();
+      cluster.restartNameNode();
+      checkListing(cluster.getFileSystem(), dir, expected);
+
+      assertEquals(2, DirectoryChildrenBenchmark.run(
+          new int[] {100, 1000}, 10).size());
+    } finally {
+      INodeDirectory.setSegmentedChildrenThreshold(
+          INodeDirectory.DEFAULT_SEGMENTED_CHILDREN_THRESHOLD);
+      if (cluster != null) {
+        cluster.shutdown();
+      }
+    }
+  }
+
+  private static void checkListing(DistributedFileSystem hdfs, Path dir,
+      List<String> expected) throws IOException {
+    final List<String> names = new ArrayList<String>();
+    final RemoteIterator<FileStatus> it = hdfs.listStatusIterator(dir);
+    while (it.hasNext()) {
+      names.add(it.next().getPath().getName());
+    }
+    assertEquals(expected, names);
+  }
+
   @Test
   public void testFilesInGetListingOps() throws Exception {
     final Configuration conf = new Configuration();
@@ -73,6 +73,22 @@ public void testNNThroughputWithFsOption() throws Exception {
         new String[] {"-fs", "file:///", "-op", "all"});
   }
 
+  /**
+   * This test runs all benchmarks defined in {@link NNThroughputBenchmark}
+   * once per thread count given with -threadSweep.
+   */
+  @Test(timeout = 120000)
+  public void testNNThroughputThreadSweep() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setInt(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, 16);
+    File nameDir = new File(MiniDFSCluster.getBaseDirectory(), "name");
+    conf.set(DFSConfigKeys.DFS_NAMENODE_NAME_DIR_KEY,
+        nameDir.getAbsolutePath());
+    DFSTestUtil.formatNameNode(conf);
+    NNThroughputBenchmark.runBenchmark(conf,
+        new String[] {"-op", "all", "-threadSweep", "1,2,4"});
+  }
+
   /**
    * This test runs {@link NNThroughputBenchmark} against a mini DFS cluster.
    */
@@ -26,13 +26,18 @@
 
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_IP_PROXY_USERS;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_RPC_BIND_HOST_KEY;
+import static org.apache.hadoop.test.MetricsAsserts.assertCounter;
+import static org.apache.hadoop.test.MetricsAsserts.getLongCounter;
+import static org.apache.hadoop.test.MetricsAsserts.getMetrics;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.CommonConfigurationKeys;
 import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hdfs.DFSTestUtil;
@@ -42,6 +47,7 @@
 
 import org.apache.hadoop.hdfs.protocol.LocatedBlocks;
 import org.apache.hadoop.ipc.CallerContext;
+import org.apache.hadoop.ipc.RPC;
 import org.apache.hadoop.security.UserGroupInformation;
 import org.junit.Test;
 
@@ -71,6 +77,39 @@ public void testNamenodeRpcBindAny() throws IOException {
     }
   }
 
+  @Test
+  public void testHeavyCallHandlers() throws IOException {
+    Configuration conf = new HdfsConfiguration();
+    // the MiniDFSCluster NameNode is configured with port 0.
+    final String ns = CommonConfigurationKeys.IPC_NAMESPACE + ".0.";
+    conf.setInt(ns + CommonConfigurationKeys.IPC_HEAVY_HANDLER_COUNT_KEY, 1);
+    conf.set(ns + CommonConfigurationKeys.IPC_HEAVY_CALL_METHODS_KEY,
+        "getContentSummary");
+    MiniDFSCluster cluster = null;
+
+    try {
+      cluster = new MiniDFSCluster.Builder(conf).build();
+      cluster.waitActive();
+      DistributedFileSystem fs = cluster.getFileSystem();
+      fs.mkdirs(new Path("/dir"));
+      assertEquals(1, fs.getContentSummary(new Path("/dir"))
+          .getDirectoryCount());
+      fs.getFileStatus(new Path("/dir"));
+
+      RPC.Server server = ((NameNodeRpcServer) cluster.getNameNodeRpc())
+          .getClientRpcServer();
+      assertCounter("RpcHeavyCalls", 1L,
+          getMetrics(server.getRpcMetrics().name()));
+      // the cost of the calls is exported per method.
+      assertTrue(getLongCounter("GetFileInfoCostNumOps",
+          getMetrics(server.getRpcDetailedMetrics().name())) > 0);
+    } finally {
+      if (cluster != null) {
+        cluster.shutdown();
+      }
+    }
+  }
+
   /**
    * Get the preferred DataNode location for the first block of the
    * given file.
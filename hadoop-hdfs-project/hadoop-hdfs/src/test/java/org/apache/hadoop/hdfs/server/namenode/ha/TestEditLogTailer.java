@@ -55,6 +55,7 @@
 import org.apache.hadoop.hdfs.server.namenode.NNStorage;
 import org.apache.hadoop.hdfs.server.namenode.NameNode;
 import org.apache.hadoop.hdfs.server.namenode.NameNodeAdapter;
+import org.apache.hadoop.metrics2.lib.MutableGaugeLong;
 import org.apache.hadoop.test.GenericTestUtils;
 import org.apache.log4j.Level;
 import org.junit.Test;
@@ -64,6 +65,7 @@
 
 import com.google.common.base.Supplier;
 import org.mockito.Mockito;
+import org.mockito.internal.util.reflection.Whitebox;
 
 @RunWith(Parameterized.class)
 public class TestEditLogTailer {
@@ -105,7 +107,20 @@ private static Configuration getConf() {
   @Test
   public void testTailer() throws IOException, InterruptedException,
       ServiceFailedException {
+    doTestTailer(getConf());
+  }
+
+  @Test
+  public void testTailerWithDecodeQueue() throws IOException,
+      InterruptedException, ServiceFailedException {
     Configuration conf = getConf();
+    // small enough for the decoder to wait for the ops to be applied
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_EDITS_REPLAY_DECODE_QUEUE_SIZE, 2);
+    doTestTailer(conf);
+  }
+
+  private void doTestTailer(Configuration conf) throws IOException,
+      InterruptedException, ServiceFailedException {
     conf.setInt(DFSConfigKeys.DFS_HA_TAILEDITS_PERIOD_KEY, 1);
 
     HAUtil.setAllowStandbyReads(conf, true);
@@ -151,6 +166,65 @@ public void testTailer() throws IOException, InterruptedException,
     }
   }
 
+  /**
+   * Test that the lag gauges of the standby grow while it does not tail the
+   * edits of the active, and go back down once it tails them as they come.
+   */
+  @Test(timeout = 60000)
+  public void testTailLagMetrics() throws Exception {
+    Configuration conf = getConf();
+    // The edits are only tailed by the test.
+    conf.setInt(DFSConfigKeys.DFS_HA_TAILEDITS_PERIOD_KEY, 3600);
+    conf.setInt(DFSConfigKeys.DFS_HA_LOGROLL_PERIOD_KEY, -1);
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf)
+        .nnTopology(MiniDFSNNTopology.simpleHATopology())
+        .numDataNodes(0)
+        .build();
+    try {
+      cluster.waitActive();
+      cluster.transitionToActive(0);
+      NameNode active = cluster.getNameNode(0);
+      EditLogTailer tailer = cluster.getNamesystem(1).getEditLogTailer();
+      PermissionStatus perm =
+          new PermissionStatus("test", "test", new FsPermission((short)00755));
+      active.getRpcServer().rollEditLog();
+      tailer.doTailEdits();
+
+      // Stall the tailing while the active goes on.
+      final long stallMs = 2000;
+      for (int i = 0; i < DIRS_TO_MAKE; i++) {
+        NameNodeAdapter.mkdirs(active, getDirPath(i), perm, true);
+      }
+      Thread.sleep(stallMs);
+      active.getRpcServer().rollEditLog();
+      assertTrue(tailer.doTailEdits() >= DIRS_TO_MAKE);
+      assertTrue(getTailLag("editLogTailLagTxns") >= DIRS_TO_MAKE);
+      assertTrue(getTailLag("editLogTailLagMillis") >= stallMs);
+
+      // Nothing new to tail.
+      assertEquals(0, tailer.doTailEdits());
+      assertEquals(0, getTailLag("editLogTailLagTxns"));
+
+      // Tailed right away, the edits are not stale anymore.
+      NameNodeAdapter.mkdirs(active, getDirPath(DIRS_TO_MAKE), perm, true);
+      active.getRpcServer().rollEditLog();
+      assertTrue(tailer.doTailEdits() > 0);
+      assertTrue(getTailLag("editLogTailLagTxns") > 0);
+      assertTrue(getTailLag("editLogTailLagMillis") < stallMs);
+    } finally {
+      cluster.shutdown();
+    }
+  }
+
+  /**
+   * The NameNodes of the cluster share the static metrics of the last one
+   * started, which the tailer sets.
+   */
+  private static long getTailLag(String gauge) {
+    return ((MutableGaugeLong) Whitebox.getInternalState(
+        NameNode.getNameNodeMetrics(), gauge)).value();
+  }
+
   @Test
   public void testTailerBackoff() throws Exception {
     Configuration conf = new Configuration();
@@ -393,10 +393,13 @@ public void testCorruptBlock() throws Exception {
     assertGauge("CorruptBlocks", 1L, rb);
     assertGauge("PendingReplicationBlocks", 1L, rb);
     assertGauge("ScheduledReplicationBlocks", 1L, rb);
+    // Nothing was replicated yet to estimate the time to replicate the block.
+    assertGauge("ReplicationQueueEtaSeconds", -1L, rb);
     fs.delete(file, true);
     rb = waitForDnMetricValue(NS_METRICS, "CorruptBlocks", 0L);
     assertGauge("PendingReplicationBlocks", 0L, rb);
     assertGauge("ScheduledReplicationBlocks", 0L, rb);
+    assertGauge("ReplicationQueueEtaSeconds", 0L, rb);
   }
   
   /** Create excess blocks by reducing the replication factor for
@@ -702,6 +705,31 @@ public void testReadWriteOps() throws Exception {
         startWriteCounter);
   }
 
+  /**
+   * Test that the async edit log reports queue wait and batch metrics.
+   */
+  @Test
+  public void testAsyncEditLogMetrics() throws Exception {
+    MetricsRecordBuilder rb = getMetrics(NN_METRICS);
+    long startEdits = MetricsAsserts.getLongCounter(
+        "AsyncEditLogQueueWaitMicrosNumOps", rb);
+    long startSyncs = MetricsAsserts.getLongCounter(
+        "AsyncEditLogBatchNumSyncs", rb);
+
+    fs.mkdirs(new Path(TEST_ROOT_DIR_PATH, "asyncEditLog"));
+
+    rb = getMetrics(NN_METRICS);
+    assertTrue(MetricsAsserts.getLongCounter(
+        "AsyncEditLogQueueWaitMicrosNumOps", rb) > startEdits);
+    assertTrue(MetricsAsserts.getLongCounter(
+        "AsyncEditLogBatchNumSyncs", rb) > startSyncs);
+
+    // Sleep for an interval+slop to let the percentiles rollover
+    Thread.sleep((PERCENTILES_INTERVAL+1)*1000);
+    assertQuantileGauges("AsyncEditLogQueueWaitMicros1s",
+        getMetrics(NN_METRICS));
+  }
+
   /**
    * Test metrics indicating the number of active clients and the files under
    * construction
@@ -0,0 +1,132 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Test {@link SegmentedArrayList} against an {@link ArrayList}.
+ */
+public class TestSegmentedArrayList {
+  private static final Random RANDOM = new Random();
+
+  /** Random inserts, removes and updates in sorted order. */
+  @Test(timeout=60000)
+  public void testSortedInsertAndRemove() {
+    final long seed = RANDOM.nextLong();
+    final Random r = new Random(seed);
+    final List<Integer> expected = new ArrayList<Integer>();
+    final SegmentedArrayList<Integer> list = new SegmentedArrayList<Integer>(8);
+
+    for (int i = 0; i < 20000; i++) {
+      final Integer value = r.nextInt(5000);
+      final int j = Collections.binarySearch(list, value);
+      assertEquals("seed=" + seed, Collections.binarySearch(expected, value), j);
+      if (j < 0) {
+        list.add(-j - 1, value);
+        expected.add(-j - 1, value);
+      } else if (r.nextBoolean()) {
+        assertEquals(expected.remove(j), list.remove(j));
+      } else {
+        assertEquals(expected.set(j, value), list.set(j, value));
+      }
+      if (i % 1000 == 0) {
+        assertEquals("seed=" + seed, expected, list);
+      }
+    }
+    assertEquals("seed=" + seed, expected, list);
+
+    // remove everything from the front.
+    while (!list.isEmpty()) {
+      assertEquals(expected.remove(0), list.remove(0));
+    }
+    assertEquals(0, list.getNumSegments());
+  }
+
+  /** Appending in order keeps the segments full. */
+  @Test
+  public void testAppend() {
+    final List<Integer> expected = new ArrayList<Integer>();
+    for (int i = 0; i < 100; i++) {
+      expected.add(i);
+    }
+    final SegmentedArrayList<Integer> list =
+        new SegmentedArrayList<Integer>(10, expected);
+    assertEquals(expected, list);
+    assertEquals(10, list.getNumSegments());
+
+    list.add(5, -1);
+    expected.add(5, -1);
+    assertEquals(expected, list);
+    assertEquals(11, list.getNumSegments());
+  }
+
+  @Test
+  public void testIterator() {
+    final List<Integer> expected = new ArrayList<Integer>();
+    final SegmentedArrayList<Integer> list = new SegmentedArrayList<Integer>(4);
+    for (int i = 0; i < 50; i++) {
+      expected.add(i);
+      list.add(i);
+    }
+
+    // remove the even elements through the iterator.
+    for (Iterator<Integer> it = list.iterator(); it.hasNext();) {
+      if (it.next() % 2 == 0) {
+        it.remove();
+      }
+    }
+    for (Iterator<Integer> it = expected.iterator(); it.hasNext();) {
+      if (it.next() % 2 == 0) {
+        it.remove();
+      }
+    }
+    assertEquals(expected, list);
+
+    final Iterator<Integer> it = list.iterator();
+    it.next();
+    list.add(0, -1);
+    try {
+      it.next();
+      fail("Expected ConcurrentModificationException");
+    } catch (ConcurrentModificationException e) {
+      // expected
+    }
+
+    list.clear();
+    assertFalse(list.iterator().hasNext());
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void testOutOfBounds() {
+    final SegmentedArrayList<Integer> list = new SegmentedArrayList<Integer>(4);
+    list.add(1);
+    list.get(1);
+  }
+}
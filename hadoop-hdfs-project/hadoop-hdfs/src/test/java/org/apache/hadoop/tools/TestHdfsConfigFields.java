@@ -43,7 +43,11 @@ public void initializeMemberVariables() {
       configurationClasses =
           new Class[] { HdfsClientConfigKeys.class, DFSConfigKeys.class,
               HdfsClientConfigKeys.Failover.class,
-              HdfsClientConfigKeys.BlockWrite.ReplaceDatanodeOnFailure.class };
+              HdfsClientConfigKeys.BlockWrite.ReplaceDatanodeOnFailure.class,
+              HdfsClientConfigKeys.DataNodeLatency.class,
+              HdfsClientConfigKeys.MetadataCache.class,
+              HdfsClientConfigKeys.VectoredRead.class,
+              HdfsClientConfigKeys.ParallelWrite.class };
 
     // Set error modes
     errorIfMissingConfigProps = true;